@@ -0,0 +1,93 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Time per batch of the scalar and vectorized batch kernels over arrays of
+ * random date ranges, from sizes that fit in L1 to ones that stream from
+ * memory.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class BatchKernelsBenchmark {
+
+   @Param({ "16", "256", "4096", "65536" })
+   public int size;
+
+   @Param({ "scalar", "vector" })
+   public String kernels;
+
+   @Param({ "DEFAULT", "HOURS", "WEEKS" })
+   public ResultUnit resultUnit;
+
+   private BatchKernels batchKernels;
+
+   private int[] starts;
+
+   private int[] ends;
+
+   private long[] out;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      batchKernels = "scalar".equals(kernels) ? new BatchKernels()
+            : BatchKernels.load();
+      if (!batchKernels.toString().startsWith(kernels)) {
+         throw new IllegalStateException("No " + kernels + " kernels");
+      }
+
+      Random random = new Random(15);
+      starts = new int[size];
+      ends = new int[size];
+      out = new long[size];
+      for (int i = 0; i < size; i++) {
+         starts[i] = random.nextInt(20000);
+         ends[i] = starts[i] + random.nextInt(800) - 400;
+      }
+   }
+
+   @Benchmark
+   public long[] daysBetween() {
+      batchKernels.daysBetween(starts, ends, out, 0, size,
+            resultUnit.daysMultiplier, resultUnit.daysDivisor);
+      return out;
+   }
+
+   @Benchmark
+   public long[] weekdaysBetween() {
+      batchKernels.weekdaysBetween(starts, ends, out, 0, size,
+            resultUnit.daysMultiplier, resultUnit.daysDivisor);
+      return out;
+   }
+
+   @Benchmark
+   public long[] completeWeeksBetween() {
+      batchKernels.completeWeeksBetween(starts, ends, out, 0, size,
+            resultUnit == ResultUnit.DEFAULT ? 1
+                  : 7 * resultUnit.daysMultiplier, resultUnit.daysDivisor);
+      return out;
+   }
+
+}
@@ -0,0 +1,84 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per BusinessCalendar query over random dates in the indexed years,
+ * with the index on the heap or mapped from a CalendarTable.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalendarQueryBenchmark {
+
+   /** Length of the precomputed query sequence, a power of two. */
+   private static final int QUERIES = 1 << 12;
+
+   private final long[] days = new long[QUERIES];
+
+   private final long[] spans = new long[QUERIES];
+
+   @Param({ "heap", "mapped" })
+   public String storage;
+
+   private BusinessCalendar calendar;
+
+   private int next;
+
+   @Setup
+   public void setUp() throws IOException {
+      Random random = new Random(19);
+      long[] holidays = new long[2000];
+      for (int i = 0; i < holidays.length; i++) {
+         holidays[i] = -25567 + random.nextInt(110000);
+      }
+      calendar = new BusinessCalendar(BusinessCalendar.SATURDAY_SUNDAY,
+            holidays);
+      if ("mapped".equals(storage)) {
+         Path table = Files.createTempFile("calendars", ".dtct");
+         CalendarTable.write(table, Collections.singletonMap("X", calendar));
+         calendar = CalendarTable.open(table).get("X");
+         // the mapping stays valid once the file is gone
+         Files.delete(table);
+      }
+      for (int i = 0; i < QUERIES; i++) {
+         days[i] = -25000 + random.nextInt(100000);
+         spans[i] = random.nextInt(2000);
+      }
+   }
+
+   @Benchmark
+   public long countBusinessDays() {
+      int i = next++ & (QUERIES - 1);
+      return calendar.countBusinessDays(days[i], days[i] + spans[i]);
+   }
+
+   @Benchmark
+   public long addBusinessDays() {
+      int i = next++ & (QUERIES - 1);
+      return calendar.addBusinessDays(days[i], spans[i]);
+   }
+
+}
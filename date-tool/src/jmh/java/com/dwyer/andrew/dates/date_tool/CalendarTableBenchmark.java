@@ -0,0 +1,142 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start cost of getting a process's calendars ready to query: loading
+ * and indexing every calendar file, or mapping a CalendarTable built from
+ * the same files. Each fork measures one cold call, so the time includes
+ * class loading and interpreted code, as a worker process starting up sees
+ * it. The calendar files are generated with java.time so no library class
+ * is loaded before the measurement.
+ *
+ * @author dwyera
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class CalendarTableBenchmark {
+
+   /** The number of calendars a process uses. */
+   @Param({ "60" })
+   public int calendars;
+
+   /** Holidays per calendar per year. */
+   @Param({ "12" })
+   public int holidaysPerYear;
+
+   private Path directory;
+
+   private File[] files;
+
+   private Path table;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException {
+      directory = Files.createTempDirectory("calendar-table-benchmark");
+      files = new File[calendars];
+      Random random = new Random(19);
+      java.time.LocalDate first = java.time.LocalDate.of(1900, 1, 1);
+      for (int c = 0; c < calendars; c++) {
+         files[c] = directory.resolve("X" + c + ".txt").toFile();
+         try (Writer out = Files.newBufferedWriter(files[c].toPath(),
+               StandardCharsets.UTF_8)) {
+            for (int year = 0; year <= 300; year++) {
+               for (int h = 0; h < holidaysPerYear; h++) {
+                  out.append(first.plusYears(year)
+                        .plusDays(random.nextInt(365)).toString())
+                        .append(" holiday\n");
+               }
+            }
+         }
+      }
+      table = directory.resolve("calendars.dtct");
+      // built in a separate JVM, as the build step would be
+      ProcessBuilder build = new ProcessBuilder(System.getProperty(
+            "java.home") + "/bin/java", "-cp",
+            System.getProperty("java.class.path"),
+            CalendarTableBenchmark.class.getName(), table.toString());
+      for (File file : files) {
+         build.command().add(file.toString());
+      }
+      Process process = build.inheritIO().start();
+      try {
+         if (process.waitFor() != 0) {
+            throw new IllegalStateException("Building the table failed");
+         }
+      } catch (InterruptedException ie) {
+         throw new IllegalStateException(ie);
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      try (Stream<Path> paths = Files.walk(directory)) {
+         paths.sorted(Comparator.reverseOrder()).map(Path::toFile)
+               .forEach(File::delete);
+      }
+   }
+
+   @Benchmark
+   public long rebuild() throws IOException {
+      long sum = 0;
+      for (File file : files) {
+         sum += BusinessCalendar.load(file).countBusinessDays(0, 20000);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   public long mapped() throws IOException {
+      CalendarTable mapped = CalendarTable.open(table);
+      long sum = 0;
+      for (int c = 0; c < calendars; c++) {
+         sum += mapped.get("X" + c).countBusinessDays(0, 20000);
+      }
+      return sum;
+   }
+
+   /**
+    * Builds a table from calendar files.
+    *
+    * @param args
+    *           the table file, then the calendar files
+    */
+   public static void main(String[] args) throws IOException {
+      TreeMap<String, BusinessCalendar> loaded = new TreeMap<String, BusinessCalendar>();
+      for (int i = 1; i < args.length; i++) {
+         String name = new File(args[i]).getName();
+         loaded.put(name.substring(0, name.lastIndexOf('.')),
+               BusinessCalendar.load(new File(args[i])));
+      }
+      CalendarTable.write(new File(args[0]).toPath(), loaded);
+   }
+
+}
@@ -0,0 +1,92 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.joda.time.Period;
+import org.joda.time.PeriodType;
+import org.joda.time.chrono.ISOChronology;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Time per pair of whole calendar months between random dates: a Joda
+ * Period per pair, as reports computed them, against DateMath's civil date
+ * arithmetic one pair at a time and through the batch path.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalendarUnitsBenchmark {
+
+   private static final int PAIRS = 4096;
+
+   private final int[] starts = new int[PAIRS];
+
+   private final int[] ends = new int[PAIRS];
+
+   private final LocalDate[] startDates = new LocalDate[PAIRS];
+
+   private final LocalDate[] endDates = new LocalDate[PAIRS];
+
+   private final long[] out = new long[PAIRS];
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(21);
+      for (int i = 0; i < PAIRS; i++) {
+         starts[i] = random.nextInt(20000);
+         ends[i] = starts[i] + random.nextInt(4000) - 2000;
+         startDates[i] = new LocalDate(starts[i] * DateMath.MILLIS_PER_DAY,
+               ISOChronology.getInstanceUTC());
+         endDates[i] = new LocalDate(ends[i] * DateMath.MILLIS_PER_DAY,
+               ISOChronology.getInstanceUTC());
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public long jodaPeriod() {
+      long sum = 0;
+      for (int i = 0; i < PAIRS; i++) {
+         sum += new Period(startDates[i], endDates[i], PeriodType.months())
+               .getMonths();
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public long countMonths() {
+      long sum = 0;
+      for (int i = 0; i < PAIRS; i++) {
+         sum += DateMath.countMonths(starts[i], ends[i]);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public long[] batch() {
+      DateMath.daysBetween(starts, ends, out, PAIRS, ResultUnit.MONTHS);
+      return out;
+   }
+
+}
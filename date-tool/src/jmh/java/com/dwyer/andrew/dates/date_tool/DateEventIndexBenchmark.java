@@ -0,0 +1,94 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per query of counting events, and those on weekdays, in windows of up
+ * to a year among 10 million events over 30 years: a linear scan of the
+ * event days against a DateEventIndex.
+ *
+ * @author dwyera
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateEventIndexBenchmark {
+
+   private static final int EVENTS = 10000000;
+
+   private static final int QUERIES = 1024;
+
+   private static final int SCANNED_QUERIES = 4;
+
+   private static final int FIRST_DAY = (int) DateMath.epochDay(2000, 1, 1);
+
+   private static final int DAYS = 30 * 365;
+
+   private final int[] events = new int[EVENTS];
+
+   private final long[] starts = new long[QUERIES];
+
+   private final long[] ends = new long[QUERIES];
+
+   private DateEventIndex index;
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(25);
+      for (int i = 0; i < EVENTS; i++) {
+         events[i] = FIRST_DAY + random.nextInt(DAYS);
+      }
+      for (int i = 0; i < QUERIES; i++) {
+         starts[i] = FIRST_DAY + random.nextInt(DAYS);
+         ends[i] = starts[i] + random.nextInt(366);
+      }
+      index = new DateEventIndex(events);
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(SCANNED_QUERIES)
+   public long linearScan() {
+      long sum = 0;
+      for (int q = 0; q < SCANNED_QUERIES; q++) {
+         long start = starts[q];
+         long end = ends[q];
+         for (int event : events) {
+            if (event >= start && event < end) {
+               sum++;
+               if (DateMath.dayOfWeek(event) < 6) {
+                  sum++;
+               }
+            }
+         }
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(QUERIES)
+   public long index() {
+      long sum = 0;
+      for (int q = 0; q < QUERIES; q++) {
+         sum += index.count(starts[q], ends[q]);
+         sum += index.countOnWeekdays(starts[q], ends[q]);
+      }
+      return sum;
+   }
+
+}
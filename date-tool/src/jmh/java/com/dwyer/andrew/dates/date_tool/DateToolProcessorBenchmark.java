@@ -0,0 +1,120 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.DateToolProcessor.Operation;
+import com.dwyer.andrew.dates.date_tool.DateToolProcessor.Pair;
+
+/**
+ * Time per pair streamed through a DateToolProcessor to a subscriber
+ * requesting everything, against the same calculations in a plain loop, so
+ * the difference is the cost of the stream.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateToolProcessorBenchmark {
+
+   private static final int PAIRS = 1 << 14;
+
+   @Param({ "16", "1024" })
+   public int capacity;
+
+   private final Pair[] pairs = new Pair[PAIRS];
+
+   private final DateTool calculator = new DateTool(ResultUnit.HOURS);
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(20);
+      for (int i = 0; i < PAIRS; i++) {
+         DateTime start = new DateTime(1990 + random.nextInt(30),
+               1 + random.nextInt(12), 1 + random.nextInt(28),
+               4 + random.nextInt(20), 0, DateTimeZone.UTC);
+         pairs[i] = new Pair(start, start.plusHours(random.nextInt(20000)));
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public void loop(Blackhole blackhole) {
+      for (Pair pair : pairs) {
+         blackhole.consume(new long[] {
+               calculator.calcDaysDifference(pair.getStartDate(),
+                     pair.getEndDate()),
+               calculator.calcWeekdaysDifference(pair.getStartDate(),
+                     pair.getEndDate()) });
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public void processor(final Blackhole blackhole) {
+      final DateToolProcessor processor = new DateToolProcessor(
+            ResultUnit.HOURS, capacity, Operation.DAYS, Operation.WEEKDAYS);
+      processor.subscribe(new Flow.Subscriber<long[]>() {
+         @Override
+         public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+         }
+
+         @Override
+         public void onNext(long[] values) {
+            blackhole.consume(values);
+         }
+
+         @Override
+         public void onError(Throwable throwable) {
+            throw new IllegalStateException(throwable);
+         }
+
+         @Override
+         public void onComplete() {
+         }
+      });
+      processor.onSubscribe(new Flow.Subscription() {
+         private int next;
+
+         @Override
+         public void request(long n) {
+            // emits reentrantly, as a synchronous publisher would
+            for (long i = 0; i < n && next < PAIRS; i++) {
+               processor.onNext(pairs[next++]);
+            }
+            if (next == PAIRS) {
+               next++;
+               processor.onComplete();
+            }
+         }
+
+         @Override
+         public void cancel() {
+         }
+      });
+   }
+
+}
@@ -0,0 +1,94 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Time per pair of elapsed seconds between random instants up to a month
+ * apart: DateTool's whole day conversion from DateTimes, against DateMath's
+ * precise elapsed time and weekday elapsed time from epoch milliseconds.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElapsedBenchmark {
+
+   private static final int PAIRS = 4096;
+
+   @Param({ "UTC", "Europe/London" })
+   public String zoneId;
+
+   private DateTimeZone zone;
+
+   private final long[] starts = new long[PAIRS];
+
+   private final long[] ends = new long[PAIRS];
+
+   private final DateTime[] startDates = new DateTime[PAIRS];
+
+   private final DateTime[] endDates = new DateTime[PAIRS];
+
+   private final long[] out = new long[PAIRS];
+
+   private final DateTool calculator = new DateTool(ResultUnit.SECONDS);
+
+   @Setup
+   public void setUp() {
+      zone = DateTimeZone.forID(zoneId);
+      Random random = new Random(22);
+      for (int i = 0; i < PAIRS; i++) {
+         starts[i] = 1400000000000L + (random.nextLong() >>> 28);
+         ends[i] = starts[i] + random.nextInt(31 * 86400) * 1000L;
+         startDates[i] = new DateTime(starts[i], zone);
+         endDates[i] = new DateTime(ends[i], zone);
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public long wholeDays() {
+      long sum = 0;
+      for (int i = 0; i < PAIRS; i++) {
+         sum += calculator.calcDaysDifference(startDates[i], endDates[i]);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public long[] elapsed() {
+      DateMath.elapsed(starts, ends, out, PAIRS, ResultUnit.SECONDS);
+      return out;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(PAIRS)
+   public long[] weekdayElapsed() {
+      DateMath.weekdayElapsed(starts, ends, out, PAIRS, zone,
+            ResultUnit.SECONDS);
+      return out;
+   }
+
+}
@@ -0,0 +1,94 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per value of the median and 95th percentile of differences grouped
+ * by region: collecting each group's values into a list and sorting it,
+ * against streaming them into GroupedDistributions.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatisticsBenchmark {
+
+   private static final int VALUES = 1 << 20;
+
+   private static final String[] REGIONS = { "north", "south", "east", "west",
+         "central" };
+
+   private static final long[] BOUNDS = { 0, 1, 2, 3, 5, 7, 14, 30, 90, 365 };
+
+   private final String[] keys = new String[VALUES];
+
+   private final long[] values = new long[VALUES];
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(24);
+      for (int i = 0; i < VALUES; i++) {
+         keys[i] = REGIONS[random.nextInt(REGIONS.length)];
+         values[i] = (long) (400 * Math.pow(random.nextDouble(), 3));
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(VALUES)
+   public long sortedLists() {
+      Map<String, List<Long>> groups = new HashMap<String, List<Long>>();
+      for (int i = 0; i < VALUES; i++) {
+         List<Long> group = groups.get(keys[i]);
+         if (group == null) {
+            group = new ArrayList<Long>();
+            groups.put(keys[i], group);
+         }
+         group.add(values[i]);
+      }
+      long sum = 0;
+      for (List<Long> group : groups.values()) {
+         Collections.sort(group);
+         sum += group.get((int) Math.ceil(0.5 * group.size()) - 1);
+         sum += group.get((int) Math.ceil(0.95 * group.size()) - 1);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(VALUES)
+   public long streamingDistributions() {
+      GroupedDistributions distributions = new GroupedDistributions(1, BOUNDS);
+      for (int i = 0; i < VALUES; i++) {
+         distributions.add(keys[i], 0, values[i]);
+      }
+      long sum = 0;
+      for (String key : distributions.getKeys()) {
+         sum += distributions.get(key, 0).getQuantile(0.5);
+         sum += distributions.get(key, 0).getQuantile(0.95);
+      }
+      return sum;
+   }
+
+}
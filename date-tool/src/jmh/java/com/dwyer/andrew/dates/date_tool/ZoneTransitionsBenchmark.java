@@ -0,0 +1,140 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per instant of the zone work on the hot path, for instants from 1970
+ * to 2040 each in one of a mix of named zones and fixed offsets: the Joda
+ * zone's answer against the interned ZoneTransitions table's, including the
+ * lookup of the table.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZoneTransitionsBenchmark {
+
+   private static final int INSTANTS = 4096;
+
+   private static final String[] ZONE_IDS = { "Europe/London",
+         "America/New_York", "Australia/Sydney", "Asia/Tehran", "+01:00",
+         "-05:00", "+05:30", "UTC" };
+
+   private final long[] instants = new long[INSTANTS];
+
+   private final DateTimeZone[] zones = new DateTimeZone[INSTANTS];
+
+   private final String[] zoneIds = new String[INSTANTS];
+
+   @Setup
+   public void setUp() {
+      Random random = new Random(23);
+      for (int i = 0; i < INSTANTS; i++) {
+         instants[i] = (long) (random.nextDouble() * 70 * 365.25
+               * DateMath.MILLIS_PER_DAY);
+         zoneIds[i] = new String(ZONE_IDS[random.nextInt(ZONE_IDS.length)]);
+         zones[i] = DateTimeZone.forID(zoneIds[i]);
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long jodaForID() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += DateTimeZone.forID(zoneIds[i]).hashCode();
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long tableForID() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += ZoneTransitions.forID(zoneIds[i]).hashCode();
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long jodaEpochDay() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += Math.floorDiv(instants[i] + zones[i].getOffset(instants[i]),
+               DateMath.MILLIS_PER_DAY);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long tableEpochDay() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += ZoneTransitions.forZone(zones[i]).toEpochDay(instants[i]);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long jodaOffsetFromLocal() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += zones[i].getOffsetFromLocal(instants[i]);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long tableOffsetFromLocal() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += ZoneTransitions.forZone(zones[i]).getOffsetFromLocal(
+               instants[i]);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long jodaNextTransition() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += zones[i].nextTransition(instants[i]);
+      }
+      return sum;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INSTANTS)
+   public long tableNextTransition() {
+      long sum = 0;
+      for (int i = 0; i < INSTANTS; i++) {
+         sum += ZoneTransitions.forZone(zones[i]).nextTransition(instants[i]);
+      }
+      return sum;
+   }
+
+}
@@ -0,0 +1,31 @@
+package com.dwyer.andrew.dates.date_tool.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line, e.g. a
+ * benchmark name pattern or -p rangeDays=365, and always adds the GC
+ * profiler so allocation rate is reported next to throughput.
+ *
+ * @author dwyera
+ */
+public class BenchmarkRunner {
+
+   public static void main(String[] args) throws Exception {
+      CommandLineOptions options = new CommandLineOptions(args);
+      Runner runner = new Runner(new OptionsBuilder().parent(options)
+            .addProfiler(GCProfiler.class).build());
+
+      if (options.shouldHelp()) {
+         options.showHelp();
+      } else if (options.shouldList()) {
+         runner.list();
+      } else {
+         runner.run();
+      }
+   }
+
+}
@@ -0,0 +1,50 @@
+package com.dwyer.andrew.dates.date_tool.benchmark;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The pair of dates a benchmark works on: a range of rangeDays days from a
+ * fixed Monday morning, supplied forwards or reversed. The zone observes
+ * daylight saving so longer ranges cross offset transitions.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+public abstract class DateRange {
+
+   /** The zone every benchmark date is in. */
+   public static final DateTimeZone ZONE = DateTimeZone
+         .forID("Europe/London");
+
+   /** The length of the range in days, 1 day to 100 years. */
+   @Param({ "1", "7", "30", "365", "3652", "36524" })
+   public int rangeDays;
+
+   /** Whether the dates are supplied start first or end first. */
+   @Param({ "FORWARD", "REVERSED" })
+   public String direction;
+
+   public DateTime startDate;
+
+   public DateTime endDate;
+
+   @Setup(Level.Trial)
+   public void setUpRange() {
+      DateTime from = new DateTime(2000, 1, 3, 9, 30, ZONE);
+      DateTime to = from.plusDays(rangeDays).plusHours(2);
+      if ("REVERSED".equals(direction)) {
+         startDate = to;
+         endDate = from;
+      } else {
+         startDate = from;
+         endDate = to;
+      }
+   }
+
+}
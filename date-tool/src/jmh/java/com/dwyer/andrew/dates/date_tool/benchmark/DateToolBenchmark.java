@@ -0,0 +1,87 @@
+package com.dwyer.andrew.dates.date_tool.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.DateTool;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Throughput of the DateTool difference calculations, for every ResultUnit
+ * so each branch of the unit conversion is measured. The bound forms build a
+ * DateTool per call, as the CLI does; the shared forms reuse one calculator,
+ * and run with -t N to measure scaling across threads.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateToolBenchmark extends DateRange {
+
+   /** The result unit and the calculator shared by every benchmark thread. */
+   @State(Scope.Benchmark)
+   public static class Calculator {
+
+      @Param({ "DEFAULT", "SECONDS", "MINUTES", "HOURS", "DAYS", "WEEKS",
+            "YEARS" })
+      public ResultUnit resultUnit;
+
+      DateTool dateTool;
+
+      @Setup(Level.Trial)
+      public void setUp() {
+         dateTool = new DateTool(resultUnit);
+      }
+   }
+
+   @Benchmark
+   public long daysDifference(Calculator calculator) {
+      return new DateTool(startDate, endDate, calculator.resultUnit)
+            .calcDaysDifference();
+   }
+
+   @Benchmark
+   public long weekdaysDifference(Calculator calculator) {
+      return new DateTool(startDate, endDate, calculator.resultUnit)
+            .calcWeekdaysDifference();
+   }
+
+   @Benchmark
+   public long completeWeeksDifference(Calculator calculator) {
+      return new DateTool(startDate, endDate, calculator.resultUnit)
+            .calcCompleteWeeksDifference();
+   }
+
+   @Benchmark
+   public long sharedDaysDifference(Calculator calculator) {
+      return calculator.dateTool.calcDaysDifference(startDate, endDate);
+   }
+
+   @Benchmark
+   public long sharedWeekdaysDifference(Calculator calculator) {
+      return calculator.dateTool.calcWeekdaysDifference(startDate, endDate);
+   }
+
+   @Benchmark
+   public long sharedCompleteWeeksDifference(Calculator calculator) {
+      return calculator.dateTool.calcCompleteWeeksDifference(startDate,
+            endDate);
+   }
+
+}
@@ -0,0 +1,104 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+import com.dwyer.andrew.dates.date_tool.benchmark.DateRange;
+
+/**
+ * Throughput of the bulk operations over a skewed workload, with and without
+ * a ResultCache. Queries are drawn from a pool of distinct date ranges with
+ * Zipf distributed popularity, as repeated month and quarter to date windows
+ * are in real traffic. cacheSize 0 computes every query.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+   /** Length of the precomputed query sequence, a power of two. */
+   private static final int QUERIES = 1 << 16;
+
+   private static final BulkOperation[] OPERATIONS = BulkOperation.values();
+
+   /** The number of distinct date ranges queried. */
+   @Param({ "100000" })
+   public int distinctRanges;
+
+   /** The Zipf exponent, higher is more skewed. */
+   @Param({ "0.8", "1.1" })
+   public double skew;
+
+   @Param({ "0", "4096", "65536" })
+   public int cacheSize;
+
+   private final long[] starts = new long[QUERIES];
+
+   private final long[] ends = new long[QUERIES];
+
+   private final BusinessCalendar calendar = new BusinessCalendar(
+         BusinessCalendar.SATURDAY_SUNDAY, new long[0]);
+
+   private ResultCache cache;
+
+   private int next;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      // cumulative Zipf weights over the ranks of the distinct ranges
+      double[] cumulative = new double[distinctRanges];
+      double total = 0;
+      for (int rank = 0; rank < distinctRanges; rank++) {
+         total += 1 / Math.pow(rank + 1, skew);
+         cumulative[rank] = total;
+      }
+
+      Random random = new Random(5);
+      DateTime origin = new DateTime(2000, 1, 3, 0, 0, DateRange.ZONE);
+      for (int i = 0; i < QUERIES; i++) {
+         int rank = Arrays.binarySearch(cumulative,
+               random.nextDouble() * total);
+         rank = rank < 0 ? -rank - 1 : rank;
+         // each rank is a fixed window, spread over 30 years of start dates
+         DateTime start = origin.plusDays((int) ((rank * 7919L) % 10957));
+         starts[i] = start.getMillis();
+         ends[i] = start.plusDays(1 + rank % 92).getMillis();
+      }
+      cache = cacheSize == 0 ? null : new ResultCache(cacheSize);
+   }
+
+   @Benchmark
+   public long query() {
+      int i = next++ & (QUERIES - 1);
+      long sum = 0;
+      for (BulkOperation operation : OPERATIONS) {
+         sum += operation.apply(starts[i], ends[i], DateRange.ZONE,
+               ResultUnit.DEFAULT, calendar, cache);
+      }
+      return sum;
+   }
+
+}
@@ -0,0 +1,121 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * End to end time to process a file of pairs with every operation, from the
+ * file on disk to a results file on disk, for bulk mode text and for binary
+ * columnar files. Each invocation is one whole run, so run it with -p
+ * rows=100000000 to compare the formats at scale; the files are written to
+ * the temporary directory once per trial, taking about 2.2GB of text and 800MB
+ * of pairs at that size.
+ *
+ * @author dwyera
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class ColumnarBenchmark {
+
+   private static final List<BulkOperation> OPERATIONS = Arrays
+         .asList(BulkOperation.values());
+
+   @Param({ "1000000" })
+   public long rows;
+
+   @Param({ "text", "binary" })
+   public String format;
+
+   private final BusinessCalendar calendar = new BusinessCalendar(
+         BusinessCalendar.SATURDAY_SUNDAY, new long[0]);
+
+   private Path directory;
+
+   private Path input;
+
+   private Path output;
+
+   @Setup(Level.Trial)
+   public void setUp() throws IOException {
+      directory = Files.createTempDirectory("columnar-benchmark");
+      Path text = directory.resolve("pairs.csv");
+      Random random = new Random(16);
+      LocalDate origin = new LocalDate(1990, 1, 1);
+      try (Writer out = Files.newBufferedWriter(text,
+            StandardCharsets.UTF_8)) {
+         for (long i = 0; i < rows; i++) {
+            LocalDate start = origin.plusDays(random.nextInt(15000));
+            out.append(start.toString()).append(',')
+                  .append(start.plusDays(random.nextInt(730)).toString())
+                  .append('\n');
+         }
+      }
+
+      if ("text".equals(format)) {
+         input = text;
+      } else {
+         input = directory.resolve("pairs.dtc");
+         try (BufferedReader in = Files.newBufferedReader(text,
+               StandardCharsets.UTF_8)) {
+            new ColumnarConverter(',').toColumnar(in, input,
+                  new BufferedWriter(Writer.nullWriter()));
+         }
+         Files.delete(text);
+      }
+      output = directory.resolve("results");
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      Files.deleteIfExists(input);
+      Files.deleteIfExists(output);
+      Files.deleteIfExists(directory);
+   }
+
+   @Benchmark
+   public long process() throws IOException {
+      if ("binary".equals(format)) {
+         return new ColumnarProcessor(OPERATIONS, ResultUnit.DEFAULT, calendar)
+               .process(input, output);
+      }
+      try (BufferedReader in = Files.newBufferedReader(input,
+            StandardCharsets.UTF_8);
+            Writer out = Files.newBufferedWriter(output,
+                  StandardCharsets.UTF_8)) {
+         return new BulkProcessor(OPERATIONS, ',', ResultUnit.DEFAULT,
+               calendar).process(in, out, Writer.nullWriter());
+      }
+   }
+
+}
@@ -0,0 +1,68 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.benchmark.DateRange;
+import com.dwyer.andrew.dates.date_tool.metrics.Metrics;
+
+/**
+ * Throughput of a whole bulk mode line with metrics off and on, showing the
+ * cost of recording parse and calculation timings. With metrics off the line
+ * takes the same path as ParseBenchmark.processLine.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark extends DateRange {
+
+   @Param({ "false", "true" })
+   public boolean metrics;
+
+   private String line;
+
+   private BulkProcessor processor;
+
+   private StringBuilder result;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      DateTimeFormatter printer = ISODateTimeFormat.date();
+      line = printer.print(startDate) + "," + printer.print(endDate);
+      processor = new BulkProcessor(Arrays.asList(BulkOperation.DAYS,
+            BulkOperation.WEEKDAYS, BulkOperation.COMPLETE_WEEKS), ',',
+            ResultUnit.DEFAULT, null, null, null, metrics ? new BulkMetrics(
+                  new Metrics()) : null, DateTimeZone.getDefault());
+      result = new StringBuilder(64);
+   }
+
+   @Benchmark
+   public StringBuilder processLine() {
+      result.setLength(0);
+      processor.processLine(line, result);
+      return result;
+   }
+
+}
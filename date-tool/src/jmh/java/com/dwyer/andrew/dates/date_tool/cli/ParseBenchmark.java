@@ -0,0 +1,96 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.benchmark.DateRange;
+
+/**
+ * Throughput of the CLI input path: parsing the two dates of a pair with
+ * DateToolCLI.parseDate, the Joda parser it replaced as a baseline, and a
+ * whole bulk mode line. Lives in the cli package to reach its package
+ * private methods.
+ *
+ * @author dwyera
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark extends DateRange {
+
+   /** The ISO form the dates are written in. */
+   @Param({ "yyyy-MM-dd", "yyyy-MM-dd'T'HH:mm:ss.SSSZZ" })
+   public String format;
+
+   private String startText;
+
+   private String endText;
+
+   private String line;
+
+   private DateTimeFormatter jodaParser;
+
+   private BulkProcessor processor;
+
+   private StringBuilder result;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      DateTimeFormatter printer = ISODateTimeFormat.date();
+      if (!"yyyy-MM-dd".equals(format)) {
+         printer = ISODateTimeFormat.dateTime();
+      }
+      startText = printer.print(startDate);
+      endText = printer.print(endDate);
+      line = startText + "," + endText;
+
+      jodaParser = ISODateTimeFormat.dateOptionalTimeParser().withZone(ZONE);
+      processor = new BulkProcessor(Arrays.asList(BulkOperation.DAYS,
+            BulkOperation.WEEKDAYS, BulkOperation.COMPLETE_WEEKS), ',',
+            ResultUnit.DEFAULT, null);
+      result = new StringBuilder(64);
+   }
+
+   @Benchmark
+   public void parseDate(Blackhole blackhole) {
+      DateTime start = DateToolCLI.parseDate(startText);
+      DateTime end = DateToolCLI.parseDate(endText);
+      blackhole.consume(start);
+      blackhole.consume(end);
+   }
+
+   @Benchmark
+   public void jodaParseDate(Blackhole blackhole) {
+      blackhole.consume(jodaParser.parseDateTime(startText));
+      blackhole.consume(jodaParser.parseDateTime(endText));
+   }
+
+   @Benchmark
+   public StringBuilder processLine() {
+      result.setLength(0);
+      processor.processLine(line, result);
+      return result;
+   }
+
+}
@@ -0,0 +1,89 @@
+package com.dwyer.andrew.dates.date_tool;
+
+/**
+ * The loops behind DateMath's batch methods, over the pairs from index from
+ * up to to. Results are count * multiplier / divisor, so callers fold the
+ * ResultUnit conversion into the loop.
+ *
+ * These are the scalar kernels. When the JVM is started with the
+ * jdk.incubator.vector module (java --add-modules jdk.incubator.vector)
+ * load returns VectorBatchKernels instead, which gives bit for bit the same
+ * results several pairs per instruction.
+ *
+ * @author dwyera
+ */
+class BatchKernels {
+
+   /** The vectorized kernels, loaded by name so the module stays optional. */
+   private static final String VECTOR_KERNELS = "com.dwyer.andrew.dates.date_tool.VectorBatchKernels";
+
+   /**
+    * Returns the vectorized kernels if the vector module is present and this
+    * CPU has vector registers, otherwise the scalar kernels. The system
+    * property date-tool.scalar forces the scalar kernels.
+    */
+   static BatchKernels load() {
+      if (!Boolean.getBoolean("date-tool.scalar")
+            && ModuleLayer.boot().findModule("jdk.incubator.vector")
+                  .isPresent()) {
+         try {
+            return (BatchKernels) Class.forName(VECTOR_KERNELS)
+                  .getDeclaredConstructor().newInstance();
+         } catch (ReflectiveOperationException | LinkageError
+               | UnsupportedOperationException e) {
+            // fall back to the scalar kernels
+         }
+      }
+      return new BatchKernels();
+   }
+
+   void daysBetween(int[] startEpochDays, int[] endEpochDays, long[] out,
+         int from, int to, long multiplier, long divisor) {
+      for (int i = from; i < to; i++) {
+         long days = (long) endEpochDays[i] - startEpochDays[i];
+         out[i] = days * multiplier / divisor;
+      }
+   }
+
+   void weekdaysBetween(int[] startEpochDays, int[] endEpochDays, long[] out,
+         int from, int to, long multiplier, long divisor) {
+      for (int i = from; i < to; i++) {
+         long start = startEpochDays[i];
+         long end = endEpochDays[i];
+         long days = start <= end ? DateMath.countWeekdays(start, end)
+               : -DateMath.countWeekdays(end, start);
+         out[i] = days * multiplier / divisor;
+      }
+   }
+
+   /**
+    * Counts complete weeks. With ResultUnit.DEFAULT the caller passes a
+    * multiplier of 1 to return weeks, otherwise 7 times the unit's.
+    */
+   void completeWeeksBetween(int[] startEpochDays, int[] endEpochDays,
+         long[] out, int from, int to, long multiplier, long divisor) {
+      for (int i = from; i < to; i++) {
+         long weeks = ((long) endEpochDays[i] - startEpochDays[i]) / 7;
+         out[i] = weeks * multiplier / divisor;
+      }
+   }
+
+   /**
+    * Counts whole calendar months, dividing them by the months in the unit.
+    * Left scalar by the vectorized kernels, as the civil date arithmetic
+    * divides by constants the vector API has no division for.
+    */
+   void monthsBetween(int[] startEpochDays, int[] endEpochDays, long[] out,
+         int from, int to, long monthsPerUnit) {
+      for (int i = from; i < to; i++) {
+         out[i] = DateMath.countMonths(startEpochDays[i], endEpochDays[i])
+               / monthsPerUnit;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "scalar";
+   }
+
+}
@@ -0,0 +1,708 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * A business day calendar made up of a weekend (any set of days of the week)
+ * and a list of holidays. The calendar is precomputed into a bit set with one
+ * bit per day and a running count of business days per 64 day block, so the
+ * number of business days between any two dates is two lookups and a
+ * popcount. Days outside the indexed years have no holidays and are counted
+ * arithmetically from the weekend alone, so every query is constant time.
+ * The index is built on the heap, or read in place from a mapped
+ * CalendarTable.
+ *
+ * Calendar files are plain text with one entry per line. Blank lines and
+ * lines starting with '#' are ignored. A line "weekend=SATURDAY,SUNDAY" sets
+ * the weekend (day names or ISO day numbers 1-7), defaulting to Saturday and
+ * Sunday. Every other line starts with an ISO date (yyyy-MM-dd) naming a
+ * holiday, optionally followed by whitespace and a description.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author dwyera
+ */
+public class BusinessCalendar {
+
+   /** First year indexed by default. */
+   public static final int DEFAULT_FIRST_YEAR = 1900;
+
+   /** Last year indexed by default. */
+   public static final int DEFAULT_LAST_YEAR = 2200;
+
+   /** Weekend mask for a Saturday and Sunday weekend. */
+   public static final int SATURDAY_SUNDAY = weekendMask(
+         DateTimeConstants.SATURDAY, DateTimeConstants.SUNDAY);
+
+   private static final String WEEKEND_PREFIX = "weekend=";
+
+   private static final String[] DAY_NAMES = { "MONDAY", "TUESDAY",
+         "WEDNESDAY", "THURSDAY", "FRIDAY", "SATURDAY", "SUNDAY" };
+
+   /** Combined calendars kept by allOpen and anyOpen. */
+   private static final int COMBINED_CAPACITY = 64;
+
+   /**
+    * Combined calendars by mode and members, read without locking. Once full,
+    * an arbitrary entry is evicted for each one added.
+    */
+   private static final ConcurrentMap<Combination, BusinessCalendar> COMBINED = new ConcurrentHashMap<Combination, BusinessCalendar>();
+
+   /** Bit (dayOfWeek - 1) is set for each weekend day. */
+   private final int weekendMask;
+
+   /** Business days in a complete week. */
+   private final int businessDaysPerWeek;
+
+   /**
+    * partialWeek[d][r] is the number of business days, ignoring holidays, in
+    * the r days (0 to 6) starting on a day whose ISO day of week is d + 1.
+    */
+   private final int[][] partialWeek;
+
+   /** First epoch day of the index, inclusive. */
+   private final long firstDay;
+
+   /** Last epoch day of the index, exclusive. */
+   private final long endDay;
+
+   /** One bit per indexed day, set for business days, in 64 day blocks. */
+   private final CalendarIndex index;
+
+   /** The number of blocks in the index. */
+   private final int blocks;
+
+   /**
+    * Instantiates a calendar indexing the default years 1900 to 2200.
+    *
+    * @param weekendMask
+    *           the weekend days @see weekendMask(int...)
+    * @param holidays
+    *           holidays as epoch days, in any order
+    */
+   public BusinessCalendar(int weekendMask, long[] holidays) {
+      this(weekendMask, holidays, DEFAULT_FIRST_YEAR, DEFAULT_LAST_YEAR);
+   }
+
+   /**
+    * Instantiates a calendar. The index covers firstYear to lastYear
+    * inclusive, extended to include every holiday.
+    *
+    * @param weekendMask
+    *           the weekend days @see weekendMask(int...)
+    * @param holidays
+    *           holidays as epoch days, in any order
+    * @param firstYear
+    *           the first year to index
+    * @param lastYear
+    *           the last year to index
+    */
+   public BusinessCalendar(int weekendMask, long[] holidays, int firstYear,
+         int lastYear) {
+      this(checkWeekendMask(weekendMask), indexFirstDay(holidays, firstYear,
+            lastYear), indexEndDay(holidays, lastYear), holidays);
+   }
+
+   /**
+    * Instantiates a calendar indexing [firstDay, endDay), which includes
+    * every holiday.
+    */
+   private BusinessCalendar(int weekendMask, long firstDay, long endDay,
+         long[] holidays) {
+      this(weekendMask, firstDay, endDay, CalendarIndex.of(clearHolidays(
+            weekendBits(weekendMask, firstDay, endDay), firstDay, holidays)));
+   }
+
+   /**
+    * Instantiates a calendar over a built index, e.g. one mapped by a
+    * CalendarTable.
+    *
+    * @param weekendMask
+    *           the weekend days @see weekendMask(int...)
+    * @param firstDay
+    *           the first epoch day of the index, inclusive
+    * @param endDay
+    *           the last epoch day of the index, exclusive
+    * @param index
+    *           the business days from firstDay, covering endDay - firstDay
+    *           days
+    */
+   BusinessCalendar(int weekendMask, long firstDay, long endDay,
+         CalendarIndex index) {
+      this.weekendMask = weekendMask;
+      this.businessDaysPerWeek = 7 - Integer.bitCount(weekendMask);
+      this.partialWeek = new int[7][7];
+      for (int d = 0; d < 7; d++) {
+         for (int r = 1; r < 7; r++) {
+            partialWeek[d][r] = partialWeek[d][r - 1]
+                  + (((weekendMask >> ((d + r - 1) % 7)) & 1) == 0 ? 1 : 0);
+         }
+      }
+      this.firstDay = firstDay;
+      this.endDay = endDay;
+      this.index = index;
+      this.blocks = index.blocks();
+   }
+
+   /**
+    * Returns the calendar of the days on which every one of the calendars is
+    * open, e.g. the settlement days of a trade crossing several markets. Its
+    * weekend is every day that is a weekend day in any calendar and its
+    * holidays those of every calendar, so countBusinessDays and
+    * addBusinessDays on it give joint business day counts and T+N dates.
+    *
+    * The joint index is built by ANDing the calendars' bit sets a 64 day word
+    * at a time, and is kept for recently used combinations, so repeated calls
+    * with the same calendars, in any order, return the same instance without
+    * rebuilding anything or taking a lock. Looking the combination up takes
+    * time in the number of calendars; queries on the result take the same
+    * constant time however many calendars were combined, so hot paths should
+    * combine once and keep the result.
+    *
+    * @param calendars
+    *           the calendars to combine, at least one
+    * @return the calendar of days on which all are open
+    */
+   public static BusinessCalendar allOpen(BusinessCalendar... calendars) {
+      return combine(true, calendars);
+   }
+
+   /**
+    * Returns the calendar of the days on which at least one of the calendars
+    * is open, the union of their business days, combined by ORing the
+    * calendars' bit sets and cached as allOpen is.
+    *
+    * @param calendars
+    *           the calendars to combine, at least one
+    * @return the calendar of days on which any is open
+    */
+   public static BusinessCalendar anyOpen(BusinessCalendar... calendars) {
+      return combine(false, calendars);
+   }
+
+   private static BusinessCalendar combine(boolean all,
+         BusinessCalendar[] calendars) {
+      if (calendars.length == 0) {
+         throw new IllegalArgumentException("No calendars to combine");
+      }
+      Combination key = new Combination(all, calendars);
+      if (key.members.length == 1) {
+         return calendars[0];
+      }
+      BusinessCalendar combined = COMBINED.get(key);
+      if (combined != null) {
+         return combined;
+      }
+
+      BusinessCalendar built = combineIndexes(all, key.members);
+      combined = COMBINED.putIfAbsent(key, built);
+      if (combined != null) {
+         return combined;
+      }
+      Iterator<Combination> keys = COMBINED.keySet().iterator();
+      while (COMBINED.size() > COMBINED_CAPACITY && keys.hasNext()) {
+         Combination evicted = keys.next();
+         if (evicted != key) {
+            keys.remove();
+         }
+      }
+      return built;
+   }
+
+   /**
+    * The mode and distinct members of a combination, equal to another with
+    * the same mode and members in any order.
+    */
+   private static final class Combination {
+
+      final boolean all;
+
+      final BusinessCalendar[] members;
+
+      private final int hash;
+
+      Combination(boolean all, BusinessCalendar[] calendars) {
+         BusinessCalendar[] distinct = new BusinessCalendar[calendars.length];
+         int count = 0;
+         int sum = 0;
+         for (BusinessCalendar calendar : calendars) {
+            if (indexOf(distinct, count, calendar) < 0) {
+               distinct[count++] = calendar;
+               sum += System.identityHashCode(calendar);
+            }
+         }
+         this.all = all;
+         this.members = count == distinct.length ? distinct : Arrays.copyOf(
+               distinct, count);
+         this.hash = all ? sum : ~sum;
+      }
+
+      private static int indexOf(BusinessCalendar[] calendars, int count,
+            BusinessCalendar calendar) {
+         for (int i = 0; i < count; i++) {
+            if (calendars[i] == calendar) {
+               return i;
+            }
+         }
+         return -1;
+      }
+
+      @Override
+      public boolean equals(Object other) {
+         if (!(other instanceof Combination)) {
+            return false;
+         }
+         Combination that = (Combination) other;
+         if (that.all != all || that.hash != hash
+               || that.members.length != members.length) {
+            return false;
+         }
+         for (BusinessCalendar member : members) {
+            if (indexOf(that.members, that.members.length, member) < 0) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      @Override
+      public int hashCode() {
+         return hash;
+      }
+   }
+
+   /**
+    * Combines the indexes of the calendars over the span of all of them, a
+    * word at a time. Outside a calendar's own index its words come from its
+    * weekend alone, as its queries there do.
+    */
+   private static BusinessCalendar combineIndexes(boolean all,
+         BusinessCalendar[] calendars) {
+      int weekendMask = all ? 0 : 0x7F;
+      long first = Long.MAX_VALUE;
+      long end = Long.MIN_VALUE;
+      for (BusinessCalendar calendar : calendars) {
+         weekendMask = all ? weekendMask | calendar.weekendMask : weekendMask
+               & calendar.weekendMask;
+         first = Math.min(first, calendar.firstDay);
+         end = Math.max(end, calendar.endDay);
+      }
+
+      // the joint weekend already closes every weekend day of any calendar,
+      // so all starts from it, while any starts from no open days
+      long[] words = all ? weekendBits(weekendMask, first, end)
+            : new long[blockCount(first, end)];
+      for (BusinessCalendar calendar : calendars) {
+         for (int w = 0; w < words.length; w++) {
+            long word = calendar.word(first + ((long) w << 6));
+            words[w] = all ? words[w] & word : words[w] | word;
+         }
+      }
+      // clear the bits past the end of the index
+      if (((end - first) & 63) != 0) {
+         words[words.length - 1] &= (1L << (end - first)) - 1;
+      }
+      return new BusinessCalendar(weekendMask, first, end,
+            CalendarIndex.of(words));
+   }
+
+   /**
+    * Returns the business day bits of the 64 days from fromDay, bit i for
+    * fromDay + i. Words inside the index are two shifted index words, and
+    * only days outside it are tested one at a time.
+    */
+   private long word(long fromDay) {
+      long offset = fromDay - firstDay;
+      if (offset >= 0 && offset + 64 <= endDay - firstDay) {
+         int w = (int) (offset >>> 6);
+         int shift = (int) (offset & 63);
+         long word = index.word(w) >>> shift;
+         if (shift != 0) {
+            word |= index.word(w + 1) << (64 - shift);
+         }
+         return word;
+      }
+      long word = 0;
+      for (int i = 0; i < 64; i++) {
+         if (isBusinessDay(fromDay + i)) {
+            word |= 1L << i;
+         }
+      }
+      return word;
+   }
+
+   /**
+    * Builds a weekend mask from ISO days of the week, e.g.
+    * DateTimeConstants.SATURDAY.
+    *
+    * @param daysOfWeek
+    *           the weekend days, Monday = 1 to Sunday = 7
+    * @return the weekend mask
+    */
+   public static int weekendMask(int... daysOfWeek) {
+      int mask = 0;
+      for (int day : daysOfWeek) {
+         if (day < DateTimeConstants.MONDAY || day > DateTimeConstants.SUNDAY) {
+            throw new IllegalArgumentException("Invalid day of week " + day);
+         }
+         mask |= 1 << (day - 1);
+      }
+      return mask;
+   }
+
+   private static int checkWeekendMask(int weekendMask) {
+      if ((weekendMask & ~0x7F) != 0) {
+         throw new IllegalArgumentException("Invalid weekend mask "
+               + weekendMask);
+      }
+      return weekendMask;
+   }
+
+   private static long indexFirstDay(long[] holidays, int firstYear,
+         int lastYear) {
+      if (lastYear < firstYear) {
+         throw new IllegalArgumentException("Last year " + lastYear
+               + " is before first year " + firstYear);
+      }
+      long first = toEpochDay(new LocalDate(firstYear, 1, 1));
+      for (long holiday : holidays) {
+         first = Math.min(first, holiday);
+      }
+      return first;
+   }
+
+   private static long indexEndDay(long[] holidays, int lastYear) {
+      long end = toEpochDay(new LocalDate(lastYear + 1, 1, 1));
+      for (long holiday : holidays) {
+         end = Math.max(end, holiday + 1);
+      }
+      return end;
+   }
+
+   private static int blockCount(long firstDay, long endDay) {
+      return (int) ((endDay - firstDay + 63) >>> 6);
+   }
+
+   /**
+    * Returns the index bits of [firstDay, endDay) with only the weekend
+    * applied.
+    */
+   private static long[] weekendBits(int weekendMask, long firstDay,
+         long endDay) {
+      long[] bits = new long[blockCount(firstDay, endDay)];
+      int length = (int) (endDay - firstDay);
+      for (int i = 0; i < length; i++) {
+         int dayOfWeek = DateMath.dayOfWeek(firstDay + i);
+         if (((weekendMask >> (dayOfWeek - 1)) & 1) == 0) {
+            bits[i >>> 6] |= 1L << i;
+         }
+      }
+      return bits;
+   }
+
+   private static long[] clearHolidays(long[] bits, long firstDay,
+         long[] holidays) {
+      for (long holiday : holidays) {
+         int i = (int) (holiday - firstDay);
+         bits[i >>> 6] &= ~(1L << i);
+      }
+      return bits;
+   }
+
+   /**
+    * Loads a calendar from a file. @see BusinessCalendar for the format.
+    *
+    * @param file
+    *           the calendar file
+    * @return the calendar
+    * @throws IOException
+    *            if the file cannot be read
+    * @throws IllegalArgumentException
+    *            if the file is not a valid calendar
+    */
+   public static BusinessCalendar load(File file) throws IOException {
+      Reader reader = new InputStreamReader(new FileInputStream(file),
+            StandardCharsets.UTF_8);
+      try {
+         return load(reader);
+      } finally {
+         reader.close();
+      }
+   }
+
+   /**
+    * Loads a calendar from a reader. @see BusinessCalendar for the format.
+    *
+    * @param reader
+    *           the calendar source, not closed by this method
+    * @return the calendar
+    * @throws IOException
+    *            if the reader fails
+    * @throws IllegalArgumentException
+    *            if the source is not a valid calendar
+    */
+   public static BusinessCalendar load(Reader reader) throws IOException {
+      BufferedReader in = new BufferedReader(reader);
+      int weekendMask = SATURDAY_SUNDAY;
+      long[] holidays = new long[16];
+      int holidayCount = 0;
+
+      String line;
+      int lineNumber = 0;
+      while ((line = in.readLine()) != null) {
+         lineNumber++;
+         line = line.trim();
+         if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+         }
+         try {
+            if (line.startsWith(WEEKEND_PREFIX)) {
+               weekendMask = parseWeekend(line.substring(WEEKEND_PREFIX
+                     .length()));
+            } else {
+               String date = line.split("\\s+", 2)[0];
+               if (holidayCount == holidays.length) {
+                  holidays = Arrays.copyOf(holidays, holidayCount * 2);
+               }
+               holidays[holidayCount++] = toEpochDay(LocalDate.parse(date));
+            }
+         } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("Invalid calendar entry on line "
+                  + lineNumber + ": " + line, iae);
+         }
+      }
+
+      return new BusinessCalendar(weekendMask, Arrays.copyOf(holidays,
+            holidayCount));
+   }
+
+   private static int parseWeekend(String days) {
+      int mask = 0;
+      for (String day : days.split(",")) {
+         day = day.trim().toUpperCase();
+         if (day.isEmpty()) {
+            continue;
+         }
+         int dayOfWeek = Arrays.asList(DAY_NAMES).indexOf(day) + 1;
+         if (dayOfWeek == 0) {
+            dayOfWeek = Integer.parseInt(day);
+         }
+         mask |= weekendMask(dayOfWeek);
+      }
+      return mask;
+   }
+
+   private static long toEpochDay(LocalDate date) {
+      return DateMath.toEpochDay(date.toDateTimeAtStartOfDay(DateTimeZone.UTC)
+            .getMillis(), DateTimeZone.UTC);
+   }
+
+   private boolean isWeekend(long epochDay) {
+      return ((weekendMask >> (DateMath.dayOfWeek(epochDay) - 1)) & 1) != 0;
+   }
+
+   /**
+    * Returns true if the epoch day is neither a weekend day nor a holiday.
+    *
+    * @param epochDay
+    *           days since 1970-01-01
+    * @return true for a business day
+    */
+   public boolean isBusinessDay(long epochDay) {
+      if (epochDay < firstDay || epochDay >= endDay) {
+         return !isWeekend(epochDay);
+      }
+      int i = (int) (epochDay - firstDay);
+      return (index.word(i >>> 6) & (1L << i)) != 0;
+   }
+
+   /**
+    * Counts the business days in the half open range [startDay, endDay).
+    * Returns 0 when endDay <= startDay.
+    *
+    * @param startDay
+    *           first epoch day of the range, inclusive
+    * @param endDay
+    *           last epoch day of the range, exclusive
+    * @return the number of business days in the range
+    */
+   public long countBusinessDays(long startDay, long endDay) {
+      if (endDay <= startDay) {
+         return 0;
+      }
+      return rank(endDay) - rank(startDay);
+   }
+
+   /**
+    * Moves an epoch day by a number of business days. For a positive count
+    * the result is the count'th business day after epochDay, for a negative
+    * count the count'th business day before it, and for zero epochDay itself.
+    * When epochDay is a business day countBusinessDays(epochDay,
+    * addBusinessDays(epochDay, n)) == n. The result is found by binary search
+    * over the cumulative block counts rather than by stepping through days.
+    *
+    * @param epochDay
+    *           days since 1970-01-01
+    * @param businessDays
+    *           the number of business days to move
+    * @return the resulting epoch day
+    * @throws IllegalStateException
+    *            if the calendar has no business days in a week
+    */
+   public long addBusinessDays(long epochDay, long businessDays) {
+      if (businessDays == 0) {
+         return epochDay;
+      }
+      if (businessDaysPerWeek == 0) {
+         throw new IllegalStateException(
+               "Calendar has no business days to move by");
+      }
+
+      if (businessDays > 0) {
+         return select(rank(epochDay + 1) + businessDays - 1);
+      }
+      return select(rank(epochDay) + businessDays);
+   }
+
+   /**
+    * Counts the business days stepped over when walking from startInstant
+    * towards endInstant one local day at a time in the given zone. This is
+    * DateMath.weekdaysBetween with this calendar's weekend and holidays.
+    * Reversed instants give a negated count.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone days are counted in
+    * @return the number of business days, negative if endInstant <
+    *         startInstant
+    */
+   public long businessDaysBetween(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      if (startInstant > endInstant) {
+         return -businessDaysBetween(endInstant, startInstant, zone);
+      }
+
+      long startDay = DateMath.toEpochDay(startInstant, zone);
+      return countBusinessDays(startDay,
+            startDay + DateMath.daysStepped(startInstant, endInstant, zone));
+   }
+
+   /**
+    * Returns the number of business days before an epoch day, counted from
+    * the start of the index. Negative for days before the index.
+    */
+   long rank(long epochDay) {
+      if (epochDay <= firstDay) {
+         return -countWeekendRule(epochDay, firstDay);
+      }
+      if (epochDay >= endDay) {
+         return index.count(blocks)
+               + countWeekendRule(endDay, epochDay);
+      }
+      int i = (int) (epochDay - firstDay);
+      int w = i >>> 6;
+      long below = (1L << i) - 1;
+      return index.count(w) + Long.bitCount(index.word(w) & below);
+   }
+
+   /**
+    * Returns the business day with the given rank, the inverse of rank.
+    */
+   long select(long rank) {
+      long total = index.count(blocks);
+      if (rank < 0) {
+         return selectBefore(firstDay, -rank);
+      }
+      if (rank >= total) {
+         return selectFrom(endDay, rank - total);
+      }
+
+      // last block whose cumulative count is <= rank
+      int low = 0;
+      int high = blocks - 1;
+      while (low < high) {
+         int mid = (low + high + 1) >>> 1;
+         if (index.count(mid) <= rank) {
+            low = mid;
+         } else {
+            high = mid - 1;
+         }
+      }
+
+      long word = index.word(low);
+      for (long skip = rank - index.count(low); skip > 0; skip--) {
+         word &= word - 1;
+      }
+      return firstDay + ((long) low << 6) + Long.numberOfTrailingZeros(word);
+   }
+
+   /**
+    * Returns the index'th (from 0) business day on or after startDay using
+    * the weekend rule alone.
+    */
+   private long selectFrom(long startDay, long index) {
+      long day = startDay + (index / businessDaysPerWeek) * 7;
+      for (long skip = index % businessDaysPerWeek;; day++) {
+         if (!isWeekend(day) && skip-- == 0) {
+            return day;
+         }
+      }
+   }
+
+   /**
+    * Returns the count'th (from 1) business day before endDay using the
+    * weekend rule alone.
+    */
+   private long selectBefore(long endDay, long count) {
+      long day = endDay - 1 - ((count - 1) / businessDaysPerWeek) * 7;
+      for (long skip = (count - 1) % businessDaysPerWeek;; day--) {
+         if (!isWeekend(day) && skip-- == 0) {
+            return day;
+         }
+      }
+   }
+
+   /**
+    * Counts the days in [startDay, endDay) that are not weekend days,
+    * ignoring holidays.
+    */
+   private long countWeekendRule(long startDay, long endDay) {
+      long days = endDay - startDay;
+      return (days / 7) * businessDaysPerWeek
+            + partialWeek[DateMath.dayOfWeek(startDay) - 1][(int) (days % 7)];
+   }
+
+   public int getWeekendMask() {
+      return weekendMask;
+   }
+
+   public long getFirstDay() {
+      return firstDay;
+   }
+
+   public long getEndDay() {
+      return endDay;
+   }
+
+   CalendarIndex getIndex() {
+      return index;
+   }
+
+}
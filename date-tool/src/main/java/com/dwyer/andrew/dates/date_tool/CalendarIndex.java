@@ -0,0 +1,116 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * The bit set and block counts behind a BusinessCalendar: one bit per day
+ * of the indexed range, set for business days, in 64 day blocks, and the
+ * number of business days before each block. Indexes built in process live
+ * in heap arrays; those of a CalendarTable are read in place from its
+ * mapping. Indexes are never modified once built.
+ *
+ * @author dwyera
+ */
+abstract class CalendarIndex {
+
+   /** Returns the number of 64 day blocks. */
+   abstract int blocks();
+
+   /** Returns the bits of a block, bit i for its i'th day. */
+   abstract long word(int block);
+
+   /**
+    * Returns the number of business days before a block, from 0 to blocks()
+    * inclusive.
+    */
+   abstract int count(int block);
+
+   /**
+    * Returns an index over the words, counting their business days.
+    *
+    * @param words
+    *           the bits of each block, not copied
+    * @return the index
+    */
+   static CalendarIndex of(long[] words) {
+      int[] counts = new int[words.length + 1];
+      for (int w = 0; w < words.length; w++) {
+         counts[w + 1] = counts[w] + Long.bitCount(words[w]);
+      }
+      return new Heap(words, counts);
+   }
+
+   /**
+    * An index in heap arrays.
+    */
+   static final class Heap extends CalendarIndex {
+
+      private final long[] words;
+
+      private final int[] counts;
+
+      Heap(long[] words, int[] counts) {
+         this.words = words;
+         this.counts = counts;
+      }
+
+      @Override
+      int blocks() {
+         return words.length;
+      }
+
+      @Override
+      long word(int block) {
+         return words[block];
+      }
+
+      @Override
+      int count(int block) {
+         return counts[block];
+      }
+   }
+
+   /**
+    * An index read in place from buffers, typically a mapped file.
+    */
+   static final class Mapped extends CalendarIndex {
+
+      private final LongBuffer words;
+
+      private final IntBuffer counts;
+
+      /**
+       * @param words
+       *           the bits of each block
+       * @param counts
+       *           the business days before each block, one more than there
+       *           are blocks
+       */
+      Mapped(LongBuffer words, IntBuffer counts) {
+         if (counts.limit() != words.limit() + 1) {
+            throw new IllegalArgumentException(words.limit()
+                  + " blocks need " + (words.limit() + 1) + " counts, not "
+                  + counts.limit());
+         }
+         this.words = words;
+         this.counts = counts;
+      }
+
+      @Override
+      int blocks() {
+         return words.limit();
+      }
+
+      @Override
+      long word(int block) {
+         return words.get(block);
+      }
+
+      @Override
+      int count(int block) {
+         return counts.get(block);
+      }
+   }
+
+}
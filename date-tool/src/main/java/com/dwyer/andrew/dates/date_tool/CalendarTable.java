@@ -0,0 +1,275 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file of prebuilt BusinessCalendar indexes, so processes that need the
+ * same calendars map them instead of each building its own copy. The file
+ * is mapped read only, and its calendars read their bit sets and block
+ * counts straight from the mapping, so the operating system's page cache
+ * holds one copy shared by every process and nothing is copied onto the
+ * heap. All values are little-endian. The file is
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic, the ASCII bytes DTCT
+ *      4     2  version, 1
+ *      6     2  zero
+ *      8     4  calendars
+ *     12     4  zero
+ *     16    64  per calendar, in name order:
+ *                  32  name, UTF-8, zero padded
+ *                   4  weekend mask
+ *                   4  blocks
+ *                   8  first epoch day of the index
+ *                   8  end epoch day of the index, exclusive
+ *                   8  offset of the index
+ * </pre>
+ *
+ * Each index is its blocks' 64 bit words followed by blocks + 1 int32
+ * counts of the business days before each block, and starts at a multiple
+ * of 8.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author dwyera
+ */
+public class CalendarTable {
+
+   /** The longest calendar name, in UTF-8 bytes. */
+   public static final int MAX_NAME_BYTES = 32;
+
+   private static final byte[] MAGIC = "DTCT".getBytes(StandardCharsets.US_ASCII);
+
+   private static final int VERSION = 1;
+
+   private static final int HEADER = 16;
+
+   private static final int ENTRY = 64;
+
+   private final ByteBuffer mapping;
+
+   private final String[] names;
+
+   private final BusinessCalendar[] calendars;
+
+   private CalendarTable(ByteBuffer mapping, String[] names) {
+      this.mapping = mapping;
+      this.names = names;
+      this.calendars = new BusinessCalendar[names.length];
+   }
+
+   /**
+    * Writes calendars to a table file, replacing any existing file only once
+    * the new one is complete, so processes opening it never see a partial
+    * table. On POSIX file systems the file is readable by every user, so
+    * processes running under other accounts can share it.
+    *
+    * @param file
+    *           the table file
+    * @param calendars
+    *           the calendars by name
+    * @throws IOException
+    *            if the file cannot be written
+    * @throws IllegalArgumentException
+    *            if a name is empty or longer than MAX_NAME_BYTES
+    */
+   public static void write(Path file, Map<String, BusinessCalendar> calendars)
+         throws IOException {
+      List<String> names = new ArrayList<String>(calendars.keySet());
+      Collections.sort(names);
+
+      long offset = HEADER + (long) ENTRY * names.size();
+      ByteBuffer directory = ByteBuffer.allocate((int) offset).order(
+            ByteOrder.LITTLE_ENDIAN);
+      directory.put(MAGIC).putShort((short) VERSION).putShort((short) 0)
+            .putInt(names.size()).putInt(0);
+      for (String name : names) {
+         byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+         if (bytes.length == 0 || bytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Calendar name \"" + name
+                  + "\" must be 1 to " + MAX_NAME_BYTES + " bytes");
+         }
+         BusinessCalendar calendar = calendars.get(name);
+         int blocks = calendar.getIndex().blocks();
+         directory.put(Arrays.copyOf(bytes, MAX_NAME_BYTES))
+               .putInt(calendar.getWeekendMask()).putInt(blocks)
+               .putLong(calendar.getFirstDay()).putLong(calendar.getEndDay())
+               .putLong(offset);
+         offset = align(offset + 8L * blocks + 4L * (blocks + 1));
+      }
+      directory.flip();
+
+      Path temporary = Files.createTempFile(file.toAbsolutePath()
+            .getParent(), file.getFileName().toString(), ".tmp");
+      try {
+         try (FileChannel channel = FileChannel.open(temporary,
+               StandardOpenOption.WRITE)) {
+            write(channel, directory);
+            for (String name : names) {
+               CalendarIndex index = calendars.get(name).getIndex();
+               int blocks = index.blocks();
+               ByteBuffer bytes = ByteBuffer.allocate(
+                     (int) align(8L * blocks + 4L * (blocks + 1))).order(
+                     ByteOrder.LITTLE_ENDIAN);
+               for (int w = 0; w < blocks; w++) {
+                  bytes.putLong(index.word(w));
+               }
+               for (int w = 0; w <= blocks; w++) {
+                  bytes.putInt(index.count(w));
+               }
+               bytes.clear();
+               write(channel, bytes);
+            }
+            channel.force(true);
+         }
+         // temporary files are created owner only
+         PosixFileAttributeView view = Files.getFileAttributeView(temporary,
+               PosixFileAttributeView.class);
+         if (view != null) {
+            view.setPermissions(PosixFilePermissions.fromString("rw-r--r--"));
+         }
+         Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+         Files.deleteIfExists(temporary);
+      }
+   }
+
+   /**
+    * Maps a table file.
+    *
+    * @param file
+    *           the table file
+    * @return the table
+    * @throws IOException
+    *            if the file cannot be read or is not a valid table
+    */
+   public static CalendarTable open(Path file) throws IOException {
+      ByteBuffer mapping;
+      try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.READ)) {
+         mapping = channel.map(MapMode.READ_ONLY, 0, channel.size()).order(
+               ByteOrder.LITTLE_ENDIAN);
+      }
+
+      try {
+         byte[] magic = new byte[MAGIC.length];
+         mapping.get(0, magic);
+         if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException(file + " is not a calendar table");
+         }
+         if (mapping.getShort(4) != VERSION) {
+            throw new IOException(file + " has unsupported version "
+                  + mapping.getShort(4));
+         }
+         int count = mapping.getInt(8);
+         if (count < 0 || HEADER + (long) ENTRY * count > mapping.limit()) {
+            throw new IOException(file + " is truncated");
+         }
+
+         String[] names = new String[count];
+         for (int i = 0; i < count; i++) {
+            int entry = HEADER + ENTRY * i;
+            byte[] name = new byte[MAX_NAME_BYTES];
+            mapping.get(entry, name);
+            int length = 0;
+            while (length < name.length && name[length] != 0) {
+               length++;
+            }
+            names[i] = new String(name, 0, length, StandardCharsets.UTF_8);
+            if (i > 0 && names[i - 1].compareTo(names[i]) >= 0) {
+               throw new IOException(file + " has calendars out of order");
+            }
+
+            int weekendMask = mapping.getInt(entry + 32);
+            int blocks = mapping.getInt(entry + 36);
+            long firstDay = mapping.getLong(entry + 40);
+            long endDay = mapping.getLong(entry + 48);
+            long offset = mapping.getLong(entry + 56);
+            if ((weekendMask & ~0x7F) != 0 || blocks < 0 || endDay < firstDay
+                  || (endDay - firstDay + 63) >>> 6 != blocks
+                  || (offset & 7) != 0 || offset < HEADER
+                  || offset > mapping.limit() - 8L * blocks - 4L * (blocks + 1)) {
+               throw new IOException(file + " has a malformed entry for "
+                     + names[i]);
+            }
+         }
+         return new CalendarTable(mapping, names);
+      } catch (IndexOutOfBoundsException ioobe) {
+         throw new IOException(file + " is truncated", ioobe);
+      }
+   }
+
+   /**
+    * Returns the names of the calendars, in order.
+    */
+   public List<String> getNames() {
+      return Collections.unmodifiableList(Arrays.asList(names));
+   }
+
+   /**
+    * Returns a calendar of the table, reading its index from the mapping.
+    *
+    * @param name
+    *           the calendar's name
+    * @return the calendar, or null if the table has none of that name
+    */
+   public BusinessCalendar get(String name) {
+      int i = Arrays.binarySearch(names, name);
+      if (i < 0) {
+         return null;
+      }
+      synchronized (calendars) {
+         if (calendars[i] == null) {
+            calendars[i] = map(HEADER + ENTRY * i);
+         }
+         return calendars[i];
+      }
+   }
+
+   private BusinessCalendar map(int entry) {
+      int weekendMask = mapping.getInt(entry + 32);
+      int blocks = mapping.getInt(entry + 36);
+      long firstDay = mapping.getLong(entry + 40);
+      long endDay = mapping.getLong(entry + 48);
+      int offset = (int) mapping.getLong(entry + 56);
+
+      LongBuffer words = mapping.slice(offset, 8 * blocks)
+            .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+      IntBuffer counts = mapping.slice(offset + 8 * blocks, 4 * (blocks + 1))
+            .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      return new BusinessCalendar(weekendMask, firstDay, endDay,
+            new CalendarIndex.Mapped(words, counts));
+   }
+
+   private static long align(long offset) {
+      return (offset + 7) & ~7L;
+   }
+
+   private static void write(FileChannel channel, ByteBuffer buffer)
+         throws IOException {
+      while (buffer.hasRemaining()) {
+         channel.write(buffer);
+      }
+   }
+
+}
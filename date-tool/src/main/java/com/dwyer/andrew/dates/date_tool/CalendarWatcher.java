@@ -0,0 +1,231 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a BusinessCalendar loaded from a file up to date with the file, so a
+ * long running service picks up changed holidays without restarting. The
+ * file's directory is watched with a WatchService, and each change is loaded
+ * into a new calendar on the watcher's own thread, then published with a
+ * single volatile write.
+ *
+ * Readers never lock or wait: get() is one volatile read returning an
+ * immutable calendar, so a computation that reads it once works on a
+ * consistent snapshot however many reloads happen meanwhile. A file that
+ * fails to load leaves the previous calendar in place and is counted in
+ * getFailedReloads().
+ *
+ * @author dwyera
+ */
+public class CalendarWatcher implements Supplier<BusinessCalendar>, Closeable {
+
+   /**
+    * How long the file must be quiet before it is loaded, so a save written
+    * in several steps is loaded once, complete.
+    */
+   static final long SETTLE_MILLIS = 50;
+
+   /**
+    * A loaded calendar and the version it was published as.
+    */
+   public static final class Snapshot {
+
+      private final BusinessCalendar calendar;
+
+      private final long version;
+
+      private final long loadedMillis;
+
+      private Snapshot(BusinessCalendar calendar, long version) {
+         this.calendar = calendar;
+         this.version = version;
+         this.loadedMillis = System.currentTimeMillis();
+      }
+
+      public BusinessCalendar getCalendar() {
+         return calendar;
+      }
+
+      /** Returns 1 for the initial load, increasing by 1 per reload. */
+      public long getVersion() {
+         return version;
+      }
+
+      /** Returns the wall clock time the calendar was loaded. */
+      public long getLoadedMillis() {
+         return loadedMillis;
+      }
+   }
+
+   private final Path file;
+
+   private final WatchService watchService;
+
+   private final Thread thread;
+
+   private final AtomicLong failedReloads = new AtomicLong();
+
+   private volatile Snapshot snapshot;
+
+   private volatile String lastFailure;
+
+   /**
+    * Loads the calendar and starts watching its file.
+    *
+    * @param file
+    *           the calendar file @see BusinessCalendar
+    * @throws IOException
+    *            if the file cannot be read or its directory watched
+    * @throws IllegalArgumentException
+    *            if the file is not a valid calendar
+    */
+   public CalendarWatcher(Path file) throws IOException {
+      this.file = file.toAbsolutePath();
+      this.snapshot = new Snapshot(BusinessCalendar.load(this.file.toFile()),
+            1);
+      this.watchService = FileSystems.getDefault().newWatchService();
+      try {
+         this.file.getParent().register(watchService,
+               StandardWatchEventKinds.ENTRY_CREATE,
+               StandardWatchEventKinds.ENTRY_MODIFY);
+      } catch (IOException | RuntimeException e) {
+         watchService.close();
+         throw e;
+      }
+      this.thread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            watch();
+         }
+      }, "calendar-watcher " + this.file.getFileName());
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   /**
+    * Returns the current calendar.
+    */
+   @Override
+   public BusinessCalendar get() {
+      return snapshot.calendar;
+   }
+
+   /**
+    * Returns the current calendar with its version.
+    */
+   public Snapshot snapshot() {
+      return snapshot;
+   }
+
+   /** Returns the current version, @see Snapshot.getVersion() */
+   public long getVersion() {
+      return snapshot.version;
+   }
+
+   /** Returns the number of changes loaded since the initial load. */
+   public long getReloadCount() {
+      return snapshot.version - 1;
+   }
+
+   /** Returns the number of changes that failed to load. */
+   public long getFailedReloads() {
+      return failedReloads.get();
+   }
+
+   /** Returns why the last failed reload failed, or null. */
+   public String getLastFailure() {
+      return lastFailure;
+   }
+
+   /**
+    * Loads the file now and publishes it as a new version, as a detected
+    * change does.
+    *
+    * @return true if the file loaded, false if it failed and the previous
+    *         calendar remains
+    */
+   public synchronized boolean reload() {
+      BusinessCalendar calendar;
+      try {
+         calendar = BusinessCalendar.load(file.toFile());
+      } catch (IOException | IllegalArgumentException e) {
+         lastFailure = file + ": " + e.getMessage();
+         failedReloads.incrementAndGet();
+         return false;
+      }
+      snapshot = new Snapshot(calendar, snapshot.version + 1);
+      return true;
+   }
+
+   /**
+    * Stops watching the file. The current calendar remains available.
+    */
+   @Override
+   public void close() throws IOException {
+      watchService.close();
+      try {
+         thread.join(TimeUnit.SECONDS.toMillis(1));
+      } catch (InterruptedException ie) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   @Override
+   public String toString() {
+      Snapshot current = snapshot;
+      return "version " + current.version + " reloads "
+            + (current.version - 1) + " failed " + failedReloads.get();
+   }
+
+   private void watch() {
+      try {
+         while (true) {
+            WatchKey key = watchService.take();
+            boolean changed = changed(key);
+            // wait for the writer to finish before loading
+            while (true) {
+               key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+               if (key == null) {
+                  break;
+               }
+               changed |= changed(key);
+            }
+            if (changed) {
+               reload();
+            }
+         }
+      } catch (ClosedWatchServiceException cwse) {
+         // closed
+      } catch (InterruptedException ie) {
+         // stopped
+      }
+   }
+
+   /**
+    * Returns whether the key's events include the calendar file, resetting
+    * the key to receive further events.
+    */
+   private boolean changed(WatchKey key) {
+      boolean changed = false;
+      for (WatchEvent<?> event : key.pollEvents()) {
+         if (event.kind() == StandardWatchEventKinds.OVERFLOW
+               || file.getFileName().equals(event.context())) {
+            changed = true;
+         }
+      }
+      key.reset();
+      return changed;
+   }
+
+}
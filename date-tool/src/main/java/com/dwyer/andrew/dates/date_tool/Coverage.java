@@ -0,0 +1,143 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * The days covered by a set of date ranges, as computed by
+ * CoverageAggregator: their union, their intersection (the days every range
+ * covers) and the gaps between the union's segments. Each is measured in
+ * days, weekdays, complete weeks and, when a calendar was supplied, business
+ * days.
+ *
+ * Instances are immutable.
+ *
+ * @author dwyera
+ */
+public final class Coverage {
+
+   private final long ranges;
+
+   private final long segments;
+
+   private final Totals union;
+
+   private final Totals intersection;
+
+   private final Totals gaps;
+
+   Coverage(long ranges, long segments, Totals union, Totals intersection,
+         Totals gaps) {
+      this.ranges = ranges;
+      this.segments = segments;
+      this.union = union;
+      this.intersection = intersection;
+      this.gaps = gaps;
+   }
+
+   /** Returns the number of ranges aggregated. */
+   public long getRanges() {
+      return ranges;
+   }
+
+   /** Returns the number of disjoint segments the ranges merge into. */
+   public long getSegments() {
+      return segments;
+   }
+
+   /** Returns the days covered by at least one range. */
+   public Totals getUnion() {
+      return union;
+   }
+
+   /** Returns the days covered by every range. */
+   public Totals getIntersection() {
+      return intersection;
+   }
+
+   /**
+    * Returns the days between the first and last day covered that no range
+    * covers.
+    */
+   public Totals getGaps() {
+      return gaps;
+   }
+
+   /**
+    * Days, weekdays, complete weeks and business days summed over a set of
+    * disjoint segments. Complete weeks are counted per segment, so two
+    * segments of four days hold no complete week.
+    */
+   public static final class Totals {
+
+      /** Totals of no days. */
+      static final Totals EMPTY = new Totals(0, 0, 0, 0);
+
+      private final long days;
+
+      private final long weekdays;
+
+      private final long completeWeeks;
+
+      private final long businessDays;
+
+      Totals(long days, long weekdays, long completeWeeks, long businessDays) {
+         this.days = days;
+         this.weekdays = weekdays;
+         this.completeWeeks = completeWeeks;
+         this.businessDays = businessDays;
+      }
+
+      /**
+       * Returns the number of days.
+       *
+       * @param resultUnit
+       *           the unit to return the days in
+       */
+      public long getDays(ResultUnit resultUnit) {
+         return DateMath.daysToUnit(days, resultUnit);
+      }
+
+      /**
+       * Returns the number of weekdays.
+       *
+       * @param resultUnit
+       *           the unit to return the weekdays in
+       */
+      public long getWeekdays(ResultUnit resultUnit) {
+         return DateMath.daysToUnit(weekdays, resultUnit);
+      }
+
+      /**
+       * Returns the number of complete weeks. As with
+       * DateTool.calcCompleteWeeksDifference, ResultUnit.DEFAULT returns weeks
+       * and other units the weeks' days in that unit.
+       *
+       * @param resultUnit
+       *           the unit to return the weeks in
+       */
+      public long getCompleteWeeks(ResultUnit resultUnit) {
+         if (resultUnit == ResultUnit.DEFAULT) {
+            return completeWeeks;
+         }
+         return DateMath.daysToUnit(completeWeeks * 7, resultUnit);
+      }
+
+      /**
+       * Returns the number of business days, zero if no calendar was
+       * supplied.
+       *
+       * @param resultUnit
+       *           the unit to return the business days in
+       */
+      public long getBusinessDays(ResultUnit resultUnit) {
+         return DateMath.daysToUnit(businessDays, resultUnit);
+      }
+
+      @Override
+      public String toString() {
+         return days + " days, " + weekdays + " weekdays, " + completeWeeks
+               + " complete weeks, " + businessDays + " business days";
+      }
+   }
+
+}
@@ -0,0 +1,176 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates date ranges into the Coverage of their union, intersection and
+ * gaps. Ranges are half open spans of epoch days, [startDay, endDay), as
+ * DateMath and BusinessCalendar count them; a range given end first is
+ * swapped. Ranges that share a day or touch are merged.
+ *
+ * Each range is packed into one long, so adding is an array store and
+ * aggregating sorts a primitive array and sweeps it once: O(n log n) time
+ * and 8 bytes per range, with no per range objects. After aggregate the
+ * aggregator may be cleared and reused, keeping its array.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author dwyera
+ */
+public final class CoverageAggregator {
+
+   private static final int DEFAULT_CAPACITY = 64;
+
+   /** Ranges as start day in the high and end day in the low 32 bits. */
+   private long[] ranges;
+
+   private int size;
+
+   /** Ranges of no days, which leave the ranges no common day. */
+   private int emptyRanges;
+
+   public CoverageAggregator() {
+      this(DEFAULT_CAPACITY);
+   }
+
+   /**
+    * Instantiates an aggregator sized for a number of ranges. It grows as
+    * needed.
+    *
+    * @param capacity
+    *           the number of ranges expected
+    */
+   public CoverageAggregator(int capacity) {
+      ranges = new long[Math.max(capacity, 1)];
+   }
+
+   /**
+    * Adds a range of days.
+    *
+    * @param startDay
+    *           the first epoch day of the range
+    * @param endDay
+    *           the epoch day after the last of the range
+    * @throws IllegalArgumentException
+    *            if either day is outside the int range
+    */
+   public void add(long startDay, long endDay) {
+      if (startDay != (int) startDay || endDay != (int) endDay) {
+         throw new IllegalArgumentException("Epoch day out of range: "
+               + (startDay != (int) startDay ? startDay : endDay));
+      }
+      if (startDay == endDay) {
+         emptyRanges++;
+         return;
+      }
+      if (size == ranges.length) {
+         ranges = Arrays.copyOf(ranges, size * 2);
+      }
+      long start = Math.min(startDay, endDay);
+      long end = Math.max(startDay, endDay);
+      ranges[size++] = start << 32 | (end & 0xFFFFFFFFL);
+   }
+
+   /** Returns the number of ranges added since the last clear. */
+   public int size() {
+      return size + emptyRanges;
+   }
+
+   /** Removes every range. */
+   public void clear() {
+      size = 0;
+      emptyRanges = 0;
+   }
+
+   /**
+    * Computes the coverage of the ranges added.
+    *
+    * @param calendar
+    *           the calendar business days are counted against, or null to
+    *           count none
+    * @return the coverage
+    */
+   public Coverage aggregate(BusinessCalendar calendar) {
+      if (size == 0) {
+         return new Coverage(emptyRanges, 0, Coverage.Totals.EMPTY,
+               Coverage.Totals.EMPTY, Coverage.Totals.EMPTY);
+      }
+      Arrays.sort(ranges, 0, size);
+
+      Sum union = new Sum(calendar);
+      Sum gaps = new Sum(calendar);
+      long segmentStart = start(ranges[0]);
+      long segmentEnd = end(ranges[0]);
+      long latestStart = segmentStart;
+      long earliestEnd = segmentEnd;
+      long segments = 1;
+
+      for (int i = 1; i < size; i++) {
+         long start = start(ranges[i]);
+         long end = end(ranges[i]);
+         latestStart = start;
+         earliestEnd = Math.min(earliestEnd, end);
+         if (start <= segmentEnd) {
+            segmentEnd = Math.max(segmentEnd, end);
+         } else {
+            union.add(segmentStart, segmentEnd);
+            gaps.add(segmentEnd, start);
+            segments++;
+            segmentStart = start;
+            segmentEnd = end;
+         }
+      }
+      union.add(segmentStart, segmentEnd);
+
+      Sum intersection = new Sum(calendar);
+      if (emptyRanges == 0 && latestStart < earliestEnd) {
+         intersection.add(latestStart, earliestEnd);
+      }
+      return new Coverage(size + emptyRanges, segments,
+            union.totals(), intersection.totals(), gaps.totals());
+   }
+
+   private static long start(long range) {
+      return range >> 32;
+   }
+
+   private static long end(long range) {
+      return (int) range;
+   }
+
+   /**
+    * Running totals over disjoint segments.
+    */
+   private static class Sum {
+
+      private final BusinessCalendar calendar;
+
+      private long days;
+
+      private long weekdays;
+
+      private long completeWeeks;
+
+      private long businessDays;
+
+      Sum(BusinessCalendar calendar) {
+         this.calendar = calendar;
+      }
+
+      void add(long startDay, long endDay) {
+         long length = endDay - startDay;
+         days += length;
+         weekdays += DateMath.countWeekdays(startDay, endDay);
+         completeWeeks += length / 7;
+         if (calendar != null) {
+            businessDays += calendar.countBusinessDays(startDay, endDay);
+         }
+      }
+
+      Coverage.Totals totals() {
+         return new Coverage.Totals(days, weekdays, completeWeeks,
+               businessDays);
+      }
+   }
+
+}
@@ -0,0 +1,306 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import org.joda.time.DateTimeConstants;
+
+/**
+ * Counts of events by date, such as orders or deliveries held as epoch days,
+ * answering how many events fall in a range of days, how many of those fall
+ * on weekdays, and how many fall in each week, in O(log d) for an index
+ * spanning d days however many events it holds.
+ *
+ * Each day of the span is a bucket in two Fenwick (binary indexed) trees of
+ * primitive longs, one counting every event and one counting events on
+ * weekdays, so a range count is the difference of two prefix sums and an
+ * insert updates O(log d) buckets. Building from an array counts the events
+ * into their buckets and forms each tree in one linear pass. An insert
+ * outside the span grows it by at least its own length, rebuilding the
+ * trees in O(d), so the cost of growth is amortized over the inserts.
+ *
+ * Ranges are half open, [startDay, endDay), the window DateMath measures
+ * between two dates. Instances are not thread-safe.
+ *
+ * @author dwyera
+ */
+public final class DateEventIndex {
+
+   /** The fewest days a span grows by. */
+   private static final int MIN_GROWTH = 64;
+
+   /** The most days an index may span. */
+   private static final long MAX_SPAN = Integer.MAX_VALUE - 8;
+
+   /** First epoch day of the span, inclusive. */
+   private long firstDay;
+
+   /** The number of days in the span. */
+   private int span;
+
+   /** Fenwick tree of every event, tree[p] for day firstDay + p - 1. */
+   private long[] all = new long[1];
+
+   /** Fenwick tree of the events on weekdays. */
+   private long[] weekdays = new long[1];
+
+   private long count;
+
+   /**
+    * Instantiates an empty index.
+    */
+   public DateEventIndex() {
+   }
+
+   /**
+    * Instantiates an index of events, spanning the first to the last of
+    * them.
+    *
+    * @param epochDays
+    *           the date of each event as days since 1970-01-01, in any
+    *           order, repeated for several events on one day
+    * @throws IllegalArgumentException
+    *            if the events span too many days to index
+    */
+   public DateEventIndex(int[] epochDays) {
+      if (epochDays.length == 0) {
+         return;
+      }
+      long min = Integer.MAX_VALUE;
+      long max = Integer.MIN_VALUE;
+      for (int day : epochDays) {
+         min = Math.min(min, day);
+         max = Math.max(max, day);
+      }
+      allocate(min, max + 1);
+      for (int day : epochDays) {
+         int position = (int) (day - firstDay) + 1;
+         all[position]++;
+         if (isWeekday(day)) {
+            weekdays[position]++;
+         }
+      }
+      count = epochDays.length;
+      build(all);
+      build(weekdays);
+   }
+
+   /**
+    * Adds an event.
+    *
+    * @param epochDay
+    *           the date of the event as days since 1970-01-01
+    * @throws IllegalArgumentException
+    *            if the index would span too many days
+    */
+   public void add(long epochDay) {
+      add(epochDay, 1);
+   }
+
+   /**
+    * Adds a number of events on one day.
+    *
+    * @param epochDay
+    *           the date of the events as days since 1970-01-01
+    * @param events
+    *           the number of events, not negative
+    * @throws IllegalArgumentException
+    *            if events is negative or the index would span too many days
+    */
+   public void add(long epochDay, long events) {
+      if (events < 0) {
+         throw new IllegalArgumentException("Events " + events
+               + " must not be negative");
+      }
+      if (epochDay < firstDay || epochDay - firstDay >= span) {
+         grow(epochDay);
+      }
+      int position = (int) (epochDay - firstDay) + 1;
+      update(all, position, events);
+      if (isWeekday(epochDay)) {
+         update(weekdays, position, events);
+      }
+      count += events;
+   }
+
+   /**
+    * Counts the events in the half open range [startDay, endDay). Returns 0
+    * when endDay <= startDay.
+    *
+    * @param startDay
+    *           first epoch day of the range, inclusive
+    * @param endDay
+    *           last epoch day of the range, exclusive
+    * @return the number of events in the range
+    */
+   public long count(long startDay, long endDay) {
+      if (endDay <= startDay) {
+         return 0;
+      }
+      return prefix(all, endDay) - prefix(all, startDay);
+   }
+
+   /**
+    * Counts the events on weekdays (Monday to Friday) in the half open range
+    * [startDay, endDay). Returns 0 when endDay <= startDay.
+    *
+    * @param startDay
+    *           first epoch day of the range, inclusive
+    * @param endDay
+    *           last epoch day of the range, exclusive
+    * @return the number of weekday events in the range
+    */
+   public long countOnWeekdays(long startDay, long endDay) {
+      if (endDay <= startDay) {
+         return 0;
+      }
+      return prefix(weekdays, endDay) - prefix(weekdays, startDay);
+   }
+
+   /**
+    * Counts the events in the ISO week, Monday to Sunday, holding a day.
+    *
+    * @param epochDay
+    *           any day of the week
+    * @return the number of events in the week
+    */
+   public long countWeek(long epochDay) {
+      long monday = epochDay - DateMath.dayOfWeek(epochDay) + 1;
+      return count(monday, monday + 7);
+   }
+
+   /**
+    * Counts the events in each of a number of consecutive weeks, the first
+    * starting on startDay, with one prefix sum per week boundary.
+    *
+    * @param startDay
+    *           first epoch day of the first week, usually a Monday
+    * @param weeks
+    *           the number of weeks
+    * @return the number of events in each week
+    * @throws IllegalArgumentException
+    *            if weeks is negative
+    */
+   public long[] countPerWeek(long startDay, int weeks) {
+      if (weeks < 0) {
+         throw new IllegalArgumentException("Weeks " + weeks
+               + " must not be negative");
+      }
+      long[] counts = new long[weeks];
+      long previous = prefix(all, startDay);
+      for (int i = 0; i < weeks; i++) {
+         long next = prefix(all, startDay + 7L * (i + 1));
+         counts[i] = next - previous;
+         previous = next;
+      }
+      return counts;
+   }
+
+   /** Returns the number of events added. */
+   public long getCount() {
+      return count;
+   }
+
+   /** Returns the first epoch day of the span, inclusive. */
+   public long getFirstDay() {
+      return firstDay;
+   }
+
+   /** Returns the last epoch day of the span, exclusive. */
+   public long getEndDay() {
+      return firstDay + span;
+   }
+
+   private static boolean isWeekday(long epochDay) {
+      return DateMath.dayOfWeek(epochDay) < DateTimeConstants.SATURDAY;
+   }
+
+   /**
+    * Returns the number of events before a day: the sum of the tree's
+    * buckets for the days of the span before it.
+    */
+   private long prefix(long[] tree, long epochDay) {
+      long days = epochDay - firstDay;
+      int position = days <= 0 ? 0 : days >= span ? span : (int) days;
+      long sum = 0;
+      for (; position > 0; position &= position - 1) {
+         sum += tree[position];
+      }
+      return sum;
+   }
+
+   /** Adds events to the bucket at a position and the buckets covering it. */
+   private void update(long[] tree, int position, long events) {
+      for (; position <= span; position += position & -position) {
+         tree[position] += events;
+      }
+   }
+
+   /**
+    * Extends the span to hold a day, by at least the span's length or
+    * MIN_GROWTH days, and rebuilds the trees over it.
+    */
+   private void grow(long epochDay) {
+      long growth = Math.max(span, MIN_GROWTH);
+      long newFirst = firstDay;
+      long newEnd = firstDay + span;
+      if (span == 0) {
+         newFirst = epochDay;
+         newEnd = epochDay + growth;
+      } else if (epochDay < firstDay) {
+         newFirst = Math.min(epochDay, firstDay - growth);
+      } else {
+         newEnd = Math.max(epochDay + 1, newEnd + growth);
+      }
+
+      long[] oldAll = all;
+      long[] oldWeekdays = weekdays;
+      long oldFirst = firstDay;
+      int oldSpan = span;
+      // allocated first, so a span too long leaves the index unchanged
+      allocate(newFirst, newEnd);
+      unbuild(oldAll, oldSpan);
+      unbuild(oldWeekdays, oldSpan);
+      if (oldSpan > 0) {
+         int offset = (int) (oldFirst - firstDay);
+         System.arraycopy(oldAll, 1, all, offset + 1, oldSpan);
+         System.arraycopy(oldWeekdays, 1, weekdays, offset + 1, oldSpan);
+         build(all);
+         build(weekdays);
+      }
+   }
+
+   /** Sets an empty span of [first, end), checking its length. */
+   private void allocate(long first, long end) {
+      if (end - first > MAX_SPAN) {
+         throw new IllegalArgumentException("Events from epoch day " + first
+               + " to " + (end - 1) + " span more than " + MAX_SPAN
+               + " days");
+      }
+      firstDay = first;
+      span = (int) (end - first);
+      all = new long[span + 1];
+      weekdays = new long[span + 1];
+   }
+
+   /**
+    * Turns per day counts into a Fenwick tree in place, adding each bucket,
+    * once complete, to the next bucket covering it.
+    */
+   private void build(long[] tree) {
+      for (int position = 1; position <= span; position++) {
+         int parent = position + (position & -position);
+         if (parent <= span) {
+            tree[parent] += tree[position];
+         }
+      }
+   }
+
+   /** Turns a Fenwick tree back into per day counts, undoing build. */
+   private static void unbuild(long[] tree, int span) {
+      for (int position = span; position > 0; position--) {
+         int parent = position + (position & -position);
+         if (parent <= span) {
+            tree[parent] -= tree[position];
+         }
+      }
+   }
+
+}
@@ -0,0 +1,758 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Arithmetic on epoch-day numbers (days since 1970-01-01). All methods are
+ * static, allocation free and run in constant time regardless of the length
+ * of the range.
+ *
+ * The batch methods take parallel arrays of start and end epoch days (whole
+ * days, so the time of day plays no part) and write one result per pair into
+ * a caller supplied array, converted to a ResultUnit. They give the same
+ * results as the matching DateTool methods for dates at midnight UTC. All but
+ * the business day batch run on BatchKernels, which are vectorized when the
+ * JVM has the jdk.incubator.vector module.
+ *
+ * Methods taking a DateTimeZone read its offsets and transitions from the
+ * zone's interned ZoneTransitions table rather than the zone's rules.
+ *
+ * @author dwyera
+ */
+public final class DateMath {
+
+   /** Milliseconds in a standard day. */
+   public static final long MILLIS_PER_DAY = DateTimeConstants.MILLIS_PER_DAY;
+
+   /**
+    * The 400 year eras civil shifts epoch days by to keep them positive,
+    * enough for any instant a long can hold.
+    */
+   private static final long CIVIL_ERAS = 1 << 20;
+
+   /** Days from 1 March of year -CIVIL_ERAS * 400 to the epoch. */
+   private static final long CIVIL_SHIFT = 719468 + 146097 * CIVIL_ERAS;
+
+   /** Weekdays in a complete week. */
+   private static final int WEEKDAYS_PER_WEEK = 5;
+
+   /**
+    * WEEKDAYS_IN_PARTIAL_WEEK[d][r] is the number of weekdays in the r days
+    * (0 to 6) starting on a day whose ISO day of week is d + 1.
+    */
+   private static final int[][] WEEKDAYS_IN_PARTIAL_WEEK = {
+         { 0, 1, 2, 3, 4, 5, 5 }, // Monday
+         { 0, 1, 2, 3, 4, 4, 4 }, // Tuesday
+         { 0, 1, 2, 3, 3, 3, 4 }, // Wednesday
+         { 0, 1, 2, 2, 2, 3, 4 }, // Thursday
+         { 0, 1, 1, 1, 2, 3, 4 }, // Friday
+         { 0, 0, 0, 1, 2, 3, 4 }, // Saturday
+         { 0, 0, 1, 2, 3, 4, 5 }, // Sunday
+   };
+
+   /**
+    * The loops of the day, weekday and complete week batch methods,
+    * vectorized when the JVM has the jdk.incubator.vector module.
+    */
+   private static final BatchKernels KERNELS = BatchKernels.load();
+
+   private DateMath() {
+   }
+
+   /**
+    * Returns the ISO day of week of an epoch day, Monday = 1 to Sunday = 7.
+    * Epoch day 0 (1970-01-01) was a Thursday.
+    *
+    * @param epochDay
+    *           days since 1970-01-01
+    * @return the ISO day of week
+    */
+   public static int dayOfWeek(long epochDay) {
+      return (int) Math.floorMod(epochDay + 3, 7L) + 1;
+   }
+
+   /**
+    * Returns the epoch day of a proleptic Gregorian (ISO) date, computed with
+    * the days-from-civil algorithm. The date is not validated.
+    *
+    * @param year
+    *           the ISO year, 0 being 1 BC
+    * @param month
+    *           the month of year, 1 to 12
+    * @param dayOfMonth
+    *           the day of month, 1 to 31
+    * @return days since 1970-01-01
+    */
+   public static long epochDay(long year, int month, int dayOfMonth) {
+      long y = month <= 2 ? year - 1 : year;
+      long era = Math.floorDiv(y, 400L);
+      long yearOfEra = y - era * 400;
+      long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5
+            + dayOfMonth - 1;
+      long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+            + dayOfYear;
+      return era * 146097 + dayOfEra - 719468;
+   }
+
+   /**
+    * Returns true if the ISO year is a leap year.
+    *
+    * @param year
+    *           the ISO year
+    * @return true for a leap year
+    */
+   public static boolean isLeapYear(long year) {
+      return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+   }
+
+   /**
+    * Returns the number of days in a month of an ISO year.
+    *
+    * @param year
+    *           the ISO year
+    * @param month
+    *           the month of year, 1 to 12
+    * @return the length of the month in days
+    */
+   public static int lengthOfMonth(long year, int month) {
+      if (month == 2) {
+         return isLeapYear(year) ? 29 : 28;
+      }
+      return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+   }
+
+   /**
+    * Counts the weekdays (Monday to Friday) in the half open range [startDay,
+    * endDay). Returns 0 when endDay <= startDay.
+    *
+    * @param startDay
+    *           first epoch day of the range, inclusive
+    * @param endDay
+    *           last epoch day of the range, exclusive
+    * @return the number of weekdays in the range
+    */
+   public static long countWeekdays(long startDay, long endDay) {
+      long days = endDay - startDay;
+      if (days <= 0) {
+         return 0;
+      }
+      return (days / 7) * WEEKDAYS_PER_WEEK
+            + WEEKDAYS_IN_PARTIAL_WEEK[dayOfWeek(startDay) - 1][(int) (days % 7)];
+   }
+
+   /**
+    * Moves an epoch day by a number of weekdays. For a positive count the
+    * result is the count'th weekday after epochDay, for a negative count the
+    * count'th weekday before it, and for zero epochDay itself. When epochDay
+    * is a weekday countWeekdays(epochDay, addWeekdays(epochDay, n)) == n.
+    *
+    * @param epochDay
+    *           days since 1970-01-01
+    * @param weekdays
+    *           the number of weekdays to move
+    * @return the resulting epoch day
+    */
+   public static long addWeekdays(long epochDay, long weekdays) {
+      if (weekdays == 0) {
+         return epochDay;
+      }
+
+      int dayOfWeek = dayOfWeek(epochDay);
+      if (weekdays > 0) {
+         // a weekend counts forward from the Friday before it
+         if (dayOfWeek > DateTimeConstants.FRIDAY) {
+            epochDay -= dayOfWeek - DateTimeConstants.FRIDAY;
+            dayOfWeek = DateTimeConstants.FRIDAY;
+         }
+         long monday = epochDay - (dayOfWeek - DateTimeConstants.MONDAY);
+         long offset = (dayOfWeek - DateTimeConstants.MONDAY) + weekdays;
+         return monday + (offset / WEEKDAYS_PER_WEEK) * 7 + offset
+               % WEEKDAYS_PER_WEEK;
+      }
+
+      // a weekend counts backward from the Monday after it
+      if (dayOfWeek > DateTimeConstants.FRIDAY) {
+         epochDay += DateTimeConstants.SUNDAY + 1 - dayOfWeek;
+         dayOfWeek = DateTimeConstants.MONDAY;
+      }
+      long friday = epochDay + (DateTimeConstants.FRIDAY - dayOfWeek);
+      long offset = (DateTimeConstants.FRIDAY - dayOfWeek) - weekdays;
+      return friday - (offset / WEEKDAYS_PER_WEEK) * 7 - offset
+            % WEEKDAYS_PER_WEEK;
+   }
+
+   /**
+    * Converts an instant to the epoch day of its local date in the given zone.
+    *
+    * @param instant
+    *           milliseconds since the epoch
+    * @param zone
+    *           the zone the local date is taken in
+    * @return the local epoch day
+    */
+   public static long toEpochDay(long instant, DateTimeZone zone) {
+      return ZoneTransitions.forZone(zone).toEpochDay(instant);
+   }
+
+   /**
+    * Counts the weekdays stepped over when walking from startInstant towards
+    * endInstant one local day at a time in the given zone, counting each
+    * weekday whose instant (at the start's local time of day) is before
+    * endInstant. This is the closed form of the day by day walk
+    * DateTool.calcWeekdaysDifference originally performed. Reversed instants
+    * give a negated count.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone days are counted in
+    * @return the number of weekdays, negative if endInstant < startInstant
+    */
+   public static long weekdaysBetween(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      if (startInstant > endInstant) {
+         return -weekdaysBetween(endInstant, startInstant, zone);
+      }
+
+      ZoneTransitions transitions = ZoneTransitions.forZone(zone);
+      long startDay = transitions.toEpochDay(startInstant);
+      return countWeekdays(startDay,
+            startDay + daysStepped(startInstant, endInstant, transitions));
+   }
+
+   /**
+    * Calculates the whole days between two instants as Joda's
+    * Days.daysBetween does: the difference of their local times in the zone,
+    * truncated towards zero.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone local times are taken in
+    * @return the number of days, negative if endInstant < startInstant
+    */
+   public static long daysBetween(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      return localDifference(startInstant, endInstant,
+            ZoneTransitions.forZone(zone)) / MILLIS_PER_DAY;
+   }
+
+   /**
+    * Calculates the complete weeks between two instants as Joda's
+    * Weeks.weeksBetween does.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone local times are taken in
+    * @return the number of weeks, negative if endInstant < startInstant
+    */
+   public static long completeWeeksBetween(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      return localDifference(startInstant, endInstant,
+            ZoneTransitions.forZone(zone)) / DateTimeConstants.MILLIS_PER_WEEK;
+   }
+
+   /**
+    * Calculates the whole calendar months between two instants as Joda's
+    * Months.monthsBetween does: from the local times in the zone, a month
+    * being complete once the end reaches the start's day of month and time
+    * of day, or the last day of its month if that is earlier.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone local times are taken in
+    * @return the number of months, negative if endInstant < startInstant
+    */
+   public static long monthsBetween(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      ZoneTransitions transitions = ZoneTransitions.forZone(zone);
+      long startLocal = startInstant + transitions.getOffset(startInstant);
+      long endLocal = endInstant + transitions.getOffset(endInstant);
+      if (endLocal < startLocal) {
+         return -monthsBetweenLocal(endLocal, startLocal);
+      }
+      return monthsBetweenLocal(startLocal, endLocal);
+   }
+
+   /**
+    * Counts the whole calendar months from startDay to endDay, as
+    * monthsBetween does for midnight on each day.
+    *
+    * @param startDay
+    *           the start epoch day
+    * @param endDay
+    *           the end epoch day
+    * @return the number of months, negative if endDay < startDay
+    */
+   public static long countMonths(long startDay, long endDay) {
+      if (endDay < startDay) {
+         return -monthsBetween(endDay, 0, startDay, 0);
+      }
+      return monthsBetween(startDay, 0, endDay, 0);
+   }
+
+   /**
+    * Converts a number of calendar months to a calendar ResultUnit,
+    * truncating towards zero.
+    *
+    * @param months
+    *           the number of months
+    * @param resultUnit
+    *           MONTHS, QUARTERS or CALENDAR_YEARS
+    * @return the months in the unit
+    * @throws IllegalArgumentException
+    *            if the unit is not a calendar unit
+    */
+   public static long monthsToUnit(long months, ResultUnit resultUnit) {
+      if (!resultUnit.isCalendarUnit()) {
+         throw new IllegalArgumentException(resultUnit
+               + " is not counted in calendar months");
+      }
+      return months / resultUnit.monthsPerUnit;
+   }
+
+   /**
+    * Converts a number of days to a ResultUnit the way DateTool does.
+    * ResultUnit.DEFAULT leaves the days unchanged.
+    *
+    * @param days
+    *           the number of days
+    * @param resultUnit
+    *           the unit to convert to
+    * @return the days in the unit
+    * @throws IllegalArgumentException
+    *            if the unit is a calendar unit, which a number of days
+    *            cannot be converted to
+    */
+   public static long daysToUnit(long days, ResultUnit resultUnit) {
+      checkDayUnit(resultUnit);
+      return days * resultUnit.daysMultiplier / resultUnit.daysDivisor;
+   }
+
+   /**
+    * Calculates the time elapsed between two instants in a day based
+    * ResultUnit, truncated towards zero. No whole days are taken first, as
+    * daysToUnit takes them, so the time of day counts: 90 minutes is 1 in
+    * HOURS and 90 in MINUTES. DAYS, WEEKS and YEARS are 1, 7 and 365
+    * standard 24 hour days, and DEFAULT is DAYS.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param resultUnit
+    *           the unit to return
+    * @return the elapsed time, negative if endInstant < startInstant
+    * @throws IllegalArgumentException
+    *            if the unit is a calendar unit
+    */
+   public static long elapsed(long startInstant, long endInstant,
+         ResultUnit resultUnit) {
+      return (endInstant - startInstant) / unitMillis(resultUnit);
+   }
+
+   /**
+    * Calculates the time elapsed between two instants outside weekends, as
+    * elapsed does. A weekend runs from the midnight starting Saturday to the
+    * midnight starting Monday, local time in the zone.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone weekends are taken in
+    * @param resultUnit
+    *           the unit to return
+    * @return the elapsed weekday time, negative if endInstant < startInstant
+    * @throws IllegalArgumentException
+    *            if the unit is a calendar unit
+    */
+   public static long weekdayElapsed(long startInstant, long endInstant,
+         DateTimeZone zone, ResultUnit resultUnit) {
+      return weekdayMillis(startInstant, endInstant, zone)
+            / unitMillis(resultUnit);
+   }
+
+   /**
+    * Returns the milliseconds elapsed between two instants outside weekends
+    * in the zone. Computed in closed form from the weekday time before each
+    * instant's local time, then corrected for each offset transition
+    * between them: the weekday part of local time a transition skips never
+    * elapsed, and that of local time it repeats elapsed twice. Fixed offset
+    * zones take no correction, and other zones one step per transition, not
+    * per day.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone weekends are taken in
+    * @return the weekday milliseconds, negative if endInstant < startInstant
+    */
+   public static long weekdayMillis(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      if (startInstant > endInstant) {
+         return -weekdayMillis(endInstant, startInstant, zone);
+      }
+
+      ZoneTransitions transitions = ZoneTransitions.forZone(zone);
+      long millis = weekdayMillisBefore(endInstant
+            + transitions.getOffset(endInstant))
+            - weekdayMillisBefore(startInstant
+                  + transitions.getOffset(startInstant));
+      if (!zone.isFixed()) {
+         long transition = startInstant;
+         for (;;) {
+            long next = transitions.nextTransition(transition);
+            if (next <= transition || next > endInstant) {
+               break;
+            }
+            transition = next;
+            millis -= weekdayMillisBefore(transition
+                  + transitions.getOffset(transition))
+                  - weekdayMillisBefore(transition
+                        + transitions.getOffset(transition - 1));
+         }
+      }
+      return millis;
+   }
+
+   /**
+    * Returns the weekday milliseconds from the local midnight starting
+    * Monday 1969-12-29 to a local time, negative before it.
+    */
+   private static long weekdayMillisBefore(long local) {
+      long day = Math.floorDiv(local, MILLIS_PER_DAY);
+      long millisOfDay = local - day * MILLIS_PER_DAY;
+      long weeks = Math.floorDiv(day + 3, 7L);
+      // 0 for Monday to 6 for Sunday
+      long dayOfWeek = day + 3 - weeks * 7;
+      return (weeks * WEEKDAYS_PER_WEEK + Math.min(dayOfWeek,
+            WEEKDAYS_PER_WEEK)) * MILLIS_PER_DAY
+            + (dayOfWeek < WEEKDAYS_PER_WEEK ? millisOfDay : 0);
+   }
+
+   /**
+    * Returns the milliseconds in one of a day based unit.
+    */
+   private static long unitMillis(ResultUnit resultUnit) {
+      checkDayUnit(resultUnit);
+      return MILLIS_PER_DAY * resultUnit.daysDivisor
+            / resultUnit.daysMultiplier;
+   }
+
+   private static long monthsBetweenLocal(long earlierLocal, long laterLocal) {
+      long earlierDay = Math.floorDiv(earlierLocal, MILLIS_PER_DAY);
+      long laterDay = Math.floorDiv(laterLocal, MILLIS_PER_DAY);
+      return monthsBetween(earlierDay, earlierLocal - earlierDay
+            * MILLIS_PER_DAY, laterDay, laterLocal - laterDay * MILLIS_PER_DAY);
+   }
+
+   /**
+    * Counts the whole months from an earlier local time to a later one, each
+    * given as an epoch day and a millisecond of the day. An earlier day of
+    * month past the end of the later date's month counts as that month's
+    * last day.
+    */
+   static long monthsBetween(long earlierDay, long earlierMillis,
+         long laterDay, long laterMillis) {
+      long earlier = civil(earlierDay);
+      long later = civil(laterDay);
+      long laterDayOfMonth = later & 31;
+      long lastDayOfMonth = later >> 5 & 31;
+      long earlierDayOfMonth = Math.min(earlier & 31,
+            laterDayOfMonth == lastDayOfMonth ? lastDayOfMonth : 31);
+      long months = (later >> 10) - (earlier >> 10);
+      return laterDayOfMonth * MILLIS_PER_DAY + laterMillis < earlierDayOfMonth
+            * MILLIS_PER_DAY + earlierMillis ? months - 1 : months;
+   }
+
+   /**
+    * Returns the month, month length and day of month of an epoch day packed
+    * in a long, as month << 10 | length << 5 | dayOfMonth, with the month
+    * counted from March of year 0. Computed with Neri and Schneider's
+    * Euclidean affine form of civil-from-days, which replaces the divisions
+    * of the classic algorithm bar two by multiplications and shifts, in
+    * years starting on 1 March so February, whose length varies, comes last.
+    */
+   private static long civil(long epochDay) {
+      // days from 1 March of year -CIVIL_ERAS * 400, so every value is positive
+      long n = 4 * (epochDay + CIVIL_SHIFT) + 3;
+      long century = n / 146097;
+      long p = 2939745L * (n % 146097 | 3);
+      long yearOfCentury = p >>> 32;
+      long dayOfYear = (p & 0xFFFFFFFFL) / 2939745 / 4;
+      // month from 3, March, to 14, February, and day of month from 0
+      long q = 2141 * dayOfYear + 197913;
+      long month = q >>> 16;
+      long dayOfMonth = (q & 0xFFFF) / 2141;
+      long year = 100 * century + yearOfCentury - CIVIL_ERAS * 400;
+      // from March the lengths run 31, 30, 31, 30, 31 twice, then January
+      long length = month == 14 ? isLeapYear(year + 1) ? 29 : 28
+            : 31 - ((month - 3) % 5 & 1);
+      return (year * 12 + month - 3) << 10 | length << 5 | dayOfMonth + 1;
+   }
+
+   /**
+    * Checks that a ResultUnit is a number of days or of a fixed length of
+    * time, as daysToUnit requires.
+    *
+    * @param resultUnit
+    *           the unit to check
+    * @throws IllegalArgumentException
+    *            if the unit is a calendar unit
+    */
+   public static void checkDayUnit(ResultUnit resultUnit) {
+      if (resultUnit.isCalendarUnit()) {
+         throw new IllegalArgumentException(resultUnit
+               + " measures the span between dates, not a number of days");
+      }
+   }
+
+   private static long localDifference(long startInstant, long endInstant,
+         ZoneTransitions transitions) {
+      return endInstant + transitions.getOffset(endInstant) - startInstant
+            - transitions.getOffset(startInstant);
+   }
+
+   /**
+    * Returns the number of local days k, starting from 0, for which the start
+    * instant moved forward k days in the given zone is still before the end
+    * instant. This is the length of the day range a day by day walk from
+    * startInstant to endInstant visits. startInstant must not be after
+    * endInstant.
+    *
+    * @param startInstant
+    *           milliseconds since the epoch of the start
+    * @param endInstant
+    *           milliseconds since the epoch of the end
+    * @param zone
+    *           the zone days are stepped in
+    * @return the number of days visited
+    */
+   static long daysStepped(long startInstant, long endInstant,
+         DateTimeZone zone) {
+      return daysStepped(startInstant, endInstant,
+            ZoneTransitions.forZone(zone));
+   }
+
+   private static long daysStepped(long startInstant, long endInstant,
+         ZoneTransitions transitions) {
+      long startLocal = startInstant + transitions.getOffset(startInstant);
+
+      // candidate number of days stepped, then settle the boundary day exactly
+      long days = transitions.toEpochDay(endInstant)
+            - Math.floorDiv(startLocal, MILLIS_PER_DAY);
+      if (instantAfterDays(startLocal, days, transitions) < endInstant) {
+         days++;
+      } else if (days > 0 && instantAfterDays(startLocal, days - 1,
+            transitions) >= endInstant) {
+         days--;
+      }
+      return days;
+   }
+
+   /**
+    * The instant reached by adding a number of days to a local time in the
+    * given zone, resolved the same way DateTime.plusDays resolves it.
+    */
+   private static long instantAfterDays(long startLocal, long days,
+         ZoneTransitions transitions) {
+      long local = startLocal + days * MILLIS_PER_DAY;
+      return local - transitions.getOffsetFromLocal(local);
+   }
+
+   /**
+    * Batch form of DateTool.calcDaysDifference over the first length pairs.
+    * With a calendar unit the result is the whole calendar months between
+    * each pair, converted to the unit, as countMonths.
+    *
+    * @param startEpochDays
+    *           start dates as epoch days
+    * @param endEpochDays
+    *           end dates as epoch days
+    * @param out
+    *           receives the difference for each pair
+    * @param length
+    *           the number of pairs to compute
+    * @param resultUnit
+    *           the unit results are returned in
+    */
+   public static void daysBetween(int[] startEpochDays, int[] endEpochDays,
+         long[] out, int length, ResultUnit resultUnit) {
+      checkBatch(startEpochDays, endEpochDays, out, length);
+      if (resultUnit.isCalendarUnit()) {
+         KERNELS.monthsBetween(startEpochDays, endEpochDays, out, 0, length,
+               resultUnit.monthsPerUnit);
+         return;
+      }
+      KERNELS.daysBetween(startEpochDays, endEpochDays, out, 0, length,
+            resultUnit.daysMultiplier, resultUnit.daysDivisor);
+   }
+
+   /**
+    * Batch form of DateTool.calcWeekdaysDifference over the first length
+    * pairs.
+    *
+    * @param startEpochDays
+    *           start dates as epoch days
+    * @param endEpochDays
+    *           end dates as epoch days
+    * @param out
+    *           receives the difference for each pair
+    * @param length
+    *           the number of pairs to compute
+    * @param resultUnit
+    *           the unit results are returned in
+    */
+   public static void weekdaysBetween(int[] startEpochDays,
+         int[] endEpochDays, long[] out, int length, ResultUnit resultUnit) {
+      checkBatch(startEpochDays, endEpochDays, out, length);
+      checkDayUnit(resultUnit);
+      KERNELS.weekdaysBetween(startEpochDays, endEpochDays, out, 0, length,
+            resultUnit.daysMultiplier, resultUnit.daysDivisor);
+   }
+
+   /**
+    * Batch form of DateTool.calcCompleteWeeksDifference over the first length
+    * pairs. With ResultUnit.DEFAULT the result is in weeks, as it is for the
+    * single pair method.
+    *
+    * @param startEpochDays
+    *           start dates as epoch days
+    * @param endEpochDays
+    *           end dates as epoch days
+    * @param out
+    *           receives the difference for each pair
+    * @param length
+    *           the number of pairs to compute
+    * @param resultUnit
+    *           the unit results are returned in
+    */
+   public static void completeWeeksBetween(int[] startEpochDays,
+         int[] endEpochDays, long[] out, int length, ResultUnit resultUnit) {
+      checkBatch(startEpochDays, endEpochDays, out, length);
+      checkDayUnit(resultUnit);
+      long multiplier = resultUnit == ResultUnit.DEFAULT ? 1
+            : 7 * resultUnit.daysMultiplier;
+      KERNELS.completeWeeksBetween(startEpochDays, endEpochDays, out, 0,
+            length, multiplier, resultUnit.daysDivisor);
+   }
+
+   /**
+    * Batch form of DateTool.calcBusinessDaysDifference over the first length
+    * pairs.
+    *
+    * @param calendar
+    *           the business calendar to count against
+    * @param startEpochDays
+    *           start dates as epoch days
+    * @param endEpochDays
+    *           end dates as epoch days
+    * @param out
+    *           receives the difference for each pair
+    * @param length
+    *           the number of pairs to compute
+    * @param resultUnit
+    *           the unit results are returned in
+    */
+   public static void businessDaysBetween(BusinessCalendar calendar,
+         int[] startEpochDays, int[] endEpochDays, long[] out, int length,
+         ResultUnit resultUnit) {
+      checkBatch(startEpochDays, endEpochDays, out, length);
+      checkDayUnit(resultUnit);
+      long multiplier = resultUnit.daysMultiplier;
+      long divisor = resultUnit.daysDivisor;
+      for (int i = 0; i < length; i++) {
+         long start = startEpochDays[i];
+         long end = endEpochDays[i];
+         long days = start <= end ? calendar.countBusinessDays(start, end)
+               : -calendar.countBusinessDays(end, start);
+         out[i] = days * multiplier / divisor;
+      }
+   }
+
+   /**
+    * Batch form of elapsed over the first length pairs of instants.
+    *
+    * @param startInstants
+    *           start instants in milliseconds since the epoch
+    * @param endInstants
+    *           end instants in milliseconds since the epoch
+    * @param out
+    *           receives the elapsed time for each pair
+    * @param length
+    *           the number of pairs to compute
+    * @param resultUnit
+    *           the unit results are returned in
+    */
+   public static void elapsed(long[] startInstants, long[] endInstants,
+         long[] out, int length, ResultUnit resultUnit) {
+      checkBatch(startInstants, endInstants, out, length);
+      long unitMillis = unitMillis(resultUnit);
+      for (int i = 0; i < length; i++) {
+         out[i] = (endInstants[i] - startInstants[i]) / unitMillis;
+      }
+   }
+
+   /**
+    * Batch form of weekdayElapsed over the first length pairs of instants.
+    *
+    * @param startInstants
+    *           start instants in milliseconds since the epoch
+    * @param endInstants
+    *           end instants in milliseconds since the epoch
+    * @param out
+    *           receives the elapsed weekday time for each pair
+    * @param length
+    *           the number of pairs to compute
+    * @param zone
+    *           the zone weekends are taken in
+    * @param resultUnit
+    *           the unit results are returned in
+    */
+   public static void weekdayElapsed(long[] startInstants,
+         long[] endInstants, long[] out, int length, DateTimeZone zone,
+         ResultUnit resultUnit) {
+      checkBatch(startInstants, endInstants, out, length);
+      long unitMillis = unitMillis(resultUnit);
+      for (int i = 0; i < length; i++) {
+         out[i] = weekdayMillis(startInstants[i], endInstants[i], zone)
+               / unitMillis;
+      }
+   }
+
+   private static void checkBatch(long[] startInstants, long[] endInstants,
+         long[] out, int length) {
+      if (length < 0 || length > startInstants.length
+            || length > endInstants.length || length > out.length) {
+         throw new IllegalArgumentException("Batch length " + length
+               + " exceeds the supplied arrays");
+      }
+   }
+
+   private static void checkBatch(int[] startEpochDays, int[] endEpochDays,
+         long[] out, int length) {
+      if (length < 0 || length > startEpochDays.length
+            || length > endEpochDays.length || length > out.length) {
+         throw new IllegalArgumentException("Batch length " + length
+               + " exceeds the supplied arrays");
+      }
+   }
+
+}
@@ -1,7 +1,6 @@
 package com.dwyer.andrew.dates.date_tool;
 
 import org.joda.time.DateTime;
-import org.joda.time.DateTimeConstants;
 import org.joda.time.Days;
 import org.joda.time.Duration;
 import org.joda.time.Weeks;
@@ -11,25 +10,65 @@ import org.joda.time.Weeks;
  *
  * Assumptions: 1 - The method calcWeekdaysDifference treats input start and end
  * DateTimes as whole days. Part days are ignored. 2 - When returning durations
- * in different units, I have directly converted days into the appropriate
- * units, without taking into account the length of the year.
+ * in the day based units, up to YEARS, I have directly converted days into the
+ * appropriate units, without taking into account the length of the year. The
+ * calendar units MONTHS, QUARTERS and CALENDAR_YEARS instead count whole
+ * calendar months between the dates, as Joda's Months.monthsBetween does, and
+ * apply only to calcDaysDifference, which measures the span between the dates
+ * rather than a count of particular days.
+ *
+ * A DateTool is immutable and holds no state beyond its construction
+ * arguments, so one instance may be shared by any number of threads. Built
+ * with only a ResultUnit it serves as a calculator for dates passed to the
+ * method forms that take them as arguments.
  *
  * @author dwyera
  */
 public class DateTool {
 
    public enum ResultUnit {
-      SECONDS, MINUTES, HOURS, DAYS, WEEKS, YEARS, DEFAULT
+      SECONDS(86400, 1), MINUTES(1440, 1), HOURS(24, 1), DAYS(1, 1), WEEKS(1,
+            7), YEARS(1, 365), MONTHS(1), QUARTERS(3), CALENDAR_YEARS(12),
+            DEFAULT(1, 1);
+
+      /** Multiplier converting a number of days to this unit. */
+      final long daysMultiplier;
+
+      /** Divisor, applied after the multiplier, converting days to this unit. */
+      final long daysDivisor;
+
+      /** Calendar months per unit, 0 for the day based units. */
+      final long monthsPerUnit;
+
+      private ResultUnit(long daysMultiplier, long daysDivisor) {
+         this.daysMultiplier = daysMultiplier;
+         this.daysDivisor = daysDivisor;
+         this.monthsPerUnit = 0;
+      }
+
+      private ResultUnit(long monthsPerUnit) {
+         this.daysMultiplier = 0;
+         this.daysDivisor = 1;
+         this.monthsPerUnit = monthsPerUnit;
+      }
+
+      /**
+       * Returns true for the units counted in calendar months, which measure
+       * the span between two dates and cannot convert a number of days.
+       */
+      public boolean isCalendarUnit() {
+         return monthsPerUnit != 0;
+      }
    }
 
-   /** The start date. */
-   private DateTime startDate;
+   /** The start date, null for a calculator. */
+   private final DateTime startDate;
 
-   /** The end date. */
-   private DateTime endDate;
+   /** The end date, null for a calculator. */
+   private final DateTime endDate;
 
    /** The units of return results */
-   private ResultUnit resultUnit = ResultUnit.DEFAULT;
+   private final ResultUnit resultUnit;
 
    /**
     * Instantiates a new date tool with a default result return value of DAYS
@@ -38,8 +77,20 @@ public class DateTool {
     */
    public DateTool(DateTime startDate, DateTime endDate) {
 
-      this.startDate = startDate;
-      this.endDate = endDate;
+      this(startDate, endDate, ResultUnit.DEFAULT);
+   }
+
+   /**
+    * Instantiates a calculator with no dates of its own, for use with the
+    * methods that take the start and end date as arguments.
+    *
+    * @param resultUnit
+    *           the unit that the result of any calculations should be returned
+    *           in
+    */
+   public DateTool(ResultUnit resultUnit) {
+
+      this(null, null, resultUnit);
    }
 
    /**
@@ -69,51 +120,115 @@ public class DateTool {
     */
    public long calcDaysDifference() {
 
-      Days days = Days.daysBetween(startDate, endDate);
+      checkDates();
+      return calcDaysDifference(startDate, endDate);
+   }
 
-      if (resultUnit == ResultUnit.DEFAULT) {
-         return days.getDays();
-      } else {
-         return periodToSetUnits(days.toStandardDuration());
+   /**
+    * Calculate the difference in days between the two supplied dates. With a
+    * calendar unit the difference is the whole calendar months between them
+    * converted to the unit, truncated towards zero, which agrees with
+    * Months.monthsBetween and Years.yearsBetween.
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @return the number of days difference
+    */
+   public long calcDaysDifference(DateTime startDate, DateTime endDate) {
+
+      if (resultUnit.isCalendarUnit()) {
+         // local times in the start's zone, as Months.monthsBetween takes them
+         return DateMath.monthsToUnit(DateMath.monthsBetween(
+               startDate.getMillis(), endDate.getMillis(),
+               startDate.getZone()), resultUnit);
       }
+
+      // Days.daysBetween's local time difference in the start's zone, read
+      // from the zone's transition table; the int range is Days' own limit
+      long days = Math.toIntExact(DateMath.daysBetween(startDate.getMillis(),
+            endDate.getMillis(), startDate.getZone()));
+
+      return DateMath.daysToUnit(days, resultUnit);
    }
 
    /**
     * Calculate the difference in weekdays between the two dates. Days are
     * treated as complete days regardless of the time in hours or minutes. TODO
-    * confirm if this is the desired behavior.
+    * confirm if this is the desired behavior. The count is computed in
+    * constant time from epoch days, see DateMath.weekdaysBetween.
     *
     * @return the number of weekdays difference
     */
    public long calcWeekdaysDifference() {
 
-      int count = 0;
-      boolean datesReversed = fixDateOrder();
-
-      DateTime currentDay = startDate;
-
-      // iterate through all days until endDate
-      while (currentDay.isBefore(endDate)) {
-         // if day is on weekend, skip ahead to Monday.
-         if (currentDay.getDayOfWeek() == DateTimeConstants.SATURDAY
-               || currentDay.getDayOfWeek() == DateTimeConstants.SUNDAY) {
-            currentDay = currentDay.plusWeeks(1).withDayOfWeek(
-                  DateTimeConstants.MONDAY);
-         } else {
-            currentDay = currentDay.plusDays(1);
-            count++;
-         }
-      }
+      checkDates();
+      return calcWeekdaysDifference(startDate, endDate);
+   }
+
+   /**
+    * Calculate the difference in weekdays between the two supplied dates, as
+    * calcWeekdaysDifference().
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @return the number of weekdays difference
+    */
+   public long calcWeekdaysDifference(DateTime startDate, DateTime endDate) {
 
       /*
-       * returns difference in reverse order if that was the way start and end
-       * date were supplied
+       * days are counted in the zone of the earlier date, and the difference
+       * is negative if the dates were supplied in reverse order
        */
-      if (datesReversed) {
-         count = -count;
+      long count = DateMath.weekdaysBetween(startDate.getMillis(),
+            endDate.getMillis(), earlier(startDate, endDate).getZone());
+
+      Days days = Days.days((int) count);
+
+      if (resultUnit == ResultUnit.DEFAULT) {
+         return days.getDays();
+      } else {
+         return periodToSetUnits(days.toStandardDuration());
       }
+   }
 
-      Days days = Days.days(count);
+   /**
+    * Calculate the difference in business days between the two dates, using
+    * the weekend and holidays of the supplied calendar. Days are treated as
+    * complete days in the same way as calcWeekdaysDifference.
+    *
+    * @param calendar
+    *           the business calendar to count against
+    * @return the number of business days difference
+    */
+   public long calcBusinessDaysDifference(BusinessCalendar calendar) {
+
+      checkDates();
+      return calcBusinessDaysDifference(startDate, endDate, calendar);
+   }
+
+   /**
+    * Calculate the difference in business days between the two supplied
+    * dates, as calcBusinessDaysDifference(calendar).
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @param calendar
+    *           the business calendar to count against
+    * @return the number of business days difference
+    */
+   public long calcBusinessDaysDifference(DateTime startDate,
+         DateTime endDate, BusinessCalendar calendar) {
+
+      long count = calendar.businessDaysBetween(startDate.getMillis(),
+            endDate.getMillis(), earlier(startDate, endDate).getZone());
+
+      Days days = Days.days((int) count);
 
       if (resultUnit == ResultUnit.DEFAULT) {
          return days.getDays();
@@ -122,6 +237,43 @@ public class DateTool {
       }
    }
 
+   /**
+    * Calculate the difference in business days between the two dates counting
+    * only the days on which every supplied calendar is open, as for a trade
+    * settling across several markets. Each call looks the combination up;
+    * hot paths should combine once with BusinessCalendar.allOpen and pass
+    * the result to calcBusinessDaysDifference. @see BusinessCalendar.allOpen
+    *
+    * @param calendars
+    *           the business calendars that must all be open
+    * @return the number of joint business days difference
+    */
+   public long calcJointBusinessDaysDifference(BusinessCalendar... calendars) {
+
+      checkDates();
+      return calcBusinessDaysDifference(startDate, endDate,
+            BusinessCalendar.allOpen(calendars));
+   }
+
+   /**
+    * Calculate the difference in business days between the two supplied
+    * dates, as calcJointBusinessDaysDifference(calendars).
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @param calendars
+    *           the business calendars that must all be open
+    * @return the number of joint business days difference
+    */
+   public long calcJointBusinessDaysDifference(DateTime startDate,
+         DateTime endDate, BusinessCalendar... calendars) {
+
+      return calcBusinessDaysDifference(startDate, endDate,
+            BusinessCalendar.allOpen(calendars));
+   }
+
    /**
     * Calculate the difference in complete weeks between the start and end date.
     *
@@ -129,6 +281,23 @@ public class DateTool {
     */
    public long calcCompleteWeeksDifference() {
 
+      checkDates();
+      return calcCompleteWeeksDifference(startDate, endDate);
+   }
+
+   /**
+    * Calculate the difference in complete weeks between the two supplied
+    * dates.
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @return the difference in complete weeks between the start and end date.
+    */
+   public long calcCompleteWeeksDifference(DateTime startDate,
+         DateTime endDate) {
+
       Weeks weeks = Weeks.weeksBetween(startDate, endDate);
 
       if (resultUnit == ResultUnit.DEFAULT) {
@@ -139,6 +308,123 @@ public class DateTool {
 
    }
 
+   /**
+    * Calculate the time elapsed between the two dates, precise to the
+    * millisecond rather than counted in whole days. @see DateMath.elapsed
+    *
+    * @return the elapsed time in the result unit
+    */
+   public long calcElapsedTime() {
+
+      checkDates();
+      return calcElapsedTime(startDate, endDate);
+   }
+
+   /**
+    * Calculate the time elapsed between the two supplied dates, as
+    * calcElapsedTime().
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @return the elapsed time in the result unit
+    */
+   public long calcElapsedTime(DateTime startDate, DateTime endDate) {
+
+      return DateMath.elapsed(startDate.getMillis(), endDate.getMillis(),
+            resultUnit);
+   }
+
+   /**
+    * Calculate the time elapsed between the two dates outside weekends,
+    * precise to the millisecond. Weekends are taken in the zone of the
+    * earlier date. @see DateMath.weekdayElapsed
+    *
+    * @return the elapsed weekday time in the result unit
+    */
+   public long calcWeekdayElapsedTime() {
+
+      checkDates();
+      return calcWeekdayElapsedTime(startDate, endDate);
+   }
+
+   /**
+    * Calculate the time elapsed between the two supplied dates outside
+    * weekends, as calcWeekdayElapsedTime().
+    *
+    * @param startDate
+    *           the start date
+    * @param endDate
+    *           the end date
+    * @return the elapsed weekday time in the result unit
+    */
+   public long calcWeekdayElapsedTime(DateTime startDate, DateTime endDate) {
+
+      return DateMath.weekdayElapsed(startDate.getMillis(),
+            endDate.getMillis(), earlier(startDate, endDate).getZone(),
+            resultUnit);
+   }
+
+   /**
+    * Moves a date by a number of weekdays, keeping its time of day and zone.
+    * A positive count gives the count'th weekday after the date, a negative
+    * count the count'th weekday before it. Runs in constant time.
+    *
+    * @param date
+    *           the date to move from
+    * @param weekdays
+    *           the number of weekdays to move
+    * @return the moved date
+    */
+   public static DateTime addWeekdays(DateTime date, int weekdays) {
+      long epochDay = DateMath.toEpochDay(date.getMillis(), date.getZone());
+      return date.plusDays((int) (DateMath.addWeekdays(epochDay, weekdays)
+            - epochDay));
+   }
+
+   /**
+    * Moves a date by a number of business days in the supplied calendar,
+    * keeping its time of day and zone. A positive count gives the count'th
+    * business day after the date, a negative count the count'th business day
+    * before it. Runs in logarithmic time in the size of the calendar.
+    *
+    * @param date
+    *           the date to move from
+    * @param businessDays
+    *           the number of business days to move
+    * @param calendar
+    *           the business calendar to count against
+    * @return the moved date
+    */
+   public static DateTime addBusinessDays(DateTime date, int businessDays,
+         BusinessCalendar calendar) {
+      long epochDay = DateMath.toEpochDay(date.getMillis(), date.getZone());
+      return date.plusDays((int) (calendar.addBusinessDays(epochDay,
+            businessDays) - epochDay));
+   }
+
+   /**
+    * Moves a date by a number of days on which every supplied calendar is
+    * open, keeping its time of day and zone, e.g. the T+N settlement date of
+    * a trade crossing several markets. Hot paths should combine once with
+    * BusinessCalendar.allOpen and call addBusinessDays with the result. @see
+    * addBusinessDays and BusinessCalendar.allOpen
+    *
+    * @param date
+    *           the date to move from
+    * @param businessDays
+    *           the number of joint business days to move
+    * @param calendars
+    *           the business calendars that must all be open
+    * @return the moved date
+    */
+   public static DateTime addJointBusinessDays(DateTime date,
+         int businessDays, BusinessCalendar... calendars) {
+      return addBusinessDays(date, businessDays,
+            BusinessCalendar.allOpen(calendars));
+   }
+
    /**
     * Converts a duration to the specified resultUnit
     *
@@ -147,6 +433,11 @@ public class DateTool {
     */
    private long periodToSetUnits(Duration duration) {
       switch (resultUnit) {
+      case MONTHS:
+      case QUARTERS:
+      case CALENDAR_YEARS:
+         throw new IllegalArgumentException(resultUnit
+               + " measures the span between dates, not a number of days");
       case YEARS:
          return duration.toStandardDays().getDays() / 365;
       case WEEKS:
@@ -164,38 +455,39 @@ public class DateTool {
       }
    }
 
-   private boolean fixDateOrder() {
-      if (startDate.compareTo(endDate) > 0) {
-         DateTime tempDate = startDate;
-         startDate = endDate;
-         endDate = tempDate;
-         return true;
+   private static DateTime earlier(DateTime startDate, DateTime endDate) {
+      return startDate.compareTo(endDate) > 0 ? endDate : startDate;
+   }
+
+   private void checkDates() {
+      if (startDate == null || endDate == null) {
+         throw new IllegalStateException(
+               "No dates supplied, use the methods taking a start and end date");
       }
-      return false;
    }
 
    public DateTime getStartDate() {
       return startDate;
    }
 
-   public void setStartDate(DateTime startDate) {
-      this.startDate = startDate;
-   }
-
    public DateTime getEndDate() {
       return endDate;
    }
 
-   public void setEndDate(DateTime endDate) {
-      this.endDate = endDate;
-   }
-
    public ResultUnit getResultUnit() {
       return resultUnit;
    }
 
-   public void setResultUnit(ResultUnit resultUnit) {
-      this.resultUnit = resultUnit;
+   /**
+    * Returns a copy of this date tool with the same dates that returns
+    * results in another unit.
+    *
+    * @param resultUnit
+    *           the unit of the copy's results
+    * @return the copy
+    */
+   public DateTool withResultUnit(ResultUnit resultUnit) {
+      return new DateTool(startDate, endDate, resultUnit);
    }
 
 }
@@ -0,0 +1,415 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * A Flow.Processor applying DateTool calculations to a stream of date pairs,
+ * for pipelines that must keep up with a fast source without buffering
+ * without limit when their consumer falls behind. Each pair received becomes
+ * one long[] holding the result of each selected operation, in the order the
+ * operations were given, and results are published in the order their pairs
+ * arrived.
+ *
+ * Back pressure runs end to end: no more than capacity pairs are ever
+ * requested from the upstream publisher and not yet delivered to the
+ * subscriber, so the memory in flight is bounded however slow the subscriber
+ * is. Pairs are requested in batches of half the capacity, and results are
+ * handed over in runs by a single drain loop, run by whichever thread
+ * signals, so a pair costs a few field updates rather than a request and a
+ * lock of its own.
+ *
+ * A processor is one link of one pipeline: it takes a single upstream
+ * subscription and a single subscriber.
+ *
+ * @author dwyera
+ */
+public class DateToolProcessor implements
+      Flow.Processor<DateToolProcessor.Pair, long[]> {
+
+   /** The capacity used when none is given. */
+   public static final int DEFAULT_CAPACITY = 1024;
+
+   /**
+    * The DateTool calculations a processor can apply to each pair.
+    */
+   public enum Operation {
+
+      DAYS {
+         @Override
+         long apply(DateTool calculator, DateTime startDate, DateTime endDate) {
+            return calculator.calcDaysDifference(startDate, endDate);
+         }
+      },
+
+      WEEKDAYS {
+         @Override
+         long apply(DateTool calculator, DateTime startDate, DateTime endDate) {
+            return calculator.calcWeekdaysDifference(startDate, endDate);
+         }
+      },
+
+      COMPLETE_WEEKS {
+         @Override
+         long apply(DateTool calculator, DateTime startDate, DateTime endDate) {
+            return calculator.calcCompleteWeeksDifference(startDate, endDate);
+         }
+      };
+
+      abstract long apply(DateTool calculator, DateTime startDate,
+            DateTime endDate);
+   }
+
+   /**
+    * A start and end date to compare.
+    */
+   public static final class Pair {
+
+      private final DateTime startDate;
+
+      private final DateTime endDate;
+
+      /**
+       * @param startDate
+       *           the start date
+       * @param endDate
+       *           the end date
+       */
+      public Pair(DateTime startDate, DateTime endDate) {
+         this.startDate = startDate;
+         this.endDate = endDate;
+      }
+
+      public DateTime getStartDate() {
+         return startDate;
+      }
+
+      public DateTime getEndDate() {
+         return endDate;
+      }
+
+      @Override
+      public String toString() {
+         return startDate + "," + endDate;
+      }
+   }
+
+   private final DateTool calculator;
+
+   private final Operation[] operations;
+
+   private final int capacity;
+
+   /** The number of pairs requested from upstream at a time. */
+   private final int batch;
+
+   /** Results taken from the queue by the drain loop, to deliver unlocked. */
+   private final long[][] run;
+
+   /** Serializes the drain loop, counting signals that arrive while it runs. */
+   private final AtomicInteger wip = new AtomicInteger();
+
+   private final ArrayDeque<long[]> results;
+
+   private Flow.Subscription upstream;
+
+   private Flow.Subscriber<? super long[]> downstream;
+
+   /** Set once the subscriber's onSubscribe has returned. */
+   private volatile boolean subscribed;
+
+   /** Results the subscriber has requested and not yet received. */
+   private long demand;
+
+   /** Pairs requested from upstream and not yet received. */
+   private long outstanding;
+
+   private boolean upstreamDone;
+
+   private Throwable failure;
+
+   /** Set by the subscriber's cancel, read unlocked between deliveries. */
+   private volatile boolean cancelled;
+
+   private boolean terminated;
+
+   /**
+    * Instantiates a processor with the default capacity.
+    *
+    * @param resultUnit
+    *           the unit results are returned in
+    * @param operations
+    *           the calculations to apply to each pair, in result order
+    */
+   public DateToolProcessor(ResultUnit resultUnit, Operation... operations) {
+
+      this(resultUnit, DEFAULT_CAPACITY, operations);
+   }
+
+   /**
+    * Instantiates a processor.
+    *
+    * @param resultUnit
+    *           the unit results are returned in
+    * @param capacity
+    *           the most pairs requested from upstream and not yet delivered
+    *           as results at any time
+    * @param operations
+    *           the calculations to apply to each pair, in result order
+    * @throws IllegalArgumentException
+    *            if capacity is less than 1 or no operation is given
+    */
+   public DateToolProcessor(ResultUnit resultUnit, int capacity,
+         Operation... operations) {
+
+      if (capacity < 1) {
+         throw new IllegalArgumentException("Capacity " + capacity
+               + " must be at least 1");
+      }
+      if (operations.length == 0) {
+         throw new IllegalArgumentException("No operation given");
+      }
+      this.calculator = new DateTool(resultUnit);
+      this.operations = operations.clone();
+      this.capacity = capacity;
+      this.batch = Math.max(1, capacity / 2);
+      this.run = new long[capacity][];
+      this.results = new ArrayDeque<long[]>(capacity);
+   }
+
+   /**
+    * Returns the most pairs in flight between upstream and the subscriber.
+    */
+   public int getCapacity() {
+      return capacity;
+   }
+
+   @Override
+   public void subscribe(Flow.Subscriber<? super long[]> subscriber) {
+      Objects.requireNonNull(subscriber);
+      boolean accepted;
+      synchronized (this) {
+         accepted = downstream == null;
+         if (accepted) {
+            downstream = subscriber;
+         }
+      }
+      if (!accepted) {
+         subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+         });
+         subscriber.onError(new IllegalStateException(
+               "A DateToolProcessor takes a single subscriber"));
+         return;
+      }
+
+      subscriber.onSubscribe(new Flow.Subscription() {
+         @Override
+         public void request(long n) {
+            if (n <= 0) {
+               fail(new IllegalArgumentException("Requested " + n
+                     + " results, not a positive number"), true);
+               return;
+            }
+            synchronized (DateToolProcessor.this) {
+               demand += n;
+               if (demand < 0) {
+                  demand = Long.MAX_VALUE;
+               }
+            }
+            drain();
+         }
+
+         @Override
+         public void cancel() {
+            Flow.Subscription subscription;
+            synchronized (DateToolProcessor.this) {
+               cancelled = true;
+               results.clear();
+               subscription = upstream;
+            }
+            if (subscription != null) {
+               subscription.cancel();
+            }
+         }
+      });
+      subscribed = true;
+      drain();
+   }
+
+   @Override
+   public void onSubscribe(Flow.Subscription subscription) {
+      Objects.requireNonNull(subscription);
+      boolean accepted;
+      synchronized (this) {
+         accepted = upstream == null;
+         if (accepted) {
+            upstream = subscription;
+         }
+         // a failed or cancelled processor takes nothing more
+         accepted &= !upstreamDone && !cancelled;
+      }
+      if (accepted) {
+         drain();
+      } else {
+         subscription.cancel();
+      }
+   }
+
+   @Override
+   public void onNext(Pair pair) {
+      Objects.requireNonNull(pair);
+      long[] values = new long[operations.length];
+      try {
+         for (int i = 0; i < operations.length; i++) {
+            values[i] = operations[i].apply(calculator, pair.startDate,
+                  pair.endDate);
+         }
+      } catch (RuntimeException re) {
+         fail(re, false);
+         return;
+      }
+      synchronized (this) {
+         if (upstreamDone || cancelled) {
+            return;
+         }
+         outstanding--;
+         results.add(values);
+      }
+      drain();
+   }
+
+   @Override
+   public void onError(Throwable throwable) {
+      Objects.requireNonNull(throwable);
+      synchronized (this) {
+         if (!upstreamDone) {
+            upstreamDone = true;
+            failure = throwable;
+         }
+      }
+      drain();
+   }
+
+   @Override
+   public void onComplete() {
+      synchronized (this) {
+         upstreamDone = true;
+      }
+      drain();
+   }
+
+   /**
+    * Stops taking pairs and fails the subscriber once the results computed so
+    * far are delivered, or at once if they are to be discarded.
+    */
+   private void fail(Throwable throwable, boolean discardResults) {
+      Flow.Subscription subscription;
+      synchronized (this) {
+         if (discardResults) {
+            results.clear();
+            failure = throwable;
+         } else if (!upstreamDone) {
+            failure = throwable;
+         }
+         subscription = upstreamDone ? null : upstream;
+         upstreamDone = true;
+      }
+      if (subscription != null) {
+         subscription.cancel();
+      }
+      drain();
+   }
+
+   /**
+    * Delivers as many results as the subscriber has requested, signals
+    * completion or failure once the results run out, and requests more pairs
+    * while there is room. Only one thread runs the loop at a time; a signal
+    * arriving meanwhile makes it go round again.
+    */
+   private void drain() {
+      if (wip.getAndIncrement() != 0) {
+         return;
+      }
+      int missed = 1;
+      do {
+         if (subscribed) {
+            deliver();
+         }
+
+         long request = 0;
+         Flow.Subscription subscription;
+         synchronized (this) {
+            subscription = upstream;
+            if (subscription != null && subscribed && !upstreamDone
+                  && !cancelled) {
+               long room = capacity - results.size() - outstanding;
+               if (room >= batch) {
+                  outstanding += room;
+                  request = room;
+               }
+            }
+         }
+         if (request > 0) {
+            subscription.request(request);
+         }
+
+         missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+   }
+
+   private void deliver() {
+      for (;;) {
+         int count;
+         boolean finish = false;
+         Throwable error = null;
+         synchronized (this) {
+            if (cancelled || terminated) {
+               return;
+            }
+            count = (int) Math.min(demand, results.size());
+            for (int i = 0; i < count; i++) {
+               run[i] = results.poll();
+            }
+            demand -= count;
+            if (count == 0) {
+               if (!upstreamDone || !results.isEmpty()) {
+                  return;
+               }
+               terminated = true;
+               finish = true;
+               error = failure;
+            }
+         }
+
+         if (finish) {
+            if (error == null) {
+               downstream.onComplete();
+            } else {
+               downstream.onError(error);
+            }
+            return;
+         }
+         for (int i = 0; i < count; i++) {
+            long[] values = run[i];
+            run[i] = null;
+            if (!cancelled) {
+               downstream.onNext(values);
+            }
+         }
+      }
+   }
+
+}
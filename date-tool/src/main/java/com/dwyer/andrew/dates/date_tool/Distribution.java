@@ -0,0 +1,130 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Arrays;
+
+/**
+ * Streaming statistics of a stream of differences, such as the days between
+ * order and delivery, in memory that does not grow with the number of
+ * values: the count, minimum, maximum and mean, a QuantileSketch for the
+ * median and other quantiles, and a histogram of fixed buckets.
+ *
+ * The histogram's buckets are given by ascending upper bounds. Bucket i
+ * counts the values above bound i - 1 up to and including bound i; one more
+ * bucket counts the values above the last bound. Bounds of 0, 1, 7 give the
+ * buckets (-inf, 0], (0, 1], (1, 7] and (7, +inf).
+ *
+ * Distributions with the same bounds merge exactly, as if every value had
+ * been added to one, so threads can each fill their own and merge them.
+ * Instances are not thread-safe.
+ *
+ * @author dwyera
+ */
+public final class Distribution {
+
+   private final long[] bounds;
+
+   private final long[] bucketCounts;
+
+   private final QuantileSketch sketch = new QuantileSketch();
+
+   private double sum;
+
+   /**
+    * Instantiates an empty distribution.
+    *
+    * @param bounds
+    *           the histogram buckets' upper bounds, strictly ascending; may
+    *           be empty for no histogram
+    * @throws IllegalArgumentException
+    *            if the bounds are not strictly ascending
+    */
+   public Distribution(long... bounds) {
+      for (int i = 1; i < bounds.length; i++) {
+         if (bounds[i] <= bounds[i - 1]) {
+            throw new IllegalArgumentException("Histogram bounds "
+                  + Arrays.toString(bounds) + " are not strictly ascending");
+         }
+      }
+      this.bounds = bounds.clone();
+      this.bucketCounts = new long[bounds.length + 1];
+   }
+
+   /**
+    * Adds a value.
+    *
+    * @param value
+    *           the value
+    */
+   public void add(long value) {
+      sketch.add(value);
+      sum += value;
+      int bucket = Arrays.binarySearch(bounds, value);
+      bucketCounts[bucket < 0 ? ~bucket : bucket]++;
+   }
+
+   /**
+    * Adds every value added to another distribution to this one.
+    *
+    * @param other
+    *           the distribution to merge in, left unchanged
+    * @throws IllegalArgumentException
+    *            if the distributions' histogram bounds differ
+    */
+   public void merge(Distribution other) {
+      if (!Arrays.equals(bounds, other.bounds)) {
+         throw new IllegalArgumentException("Histogram bounds "
+               + Arrays.toString(other.bounds) + " differ from "
+               + Arrays.toString(bounds));
+      }
+      sketch.merge(other.sketch);
+      sum += other.sum;
+      for (int i = 0; i < bucketCounts.length; i++) {
+         bucketCounts[i] += other.bucketCounts[i];
+      }
+   }
+
+   /** Returns the number of values added. */
+   public long getCount() {
+      return sketch.getCount();
+   }
+
+   /** Returns the smallest value added, zero if none. */
+   public long getMin() {
+      return sketch.getMin();
+   }
+
+   /** Returns the largest value added, zero if none. */
+   public long getMax() {
+      return sketch.getMax();
+   }
+
+   /** Returns the mean of the values added, zero if none. */
+   public double getMean() {
+      return getCount() == 0 ? 0 : sum / getCount();
+   }
+
+   /**
+    * Returns an estimate of a quantile, as QuantileSketch.getQuantile.
+    *
+    * @param fraction
+    *           between 0 and 1, e.g. 0.95 for the 95th percentile
+    * @return the quantile, zero if no value has been added
+    */
+   public long getQuantile(double fraction) {
+      return sketch.getQuantile(fraction);
+   }
+
+   /** Returns the histogram buckets' upper bounds. */
+   public long[] getBounds() {
+      return bounds.clone();
+   }
+
+   /**
+    * Returns the number of values in each histogram bucket, one more than
+    * the number of bounds.
+    */
+   public long[] getBucketCounts() {
+      return bucketCounts.clone();
+   }
+
+}
@@ -0,0 +1,130 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Distributions of several columns of differences, such as days and
+ * weekdays between order and delivery, grouped by a key such as a region.
+ * Each group holds one Distribution per column, so memory grows with the
+ * number of groups, never with the number of values.
+ *
+ * Grouped distributions with the same columns and bounds merge group by
+ * group, so threads working through parts of one input can each fill their
+ * own and merge them in any order for the statistics of the whole.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author dwyera
+ */
+public final class GroupedDistributions {
+
+   private final int columns;
+
+   private final long[] bounds;
+
+   private final Map<String, Distribution[]> groups = new HashMap<String, Distribution[]>();
+
+   /**
+    * Instantiates grouped distributions with no groups.
+    *
+    * @param columns
+    *           the number of distributions per group
+    * @param bounds
+    *           the histogram buckets' upper bounds of every distribution
+    * @throws IllegalArgumentException
+    *            if columns is less than 1 or the bounds are not strictly
+    *            ascending
+    */
+   public GroupedDistributions(int columns, long... bounds) {
+      if (columns < 1) {
+         throw new IllegalArgumentException("Columns " + columns
+               + " must be at least 1");
+      }
+      this.columns = columns;
+      this.bounds = new Distribution(bounds).getBounds();
+   }
+
+   /**
+    * Returns a group's distributions, one per column, adding the group if it
+    * is new. Values added to the returned distributions are added to the
+    * group.
+    *
+    * @param key
+    *           the group's key
+    * @return the group's distributions
+    */
+   public Distribution[] group(String key) {
+      Distribution[] group = groups.get(key);
+      if (group == null) {
+         group = new Distribution[columns];
+         for (int i = 0; i < columns; i++) {
+            group[i] = new Distribution(bounds);
+         }
+         groups.put(key, group);
+      }
+      return group;
+   }
+
+   /**
+    * Adds a value to a column of a group.
+    *
+    * @param key
+    *           the group's key
+    * @param column
+    *           the column, from 0
+    * @param value
+    *           the value
+    */
+   public void add(String key, int column, long value) {
+      group(key)[column].add(value);
+   }
+
+   /**
+    * Adds every value added to other grouped distributions to these.
+    *
+    * @param other
+    *           the grouped distributions to merge in, left unchanged
+    * @throws IllegalArgumentException
+    *            if the columns or bounds differ
+    */
+   public void merge(GroupedDistributions other) {
+      if (other.columns != columns) {
+         throw new IllegalArgumentException(other.columns
+               + " columns differ from " + columns);
+      }
+      for (Map.Entry<String, Distribution[]> entry : other.groups.entrySet()) {
+         Distribution[] group = group(entry.getKey());
+         for (int i = 0; i < columns; i++) {
+            group[i].merge(entry.getValue()[i]);
+         }
+      }
+   }
+
+   /** Returns the number of columns in each group. */
+   public int getColumns() {
+      return columns;
+   }
+
+   /** Returns the groups' keys in ascending order. */
+   public SortedSet<String> getKeys() {
+      return new TreeSet<String>(groups.keySet());
+   }
+
+   /**
+    * Returns the distribution of a column of a group.
+    *
+    * @param key
+    *           the group's key
+    * @param column
+    *           the column, from 0
+    * @return the distribution, or null if there is no such group
+    */
+   public Distribution get(String key, int column) {
+      Distribution[] group = groups.get(key);
+      return group == null ? null : group[column];
+   }
+
+}
@@ -0,0 +1,522 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.nio.charset.StandardCharsets;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Parses ISO date times straight to epoch milliseconds without allocating.
+ * Accepts the grammar of ISODateTimeFormat.dateOptionalTimeParser and gives
+ * the same instants:
+ *
+ * <pre>
+ * date-opt-time     = date-element ['T' [time-element] [offset]]
+ * date-element      = std-date-element | ord-date-element | week-date-element
+ * std-date-element  = yyyy ['-' MM ['-' dd]]
+ * ord-date-element  = yyyy ['-' DDD]
+ * week-date-element = xxxx '-W' ww ['-' e]
+ * time-element      = HH [minute-element] | [fraction]
+ * minute-element    = ':' mm [second-element] | [fraction]
+ * second-element    = ':' ss [fraction]
+ * fraction          = ('.' | ',') digit+
+ * offset            = 'Z' | (('+' | '-') HH [':' mm [':' ss [('.' | ',') SSS]]])
+ * </pre>
+ *
+ * Dates without an offset are local times in the parser's zone. yyyy-MM-dd
+ * has a dedicated fast path. Anything the hand written parser does not
+ * accept, including every malformed input, is handed to the Joda parser, so
+ * errors and rare forms (such as years beyond +/-1,000,000) behave exactly as
+ * they did before.
+ *
+ * A parser keeps state while parsing and must not be shared between threads.
+ *
+ * @author dwyera
+ */
+public class IsoDateParser {
+
+   /** Returned by parseFast when the input must be handed to Joda. */
+   static final long NOT_PARSED = Long.MIN_VALUE;
+
+   private static final long MAX_FAST_YEAR = 1000000;
+
+   private static final int MAX_FRACTION_DIGITS = 9;
+
+   private final DateTimeZone zone;
+
+   private final ZoneTransitions transitions;
+
+   private final DateTimeFormatter fallback;
+
+   /** The text being parsed, either chars or bytes. */
+   private CharSequence chars;
+
+   private byte[] bytes;
+
+   private int position;
+
+   private int end;
+
+   /**
+    * Instantiates a parser for local times in the default zone.
+    */
+   public IsoDateParser() {
+      this(DateTimeZone.getDefault());
+   }
+
+   /**
+    * Instantiates a parser for local times in the supplied zone.
+    *
+    * @param zone
+    *           the zone of dates without an offset, and of parsed DateTimes
+    */
+   public IsoDateParser(DateTimeZone zone) {
+      this.zone = zone;
+      this.transitions = ZoneTransitions.forZone(zone);
+      this.fallback = ISODateTimeFormat.dateOptionalTimeParser()
+            .withZone(zone);
+   }
+
+   /**
+    * Parses a date time to a DateTime in the parser's zone, as
+    * ISODateTimeFormat.dateOptionalTimeParser().parseDateTime does.
+    *
+    * @param text
+    *           the text to parse
+    * @return the parsed date time
+    * @throws IllegalArgumentException
+    *            if the text is not a valid date time
+    */
+   public DateTime parseDateTime(CharSequence text) {
+      return new DateTime(parseInstant(text, 0, text.length()), zone);
+   }
+
+   /**
+    * Parses a range of characters to epoch milliseconds.
+    *
+    * @param text
+    *           the text holding the date time
+    * @param start
+    *           the index of the first character, inclusive
+    * @param end
+    *           the index of the last character, exclusive
+    * @return milliseconds since the epoch
+    * @throws IllegalArgumentException
+    *            if the range is not a valid date time
+    */
+   public long parseInstant(CharSequence text, int start, int end) {
+      long instant = parseFast(text, start, end);
+      if (instant == NOT_PARSED) {
+         return fallback.parseMillis(text.subSequence(start, end).toString());
+      }
+      return instant;
+   }
+
+   /**
+    * Parses a range of ASCII bytes to epoch milliseconds.
+    *
+    * @param text
+    *           the bytes holding the date time
+    * @param start
+    *           the index of the first byte, inclusive
+    * @param end
+    *           the index of the last byte, exclusive
+    * @return milliseconds since the epoch
+    * @throws IllegalArgumentException
+    *            if the range is not a valid date time
+    */
+   public long parseInstant(byte[] text, int start, int end) {
+      long instant = parseFast(text, start, end);
+      if (instant == NOT_PARSED) {
+         return fallback.parseMillis(new String(text, start, end - start,
+               StandardCharsets.UTF_8));
+      }
+      return instant;
+   }
+
+   /**
+    * Parses a range of characters to the epoch day of its local date in the
+    * parser's zone.
+    *
+    * @param text
+    *           the text holding the date time
+    * @param start
+    *           the index of the first character, inclusive
+    * @param end
+    *           the index of the last character, exclusive
+    * @return days since 1970-01-01
+    * @throws IllegalArgumentException
+    *            if the range is not a valid date time
+    */
+   public long parseEpochDay(CharSequence text, int start, int end) {
+      return DateMath.toEpochDay(parseInstant(text, start, end), zone);
+   }
+
+   public DateTimeZone getZone() {
+      return zone;
+   }
+
+   /**
+    * Parses a range of characters with the hand written parser alone,
+    * returning NOT_PARSED for anything outside the grammar or out of range.
+    */
+   long parseFast(CharSequence text, int start, int end) {
+      this.chars = text;
+      this.bytes = null;
+      return parse(start, end);
+   }
+
+   /**
+    * Parses a range of bytes with the hand written parser alone, returning
+    * NOT_PARSED for anything outside the grammar or out of range.
+    */
+   long parseFast(byte[] text, int start, int end) {
+      this.bytes = text;
+      this.chars = null;
+      return parse(start, end);
+   }
+
+   private long parse(int start, int end) {
+      this.position = start;
+      this.end = end;
+
+      if (end - start == 10 && charAt(start + 4) == '-'
+            && charAt(start + 7) == '-') {
+         int year = fixedDigits(start, 4);
+         int month = fixedDigits(start + 5, 2);
+         int day = fixedDigits(start + 8, 2);
+         if (year >= 0 && month >= 0 && day >= 0) {
+            if (!validDate(year, month, day)) {
+               return NOT_PARSED;
+            }
+            return toInstant(DateMath.epochDay(year, month, day)
+                  * DateMath.MILLIS_PER_DAY);
+         }
+      }
+
+      long epochDay = parseDateElement();
+      if (epochDay == NOT_PARSED) {
+         return NOT_PARSED;
+      }
+
+      long local = epochDay * DateMath.MILLIS_PER_DAY;
+      if (position < end && charAt(position) == 'T') {
+         position++;
+         long millisOfDay = parseTimeElement();
+         if (millisOfDay < 0) {
+            return NOT_PARSED;
+         }
+         local += millisOfDay;
+
+         if (position < end) {
+            long offset = parseOffset();
+            if (offset == NOT_PARSED || position != end) {
+               return NOT_PARSED;
+            }
+            return local - offset;
+         }
+      }
+
+      if (position != end) {
+         return NOT_PARSED;
+      }
+      return toInstant(local);
+   }
+
+   /**
+    * Converts local milliseconds in the parser's zone to an instant,
+    * rejecting local times that fall in a daylight saving gap.
+    */
+   private long toInstant(long local) {
+      int offset = transitions.getOffsetFromLocal(local);
+      long instant = local - offset;
+      if (offset != transitions.getOffset(instant)) {
+         return NOT_PARSED;
+      }
+      return instant;
+   }
+
+   /**
+    * Parses a calendar, ordinal or week date, returning its epoch day.
+    */
+   private long parseDateElement() {
+      long year = signedDigits(9);
+      if (year == NOT_PARSED || Math.abs(year) > MAX_FAST_YEAR) {
+         return NOT_PARSED;
+      }
+      if (position == end || charAt(position) != '-') {
+         return DateMath.epochDay(year, 1, 1);
+      }
+      position++;
+
+      if (position < end && charAt(position) == 'W') {
+         position++;
+         int week = (int) digits(2);
+         int dayOfWeek = DateTimeConstants.MONDAY;
+         if (week < 0) {
+            return NOT_PARSED;
+         }
+         if (position < end && charAt(position) == '-') {
+            position++;
+            dayOfWeek = (int) digits(1);
+         }
+         if (dayOfWeek < DateTimeConstants.MONDAY
+               || dayOfWeek > DateTimeConstants.SUNDAY || week < 1
+               || week > weeksInWeekyear(year)) {
+            return NOT_PARSED;
+         }
+         return firstMondayOfWeekyear(year) + (week - 1) * 7
+               + (dayOfWeek - 1);
+      }
+
+      int run = 0;
+      while (position + run < end && isDigit(charAt(position + run))) {
+         run++;
+      }
+      if (run == 3) {
+         int dayOfYear = (int) digits(3);
+         if (dayOfYear < 1 || dayOfYear > (DateMath.isLeapYear(year) ? 366
+               : 365)) {
+            return NOT_PARSED;
+         }
+         return DateMath.epochDay(year, 1, 1) + dayOfYear - 1;
+      }
+      if (run == 0 || run > 3) {
+         return NOT_PARSED;
+      }
+
+      int month = (int) digits(2);
+      int day = 1;
+      if (position < end && charAt(position) == '-') {
+         position++;
+         day = (int) digits(2);
+      }
+      if (!validDate(year, month, day)) {
+         return NOT_PARSED;
+      }
+      return DateMath.epochDay(year, month, day);
+   }
+
+   /**
+    * Parses an hour with optional minutes, seconds and fraction, returning
+    * the milliseconds of the day, or -1 if it is invalid. An absent time
+    * element gives 0.
+    */
+   private long parseTimeElement() {
+      if (position == end || !isDigit(charAt(position))) {
+         return 0;
+      }
+
+      long hour = digits(2);
+      if (hour > 23) {
+         return -1;
+      }
+      long millis = hour * DateTimeConstants.MILLIS_PER_HOUR;
+      if (isDecimalPoint()) {
+         return withFraction(millis, DateTimeConstants.MILLIS_PER_HOUR);
+      }
+      if (position == end || charAt(position) != ':') {
+         return millis;
+      }
+      position++;
+
+      long minute = digits(2);
+      if (minute < 0 || minute > 59) {
+         return -1;
+      }
+      millis += minute * DateTimeConstants.MILLIS_PER_MINUTE;
+      if (isDecimalPoint()) {
+         return withFraction(millis, DateTimeConstants.MILLIS_PER_MINUTE);
+      }
+      if (position == end || charAt(position) != ':') {
+         return millis;
+      }
+      position++;
+
+      long second = digits(2);
+      if (second < 0 || second > 59) {
+         return -1;
+      }
+      millis += second * DateTimeConstants.MILLIS_PER_SECOND;
+      if (isDecimalPoint()) {
+         return withFraction(millis, DateTimeConstants.MILLIS_PER_SECOND);
+      }
+      return millis;
+   }
+
+   /**
+    * Parses 'Z' or a signed offset, returning it in milliseconds, or
+    * NOT_PARSED.
+    */
+   private long parseOffset() {
+      char c = charAt(position);
+      if (c == 'Z' || c == 'z') {
+         position++;
+         return 0;
+      }
+      if (c != '+' && c != '-') {
+         return NOT_PARSED;
+      }
+      boolean negative = c == '-';
+      position++;
+
+      long hours = fixedDigits(position, 2);
+      if (hours < 0 || hours > 23) {
+         return NOT_PARSED;
+      }
+      position += 2;
+      long offset = hours * DateTimeConstants.MILLIS_PER_HOUR;
+
+      boolean separators = position < end && charAt(position) == ':';
+      if (separators) {
+         position++;
+      }
+      if (separators || (position < end && isDigit(charAt(position)))) {
+         long minutes = fixedDigits(position, 2);
+         if (minutes < 0 || minutes > 59) {
+            return NOT_PARSED;
+         }
+         position += 2;
+         offset += minutes * DateTimeConstants.MILLIS_PER_MINUTE;
+
+         if (position < end && (separators ? charAt(position) == ':'
+               : isDigit(charAt(position)))) {
+            position += separators ? 1 : 0;
+            long seconds = fixedDigits(position, 2);
+            if (seconds < 0 || seconds > 59) {
+               return NOT_PARSED;
+            }
+            position += 2;
+            offset += seconds * DateTimeConstants.MILLIS_PER_SECOND;
+
+            if (position < end && (separators ? isDecimalPoint()
+                  : isDigit(charAt(position)))) {
+               position += separators ? 1 : 0;
+               long scale = 100;
+               int count = 0;
+               while (count < 3 && position < end
+                     && isDigit(charAt(position))) {
+                  offset += (charAt(position++) - '0') * scale;
+                  scale /= 10;
+                  count++;
+               }
+               if (count == 0) {
+                  return NOT_PARSED;
+               }
+            }
+         }
+      }
+
+      return negative ? -offset : offset;
+   }
+
+   /**
+    * Adds a decimal point and 1 to 9 fraction digits of a unit to millis,
+    * truncating to milliseconds the way Joda does. Returns -1 if there are no
+    * digits.
+    */
+   private long withFraction(long millis, long unitMillis) {
+      position++; // the decimal point
+      long value = 0;
+      long n = unitMillis * 10;
+      int length = 0;
+      while (length < MAX_FRACTION_DIGITS && position < end
+            && isDigit(charAt(position))) {
+         n /= 10;
+         value += (charAt(position++) - '0') * n;
+         length++;
+      }
+      if (length == 0) {
+         return -1;
+      }
+      return millis + value / 10;
+   }
+
+   private boolean isDecimalPoint() {
+      if (position == end) {
+         return false;
+      }
+      char c = charAt(position);
+      return c == '.' || c == ',';
+   }
+
+   /**
+    * Parses an optionally signed run of up to maxDigits digits, or returns
+    * NOT_PARSED.
+    */
+   private long signedDigits(int maxDigits) {
+      boolean negative = false;
+      char sign = position < end ? charAt(position) : 0;
+      if (sign == '-' || sign == '+') {
+         negative = sign == '-';
+         position++;
+      }
+      long value = digits(maxDigits);
+      if (value < 0) {
+         return NOT_PARSED;
+      }
+      return negative ? -value : value;
+   }
+
+   /**
+    * Parses a run of 1 to maxDigits digits, or returns -1.
+    */
+   private long digits(int maxDigits) {
+      long value = 0;
+      int length = 0;
+      while (length < maxDigits && position < end
+            && isDigit(charAt(position))) {
+         value = value * 10 + (charAt(position++) - '0');
+         length++;
+      }
+      return length == 0 ? -1 : value;
+   }
+
+   /**
+    * Parses exactly count digits starting at index without moving the
+    * position, or returns -1.
+    */
+   private int fixedDigits(int index, int count) {
+      if (index + count > end) {
+         return -1;
+      }
+      int value = 0;
+      for (int i = index; i < index + count; i++) {
+         char c = charAt(i);
+         if (!isDigit(c)) {
+            return -1;
+         }
+         value = value * 10 + (c - '0');
+      }
+      return value;
+   }
+
+   private char charAt(int index) {
+      return bytes != null ? (char) (bytes[index] & 0xFF) : chars
+            .charAt(index);
+   }
+
+   private static boolean isDigit(char c) {
+      return c >= '0' && c <= '9';
+   }
+
+   private static boolean validDate(long year, int month, int day) {
+      return month >= 1 && month <= 12 && day >= 1
+            && day <= DateMath.lengthOfMonth(year, month);
+   }
+
+   /** The Monday of ISO week 1, the week holding 4 January. */
+   private static long firstMondayOfWeekyear(long weekyear) {
+      long january4 = DateMath.epochDay(weekyear, 1, 4);
+      return january4 - (DateMath.dayOfWeek(january4) - 1);
+   }
+
+   private static int weeksInWeekyear(long weekyear) {
+      return (int) ((firstMondayOfWeekyear(weekyear + 1) - firstMondayOfWeekyear(
+            weekyear)) / 7);
+   }
+
+}
@@ -0,0 +1,185 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch of the distribution of long values, answering
+ * quantiles such as the median or 95th percentile in bounded memory however
+ * many values are added. Values are counted in the log-linear buckets of
+ * metrics.Histogram, one set for values from zero up and a mirror set for
+ * negative values: values of magnitude below 2^SUB_BITS (32) have a bucket
+ * each, and every power of two above that is split into 2^SUB_BITS
+ * buckets, so a quantile is exact for small differences and within 1/64
+ * (under 2%) at any magnitude.
+ *
+ * Adding is a bucket index computation and an increment. Bucket arrays grow
+ * to the largest magnitude seen, at most 1,888 counts a sign; a sketch of
+ * day differences under a few years holds a few hundred. Two sketches merge
+ * by adding their counts, giving the sketch of both inputs exactly, so
+ * threads can each fill their own and merge them at the end.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author dwyera
+ */
+public final class QuantileSketch {
+
+   /** Bits of precision below each power of two. */
+   static final int SUB_BITS = 5;
+
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+
+   /** Exact buckets, then SUB_COUNT buckets per power of two up to 2^63. */
+   private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+   private static final long[] NO_COUNTS = new long[0];
+
+   /** Counts of values from zero up, by bucket of the value. */
+   private long[] positive = NO_COUNTS;
+
+   /** Counts of negative values, by bucket of ~value (-1 is 0). */
+   private long[] negative = NO_COUNTS;
+
+   private long count;
+
+   private long min = Long.MAX_VALUE;
+
+   private long max = Long.MIN_VALUE;
+
+   /**
+    * Adds a value.
+    *
+    * @param value
+    *           the value
+    */
+   public void add(long value) {
+      if (value >= 0) {
+         int bucket = bucket(value);
+         if (bucket >= positive.length) {
+            positive = grow(positive, bucket);
+         }
+         positive[bucket]++;
+      } else {
+         int bucket = bucket(~value);
+         if (bucket >= negative.length) {
+            negative = grow(negative, bucket);
+         }
+         negative[bucket]++;
+      }
+      count++;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+   }
+
+   /**
+    * Adds every value added to another sketch to this one.
+    *
+    * @param other
+    *           the sketch to merge in, left unchanged
+    */
+   public void merge(QuantileSketch other) {
+      positive = add(positive, other.positive);
+      negative = add(negative, other.negative);
+      count += other.count;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+   }
+
+   /** Returns the number of values added. */
+   public long getCount() {
+      return count;
+   }
+
+   /** Returns the smallest value added, zero if none. */
+   public long getMin() {
+      return count == 0 ? 0 : min;
+   }
+
+   /** Returns the largest value added, zero if none. */
+   public long getMax() {
+      return count == 0 ? 0 : max;
+   }
+
+   /**
+    * Returns an estimate of the value below which the given fraction of the
+    * values fall: the midpoint of the bucket holding the value of that rank,
+    * capped to the smallest and largest values added, which are exact for
+    * the first and last ranks.
+    *
+    * @param fraction
+    *           between 0 and 1, e.g. 0.5 for the median
+    * @return the quantile, zero if no value has been added
+    * @throws IllegalArgumentException
+    *            if fraction is not between 0 and 1
+    */
+   public long getQuantile(double fraction) {
+      if (!(fraction >= 0 && fraction <= 1)) {
+         throw new IllegalArgumentException("Fraction " + fraction
+               + " is not between 0 and 1");
+      }
+      if (count == 0) {
+         return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(fraction * count));
+      // the extremes are known exactly
+      if (rank == 1) {
+         return min;
+      }
+      if (rank == count) {
+         return max;
+      }
+      long seen = 0;
+      long estimate = max;
+      // negative buckets run from the most negative values down to -1
+      for (int i = negative.length - 1; i >= 0 && seen < rank; i--) {
+         seen += negative[i];
+         if (seen >= rank) {
+            estimate = ~midpoint(i);
+         }
+      }
+      for (int i = 0; i < positive.length && seen < rank; i++) {
+         seen += positive[i];
+         if (seen >= rank) {
+            estimate = midpoint(i);
+         }
+      }
+      return Math.max(min, Math.min(max, estimate));
+   }
+
+   /** Returns the bucket holding a non-negative value. */
+   static int bucket(long value) {
+      if (value < SUB_COUNT) {
+         return (int) value;
+      }
+      int power = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int) (value >>> (power - SUB_BITS)) & (SUB_COUNT - 1);
+      return SUB_COUNT + (power - SUB_BITS) * SUB_COUNT + sub;
+   }
+
+   /** Returns the middle of the values a bucket holds, rounded down. */
+   static long midpoint(int bucket) {
+      if (bucket < SUB_COUNT) {
+         return bucket;
+      }
+      int power = (bucket - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+      long sub = (bucket - SUB_COUNT) % SUB_COUNT;
+      long width = 1L << (power - SUB_BITS);
+      return (1L << power) + sub * width + (width - 1) / 2;
+   }
+
+   private static long[] grow(long[] counts, int bucket) {
+      return Arrays.copyOf(counts, Math.max(bucket + 1, Math.min(BUCKETS,
+            counts.length + SUB_COUNT)));
+   }
+
+   private static long[] add(long[] counts, long[] other) {
+      long[] sum = other.length > counts.length ? Arrays.copyOf(counts,
+            other.length) : counts;
+      for (int i = 0; i < other.length; i++) {
+         sum[i] += other[i];
+      }
+      return sum;
+   }
+
+}
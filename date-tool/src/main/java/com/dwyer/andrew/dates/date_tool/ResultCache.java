@@ -0,0 +1,225 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A bounded, concurrent cache of calculation results keyed on a start
+ * instant, an end instant and a caller chosen kind identifying the
+ * calculation and its unit. Keys and values are held in primitive arrays,
+ * so lookups and insertions allocate nothing.
+ *
+ * The cache is set associative: a key hashes to a set of WAYS entries and
+ * is only ever stored there. A full set evicts its least recently used
+ * entry, approximating LRU over the whole cache. Sets are guarded by
+ * striped StampedLocks; lookups are optimistic reads that take the read
+ * lock only when they race with an insertion.
+ *
+ * Results depend on the zone and calendar they were computed with as well as
+ * the key, so a cache must only be used with one zone and one calendar.
+ *
+ * @author dwyera
+ */
+public final class ResultCache {
+
+   /** Returned by get for a key not in the cache. Never stored. */
+   public static final long NOT_FOUND = Long.MIN_VALUE;
+
+   /** Entries per set. */
+   static final int WAYS = 8;
+
+   private static final int LOCK_STRIPES = 64;
+
+   private final int setMask;
+
+   private final StampedLock[] locks = new StampedLock[LOCK_STRIPES];
+
+   /** Per entry kind + 1, zero for an empty entry. */
+   private final int[] kinds;
+
+   private final long[] starts;
+
+   private final long[] ends;
+
+   private final long[] values;
+
+   /** Per entry time of last use, from its set's clock. */
+   private final long[] lastUsed;
+
+   /** Per set clock, advanced on every use of the set. */
+   private final long[] clocks;
+
+   private final LongAdder hits = new LongAdder();
+
+   private final LongAdder misses = new LongAdder();
+
+   private final LongAdder evictions = new LongAdder();
+
+   /**
+    * Instantiates a new cache.
+    *
+    * @param capacity
+    *           the most entries held, rounded up to a power of two of at
+    *           least WAYS
+    */
+   public ResultCache(int capacity) {
+      if (capacity < 1 || capacity > 1 << 30) {
+         throw new IllegalArgumentException("Cache capacity out of range: "
+               + capacity);
+      }
+      int sets = Math.max(1, Integer.highestOneBit(capacity - 1) * 2 / WAYS);
+      setMask = sets - 1;
+      int entries = sets * WAYS;
+      kinds = new int[entries];
+      starts = new long[entries];
+      ends = new long[entries];
+      values = new long[entries];
+      lastUsed = new long[entries];
+      clocks = new long[sets];
+      for (int i = 0; i < LOCK_STRIPES; i++) {
+         locks[i] = new StampedLock();
+      }
+   }
+
+   /**
+    * Looks up a result.
+    *
+    * @param start
+    *           the start instant
+    * @param end
+    *           the end instant
+    * @param kind
+    *           the calculation and unit, zero or positive
+    * @return the cached result, or NOT_FOUND
+    */
+   public long get(long start, long end, int kind) {
+      int set = set(start, end, kind);
+      StampedLock lock = locks[set & (LOCK_STRIPES - 1)];
+
+      long stamp = lock.tryOptimisticRead();
+      int entry = find(set, start, end, kind);
+      long value = entry < 0 ? NOT_FOUND : values[entry];
+      if (!lock.validate(stamp)) {
+         stamp = lock.readLock();
+         try {
+            entry = find(set, start, end, kind);
+            value = entry < 0 ? NOT_FOUND : values[entry];
+         } finally {
+            lock.unlockRead(stamp);
+         }
+      }
+
+      if (entry < 0) {
+         misses.increment();
+      } else {
+         hits.increment();
+         // a racy recency hint, a lost update only weakens eviction order
+         lastUsed[entry] = ++clocks[set];
+      }
+      return value;
+   }
+
+   /**
+    * Stores a result, evicting the least recently used entry of its set if
+    * the set is full.
+    *
+    * @param start
+    *           the start instant
+    * @param end
+    *           the end instant
+    * @param kind
+    *           the calculation and unit, zero or positive
+    * @param value
+    *           the result, ignored if NOT_FOUND
+    */
+   public void put(long start, long end, int kind, long value) {
+      if (value == NOT_FOUND) {
+         return;
+      }
+      int set = set(start, end, kind);
+      StampedLock lock = locks[set & (LOCK_STRIPES - 1)];
+      long stamp = lock.writeLock();
+      try {
+         int entry = find(set, start, end, kind);
+         if (entry < 0) {
+            entry = victim(set);
+            if (kinds[entry] != 0) {
+               evictions.increment();
+            }
+            kinds[entry] = kind + 1;
+            starts[entry] = start;
+            ends[entry] = end;
+         }
+         values[entry] = value;
+         lastUsed[entry] = ++clocks[set];
+      } finally {
+         lock.unlockWrite(stamp);
+      }
+   }
+
+   /** Returns the most entries the cache holds. */
+   public int capacity() {
+      return kinds.length;
+   }
+
+   /** Returns the number of lookups that found a result. */
+   public long getHits() {
+      return hits.sum();
+   }
+
+   /** Returns the number of lookups that found no result. */
+   public long getMisses() {
+      return misses.sum();
+   }
+
+   /** Returns the number of entries evicted to make room for another. */
+   public long getEvictions() {
+      return evictions.sum();
+   }
+
+   @Override
+   public String toString() {
+      return "hits " + getHits() + ", misses " + getMisses() + ", evictions "
+            + getEvictions();
+   }
+
+   private int find(int set, long start, long end, int kind) {
+      int first = set * WAYS;
+      for (int entry = first; entry < first + WAYS; entry++) {
+         if (kinds[entry] == kind + 1 && starts[entry] == start
+               && ends[entry] == end) {
+            return entry;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Returns the entry of the set to replace: an empty one if there is one,
+    * otherwise the least recently used.
+    */
+   private int victim(int set) {
+      int first = set * WAYS;
+      int victim = first;
+      for (int entry = first; entry < first + WAYS; entry++) {
+         if (kinds[entry] == 0) {
+            return entry;
+         }
+         if (lastUsed[entry] < lastUsed[victim]) {
+            victim = entry;
+         }
+      }
+      return victim;
+   }
+
+   private int set(long start, long end, int kind) {
+      long hash = start * 0x9E3779B97F4A7C15L;
+      hash ^= Long.rotateLeft(end * 0xC2B2AE3D27D4EB4FL, 31);
+      hash ^= kind * 0x165667B19E3779F9L;
+      hash ^= hash >>> 29;
+      hash *= 0xBF58476D1CE4E5B9L;
+      hash ^= hash >>> 32;
+      return (int) hash & setMask;
+   }
+
+}
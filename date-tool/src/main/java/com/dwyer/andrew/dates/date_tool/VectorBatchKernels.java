@@ -0,0 +1,179 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BatchKernels on the incubating Vector API, handling as many pairs per
+ * instruction as the CPU's widest registers hold longs: 4 with AVX2, 8 with
+ * AVX-512. Remainders are left to the scalar kernels.
+ *
+ * Each kernel writes its counts in one pass and converts them to the unit in
+ * a second, if the unit needs it, so every vector stays within one loop. C2
+ * stops inlining once a method grows large, and a vector passed to a method
+ * that is not inlined is boxed on the heap, costing far more than the extra
+ * pass.
+ *
+ * x86 has no vector integer division, so division by 7, for weeks, is done
+ * by multiplying and shifting, see divideBySeven. The YEARS conversion, and
+ * any other divisor, is left to scalar code.
+ *
+ * The weekday count replaces DateMath's partial week table with its closed
+ * form, W(start + r) - W(start) where W(n) counts the weekdays in the first
+ * n days from a Monday.
+ *
+ * Loaded only by BatchKernels.load, as it cannot link without the vector
+ * module.
+ *
+ * @author dwyera
+ */
+final class VectorBatchKernels extends BatchKernels {
+
+   private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+   /** Ints with as many lanes as LONGS, widened to longs on load. */
+   private static final VectorSpecies<Integer> INTS = VectorSpecies.of(
+         int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+   /**
+    * Added to an epoch day to give a number from 0 to 2^32 with the same
+    * remainder by 7 as the day plus 3: 2^31 + 1, as 2^31 leaves 2.
+    */
+   private static final long DAY_OF_WEEK_OFFSET = (1L << 31) + 1;
+
+   VectorBatchKernels() {
+      if (LONGS.length() < 2) {
+         throw new UnsupportedOperationException("No vector registers");
+      }
+   }
+
+   @Override
+   void daysBetween(int[] startEpochDays, int[] endEpochDays, long[] out,
+         int from, int to, long multiplier, long divisor) {
+      int bound = from + LONGS.loopBound(to - from);
+      for (int i = from; i < bound; i += LONGS.length()) {
+         load(endEpochDays, i).sub(load(startEpochDays, i)).intoArray(out, i);
+      }
+      convert(out, from, bound, multiplier, divisor);
+      super.daysBetween(startEpochDays, endEpochDays, out, bound, to,
+            multiplier, divisor);
+   }
+
+   @Override
+   void weekdaysBetween(int[] startEpochDays, int[] endEpochDays, long[] out,
+         int from, int to, long multiplier, long divisor) {
+      int bound = from + LONGS.loopBound(to - from);
+      for (int i = from; i < bound; i += LONGS.length()) {
+         LongVector start = load(startEpochDays, i);
+         LongVector end = load(endEpochDays, i);
+         LongVector first = start.min(end);
+         LongVector days = start.max(end).sub(first);
+
+         LongVector weeks = divideBySeven(days);
+         LongVector remainder = days.sub(timesSeven(weeks));
+         // day of week of the first day, Monday = 0, as floorMod(day + 3, 7)
+         LongVector shifted = first.add(DAY_OF_WEEK_OFFSET);
+         LongVector dayOfWeek = shifted.sub(timesSeven(divideBySeven(shifted)));
+
+         LongVector count = weeks.mul(5).add(
+               weekdaysFromMonday(dayOfWeek.add(remainder))).sub(
+               dayOfWeek.min(5));
+         count.lanewise(VectorOperators.NEG,
+               start.compare(VectorOperators.GT, end)).intoArray(out, i);
+      }
+      convert(out, from, bound, multiplier, divisor);
+      super.weekdaysBetween(startEpochDays, endEpochDays, out, bound, to,
+            multiplier, divisor);
+   }
+
+   @Override
+   void completeWeeksBetween(int[] startEpochDays, int[] endEpochDays,
+         long[] out, int from, int to, long multiplier, long divisor) {
+      int bound = from + LONGS.loopBound(to - from);
+      for (int i = from; i < bound; i += LONGS.length()) {
+         LongVector days = load(endEpochDays, i).sub(load(startEpochDays, i));
+         divideBySevenSigned(days).intoArray(out, i);
+      }
+      convert(out, from, bound, multiplier, divisor);
+      super.completeWeeksBetween(startEpochDays, endEpochDays, out, bound, to,
+            multiplier, divisor);
+   }
+
+   @Override
+   public String toString() {
+      return "vector " + LONGS.vectorBitSize() + " bit";
+   }
+
+   /**
+    * Converts counts in place to count * multiplier / divisor.
+    */
+   private static void convert(long[] out, int from, int to, long multiplier,
+         long divisor) {
+      if (multiplier == 1 && divisor == 1) {
+         return;
+      }
+      if (divisor != 1 && (divisor != 7 || Math.abs(multiplier) > 7)) {
+         for (int i = from; i < to; i++) {
+            out[i] = out[i] * multiplier / divisor;
+         }
+         return;
+      }
+      for (int i = from; i < to; i += LONGS.length()) {
+         LongVector count = LongVector.fromArray(LONGS, out, i);
+         if (multiplier != 1) {
+            count = count.mul(multiplier);
+         }
+         if (divisor != 1) {
+            count = divideBySevenSigned(count);
+         }
+         count.intoArray(out, i);
+      }
+   }
+
+   private static LongVector load(int[] epochDays, int i) {
+      return (LongVector) IntVector.fromArray(INTS, epochDays, i).convertShape(
+            VectorOperators.I2L, LONGS, 0);
+   }
+
+   /**
+    * Divides by 7 for x from 0 to 2^35 in integer lanes. Splitting x into
+    * hi * 2^16 + lo, and 2^16 into 7 * 9362 + 2, x / 7 is hi * 9362 + (2 * hi
+    * + lo) / 7, and the second quotient is below 2^21 where multiplying by
+    * ceil(2^24 / 7) and shifting right by 24 divides exactly.
+    */
+   private static LongVector divideBySeven(LongVector x) {
+      LongVector hi = x.lanewise(VectorOperators.LSHR, 16);
+      LongVector rest = hi.add(hi).add(x.and(0xFFFF));
+      return hi.mul(9362).add(
+            rest.mul(2396746).lanewise(VectorOperators.LSHR, 24));
+   }
+
+   /**
+    * Divides by 7, truncating towards zero as long division does, for |x| up
+    * to 2^35. Negation is masked rather than taking abs, which AVX2 lacks for
+    * longs.
+    */
+   private static LongVector divideBySevenSigned(LongVector x) {
+      VectorMask<Long> negative = x.compare(VectorOperators.LT, 0);
+      return divideBySeven(x.lanewise(VectorOperators.NEG, negative)).lanewise(
+            VectorOperators.NEG, negative);
+   }
+
+   private static LongVector timesSeven(LongVector x) {
+      return x.lanewise(VectorOperators.LSHL, 3).sub(x);
+   }
+
+   /**
+    * Weekdays in the first n days from a Monday, for n from 0 to 12.
+    */
+   private static LongVector weekdaysFromMonday(LongVector n) {
+      VectorMask<Long> secondWeek = n.compare(VectorOperators.GE, 7);
+      LongVector inWeek = n.sub(7, secondWeek);
+      return inWeek.min(5).add(5, secondWeek);
+   }
+
+}
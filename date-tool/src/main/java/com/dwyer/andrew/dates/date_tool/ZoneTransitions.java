@@ -0,0 +1,280 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTimeZone;
+
+/**
+ * The offset transitions of a zone, precomputed into arrays so mapping an
+ * instant to its offset or local day costs an array lookup rather than a walk
+ * of the zone's rules. Joda caches offsets per zone, but finding the next or
+ * previous transition, which resolving a local time and correcting for
+ * daylight saving both need, recomputes the zone's recurrence rules on every
+ * call.
+ *
+ * Transitions from 1900 to 2100 are held in ascending order, with an index of
+ * the first transition at or after each 2^32 ms (about 50 day) bucket, so a
+ * lookup is one index read and at most a step or two through the
+ * transitions, never a search. Instants outside the table go to the zone
+ * itself, and a fixed offset zone needs no table at all. Every method gives
+ * the same result as the DateTimeZone method of the same name.
+ *
+ * Tables and the zones they are resolved from are interned: forZone and forID
+ * return the same instance for a zone every time, from any thread, so a feed
+ * mixing a few dozen zones and offsets builds each table once.
+ *
+ * @author dwyera
+ */
+public final class ZoneTransitions {
+
+   /** The first instant the table covers, 1900-01-01T00:00Z. */
+   static final long FIRST_INSTANT = -2208988800000L;
+
+   /** The first instant after the table, 2100-01-01T00:00Z. */
+   static final long END_INSTANT = 4102444800000L;
+
+   /** log2 of the milliseconds in an index bucket. */
+   private static final int BUCKET_SHIFT = 32;
+
+   /** The most zone ids interned, bounding the cache against stray input. */
+   private static final int MAX_INTERNED_IDS = 4096;
+
+   private static final ConcurrentMap<DateTimeZone, ZoneTransitions> TABLES = new ConcurrentHashMap<DateTimeZone, ZoneTransitions>();
+
+   private static final ConcurrentMap<String, DateTimeZone> ZONES = new ConcurrentHashMap<String, DateTimeZone>();
+
+   /** The number of slots in the lookup cache, a power of two. */
+   private static final int RECENT_SLOTS = 64;
+
+   /**
+    * Tables recently returned by forZone, by the zone's identity hash, checked
+    * before the map. Slots are read and written without synchronization: a
+    * table's fields are final, so any table a thread sees is complete, and a
+    * lost write only costs a map lookup.
+    */
+   private static final ZoneTransitions[] RECENT = new ZoneTransitions[RECENT_SLOTS];
+
+   private final DateTimeZone zone;
+
+   private final boolean fixed;
+
+   /** The instants at which the offset changes, ascending. */
+   private final long[] transitions;
+
+   /**
+    * offsets[i] is the offset from transitions[i - 1] until transitions[i],
+    * offsets[0] that before the first transition.
+    */
+   private final int[] offsets;
+
+   /** buckets[b] is the number of transitions up to the start of bucket b. */
+   private final int[] buckets;
+
+   private ZoneTransitions(DateTimeZone zone) {
+      this.zone = zone;
+      this.fixed = zone.isFixed();
+      if (fixed) {
+         transitions = new long[0];
+         offsets = new int[] { zone.getOffset(FIRST_INSTANT) };
+         buckets = new int[0];
+         return;
+      }
+
+      int count = 0;
+      long[] found = new long[64];
+      for (long instant = FIRST_INSTANT;;) {
+         long next = zone.nextTransition(instant);
+         if (next <= instant || next >= END_INSTANT) {
+            break;
+         }
+         if (count == found.length) {
+            found = Arrays.copyOf(found, count * 2);
+         }
+         found[count++] = next;
+         instant = next;
+      }
+      transitions = Arrays.copyOf(found, count);
+      offsets = new int[count + 1];
+      offsets[0] = zone.getOffset(FIRST_INSTANT);
+      for (int i = 0; i < count; i++) {
+         offsets[i + 1] = zone.getOffset(transitions[i]);
+      }
+      buckets = new int[(int) ((END_INSTANT - FIRST_INSTANT - 1) >>> BUCKET_SHIFT)
+            + 1];
+      int index = 0;
+      for (int b = 0; b < buckets.length; b++) {
+         long start = FIRST_INSTANT + ((long) b << BUCKET_SHIFT);
+         while (index < count && transitions[index] <= start) {
+            index++;
+         }
+         buckets[b] = index;
+      }
+   }
+
+   /**
+    * Returns the interned transition table of a zone, building it on first
+    * use.
+    *
+    * @param zone
+    *           the zone
+    * @return the zone's transitions
+    */
+   public static ZoneTransitions forZone(DateTimeZone zone) {
+      int slot = System.identityHashCode(zone) & RECENT_SLOTS - 1;
+      ZoneTransitions table = RECENT[slot];
+      if (table != null && table.zone == zone) {
+         return table;
+      }
+      table = TABLES.get(zone);
+      if (table == null) {
+         ZoneTransitions built = new ZoneTransitions(zone);
+         table = TABLES.putIfAbsent(zone, built);
+         if (table == null) {
+            table = built;
+         }
+      }
+      RECENT[slot] = table;
+      return table;
+   }
+
+   /**
+    * Resolves a zone id, such as Europe/London, UTC or +01:00, as
+    * DateTimeZone.forID does, remembering the zone so later calls with the
+    * same id skip the zone provider.
+    *
+    * @param id
+    *           the zone id
+    * @return the zone
+    * @throws IllegalArgumentException
+    *            if the id is not recognised
+    */
+   public static DateTimeZone forID(String id) {
+      DateTimeZone zone = ZONES.get(id);
+      if (zone == null) {
+         zone = DateTimeZone.forID(id);
+         if (ZONES.size() < MAX_INTERNED_IDS) {
+            DateTimeZone interned = ZONES.putIfAbsent(id, zone);
+            if (interned != null) {
+               zone = interned;
+            }
+         }
+      }
+      return zone;
+   }
+
+   public DateTimeZone getZone() {
+      return zone;
+   }
+
+   /**
+    * Returns the offset in effect at an instant.
+    *
+    * @param instant
+    *           milliseconds since the epoch
+    * @return the offset in milliseconds to add to get local time
+    */
+   public int getOffset(long instant) {
+      if (fixed) {
+         return offsets[0];
+      }
+      int i = index(instant);
+      return i < 0 ? zone.getOffset(instant) : offsets[i];
+   }
+
+   /**
+    * Converts an instant to the epoch day of its local date.
+    *
+    * @param instant
+    *           milliseconds since the epoch
+    * @return the local epoch day
+    */
+   public long toEpochDay(long instant) {
+      return Math.floorDiv(instant + getOffset(instant),
+            DateMath.MILLIS_PER_DAY);
+   }
+
+   /**
+    * Returns the first transition after an instant, or the instant itself if
+    * there is none.
+    *
+    * @param instant
+    *           milliseconds since the epoch
+    * @return the next transition
+    */
+   public long nextTransition(long instant) {
+      if (fixed) {
+         return instant;
+      }
+      int i = index(instant);
+      return i < 0 || i == transitions.length ? zone.nextTransition(instant)
+            : transitions[i];
+   }
+
+   /**
+    * Returns the instant before the last transition at or before an instant,
+    * or the instant itself if there is none; Joda's zones answer one
+    * millisecond before the transition, so its offset is the one it replaced.
+    *
+    * @param instant
+    *           milliseconds since the epoch
+    * @return the previous transition, less one millisecond
+    */
+   public long previousTransition(long instant) {
+      if (fixed) {
+         return instant;
+      }
+      int i = index(instant);
+      return i <= 0 ? zone.previousTransition(instant) : transitions[i - 1] - 1;
+   }
+
+   /**
+    * Returns the offset to subtract from a local time to get its instant,
+    * resolving gaps and overlaps as DateTimeZone.getOffsetFromLocal does: a
+    * time in a gap moves after it, and a repeated time takes the earlier
+    * offset.
+    *
+    * @param instantLocal
+    *           local milliseconds since the local epoch
+    * @return the offset in milliseconds
+    */
+   public int getOffsetFromLocal(long instantLocal) {
+      // the same steps as Joda, on the table rather than the zone's rules
+      int offsetLocal = getOffset(instantLocal);
+      long instantAdjusted = instantLocal - offsetLocal;
+      int offsetAdjusted = getOffset(instantAdjusted);
+      if (offsetLocal != offsetAdjusted) {
+         if (offsetLocal - offsetAdjusted < 0
+               && nextTransition(instantAdjusted) != nextTransition(instantLocal
+                     - offsetAdjusted)) {
+            return offsetLocal;
+         }
+      } else if (offsetLocal >= 0) {
+         long prev = previousTransition(instantAdjusted);
+         if (prev < instantAdjusted) {
+            int offsetPrev = getOffset(prev);
+            if (instantAdjusted - prev <= offsetPrev - offsetLocal) {
+               return offsetPrev;
+            }
+         }
+      }
+      return offsetAdjusted;
+   }
+
+   /**
+    * Returns the number of transitions at or before an instant, which is
+    * the index of its offset, or -1 if the instant is outside the table.
+    */
+   private int index(long instant) {
+      if (instant < FIRST_INSTANT || instant >= END_INSTANT) {
+         return -1;
+      }
+      int i = buckets[(int) ((instant - FIRST_INSTANT) >>> BUCKET_SHIFT)];
+      while (i < transitions.length && transitions[i] <= instant) {
+         i++;
+      }
+      return i;
+   }
+
+}
@@ -0,0 +1,149 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+import com.dwyer.andrew.dates.date_tool.metrics.Metrics;
+import com.dwyer.andrew.dates.date_tool.metrics.OperationMetrics;
+
+/**
+ * The OperationMetrics bulk mode and the server record into: parse for each
+ * date parsed, and each BulkOperation's optionName for its calculations,
+ * including those answered by a cache.
+ *
+ * Calls are recorded through a Recorder confined to one thread. Atomic
+ * counters and reading the clock each cost as much as a short calculation,
+ * so a Recorder counts calls in plain fields and times only one call in its
+ * sample interval, SAMPLE_INTERVAL for bulk mode, recording its latency and
+ * range and adding its counts to the shared metrics. The histograms are
+ * then a uniform sample of all calls, and the counts lag by less than
+ * SAMPLE_INTERVAL calls per thread until the Recorder is flushed.
+ *
+ * @author dwyera
+ */
+final class BulkMetrics {
+
+   /** The name of the date parsing metrics. */
+   static final String PARSE = "parse";
+
+   /** One call in this many is timed in bulk mode, a power of two. */
+   static final int SAMPLE_INTERVAL = 128;
+
+   private final OperationMetrics parse;
+
+   private final OperationMetrics[] operations;
+
+   /**
+    * Instantiates the bulk metrics held by a registry.
+    *
+    * @param metrics
+    *           the registry
+    */
+   BulkMetrics(Metrics metrics) {
+      BulkOperation[] values = BulkOperation.values();
+      parse = metrics.get(PARSE);
+      operations = new OperationMetrics[values.length];
+      for (BulkOperation operation : values) {
+         operations[operation.ordinal()] = metrics.get(operation.optionName);
+      }
+   }
+
+   /**
+    * Returns a new Recorder, to be used by one thread at a time.
+    *
+    * @param sampleInterval
+    *           one call in this many is timed, a power of two
+    */
+   Recorder newRecorder(int sampleInterval) {
+      return new Recorder(sampleInterval - 1);
+   }
+
+   /**
+    * Parses dates and applies operations, recording each call.
+    */
+   final class Recorder {
+
+      /** Calls not yet added to the metrics, by operation then parse last. */
+      private final long[] pending = new long[operations.length + 1];
+
+      /**
+       * Calls by operation then parse last, sampled apart so the fixed order
+       * of calls on a line does not sample the same operation every time.
+       */
+      private final int[] calls = new int[operations.length + 1];
+
+      private final int sampleMask;
+
+      Recorder(int sampleMask) {
+         this.sampleMask = sampleMask;
+      }
+
+      /**
+       * Parses one date.
+       *
+       * @see IsoDateParser#parseInstant(CharSequence, int, int)
+       */
+      long parseInstant(IsoDateParser parser, CharSequence text, int start,
+            int end) {
+         boolean timed = sample(operations.length);
+         long started = timed ? System.nanoTime() : 0;
+         long instant;
+         try {
+            instant = parser.parseInstant(text, start, end);
+         } catch (IllegalArgumentException iae) {
+            parse.recordFailure();
+            throw iae;
+         }
+         if (timed) {
+            parse.record(System.nanoTime() - started);
+            flush();
+         } else {
+            pending[operations.length]++;
+         }
+         return instant;
+      }
+
+      /**
+       * Applies one operation through the cache.
+       *
+       * @see BulkOperation#apply(long, long, DateTimeZone, ResultUnit,
+       *      BusinessCalendar, ResultCache)
+       */
+      long apply(BulkOperation operation, long startInstant, long endInstant,
+            DateTimeZone zone, ResultUnit resultUnit,
+            BusinessCalendar calendar, ResultCache cache) {
+         boolean timed = sample(operation.ordinal());
+         long started = timed ? System.nanoTime() : 0;
+         long result = operation.apply(startInstant, endInstant, zone,
+               resultUnit, calendar, cache);
+         if (timed) {
+            OperationMetrics metrics = operations[operation.ordinal()];
+            metrics.record(System.nanoTime() - started);
+            metrics.recordRange(startInstant, endInstant);
+            flush();
+         } else {
+            pending[operation.ordinal()]++;
+         }
+         return result;
+      }
+
+      private boolean sample(int index) {
+         return (++calls[index] & sampleMask) == 0;
+      }
+
+      /** Adds the calls counted since the last flush to the metrics. */
+      void flush() {
+         for (int i = 0; i < pending.length; i++) {
+            if (pending[i] != 0) {
+               (i < operations.length ? operations[i] : parse)
+                     .recordCalls(pending[i]);
+               pending[i] = 0;
+            }
+         }
+      }
+   }
+
+}
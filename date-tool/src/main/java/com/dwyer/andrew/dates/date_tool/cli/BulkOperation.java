@@ -0,0 +1,139 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateMath;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+
+/**
+ * The DateTool calculations DateToolCLI can apply to each pair of dates in
+ * bulk mode, in the order their options are listed. Each is computed from
+ * epoch milliseconds with DateMath, giving the same results as the matching
+ * DateTool method without building any objects.
+ *
+ * @author dwyera
+ */
+enum BulkOperation {
+
+   DAYS("daysBetween") {
+      @Override
+      long apply(long startInstant, long endInstant, DateTimeZone zone,
+            ResultUnit resultUnit, BusinessCalendar calendar) {
+         if (resultUnit.isCalendarUnit()) {
+            return DateMath.monthsToUnit(
+                  DateMath.monthsBetween(startInstant, endInstant, zone),
+                  resultUnit);
+         }
+         return DateMath.daysToUnit(
+               DateMath.daysBetween(startInstant, endInstant, zone),
+               resultUnit);
+      }
+
+      @Override
+      void apply(int[] startEpochDays, int[] endEpochDays, long[] out,
+            int length, ResultUnit resultUnit, BusinessCalendar calendar) {
+         DateMath.daysBetween(startEpochDays, endEpochDays, out, length,
+               resultUnit);
+      }
+   },
+
+   WEEKDAYS("weekdaysBetween") {
+      @Override
+      long apply(long startInstant, long endInstant, DateTimeZone zone,
+            ResultUnit resultUnit, BusinessCalendar calendar) {
+         return DateMath.daysToUnit(
+               DateMath.weekdaysBetween(startInstant, endInstant, zone),
+               resultUnit);
+      }
+
+      @Override
+      void apply(int[] startEpochDays, int[] endEpochDays, long[] out,
+            int length, ResultUnit resultUnit, BusinessCalendar calendar) {
+         DateMath.weekdaysBetween(startEpochDays, endEpochDays, out, length,
+               resultUnit);
+      }
+   },
+
+   COMPLETE_WEEKS("weeksBetween") {
+      @Override
+      long apply(long startInstant, long endInstant, DateTimeZone zone,
+            ResultUnit resultUnit, BusinessCalendar calendar) {
+         long weeks = DateMath.completeWeeksBetween(startInstant,
+               endInstant, zone);
+         if (resultUnit == ResultUnit.DEFAULT) {
+            return weeks;
+         }
+         return DateMath.daysToUnit(weeks * 7, resultUnit);
+      }
+
+      @Override
+      void apply(int[] startEpochDays, int[] endEpochDays, long[] out,
+            int length, ResultUnit resultUnit, BusinessCalendar calendar) {
+         DateMath.completeWeeksBetween(startEpochDays, endEpochDays, out,
+               length, resultUnit);
+      }
+   },
+
+   BUSINESS_DAYS("businessDaysBetween") {
+      @Override
+      long apply(long startInstant, long endInstant, DateTimeZone zone,
+            ResultUnit resultUnit, BusinessCalendar calendar) {
+         return DateMath.daysToUnit(
+               calendar.businessDaysBetween(startInstant, endInstant, zone),
+               resultUnit);
+      }
+
+      @Override
+      void apply(int[] startEpochDays, int[] endEpochDays, long[] out,
+            int length, ResultUnit resultUnit, BusinessCalendar calendar) {
+         DateMath.businessDaysBetween(calendar, startEpochDays, endEpochDays,
+               out, length, resultUnit);
+      }
+   };
+
+   /** The number of result units, read once as values() copies its array. */
+   private static final int UNIT_COUNT = ResultUnit.values().length;
+
+   /** The long name of the command line option selecting this operation. */
+   final String optionName;
+
+   private BulkOperation(String optionName) {
+      this.optionName = optionName;
+   }
+
+   /**
+    * Applies the calculation to one pair of instants, days being counted in
+    * the supplied zone.
+    */
+   abstract long apply(long startInstant, long endInstant, DateTimeZone zone,
+         ResultUnit resultUnit, BusinessCalendar calendar);
+
+   /**
+    * Applies the calculation to the first length pairs of epoch days, as the
+    * DateMath batch methods do.
+    */
+   abstract void apply(int[] startEpochDays, int[] endEpochDays, long[] out,
+         int length, ResultUnit resultUnit, BusinessCalendar calendar);
+
+   /**
+    * Applies the calculation through the cache, computing and storing the
+    * result on a miss. The cache must only be used with this zone and
+    * calendar.
+    */
+   long apply(long startInstant, long endInstant, DateTimeZone zone,
+         ResultUnit resultUnit, BusinessCalendar calendar, ResultCache cache) {
+      if (cache == null) {
+         return apply(startInstant, endInstant, zone, resultUnit, calendar);
+      }
+      int kind = ordinal() * UNIT_COUNT + resultUnit.ordinal();
+      long result = cache.get(startInstant, endInstant, kind);
+      if (result == ResultCache.NOT_FOUND) {
+         result = apply(startInstant, endInstant, zone, resultUnit, calendar);
+         cache.put(startInstant, endInstant, kind, result);
+      }
+      return result;
+   }
+
+}
@@ -0,0 +1,316 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+
+/**
+ * Streams delimited start and end date pairs, one pair per line, and writes
+ * one line of results per input line. Each result line holds the selected
+ * operations' results in order, separated by the delimiter. A line that
+ * cannot be processed is reported with its line number to the error writer
+ * and produces the result line "ERROR", so output lines stay aligned with
+ * input lines. Memory use is constant regardless of the input size.
+ *
+ * Dates are parsed straight to instants in the processor's zone, the default
+ * time zone unless one is supplied, with one IsoDateParser per thread, so
+ * processLine builds no objects for a well formed line and may be called from
+ * several threads at once, @see ParallelBulkProcessor.
+ *
+ * @author dwyera
+ */
+class BulkProcessor {
+
+   /** The result line written for an input line that cannot be processed. */
+   static final String ERROR_RESULT = "ERROR";
+
+   private final BulkOperation[] operations;
+
+   private final char delimiter;
+
+   private final ResultUnit resultUnit;
+
+   private final BusinessCalendar calendar;
+
+   /** The cache of each operation's results, null entries for none. */
+   private final ResultCache[] caches;
+
+   private final BulkMetrics metrics;
+
+   private final DateTimeZone zone;
+
+   private final ThreadLocal<IsoDateParser> parsers;
+
+   private final ThreadLocal<BulkMetrics.Recorder> recorders;
+
+   /**
+    * Instantiates a new bulk processor.
+    *
+    * @param operations
+    *           the operations applied to each pair, in output order
+    * @param delimiter
+    *           the character separating fields on input and output lines
+    * @param resultUnit
+    *           the unit results are returned in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    */
+   BulkProcessor(List<BulkOperation> operations, char delimiter,
+         ResultUnit resultUnit, BusinessCalendar calendar) {
+      this(operations, delimiter, resultUnit, calendar, null, null, null,
+            DateTimeZone.getDefault());
+   }
+
+   /**
+    * Instantiates a new bulk processor that looks results up in caches
+    * before computing them, records its parses and calculations, and reads
+    * dates in the supplied zone. Business day results have a cache of their
+    * own, e.g. none while the calendar may be reloaded.
+    *
+    * @param operations
+    *           the operations applied to each pair, in output order
+    * @param delimiter
+    *           the character separating fields on input and output lines
+    * @param resultUnit
+    *           the unit results are returned in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    * @param cache
+    *           the results of earlier pairs for every operation but
+    *           BUSINESS_DAYS, used only with this zone, or null for no cache
+    * @param businessDaysCache
+    *           the results of earlier pairs for BUSINESS_DAYS, used only with
+    *           this calendar and this zone, or null for no cache
+    * @param metrics
+    *           receives the calls, or null to record nothing
+    * @param zone
+    *           the zone dates are in
+    */
+   BulkProcessor(List<BulkOperation> operations, char delimiter,
+         ResultUnit resultUnit, BusinessCalendar calendar, ResultCache cache,
+         ResultCache businessDaysCache, final BulkMetrics metrics,
+         DateTimeZone zone) {
+      this.operations = operations.toArray(new BulkOperation[operations
+            .size()]);
+      this.delimiter = delimiter;
+      this.resultUnit = resultUnit;
+      this.calendar = calendar;
+      this.caches = new ResultCache[this.operations.length];
+      for (int i = 0; i < caches.length; i++) {
+         caches[i] = this.operations[i] == BulkOperation.BUSINESS_DAYS
+               ? businessDaysCache : cache;
+      }
+      this.metrics = metrics;
+      this.zone = zone;
+      this.parsers = new ThreadLocal<IsoDateParser>() {
+         @Override
+         protected IsoDateParser initialValue() {
+            return new IsoDateParser(zone);
+         }
+      };
+      this.recorders = new ThreadLocal<BulkMetrics.Recorder>() {
+         @Override
+         protected BulkMetrics.Recorder initialValue() {
+            return metrics.newRecorder(BulkMetrics.SAMPLE_INTERVAL);
+         }
+      };
+   }
+
+   /**
+    * Processes every line of the input.
+    *
+    * @param in
+    *           the input pairs
+    * @param out
+    *           receives one result line per input line
+    * @param errors
+    *           receives a message per malformed input line
+    * @return the number of malformed lines
+    * @throws IOException
+    *            if reading or writing fails
+    */
+   long process(BufferedReader in, Writer out, Writer errors)
+         throws IOException {
+      StringBuilder result = new StringBuilder(64);
+      long lineNumber = 0;
+      long malformed = 0;
+
+      String line;
+      while ((line = in.readLine()) != null) {
+         lineNumber++;
+         result.setLength(0);
+         try {
+            processLine(line, result);
+         } catch (IllegalArgumentException iae) {
+            malformed++;
+            reportMalformed(lineNumber, iae, errors);
+            result.setLength(0);
+            result.append(ERROR_RESULT);
+         }
+         result.append('\n');
+         out.append(result);
+      }
+
+      flushMetrics();
+      out.flush();
+      errors.flush();
+      return malformed;
+   }
+
+   /**
+    * Appends the results for one input line, without a line terminator.
+    *
+    * @param line
+    *           the input line
+    * @param result
+    *           receives the results
+    * @throws IllegalArgumentException
+    *            if the line is not a valid pair of dates
+    */
+   void processLine(CharSequence line, StringBuilder result) {
+      int split = dateSplit(line, delimiter, false);
+
+      IsoDateParser parser = parsers.get();
+      BulkMetrics.Recorder recorder = metrics == null ? null : recorders.get();
+      long startInstant = parseField(parser, line, 0, split, recorder);
+      long endInstant = parseField(parser, line, split + 1, line.length(),
+            recorder);
+
+      for (int i = 0; i < operations.length; i++) {
+         if (i > 0) {
+            result.append(delimiter);
+         }
+         if (recorder == null) {
+            result.append(operations[i].apply(startInstant, endInstant, zone,
+                  resultUnit, calendar, caches[i]));
+         } else {
+            result.append(recorder.apply(operations[i], startInstant,
+                  endInstant, zone, resultUnit, calendar, caches[i]));
+         }
+      }
+   }
+
+   /**
+    * Adds the calls the current thread has counted to the metrics. Called at
+    * the end of process, and by other callers of processLine when their
+    * thread has finished with the input.
+    */
+   void flushMetrics() {
+      if (metrics != null) {
+         recorders.get().flush();
+      }
+   }
+
+   /**
+    * Writes the message for a malformed line.
+    */
+   static void reportMalformed(long lineNumber, IllegalArgumentException iae,
+         Writer errors) throws IOException {
+      errors.append("Line ").append(String.valueOf(lineNumber)).append(": ")
+            .append(String.valueOf(iae.getMessage())).append('\n');
+   }
+
+   /**
+    * Returns the index of the delimiter between the start and end date of a
+    * line, checking the line holds just those two fields, or when keyed an
+    * optional key field before them.
+    *
+    * @param line
+    *           the input line
+    * @param delimiter
+    *           the character separating fields
+    * @param keyed
+    *           whether a key field may come first, @see keyEnd
+    * @return the index of the delimiter before the end date
+    * @throws IllegalArgumentException
+    *            if the line holds too few or too many fields
+    */
+   static int dateSplit(CharSequence line, char delimiter, boolean keyed) {
+      int split = -1;
+      int before = 0;
+      for (int i = line.length() - 1; i >= 0; i--) {
+         if (line.charAt(i) == delimiter) {
+            if (split < 0) {
+               split = i;
+            } else {
+               before++;
+            }
+         }
+      }
+      if (split < 0 || before > (keyed ? 1 : 0)) {
+         throw new IllegalArgumentException(keyed
+               ? "Expected an optional key, a start date and an end date separated by '"
+                     + delimiter + "'"
+               : "Expected a start and end date separated by '" + delimiter
+                     + "'");
+      }
+      return split;
+   }
+
+   /**
+    * Returns the index of the delimiter ending a keyed line's key, or -1 if
+    * the line has no key.
+    *
+    * @param line
+    *           the input line
+    * @param delimiter
+    *           the character separating fields
+    * @param split
+    *           the line's dateSplit
+    * @return the index of the delimiter after the key, or -1
+    */
+   static int keyEnd(CharSequence line, char delimiter, int split) {
+      for (int i = split - 1; i >= 0; i--) {
+         if (line.charAt(i) == delimiter) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Parses the field between start and end, ignoring leading and trailing
+    * whitespace as String.trim does.
+    *
+    * @param parser
+    *           the current thread's parser
+    * @param line
+    *           the input line
+    * @param start
+    *           the index of the field's first character
+    * @param end
+    *           the index after the field's last character
+    * @param recorder
+    *           receives the parse, or null to record nothing
+    * @return milliseconds since the epoch
+    * @throws IllegalArgumentException
+    *            if the field is not a valid date
+    */
+   static long parseField(IsoDateParser parser, CharSequence line,
+         int start, int end, BulkMetrics.Recorder recorder) {
+      while (start < end && line.charAt(start) <= ' ') {
+         start++;
+      }
+      while (end > start && line.charAt(end - 1) <= ' ') {
+         end--;
+      }
+      try {
+         if (recorder == null) {
+            return parser.parseInstant(line, start, end);
+         }
+         return recorder.parseInstant(parser, line, start, end);
+      } catch (IllegalArgumentException iae) {
+         throw new IllegalArgumentException("Invalid date \""
+               + line.subSequence(start, end) + "\"", iae);
+      }
+   }
+
+}
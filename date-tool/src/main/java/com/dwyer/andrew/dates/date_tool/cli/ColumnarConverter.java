@@ -0,0 +1,231 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import com.dwyer.andrew.dates.date_tool.DateMath;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+
+/**
+ * Converts between bulk mode text and columnar files, @see ColumnarFile.
+ * Text pairs become a pairs file of the epoch days of their local dates in
+ * the converter's zone, the default zone unless one is supplied; a pairs file
+ * becomes text lines of ISO dates, and a results file text lines of its
+ * values, as bulk mode writes them.
+ *
+ * @author dwyera
+ */
+class ColumnarConverter {
+
+   /** Bytes buffered per column while writing a pairs file. */
+   private static final int BUFFER_SIZE = 1 << 16;
+
+   private static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat
+         .date().withZoneUTC();
+
+   private final char delimiter;
+
+   private final DateTimeZone zone;
+
+   /**
+    * Instantiates a new converter.
+    *
+    * @param delimiter
+    *           the character separating fields on text lines
+    */
+   ColumnarConverter(char delimiter) {
+      this(delimiter, DateTimeZone.getDefault());
+   }
+
+   /**
+    * Instantiates a new converter reading text dates in the supplied zone.
+    *
+    * @param delimiter
+    *           the character separating fields on text lines
+    * @param zone
+    *           the zone whose local dates text pairs become
+    */
+   ColumnarConverter(char delimiter, DateTimeZone zone) {
+      this.delimiter = delimiter;
+      this.zone = zone;
+   }
+
+   /**
+    * Writes text pairs as a columnar pairs file. Each column is written to a
+    * file of its own as the text is read, then both are copied into place by
+    * the kernel once the number of rows is known.
+    *
+    * @param in
+    *           the text pairs
+    * @param pairs
+    *           the columnar pairs file written, replacing any existing file
+    * @param errors
+    *           receives a message per malformed line, which is skipped
+    * @return the number of malformed lines
+    * @throws IOException
+    *            if reading or writing fails
+    */
+   long toColumnar(BufferedReader in, Path pairs, Writer errors)
+         throws IOException {
+      IsoDateParser parser = new IsoDateParser(zone);
+      Path directory = pairs.toAbsolutePath().getParent();
+      Path startsFile = Files.createTempFile(directory, "starts", ".tmp");
+      Path endsFile = Files.createTempFile(directory, "ends", ".tmp");
+      try (FileChannel startsChannel = FileChannel.open(startsFile,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileChannel endsChannel = FileChannel.open(endsFile,
+                  StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         ByteBuffer starts = ByteBuffer.allocateDirect(BUFFER_SIZE).order(
+               ByteOrder.LITTLE_ENDIAN);
+         ByteBuffer ends = ByteBuffer.allocateDirect(BUFFER_SIZE).order(
+               ByteOrder.LITTLE_ENDIAN);
+         long rows = 0;
+         long lineNumber = 0;
+         long malformed = 0;
+
+         String line;
+         while ((line = in.readLine()) != null) {
+            lineNumber++;
+            int startDay;
+            int endDay;
+            try {
+               int split = BulkProcessor.dateSplit(line, delimiter, false);
+               startDay = parseDay(parser, line, 0, split);
+               endDay = parseDay(parser, line, split + 1, line.length());
+            } catch (IllegalArgumentException iae) {
+               malformed++;
+               BulkProcessor.reportMalformed(lineNumber, iae, errors);
+               continue;
+            }
+            if (!starts.hasRemaining()) {
+               drain(starts, startsChannel);
+               drain(ends, endsChannel);
+            }
+            starts.putInt(startDay);
+            ends.putInt(endDay);
+            rows++;
+         }
+         drain(starts, startsChannel);
+         drain(ends, endsChannel);
+
+         try (ColumnarFile out = ColumnarFile.create(pairs,
+               ColumnarFile.PAIRS, rows, new int[] { ColumnarFile.START,
+                     ColumnarFile.END })) {
+            copy(startsChannel, out, 0);
+            copy(endsChannel, out, 1);
+         }
+         errors.flush();
+         return malformed;
+      } finally {
+         Files.deleteIfExists(startsFile);
+         Files.deleteIfExists(endsFile);
+      }
+   }
+
+   /**
+    * Writes a columnar pairs or results file as text lines.
+    *
+    * @param columnar
+    *           the columnar file
+    * @param out
+    *           receives one line per row
+    * @return the number of rows
+    * @throws IOException
+    *            if the file is not a valid columnar file, or reading or
+    *            writing fails
+    */
+   long toText(Path columnar, Writer out) throws IOException {
+      try (ColumnarFile in = ColumnarFile.open(columnar)) {
+         int columns = in.getColumns();
+         boolean pairs = in.getValueSize() == ColumnarFile.PAIRS;
+         IntBuffer[] days = new IntBuffer[columns];
+         LongBuffer[] values = new LongBuffer[columns];
+         StringBuilder line = new StringBuilder(64);
+
+         long rows = in.getRows();
+         int windowSize = ColumnarProcessor.WINDOW_ROWS;
+         for (long window = 0; window < rows; window += windowSize) {
+            int windowRows = (int) Math.min(windowSize, rows - window);
+            for (int c = 0; c < columns; c++) {
+               if (pairs) {
+                  days[c] = in.mapInts(c, window, windowRows,
+                        MapMode.READ_ONLY);
+               } else {
+                  values[c] = in.mapLongs(c, window, windowRows,
+                        MapMode.READ_ONLY);
+               }
+            }
+
+            for (int row = 0; row < windowRows; row++) {
+               line.setLength(0);
+               for (int c = 0; c < columns; c++) {
+                  if (c > 0) {
+                     line.append(delimiter);
+                  }
+                  if (pairs) {
+                     DATE_FORMAT.printTo(line, days[c].get(row)
+                           * DateMath.MILLIS_PER_DAY);
+                  } else {
+                     line.append(values[c].get(row));
+                  }
+               }
+               line.append('\n');
+               out.append(line);
+            }
+         }
+         out.flush();
+         return rows;
+      }
+   }
+
+   /**
+    * Parses the field between start and end to the epoch day of its local
+    * date, which must fit a pairs file's int column.
+    */
+   private int parseDay(IsoDateParser parser, String line, int start, int end) {
+      long day = DateMath.toEpochDay(BulkProcessor.parseField(parser, line,
+            start, end, null), zone);
+      if (day != (int) day) {
+         throw new IllegalArgumentException("Date out of range \""
+               + line.substring(start, end).trim() + "\"");
+      }
+      return (int) day;
+   }
+
+   private static void drain(ByteBuffer buffer, FileChannel channel)
+         throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+         channel.write(buffer);
+      }
+      buffer.clear();
+   }
+
+   /**
+    * Copies a whole column file into its place in the columnar file.
+    */
+   private static void copy(FileChannel column, ColumnarFile out, int index)
+         throws IOException {
+      long length = column.size();
+      long copied = 0;
+      while (copied < length) {
+         copied += out.getChannel().transferFrom(column.position(copied),
+               out.offset(index, copied / ColumnarFile.PAIRS), length - copied);
+      }
+   }
+
+}
@@ -0,0 +1,307 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A binary columnar file of bulk mode pairs or results. All values are
+ * little-endian. The header is
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic, the ASCII bytes DTCF
+ *      4     2  version, 1
+ *      6     2  value size, 4 for an int32 pairs file, 8 for an int64 results file
+ *      8     8  rows
+ *     16     4  columns
+ *     20     4  header length, a multiple of 8
+ *     24  4 * columns  column tags
+ * </pre>
+ *
+ * zero padded to the header length. The columns follow one after another,
+ * each holding one value per row, so column c starts at header length + c *
+ * rows * value size and every value is aligned to its size.
+ *
+ * A pairs file has two int32 columns, tagged START and END, of epoch days
+ * (days since 1970-01-01). A results file has one int64 column per
+ * operation, tagged with the operation's ordinal times 256 plus the
+ * ResultUnit's ordinal.
+ *
+ * Columns are read and written through memory mapped windows of the file, so
+ * values move between the page cache and the caller's arrays without passing
+ * through any intermediate buffer.
+ *
+ * @author dwyera
+ */
+class ColumnarFile implements Closeable {
+
+   /** The value size of a pairs file. */
+   static final int PAIRS = 4;
+
+   /** The value size of a results file. */
+   static final int RESULTS = 8;
+
+   /** The tag of a pairs file's start date column. */
+   static final int START = 0;
+
+   /** The tag of a pairs file's end date column. */
+   static final int END = 1;
+
+   private static final byte[] MAGIC = "DTCF".getBytes(StandardCharsets.US_ASCII);
+
+   private static final int VERSION = 1;
+
+   /** The size of the header before the column tags. */
+   private static final int FIXED_HEADER = 24;
+
+   /** The most columns a file may declare. */
+   private static final int MAX_COLUMNS = 1024;
+
+   private final FileChannel channel;
+
+   private final int valueSize;
+
+   private final long rows;
+
+   private final int[] tags;
+
+   private final int headerLength;
+
+   private ColumnarFile(FileChannel channel, int valueSize, long rows,
+         int[] tags) {
+      this.channel = channel;
+      this.valueSize = valueSize;
+      this.rows = rows;
+      this.tags = tags;
+      this.headerLength = headerLength(tags.length);
+   }
+
+   /**
+    * Opens an existing file for reading.
+    *
+    * @param path
+    *           the file
+    * @return the open file
+    * @throws IOException
+    *            if the file cannot be read or is not a valid columnar file
+    */
+   static ColumnarFile open(Path path) throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+         ByteBuffer header = readFully(channel, 0, FIXED_HEADER);
+         byte[] magic = new byte[MAGIC.length];
+         header.get(magic);
+         if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException(path + " is not a columnar file");
+         }
+         int version = header.getShort();
+         int valueSize = header.getShort();
+         long rows = header.getLong();
+         int columns = header.getInt();
+         int headerLength = header.getInt();
+         if (version != VERSION) {
+            throw new IOException(path + " has unsupported version " + version);
+         }
+         if ((valueSize != PAIRS && valueSize != RESULTS) || rows < 0
+               || columns < 0 || columns > MAX_COLUMNS
+               || headerLength != headerLength(columns)
+               || (valueSize == PAIRS && columns != 2)) {
+            throw new IOException(path + " has a malformed header");
+         }
+         long available = (channel.size() - headerLength) / valueSize;
+         if (available < 0 || columns > 0 && available / columns < rows) {
+            throw new IOException(path + " is truncated");
+         }
+
+         ByteBuffer tagBytes = readFully(channel, FIXED_HEADER, 4 * columns);
+         int[] tags = new int[columns];
+         tagBytes.asIntBuffer().get(tags);
+         return new ColumnarFile(channel, valueSize, rows, tags);
+      } catch (IOException | RuntimeException e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Creates a file, replacing any existing one, sized to hold the columns.
+    *
+    * @param path
+    *           the file
+    * @param valueSize
+    *           PAIRS or RESULTS
+    * @param rows
+    *           the number of rows
+    * @param tags
+    *           the tag of each column
+    * @return the open file, its columns zero until written
+    * @throws IOException
+    *            if the file cannot be written
+    */
+   static ColumnarFile create(Path path, int valueSize, long rows, int[] tags)
+         throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+      try {
+         ColumnarFile file = new ColumnarFile(channel, valueSize, rows,
+               tags.clone());
+         file.writeHeader();
+         return file;
+      } catch (IOException | RuntimeException e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Returns whether the file starts with the columnar file magic.
+    */
+   static boolean isColumnar(Path path) throws IOException {
+      try (InputStream in = Files.newInputStream(path)) {
+         return Arrays.equals(MAGIC, in.readNBytes(MAGIC.length));
+      }
+   }
+
+   /** Returns PAIRS or RESULTS. */
+   int getValueSize() {
+      return valueSize;
+   }
+
+   long getRows() {
+      return rows;
+   }
+
+   int getColumns() {
+      return tags.length;
+   }
+
+   int getTag(int column) {
+      return tags[column];
+   }
+
+   /**
+    * Maps rows of an int32 column.
+    *
+    * @param column
+    *           the column index
+    * @param fromRow
+    *           the first row mapped
+    * @param count
+    *           the number of rows mapped
+    * @param mode
+    *           READ_ONLY or READ_WRITE
+    * @return the rows, little-endian, position 0 at fromRow
+    * @throws IOException
+    *            if the rows cannot be mapped
+    */
+   IntBuffer mapInts(int column, long fromRow, int count, MapMode mode)
+         throws IOException {
+      return map(column, fromRow, count, PAIRS, mode).asIntBuffer();
+   }
+
+   /**
+    * Maps rows of an int64 column.
+    *
+    * @param column
+    *           the column index
+    * @param fromRow
+    *           the first row mapped
+    * @param count
+    *           the number of rows mapped
+    * @param mode
+    *           READ_ONLY or READ_WRITE
+    * @return the rows, little-endian, position 0 at fromRow
+    * @throws IOException
+    *            if the rows cannot be mapped
+    */
+   LongBuffer mapLongs(int column, long fromRow, int count, MapMode mode)
+         throws IOException {
+      return map(column, fromRow, count, RESULTS, mode).asLongBuffer();
+   }
+
+   /**
+    * Returns the channel of the file, positioned nowhere in particular, for
+    * writing columns in bulk.
+    */
+   FileChannel getChannel() {
+      return channel;
+   }
+
+   /**
+    * Returns the offset of a row of a column in the file.
+    */
+   long offset(int column, long row) {
+      return headerLength + (column * rows + row) * valueSize;
+   }
+
+   @Override
+   public void close() throws IOException {
+      channel.close();
+   }
+
+   private ByteBuffer map(int column, long fromRow, int count, int size,
+         MapMode mode) throws IOException {
+      if (size != valueSize) {
+         throw new IllegalStateException("Columns hold " + valueSize
+               + " byte values");
+      }
+      if (column < 0 || column >= tags.length || fromRow < 0 || count < 0
+            || fromRow + count > rows) {
+         throw new IndexOutOfBoundsException("Rows " + fromRow + " to "
+               + (fromRow + count) + " of column " + column);
+      }
+      return channel.map(mode, offset(column, fromRow), (long) count * size)
+            .order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   private void writeHeader() throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(headerLength).order(
+            ByteOrder.LITTLE_ENDIAN);
+      header.put(MAGIC).putShort((short) VERSION).putShort((short) valueSize)
+            .putLong(rows).putInt(tags.length).putInt(headerLength);
+      for (int tag : tags) {
+         header.putInt(tag);
+      }
+      header.clear();
+      while (header.hasRemaining()) {
+         channel.write(header, header.position());
+      }
+
+      // extend the file to its full length so every column can be mapped
+      long length = offset(tags.length, 0);
+      if (length > headerLength) {
+         channel.write(ByteBuffer.allocate(1), length - 1);
+      }
+   }
+
+   private static int headerLength(int columns) {
+      return (FIXED_HEADER + 4 * columns + 7) & ~7;
+   }
+
+   private static ByteBuffer readFully(FileChannel channel, long position,
+         int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(length).order(
+            ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer, position + buffer.position()) < 0) {
+            throw new IOException("Columnar file header is truncated");
+         }
+      }
+      buffer.flip();
+      return buffer;
+   }
+
+}
@@ -0,0 +1,125 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Applies the selected operations to every pair of a columnar pairs file and
+ * writes a columnar results file with one column per operation, @see
+ * ColumnarFile. Both files are mapped a window of rows at a time, and each
+ * window is computed a batch at a time through the DateMath batch methods,
+ * so memory use is constant regardless of the number of rows.
+ *
+ * Pairs are whole days, so results match bulk mode for dates without a time
+ * of day.
+ *
+ * @author dwyera
+ */
+class ColumnarProcessor {
+
+   /** Rows mapped at once, 16MB of each pairs column. */
+   static final int WINDOW_ROWS = 1 << 22;
+
+   /** Rows computed at once, small enough that the arrays stay in L2. */
+   static final int BATCH_ROWS = 1 << 12;
+
+   private final BulkOperation[] operations;
+
+   private final ResultUnit resultUnit;
+
+   private final BusinessCalendar calendar;
+
+   /**
+    * Instantiates a new columnar processor.
+    *
+    * @param operations
+    *           the operations applied to each pair, in column order
+    * @param resultUnit
+    *           the unit results are returned in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    */
+   ColumnarProcessor(List<BulkOperation> operations, ResultUnit resultUnit,
+         BusinessCalendar calendar) {
+      this.operations = operations.toArray(new BulkOperation[operations
+            .size()]);
+      this.resultUnit = resultUnit;
+      this.calendar = calendar;
+   }
+
+   /**
+    * Processes every pair of the input file.
+    *
+    * @param pairs
+    *           the columnar pairs file
+    * @param results
+    *           the columnar results file written, replacing any existing file
+    * @return the number of rows processed
+    * @throws IOException
+    *            if the pairs file is not a valid pairs file, or reading or
+    *            writing fails
+    */
+   long process(Path pairs, Path results) throws IOException {
+      try (ColumnarFile in = ColumnarFile.open(pairs)) {
+         if (in.getValueSize() != ColumnarFile.PAIRS) {
+            throw new IOException(pairs + " is not a columnar pairs file");
+         }
+         int[] tags = new int[operations.length];
+         for (int i = 0; i < operations.length; i++) {
+            tags[i] = operations[i].ordinal() * 256 + resultUnit.ordinal();
+         }
+         try (ColumnarFile out = ColumnarFile.create(results,
+               ColumnarFile.RESULTS, in.getRows(), tags)) {
+            process(in, out);
+         }
+         return in.getRows();
+      }
+   }
+
+   private void process(ColumnarFile in, ColumnarFile out) throws IOException {
+      int startColumn = in.getTag(0) == ColumnarFile.START ? 0 : 1;
+      int endColumn = 1 - startColumn;
+      if (in.getTag(startColumn) != ColumnarFile.START
+            || in.getTag(endColumn) != ColumnarFile.END) {
+         throw new IOException("Columnar pairs file has columns tagged "
+               + in.getTag(0) + " and " + in.getTag(1));
+      }
+
+      int[] starts = new int[BATCH_ROWS];
+      int[] ends = new int[BATCH_ROWS];
+      long[] values = new long[BATCH_ROWS];
+      LongBuffer[] results = new LongBuffer[operations.length];
+
+      long rows = in.getRows();
+      for (long window = 0; window < rows; window += WINDOW_ROWS) {
+         int windowRows = (int) Math.min(WINDOW_ROWS, rows - window);
+         IntBuffer startDays = in.mapInts(startColumn, window, windowRows,
+               MapMode.READ_ONLY);
+         IntBuffer endDays = in.mapInts(endColumn, window, windowRows,
+               MapMode.READ_ONLY);
+         for (int i = 0; i < operations.length; i++) {
+            results[i] = out.mapLongs(i, window, windowRows,
+                  MapMode.READ_WRITE);
+         }
+
+         for (int batch = 0; batch < windowRows; batch += BATCH_ROWS) {
+            int length = Math.min(BATCH_ROWS, windowRows - batch);
+            startDays.get(starts, 0, length);
+            endDays.get(ends, 0, length);
+            for (int i = 0; i < operations.length; i++) {
+               operations[i].apply(starts, ends, values, length, resultUnit,
+                     calendar);
+               results[i].put(values, 0, length);
+            }
+         }
+      }
+   }
+
+}
@@ -0,0 +1,205 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.Coverage;
+import com.dwyer.andrew.dates.date_tool.CoverageAggregator;
+import com.dwyer.andrew.dates.date_tool.DateMath;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+
+/**
+ * Streams delimited date ranges, one per line as start and end date
+ * optionally preceded by a group key, and writes one line per group with the
+ * coverage of its ranges. Groups are runs of adjacent lines with the same
+ * key, as sorted input has, so only the current group's ranges are held.
+ *
+ * A range covers the local dates from its start date up to but excluding its
+ * end date in the processor's zone, the default zone unless one is supplied;
+ * times of day are ignored. Each group's line holds its key, when it has one,
+ * then the selected operations' totals over the union of its ranges, then
+ * over their intersection, then over the gaps between them, separated by the
+ * delimiter. A line that cannot be processed is reported with its line
+ * number to the error writer and skipped.
+ *
+ * @author dwyera
+ */
+class CoverageProcessor {
+
+   private final BulkOperation[] operations;
+
+   private final char delimiter;
+
+   private final ResultUnit resultUnit;
+
+   private final BusinessCalendar calendar;
+
+   private final DateTimeZone zone;
+
+   private final IsoDateParser parser;
+
+   private final CoverageAggregator aggregator = new CoverageAggregator(1024);
+
+   /**
+    * Instantiates a new coverage processor.
+    *
+    * @param operations
+    *           the totals written for each part of the coverage, in output
+    *           order
+    * @param delimiter
+    *           the character separating fields on input and output lines
+    * @param resultUnit
+    *           the unit totals are returned in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    */
+   CoverageProcessor(List<BulkOperation> operations, char delimiter,
+         ResultUnit resultUnit, BusinessCalendar calendar) {
+      this(operations, delimiter, resultUnit, calendar, DateTimeZone
+            .getDefault());
+   }
+
+   /**
+    * Instantiates a new coverage processor reading dates in the supplied
+    * zone.
+    *
+    * @param operations
+    *           the totals written for each part of the coverage, in output
+    *           order
+    * @param delimiter
+    *           the character separating fields on input and output lines
+    * @param resultUnit
+    *           the unit totals are returned in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    * @param zone
+    *           the zone whose local dates ranges cover
+    * @throws IllegalArgumentException
+    *            if the unit is a calendar unit, which totals of days cannot
+    *            be given in
+    */
+   CoverageProcessor(List<BulkOperation> operations, char delimiter,
+         ResultUnit resultUnit, BusinessCalendar calendar, DateTimeZone zone) {
+      DateMath.checkDayUnit(resultUnit);
+      this.operations = operations.toArray(new BulkOperation[operations
+            .size()]);
+      this.delimiter = delimiter;
+      this.resultUnit = resultUnit;
+      this.calendar = calendar;
+      this.zone = zone;
+      this.parser = new IsoDateParser(zone);
+   }
+
+   /**
+    * Processes every line of the input.
+    *
+    * @param in
+    *           the input ranges
+    * @param out
+    *           receives one line per group
+    * @param errors
+    *           receives a message per malformed input line
+    * @return the number of malformed lines
+    * @throws IOException
+    *            if reading or writing fails
+    */
+   long process(BufferedReader in, Writer out, Writer errors)
+         throws IOException {
+      StringBuilder result = new StringBuilder(64);
+      String key = null;
+      long lineNumber = 0;
+      long malformed = 0;
+
+      String line;
+      while ((line = in.readLine()) != null) {
+         lineNumber++;
+         int keyLength;
+         long startDay;
+         long endDay;
+         try {
+            int split = BulkProcessor.dateSplit(line, delimiter, true);
+            int keyEnd = BulkProcessor.keyEnd(line, delimiter, split);
+            startDay = DateMath.toEpochDay(BulkProcessor.parseField(parser,
+                  line, keyEnd + 1, split, null), zone);
+            endDay = DateMath.toEpochDay(BulkProcessor.parseField(parser,
+                  line, split + 1, line.length(), null), zone);
+            keyLength = Math.max(keyEnd, 0);
+         } catch (IllegalArgumentException iae) {
+            malformed++;
+            BulkProcessor.reportMalformed(lineNumber, iae, errors);
+            continue;
+         }
+
+         // a failure writing the previous group is not this line's fault
+         if (key == null || key.length() != keyLength
+               || !line.regionMatches(0, key, 0, keyLength)) {
+            if (key != null) {
+               writeGroup(key, result, out);
+            }
+            key = line.substring(0, keyLength);
+         }
+         try {
+            aggregator.add(startDay, endDay);
+         } catch (IllegalArgumentException iae) {
+            malformed++;
+            BulkProcessor.reportMalformed(lineNumber, iae, errors);
+         }
+      }
+      if (key != null) {
+         writeGroup(key, result, out);
+      }
+
+      out.flush();
+      errors.flush();
+      return malformed;
+   }
+
+   /**
+    * Writes the coverage of the current group and clears it.
+    */
+   private void writeGroup(String key, StringBuilder result, Writer out)
+         throws IOException {
+      Coverage coverage = aggregator.aggregate(calendar);
+      aggregator.clear();
+
+      result.setLength(0);
+      if (key.length() > 0) {
+         result.append(key);
+      }
+      appendTotals(coverage.getUnion(), result, key.length() > 0);
+      appendTotals(coverage.getIntersection(), result, true);
+      appendTotals(coverage.getGaps(), result, true);
+      result.append('\n');
+      out.append(result);
+   }
+
+   private void appendTotals(Coverage.Totals totals, StringBuilder result,
+         boolean delimit) {
+      for (int i = 0; i < operations.length; i++) {
+         if (delimit || i > 0) {
+            result.append(delimiter);
+         }
+         result.append(total(totals, operations[i]));
+      }
+   }
+
+   private long total(Coverage.Totals totals, BulkOperation operation) {
+      switch (operation) {
+      case DAYS:
+         return totals.getDays(resultUnit);
+      case WEEKDAYS:
+         return totals.getWeekdays(resultUnit);
+      case COMPLETE_WEEKS:
+         return totals.getCompleteWeeks(resultUnit);
+      default:
+         return totals.getBusinessDays(resultUnit);
+      }
+   }
+
+}
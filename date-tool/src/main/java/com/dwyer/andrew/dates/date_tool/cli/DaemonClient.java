@@ -0,0 +1,215 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.TimeZone;
+
+/**
+ * Hands a DateToolCLI invocation to a running DateToolDaemon over its Unix
+ * domain socket, so the invocation skips option setup, zone loading and
+ * interpreted calculation. Kept free of Joda and commons-cli so forwarding
+ * loads as few classes as possible.
+ *
+ * The request is the client's working directory, its default time zone ID
+ * and its arguments. The response is a sequence of frames, each a type byte,
+ * a length and that many bytes of standard output or standard error, ended by
+ * an exit frame. A daemon that cannot use the zone answers with a refused
+ * frame alone, and the invocation runs in process.
+ *
+ * The socket's directory must belong to the current user and be reachable by
+ * no one else, or the client never connects and the daemon never binds: a
+ * socket another user could create would hand them the invocation and let
+ * them forge its output.
+ *
+ * @author dwyera
+ */
+final class DaemonClient {
+
+   /** Frame of standard output bytes. */
+   static final byte STDOUT = 'O';
+
+   /** Frame of standard error bytes. */
+   static final byte STDERR = 'E';
+
+   /** Final frame of a response, with no length or bytes. */
+   static final byte EXIT = 'X';
+
+   /**
+    * Only frame of a response to a request the daemon cannot run, with no
+    * length or bytes.
+    */
+   static final byte REFUSED = 'R';
+
+   /** The only permissions a socket directory may have. */
+   private static final EnumSet<PosixFilePermission> PRIVATE = EnumSet.of(
+         PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+         PosixFilePermission.OWNER_EXECUTE);
+
+   private DaemonClient() {
+   }
+
+   /**
+    * Returns the current user's daemon socket: date-tool.sock in
+    * XDG_RUNTIME_DIR when set, otherwise daemon.sock in a date-tool-user
+    * directory under the temporary directory.
+    */
+   static Path socketPath() {
+      String runtime = System.getenv("XDG_RUNTIME_DIR");
+      if (runtime != null && !runtime.isEmpty()) {
+         return Paths.get(runtime, "date-tool.sock");
+      }
+      return Paths.get(System.getProperty("java.io.tmpdir"),
+            "date-tool-" + System.getProperty("user.name"), "daemon.sock");
+   }
+
+   /**
+    * Returns whether a socket directory is safe to use: a directory, not a
+    * link, owned by the current user and, where the file system has POSIX
+    * permissions, with mode 700.
+    *
+    * @param directory
+    *           the socket's directory
+    * @return false if the directory is missing, another user could reach it
+    *         or its attributes cannot be read
+    */
+   static boolean isPrivateDirectory(Path directory) {
+      try {
+         if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+         }
+         UserPrincipal user = directory.getFileSystem()
+               .getUserPrincipalLookupService()
+               .lookupPrincipalByName(System.getProperty("user.name"));
+         if (!user.equals(Files.getOwner(directory,
+               LinkOption.NOFOLLOW_LINKS))) {
+            return false;
+         }
+         PosixFileAttributeView view = Files.getFileAttributeView(directory,
+               PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+         return view == null
+               || PRIVATE.equals(view.readAttributes().permissions());
+      } catch (IOException ioe) {
+         return false;
+      }
+   }
+
+   /**
+    * Forwards the invocation to the current user's daemon if one is running.
+    *
+    * @see #forward(String[], Path, OutputStream, OutputStream)
+    */
+   static boolean forward(String[] args, OutputStream out, OutputStream err)
+         throws IOException {
+      return forward(args, socketPath(), out, err);
+   }
+
+   /**
+    * Forwards the invocation in the default time zone to the daemon listening
+    * on the socket.
+    *
+    * @see #forward(String[], String, Path, OutputStream, OutputStream)
+    */
+   static boolean forward(String[] args, Path socket, OutputStream out,
+         OutputStream err) throws IOException {
+      return forward(args, TimeZone.getDefault().getID(), socket, out, err);
+   }
+
+   /**
+    * Forwards the invocation to the daemon listening on the socket, copying
+    * its output to out and err. Invocations that read standard input, start
+    * a daemon or serve HTTP always run in process, as do those whose socket
+    * directory is not private or whose zone the daemon cannot use.
+    *
+    * @param args
+    *           the command line arguments
+    * @param zone
+    *           the ID of the time zone dates without an offset are in
+    * @param socket
+    *           the daemon's socket
+    * @param out
+    *           receives the invocation's standard output
+    * @param err
+    *           receives the invocation's standard error
+    * @return true if the daemon ran the invocation, false if it must run in
+    *         process
+    * @throws IOException
+    *            if the daemon fails after writing some output
+    */
+   static boolean forward(String[] args, String zone, Path socket,
+         OutputStream out, OutputStream err) throws IOException {
+      for (String arg : args) {
+         if ("-".equals(arg) || arg.startsWith("--daemon")
+               || arg.startsWith("--serve")) {
+            return false;
+         }
+      }
+      if (!Files.exists(socket)
+            || !isPrivateDirectory(socket.toAbsolutePath().getParent())) {
+         return false;
+      }
+
+      boolean written = false;
+      try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress
+            .of(socket))) {
+         DataOutputStream request = new DataOutputStream(
+               new BufferedOutputStream(Channels.newOutputStream(channel)));
+         request.writeUTF(new File("").getAbsolutePath());
+         request.writeUTF(zone);
+         request.writeInt(args.length);
+         for (String arg : args) {
+            request.writeUTF(arg);
+         }
+         request.flush();
+
+         DataInputStream response = new DataInputStream(
+               new BufferedInputStream(Channels.newInputStream(channel)));
+         byte[] buffer = new byte[8192];
+         byte type = response.readByte();
+         if (type == REFUSED) {
+            return false;
+         }
+         while (type != EXIT) {
+            OutputStream target = type == STDERR ? err : out;
+            int remaining = response.readInt();
+            while (remaining > 0) {
+               int read = response.read(buffer, 0,
+                     Math.min(buffer.length, remaining));
+               if (read < 0) {
+                  throw new EOFException();
+               }
+               target.write(buffer, 0, read);
+               remaining -= read;
+               written = true;
+            }
+            type = response.readByte();
+         }
+         out.flush();
+         err.flush();
+         return true;
+      } catch (IOException ioe) {
+         if (written) {
+            throw new IOException("Lost connection to the daemon", ioe);
+         }
+         // no daemon answered, so the invocation runs in process
+         return false;
+      }
+   }
+
+}
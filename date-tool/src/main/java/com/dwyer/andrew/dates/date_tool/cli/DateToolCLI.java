@@ -1,6 +1,32 @@
 package com.dwyer.andrew.dates.date_tool.cli;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
@@ -10,47 +36,210 @@ import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
+import org.joda.time.DateTimeZone;
 
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.CalendarTable;
+import com.dwyer.andrew.dates.date_tool.CalendarWatcher;
 import com.dwyer.andrew.dates.date_tool.DateTool;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+import com.dwyer.andrew.dates.date_tool.metrics.Metrics;
 
 public class DateToolCLI {
 
    private final static String dateTimeDescription = "Argument must be an ISO date time string with optional time E.g. 1997-07-16T19:20:30+01:00";
-   private static HelpFormatter formatter;
-   private static Options options;
+   private final static int BULK_BUFFER_SIZE = 1 << 16;
+   private final static ThreadLocal<IsoDateParser> parsers = new ThreadLocal<IsoDateParser>();
+   private final HelpFormatter formatter = new HelpFormatter();
+   private final Options options = buildOptions();
+   private final PrintStream out;
+   private final PrintStream err;
+   private final File workingDirectory;
+   private final DateTimeZone zone;
 
-   @SuppressWarnings("static-access")
    public static void main(String[] args) throws IOException {
-      // create the command line parser
-      CommandLineParser parser = new BasicParser();
+      if (DaemonClient.forward(args, System.out, System.err)) {
+         return;
+      }
+      new DateToolCLI(System.out, System.err, null).run(args);
+   }
+
+   /**
+    * Instantiates a CLI writing to the supplied streams.
+    *
+    * @param out
+    *           receives results and messages
+    * @param err
+    *           receives bulk mode malformed line reports
+    * @param workingDirectory
+    *           the directory relative file names are resolved against, null
+    *           for the process's working directory
+    */
+   DateToolCLI(PrintStream out, PrintStream err, File workingDirectory) {
+      this(out, err, workingDirectory, DateTimeZone.getDefault());
+   }
+
+   /**
+    * Instantiates a CLI writing to the supplied streams that reads dates
+    * without an offset, and counts day boundaries, in the supplied zone.
+    *
+    * @param out
+    *           receives results and messages
+    * @param err
+    *           receives bulk mode malformed line reports
+    * @param workingDirectory
+    *           the directory relative file names are resolved against, null
+    *           for the process's working directory
+    * @param zone
+    *           the zone dates are in, in place of the default zone
+    */
+   DateToolCLI(PrintStream out, PrintStream err, File workingDirectory,
+         DateTimeZone zone) {
+      this.out = out;
+      this.err = err;
+      this.workingDirectory = workingDirectory;
+      this.zone = zone;
+   }
+
+   /**
+    * Builds the command line options. OptionBuilder keeps its state in static
+    * fields, so building is serialized for CLIs run concurrently by the
+    * daemon.
+    */
+   @SuppressWarnings("static-access")
+   private static Options buildOptions() {
+      synchronized (OptionBuilder.class) {
+         // create the Options
+         Options options = new Options();
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "The start date to search from. Required unless input is used. "
+                           + dateTimeDescription).withLongOpt("startDate").hasArg()
+               .withArgName("startDate").create("x"));
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "The end date to search to. Required unless only plusBusinessDays is used. "
+                           + dateTimeDescription).withLongOpt("endDate").hasArg()
+               .withArgName("endDate").create("y"));
+
+         options.addOption("h", "help", false, "Prints this Help");
+         options.addOption("a", "daysBetween", false,
+               "Calculates the number of days between the two dates");
+
+         options.addOption("b", "weekdaysBetween", false,
+               "Calculates the number of weekdays between the two dates");
+
+         options.addOption("c", "weeksBetween", false,
+               "Calculates the number of complete weeks between the two dates");
+
+         options.addOption("d", "businessDaysBetween", false,
+               "Calculates the number of business days between the two dates");
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Business calendar file of holidays and weekend days used by businessDaysBetween. Defaults to a Saturday and Sunday weekend with no holidays. In serve mode the file is watched and changes are loaded without restarting")
+               .withLongOpt("calendar").hasArg().withArgName("file").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Maps prebuilt calendars from a table file, shared between processes through the page cache. The calendar option then names a calendar in the table")
+               .withLongOpt("calendarTable").hasArg().withArgName("file")
+               .create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Builds a calendar table file from the calendar files given as arguments, each named after its file without the extension")
+               .withLongOpt("buildCalendarTable").hasArg()
+               .withArgName("file").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Calculates the date N business days after the start date (before it when N is negative), using the calendar if supplied")
+               .withLongOpt("plusBusinessDays").hasArg().withArgName("N")
+               .create("p"));
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Bulk mode. Reads one start and end date pair per line from the file, or standard input for -, and writes one line of results per pair")
+               .withLongOpt("input").hasArg().withArgName("file|-").create("i"));
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "With input, reads date ranges as [key,]start,end and writes one line per run of lines with the same key: the key, then the selected operations' totals over the union of the ranges, their intersection and the gaps between them")
+               .withLongOpt("coverage").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "With input, reads date pairs as [key,]start,end and writes one line per key, in key order: the key, then for each selected operation the count, min, max, mean, median, p95 and p99 of its results and the count in each histogram bucket")
+               .withLongOpt("statistics").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "The histogram bucket upper bounds of statistics, ascending and separated by commas. Defaults to "
+                           + joinBounds(StatisticsProcessor.DEFAULT_BOUNDS))
+               .withLongOpt("buckets").hasArg().withArgName("bounds").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "With input, reads the input as a binary columnar pairs file and writes the selected operations' results to the file as a binary columnar results file")
+               .withLongOpt("binary").hasArg().withArgName("file").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "With input, converts the input between text and binary columnar files. Text pairs are written to the file as a binary pairs file; a binary pairs or results file is written to the file, or standard output for -, as text lines")
+               .withLongOpt("convert").hasArg().withArgName("file|-").create());
+
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "The field delimiter of bulk mode input and output lines. Defaults to ,")
+               .withLongOpt("delimiter").hasArg().withArgName("char").create());
 
-      // create the Options
-      options = new Options();
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "The number of threads bulk mode uses to process an input file. Defaults to 1")
+               .withLongOpt("threads").hasArg().withArgName("N").create());
 
-      options.addOption(OptionBuilder
-            .withDescription(
-                  "The start date to search from. " + dateTimeDescription)
-            .isRequired().withLongOpt("startDate").hasArg()
-            .withArgName("startDate").create("x"));
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Caches up to N results in input or serve mode, for inputs that repeat the same pairs. Bulk mode reports the cache counters on standard error")
+               .withLongOpt("cache").hasArg().withArgName("N").create());
 
-      options.addOption(OptionBuilder
-            .withDescription(
-                  "The end date to search to. " + dateTimeDescription)
-            .isRequired().withLongOpt("endDate").hasArg()
-            .withArgName("endDate").create("y"));
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Records per operation call counts, latency and date range histograms and parse failures in input or serve mode, publishes them as JMX MBeans and writes them to standard error every N seconds and when input mode ends. 0 writes them only when input mode ends")
+               .withLongOpt("metrics").hasArg().withArgName("seconds").create());
 
-      options.addOption("h", "help", false, "Prints this Help");
-      options.addOption("a", "daysBetween", false,
-            "Calculates the number of days between the two dates");
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Serves daysBetween, weekdaysBetween, weeksBetween and businessDaysBetween queries and batch POSTs over HTTP on the local port until stopped")
+               .withLongOpt("serve").hasArg().withArgName("port").create());
 
-      options.addOption("b", "weekdaysBetween", false,
-            "Calculates the number of weekdays between the two dates");
+         options.addOption(OptionBuilder
+               .withDescription(
+                     "Runs a daemon answering DateToolCLI invocations over a per user local socket, so they skip start up and warm up. Exits after the given idle minutes, default "
+                           + DateToolDaemon.DEFAULT_IDLE_MINUTES)
+               .withLongOpt("daemon").hasOptionalArg().withArgName("idleMinutes")
+               .create());
 
-      options.addOption("c", "weeksBetween", false,
-            "Calculates the number of complete weeks between the two dates");
+         return options;
+      }
+   }
 
-      formatter = new HelpFormatter();
+   /**
+    * Runs one invocation with the supplied arguments.
+    *
+    * @param args
+    *           the command line arguments
+    * @throws IOException
+    *            if bulk mode fails to read or write
+    */
+   void run(String[] args) throws IOException {
+      // create the command line parser
+      CommandLineParser parser = new BasicParser();
 
       try {
 
@@ -62,53 +251,603 @@ public class DateToolCLI {
             return;
          }
 
-         DateTool dateTool = buildDateTool(line);
+         if (line.hasOption("daemon")) {
+            runDaemon(line);
+            return;
+         }
+
+         if (line.hasOption("buildCalendarTable")) {
+            buildCalendarTable(line);
+            return;
+         }
+
+         if (line.hasOption("serve")) {
+            Supplier<BusinessCalendar> calendars = watchCalendar(line);
+            if (calendars != null) {
+               runServer(line, calendars);
+            }
+            return;
+         }
+
+         if (line.hasOption("convert")) {
+            if (!line.hasOption("input")) {
+               throw new ParseException("Missing required option: i");
+            }
+            runConvert(line);
+            return;
+         }
 
-         if(!line.hasOption("daysBetween") && !line.hasOption("weekdaysBetween") && !line.hasOption("weeksBetween")) {
-            System.out.println("Atleast one option must be supplied");
+         boolean calculatesDifference = line.hasOption("daysBetween")
+               || line.hasOption("weekdaysBetween")
+               || line.hasOption("weeksBetween")
+               || line.hasOption("businessDaysBetween");
+
+         if (!calculatesDifference && !line.hasOption("plusBusinessDays")) {
+            out.println("Atleast one option must be supplied");
             printHelp();
+            return;
+         }
+
+         BusinessCalendar calendar = null;
+         if (line.hasOption("businessDaysBetween")
+               || line.hasOption("plusBusinessDays")) {
+            calendar = loadCalendar(line);
+            if (calendar == null) {
+               return;
+            }
+         }
+
+         if (line.hasOption("input")) {
+            if (!calculatesDifference) {
+               out.println("Atleast one option must be supplied");
+               printHelp();
+               return;
+            }
+            if (line.hasOption("coverage")) {
+               runCoverage(line, calendar);
+            } else if (line.hasOption("statistics")) {
+               runStatistics(line, calendar);
+            } else if (line.hasOption("binary")) {
+               runBinary(line, calendar);
+            } else {
+               runBulk(line, calendar);
+            }
+            return;
+         }
+
+         if (!line.hasOption("startDate")) {
+            throw new ParseException("Missing required option: x");
+         }
+
+         if (calculatesDifference && !line.hasOption("endDate")) {
+            throw new ParseException("Missing required option: y");
+         }
+
+         if (line.hasOption("plusBusinessDays")) {
+            int businessDays = parseBusinessDays(line
+                  .getOptionValue("plusBusinessDays"));
+            DateTime startDate = parseDate(line.getOptionValue("startDate"),
+                  zone);
+            out.println("The date " + businessDays
+                  + " business days from the start date is "
+                  + DateTool.addBusinessDays(startDate, businessDays, calendar));
+         }
+
+         if (!calculatesDifference) {
+            return;
          }
 
+         DateTool dateTool = buildDateTool(line);
+
          if (line.hasOption("daysBetween")) {
-            System.out.println("The number of days between the two dates is "
+            out.println("The number of days between the two dates is "
                   + dateTool.calcDaysDifference());
          }
 
          if (line.hasOption("weekdaysBetween")) {
-            System.out
+            out
                   .println("The number of weekdays between the two dates is "
                         + dateTool.calcWeekdaysDifference());
          }
 
          if (line.hasOption("weeksBetween")) {
-            System.out
+            out
                   .println("The number of complete weeks between the two dates is "
                         + dateTool.calcCompleteWeeksDifference());
          }
 
+         if (line.hasOption("businessDaysBetween")) {
+            out
+                  .println("The number of business days between the two dates is "
+                        + dateTool.calcBusinessDaysDifference(calendar));
+         }
+
       } catch (ParseException exp) {
-         System.out.println(exp.getMessage());
+         out.println(exp.getMessage());
          printHelp();
       } catch (IllegalArgumentException iae) {
-         System.out
+         out
                .println("Your dates are formatted incorrectly.  Please use ISO date format");
          printDateFormat();
       }
 
    }
 
-   private static DateTime parseDate(String dateString)
+   /**
+    * Runs bulk mode over the input option's file or standard input, writing
+    * results to standard output and malformed line reports to standard error.
+    */
+   private void runBulk(CommandLine line, BusinessCalendar calendar)
+         throws IOException, ParseException {
+      List<BulkOperation> operations = selectedOperations(line);
+
+      ResultCache cache = parseCache(line);
+      long metricsSeconds = parseMetricsSeconds(line);
+      Metrics metrics = metricsSeconds < 0 ? null : new Metrics();
+      BulkProcessor processor = new BulkProcessor(operations,
+            parseDelimiter(line), ResultUnit.DEFAULT, calendar, cache, cache,
+            metrics == null ? null : new BulkMetrics(metrics), zone);
+
+      String input = line.getOptionValue("input");
+      int threads = parseThreads(line);
+      Writer errors = new BufferedWriter(new OutputStreamWriter(err,
+            StandardCharsets.UTF_8));
+
+      ScheduledExecutorService dumper = dumpMetrics(metrics, metricsSeconds);
+      try {
+         if (threads > 1 && !"-".equals(input)) {
+            File file = resolve(input);
+            if (!file.isFile()) {
+               out.println("Unable to read input " + input);
+               return;
+            }
+            new ParallelBulkProcessor(processor, threads,
+                  ParallelBulkProcessor.DEFAULT_CHUNK_SIZE).process(file,
+                  new BufferedOutputStream(out, BULK_BUFFER_SIZE), errors);
+            reportCache(cache, errors);
+            reportMetrics(metrics, errors);
+            return;
+         }
+
+         InputStream in;
+         try {
+            in = "-".equals(input) ? System.in : new FileInputStream(
+                  resolve(input));
+         } catch (FileNotFoundException fnfe) {
+            out.println("Unable to read input " + input + ": "
+                  + fnfe.getMessage());
+            return;
+         }
+         try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                  in, StandardCharsets.UTF_8), BULK_BUFFER_SIZE);
+            Writer results = new BufferedWriter(new OutputStreamWriter(out,
+                  StandardCharsets.UTF_8), BULK_BUFFER_SIZE);
+            processor.process(reader, results, errors);
+            reportCache(cache, errors);
+            reportMetrics(metrics, errors);
+         } finally {
+            if (in != System.in) {
+               in.close();
+            }
+         }
+      } finally {
+         if (dumper != null) {
+            dumper.shutdownNow();
+         }
+         if (metrics != null) {
+            metrics.unpublish();
+         }
+      }
+   }
+
+   /**
+    * Runs coverage mode over the input option's file or standard input,
+    * writing group totals to standard output and malformed line reports to
+    * standard error.
+    */
+   private void runCoverage(CommandLine line, BusinessCalendar calendar)
+         throws IOException, ParseException {
+      CoverageProcessor processor = new CoverageProcessor(
+            selectedOperations(line), parseDelimiter(line), ResultUnit.DEFAULT,
+            calendar, zone);
+
+      String input = line.getOptionValue("input");
+      InputStream in;
+      try {
+         in = "-".equals(input) ? System.in : new FileInputStream(
+               resolve(input));
+      } catch (FileNotFoundException fnfe) {
+         out.println("Unable to read input " + input + ": "
+               + fnfe.getMessage());
+         return;
+      }
+      try {
+         processor.process(new BufferedReader(new InputStreamReader(in,
+               StandardCharsets.UTF_8), BULK_BUFFER_SIZE), new BufferedWriter(
+               new OutputStreamWriter(out, StandardCharsets.UTF_8)),
+               new BufferedWriter(new OutputStreamWriter(err,
+                     StandardCharsets.UTF_8)));
+      } finally {
+         if (in != System.in) {
+            in.close();
+         }
+      }
+   }
+
+   /**
+    * Runs statistics mode over the input option's file or standard input,
+    * on the threads option's number of threads for a file, writing the
+    * statistics per key to standard output and malformed line reports to
+    * standard error.
+    */
+   private void runStatistics(CommandLine line, BusinessCalendar calendar)
+         throws IOException, ParseException {
+      StatisticsProcessor processor = new StatisticsProcessor(
+            selectedOperations(line), parseDelimiter(line), ResultUnit.DEFAULT,
+            calendar, parseBounds(line), zone);
+
+      String input = line.getOptionValue("input");
+      int threads = parseThreads(line);
+      Writer results = new BufferedWriter(new OutputStreamWriter(out,
+            StandardCharsets.UTF_8));
+      Writer errors = new BufferedWriter(new OutputStreamWriter(err,
+            StandardCharsets.UTF_8));
+      if (threads > 1 && !"-".equals(input)) {
+         File file = resolve(input);
+         if (!file.isFile()) {
+            out.println("Unable to read input " + input);
+            return;
+         }
+         processor.process(file, threads,
+               ParallelBulkProcessor.DEFAULT_CHUNK_SIZE, results, errors);
+         return;
+      }
+
+      InputStream in;
+      try {
+         in = "-".equals(input) ? System.in : new FileInputStream(
+               resolve(input));
+      } catch (FileNotFoundException fnfe) {
+         out.println("Unable to read input " + input + ": "
+               + fnfe.getMessage());
+         return;
+      }
+      try {
+         processor.process(new BufferedReader(new InputStreamReader(in,
+               StandardCharsets.UTF_8), BULK_BUFFER_SIZE), results, errors);
+      } finally {
+         if (in != System.in) {
+            in.close();
+         }
+      }
+   }
+
+   /**
+    * Runs the selected operations over the input option's columnar pairs
+    * file, writing the binary option's columnar results file.
+    */
+   private void runBinary(CommandLine line, BusinessCalendar calendar)
+         throws IOException {
+      String input = line.getOptionValue("input");
+      File file = resolve(input);
+      if (!file.isFile() || !ColumnarFile.isColumnar(file.toPath())) {
+         out.println("Unable to read input " + input
+               + ": not a binary columnar file");
+         return;
+      }
+      try {
+         new ColumnarProcessor(selectedOperations(line), ResultUnit.DEFAULT,
+               calendar).process(file.toPath(), resolve(
+               line.getOptionValue("binary")).toPath());
+      } catch (IOException ioe) {
+         out.println("Unable to process " + input + ": " + ioe.getMessage());
+      }
+   }
+
+   /**
+    * Converts the input option's file or standard input between text and
+    * binary columnar files, writing the convert option's file.
+    */
+   private void runConvert(CommandLine line) throws IOException,
+         ParseException {
+      ColumnarConverter converter = new ColumnarConverter(
+            parseDelimiter(line), zone);
+      String input = line.getOptionValue("input");
+      String output = line.getOptionValue("convert");
+      Writer errors = new BufferedWriter(new OutputStreamWriter(err,
+            StandardCharsets.UTF_8));
+
+      if (!"-".equals(input) && !resolve(input).isFile()) {
+         out.println("Unable to read input " + input);
+         return;
+      }
+      if (!"-".equals(input) && ColumnarFile.isColumnar(resolve(input)
+            .toPath())) {
+         OutputStream text = "-".equals(output) ? out : new FileOutputStream(
+               resolve(output));
+         try {
+            converter.toText(resolve(input).toPath(), new BufferedWriter(
+                  new OutputStreamWriter(text, StandardCharsets.UTF_8),
+                  BULK_BUFFER_SIZE));
+         } finally {
+            if (text != out) {
+               text.close();
+            }
+         }
+         return;
+      }
+
+      if ("-".equals(output)) {
+         throw new ParseException("convert needs a file to write binary pairs to");
+      }
+      InputStream in;
+      try {
+         in = "-".equals(input) ? System.in : new FileInputStream(
+               resolve(input));
+      } catch (FileNotFoundException fnfe) {
+         out.println("Unable to read input " + input + ": "
+               + fnfe.getMessage());
+         return;
+      }
+      try {
+         converter.toColumnar(new BufferedReader(new InputStreamReader(in,
+               StandardCharsets.UTF_8), BULK_BUFFER_SIZE), resolve(output)
+               .toPath(), errors);
+      } finally {
+         if (in != System.in) {
+            in.close();
+         }
+      }
+   }
+
+   /**
+    * Returns the operations selected by their options, in option order.
+    */
+   private static List<BulkOperation> selectedOperations(CommandLine line) {
+      List<BulkOperation> operations = new ArrayList<BulkOperation>();
+      for (BulkOperation operation : BulkOperation.values()) {
+         if (line.hasOption(operation.optionName)) {
+            operations.add(operation);
+         }
+      }
+      return operations;
+   }
+
+   /**
+    * Starts serving on the loopback address and the serve option's port. The
+    * server's threads keep the JVM running after main returns.
+    */
+   private void runServer(CommandLine line,
+         Supplier<BusinessCalendar> calendars)
+         throws IOException, ParseException {
+      String port = line.getOptionValue("serve");
+      int number;
+      try {
+         number = Integer.parseInt(port.trim());
+      } catch (NumberFormatException nfe) {
+         throw new ParseException("serve port must be a whole number: " + port);
+      }
+      if (number < 0 || number > 0xFFFF) {
+         throw new ParseException("serve port out of range: " + port);
+      }
+
+      /*
+       * the server writes response headers and body separately, so without
+       * TCP_NODELAY each keep-alive response waits on the client's delayed
+       * acknowledgement, around 40ms. The JDK reads the property when the
+       * first server is created, so it is set only here, for --serve.
+       */
+      if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+         System.setProperty("sun.net.httpserver.nodelay", "true");
+      }
+
+      long metricsSeconds = parseMetricsSeconds(line);
+      Metrics metrics = metricsSeconds < 0 ? null : new Metrics();
+      final DateToolServer server = new DateToolServer(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), number), calendars,
+            parseCache(line), metrics);
+      dumpMetrics(metrics, metricsSeconds);
+      server.start();
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         @Override
+         public void run() {
+            server.stop();
+         }
+      });
+      out.println("Serving on http://localhost:" + server.getPort()
+            + "/");
+   }
+
+   private static void reportCache(ResultCache cache, Writer errors)
+         throws IOException {
+      if (cache != null) {
+         errors.append("Cache ").append(cache.toString()).append('\n');
+         errors.flush();
+      }
+   }
+
+   private static void reportMetrics(Metrics metrics, Writer errors)
+         throws IOException {
+      if (metrics != null) {
+         metrics.dump(errors);
+         errors.flush();
+      }
+   }
+
+   /**
+    * Publishes the metrics over JMX and, for a positive interval, writes them
+    * to standard error every interval on a daemon thread.
+    *
+    * @return the executor writing them, to be shut down by the caller, or
+    *         null if there is none
+    */
+   private ScheduledExecutorService dumpMetrics(final Metrics metrics,
+         long seconds) {
+      if (metrics == null) {
+         return null;
+      }
+      metrics.publish();
+      if (seconds == 0) {
+         return null;
+      }
+
+      ScheduledExecutorService dumper = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+               @Override
+               public Thread newThread(Runnable task) {
+                  Thread thread = new Thread(task, "DateTool metrics");
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+      dumper.scheduleAtFixedRate(new Runnable() {
+         @Override
+         public void run() {
+            StringBuilder dump = new StringBuilder();
+            try {
+               metrics.dump(dump);
+            } catch (IOException ioe) {
+               // a StringBuilder does not throw
+            }
+            err.print(dump);
+            err.flush();
+         }
+      }, seconds, seconds, TimeUnit.SECONDS);
+      return dumper;
+   }
+
+   /**
+    * Returns the metrics option's interval in seconds, or -1 when metrics
+    * are not requested.
+    */
+   private static long parseMetricsSeconds(CommandLine line)
+         throws ParseException {
+      if (!line.hasOption("metrics")) {
+         return -1;
+      }
+      String seconds = line.getOptionValue("metrics");
+      try {
+         long interval = Long.parseLong(seconds.trim());
+         if (interval >= 0) {
+            return interval;
+         }
+      } catch (NumberFormatException nfe) {
+         // reported below
+      }
+      throw new ParseException("metrics must be a whole number of seconds: "
+            + seconds);
+   }
+
+   /**
+    * Returns a cache of the cache option's size, or null when not requested.
+    */
+   private static ResultCache parseCache(CommandLine line)
+         throws ParseException {
+      if (!line.hasOption("cache")) {
+         return null;
+      }
+      String entries = line.getOptionValue("cache");
+      try {
+         return new ResultCache(Integer.parseInt(entries.trim()));
+      } catch (IllegalArgumentException iae) {
+         throw new ParseException("cache must be a positive whole number: "
+               + entries);
+      }
+   }
+
+   private static int parseThreads(CommandLine line) throws ParseException {
+      String threads = line.getOptionValue("threads", "1");
+      try {
+         int count = Integer.parseInt(threads.trim());
+         if (count > 0) {
+            return count;
+         }
+      } catch (NumberFormatException nfe) {
+         // reported below
+      }
+      throw new ParseException("threads must be a positive whole number: "
+            + threads);
+   }
+
+   private static long[] parseBounds(CommandLine line) throws ParseException {
+      if (!line.hasOption("buckets")) {
+         return StatisticsProcessor.DEFAULT_BOUNDS;
+      }
+      String buckets = line.getOptionValue("buckets");
+      String[] fields = buckets.split(",");
+      long[] bounds = new long[fields.length];
+      try {
+         for (int i = 0; i < fields.length; i++) {
+            bounds[i] = Long.parseLong(fields[i].trim());
+            if (i > 0 && bounds[i] <= bounds[i - 1]) {
+               throw new NumberFormatException();
+            }
+         }
+      } catch (NumberFormatException nfe) {
+         throw new ParseException(
+               "buckets must be ascending whole numbers separated by commas: "
+                     + buckets);
+      }
+      return bounds;
+   }
+
+   private static String joinBounds(long[] bounds) {
+      StringBuilder joined = new StringBuilder();
+      for (long bound : bounds) {
+         if (joined.length() > 0) {
+            joined.append(',');
+         }
+         joined.append(bound);
+      }
+      return joined.toString();
+   }
+
+   private static char parseDelimiter(CommandLine line) throws ParseException {
+      String delimiter = line.getOptionValue("delimiter", ",");
+      if (delimiter.length() != 1) {
+         throw new ParseException("delimiter must be a single character: "
+               + delimiter);
+      }
+      return delimiter.charAt(0);
+   }
+
+   static DateTime parseDate(String dateString)
+         throws java.lang.IllegalArgumentException {
+      return parseDate(dateString, DateTimeZone.getDefault());
+   }
+
+   static DateTime parseDate(String dateString, DateTimeZone zone)
          throws java.lang.IllegalArgumentException {
 
-      return ISODateTimeFormat.dateOptionalTimeParser().parseDateTime(
-            dateString);
+      // a parser per thread, kept while the zone stands, rather than a
+      // parser, Joda fallback formatter and zone table lookup per date
+      IsoDateParser parser = parsers.get();
+      if (parser == null || parser.getZone() != zone) {
+         parser = new IsoDateParser(zone);
+         parsers.set(parser);
+      }
+      return parser.parseDateTime(dateString);
    }
 
-   private static void printHelp() {
-      formatter.printHelp("DateTool", options, true);
+   private static int parseBusinessDays(String value) throws ParseException {
+      try {
+         return Integer.parseInt(value.trim());
+      } catch (NumberFormatException nfe) {
+         throw new ParseException("plusBusinessDays must be a whole number: "
+               + value);
+      }
    }
 
-   private static void printDateFormat() {
+   private void printHelp() {
+      PrintWriter writer = new PrintWriter(out);
+      formatter.printHelp(writer, formatter.getWidth(), "DateTool", null,
+            options, formatter.getLeftPadding(), formatter.getDescPadding(),
+            null, true);
+      writer.flush();
+   }
+
+   private void printDateFormat() {
       String formatHelp = " date-opt-time     = date-element ['T' [time-element] [offset]]\r\n"
             + " date-element      = std-date-element | ord-date-element | week-date-element\r\n"
             + " std-date-element  = yyyy ['-' MM ['-' dd]]\r\n"
@@ -118,13 +857,178 @@ public class DateToolCLI {
             + " minute-element    = ':' mm [second-element] | [fraction]\r\n"
             + " second-element    = ':' ss [fraction]\r\n"
             + " fraction          = ('.' | ',') digit+\r\n";
-      System.out.println(formatHelp);
+      out.println(formatHelp);
+
+   }
 
+   /**
+    * Loads the calendar named by the calendar option, reporting and returning
+    * null if it cannot be read.
+    */
+   private BusinessCalendar loadCalendar(CommandLine line) {
+      if (line.hasOption("calendarTable")) {
+         return mapCalendar(line);
+      }
+      if (!line.hasOption("calendar")) {
+         return new BusinessCalendar(BusinessCalendar.SATURDAY_SUNDAY,
+               new long[0]);
+      }
+
+      String fileName = line.getOptionValue("calendar");
+      try {
+         return BusinessCalendar.load(resolve(fileName));
+      } catch (IOException ioe) {
+         out.println("Unable to read calendar " + fileName + ": "
+               + ioe.getMessage());
+      } catch (IllegalArgumentException iae) {
+         out.println(iae.getMessage());
+      }
+      return null;
+   }
+
+   /**
+    * Maps the calendar table option's file and returns the calendar named by
+    * the calendar option, reporting and returning null if it cannot be read
+    * or has no such calendar.
+    */
+   private BusinessCalendar mapCalendar(CommandLine line) {
+      String fileName = line.getOptionValue("calendarTable");
+      CalendarTable table;
+      try {
+         table = CalendarTable.open(resolve(fileName).toPath());
+      } catch (IOException ioe) {
+         out.println("Unable to read calendar table " + fileName + ": "
+               + ioe.getMessage());
+         return null;
+      }
+      String name = line.getOptionValue("calendar");
+      BusinessCalendar calendar = name == null ? null : table.get(name);
+      if (calendar == null) {
+         out.println("Calendar table " + fileName
+               + " needs the calendar option to name one of "
+               + table.getNames());
+      }
+      return calendar;
+   }
+
+   /**
+    * Loads the calendar files given as arguments and writes them to the build
+    * calendar table option's file.
+    */
+   private void buildCalendarTable(CommandLine line) throws ParseException {
+      String[] files = line.getArgs();
+      if (files.length == 0) {
+         throw new ParseException("buildCalendarTable needs calendar files");
+      }
+      Map<String, BusinessCalendar> calendars = new TreeMap<String, BusinessCalendar>();
+      for (String fileName : files) {
+         String name = new File(fileName).getName();
+         int extension = name.lastIndexOf('.');
+         if (extension > 0) {
+            name = name.substring(0, extension);
+         }
+         try {
+            calendars.put(name, BusinessCalendar.load(resolve(fileName)));
+         } catch (IOException ioe) {
+            out.println("Unable to read calendar " + fileName + ": "
+                  + ioe.getMessage());
+            return;
+         } catch (IllegalArgumentException iae) {
+            out.println(iae.getMessage());
+            return;
+         }
+      }
+
+      String table = line.getOptionValue("buildCalendarTable");
+      try {
+         CalendarTable.write(resolve(table).toPath(), calendars);
+      } catch (IOException ioe) {
+         out.println("Unable to write calendar table " + table + ": "
+               + ioe.getMessage());
+         return;
+      } catch (IllegalArgumentException iae) {
+         out.println(iae.getMessage());
+         return;
+      }
+      out.println("Wrote " + calendars.size() + " calendars to " + table);
+   }
+
+   /**
+    * Loads the calendar named by the calendar option and watches its file,
+    * so the server picks up changes without restarting. Without the option
+    * the default calendar is supplied. Reports and returns null if the
+    * calendar cannot be read.
+    */
+   private Supplier<BusinessCalendar> watchCalendar(CommandLine line) {
+      if (!line.hasOption("calendar") || line.hasOption("calendarTable")) {
+         final BusinessCalendar calendar = loadCalendar(line);
+         if (calendar == null) {
+            return null;
+         }
+         return new Supplier<BusinessCalendar>() {
+            @Override
+            public BusinessCalendar get() {
+               return calendar;
+            }
+         };
+      }
+
+      String fileName = line.getOptionValue("calendar");
+      try {
+         return new CalendarWatcher(resolve(fileName).toPath());
+      } catch (IOException ioe) {
+         out.println("Unable to read calendar " + fileName + ": "
+               + ioe.getMessage());
+      } catch (IllegalArgumentException iae) {
+         out.println(iae.getMessage());
+      }
+      return null;
+   }
+
+   /**
+    * Runs the daemon in the foreground until it has been idle for the daemon
+    * option's number of minutes.
+    */
+   private void runDaemon(CommandLine line) throws IOException,
+         ParseException {
+      String minutes = line.getOptionValue("daemon",
+            String.valueOf(DateToolDaemon.DEFAULT_IDLE_MINUTES));
+      long idleMinutes;
+      try {
+         idleMinutes = Long.parseLong(minutes.trim());
+      } catch (NumberFormatException nfe) {
+         idleMinutes = 0;
+      }
+      if (idleMinutes < 1) {
+         throw new ParseException("daemon idle minutes must be a positive whole number: "
+               + minutes);
+      }
+
+      DateToolDaemon daemon = new DateToolDaemon(DaemonClient.socketPath(),
+            idleMinutes * 60000);
+      if (!daemon.bind()) {
+         out.println("A daemon is already running on " + DaemonClient.socketPath());
+         return;
+      }
+      out.println("Daemon listening on " + DaemonClient.socketPath());
+      out.flush();
+      daemon.run();
+   }
+
+   /**
+    * Resolves a file name against the working directory.
+    */
+   private File resolve(String fileName) {
+      File file = new File(fileName);
+      if (workingDirectory == null || file.isAbsolute()) {
+         return file;
+      }
+      return new File(workingDirectory, fileName);
    }
 
-   private static DateTool buildDateTool(CommandLine line) {
-      DateTime startDate = parseDate(line.getOptionValue("startDate"));
-      DateTime endDate = parseDate(line.getOptionValue("endDate"));
+   private DateTool buildDateTool(CommandLine line) {
+      DateTime startDate = parseDate(line.getOptionValue("startDate"), zone);
+      DateTime endDate = parseDate(line.getOptionValue("endDate"), zone);
 
       return new DateTool(startDate, endDate);
 
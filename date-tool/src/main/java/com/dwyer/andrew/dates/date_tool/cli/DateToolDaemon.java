@@ -0,0 +1,265 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.ZoneTransitions;
+
+/**
+ * Keeps a JVM with DateTool loaded and compiled, answering DateToolCLI
+ * invocations forwarded by DaemonClient over a Unix domain socket. Each
+ * invocation runs on its own thread with its own DateToolCLI in the client's
+ * default time zone, its output streamed back in frames as it is written.
+ * The daemon removes its socket and exits once no invocation has run for the
+ * idle time.
+ *
+ * @author dwyera
+ */
+class DateToolDaemon {
+
+   /** Minutes without an invocation before the daemon exits by default. */
+   static final long DEFAULT_IDLE_MINUTES = 15;
+
+   /** The most arguments accepted in one request. */
+   private static final int MAX_ARGUMENTS = 1024;
+
+   private final Path socket;
+
+   private final long idleMillis;
+
+   private final AtomicInteger active = new AtomicInteger();
+
+   private volatile long lastActivity;
+
+   private ServerSocketChannel server;
+
+   /**
+    * Instantiates a new daemon. It does not listen until bound.
+    *
+    * @param socket
+    *           the socket path to listen on
+    * @param idleMillis
+    *           milliseconds without an invocation before run returns
+    */
+   DateToolDaemon(Path socket, long idleMillis) {
+      this.socket = socket;
+      this.idleMillis = idleMillis;
+   }
+
+   /**
+    * Binds the socket, creating its directory readable by the current user
+    * only. A socket left by a daemon that has gone is replaced.
+    *
+    * @return false if another daemon is listening on the socket
+    * @throws IOException
+    *            if the socket cannot be bound, or its directory belongs to
+    *            another user or is reachable by others
+    */
+   boolean bind() throws IOException {
+      Path directory = socket.toAbsolutePath().getParent();
+      if (!Files.isDirectory(directory)) {
+         try {
+            Files.createDirectories(directory, PosixFilePermissions
+                  .asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+         } catch (UnsupportedOperationException uoe) {
+            Files.createDirectories(directory);
+         }
+      }
+
+      if (!DaemonClient.isPrivateDirectory(directory)) {
+         throw new IOException("Socket directory " + directory
+               + " must be owned by the current user with mode 700");
+      }
+
+      if (Files.exists(socket)) {
+         SocketChannel probe;
+         try {
+            probe = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+         } catch (IOException stale) {
+            probe = null;
+         }
+         if (probe != null) {
+            probe.close();
+            return false;
+         }
+         Files.delete(socket);
+      }
+
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      server.bind(UnixDomainSocketAddress.of(socket));
+      return true;
+   }
+
+   /**
+    * Answers invocations until none has run for the idle time or the thread
+    * is interrupted, then closes and removes the socket.
+    *
+    * @throws IOException
+    *            if accepting connections fails
+    */
+   void run() throws IOException {
+      ExecutorService executor = DateToolServer.newExecutor();
+      Selector selector = Selector.open();
+      try {
+         server.configureBlocking(false);
+         server.register(selector, SelectionKey.OP_ACCEPT);
+         lastActivity = System.currentTimeMillis();
+
+         while (!Thread.currentThread().isInterrupted()) {
+            long idle = System.currentTimeMillis() - lastActivity;
+            if (idle >= idleMillis) {
+               if (active.get() == 0) {
+                  break;
+               }
+               idle = 0;
+            }
+            selector.select(idleMillis - idle);
+            selector.selectedKeys().clear();
+
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+               active.incrementAndGet();
+               lastActivity = System.currentTimeMillis();
+               executor.execute(new Invocation(channel));
+            }
+         }
+      } finally {
+         selector.close();
+         server.close();
+         Files.deleteIfExists(socket);
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * Runs one forwarded invocation.
+    */
+   private class Invocation implements Runnable {
+
+      private final SocketChannel channel;
+
+      Invocation(SocketChannel channel) {
+         this.channel = channel;
+      }
+
+      @Override
+      public void run() {
+         try {
+            channel.configureBlocking(true);
+            DataInputStream request = new DataInputStream(
+                  new BufferedInputStream(Channels.newInputStream(channel)));
+            File workingDirectory = new File(request.readUTF());
+            String zoneId = request.readUTF();
+            int count = request.readInt();
+            if (count < 0 || count > MAX_ARGUMENTS) {
+               return;
+            }
+            String[] args = new String[count];
+            for (int i = 0; i < count; i++) {
+               args[i] = request.readUTF();
+            }
+
+            DataOutputStream response = new DataOutputStream(
+                  new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DateTimeZone zone;
+            try {
+               zone = ZoneTransitions.forID(zoneId);
+            } catch (IllegalArgumentException unknown) {
+               // an answer in another zone could differ from the client's own
+               response.writeByte(DaemonClient.REFUSED);
+               response.flush();
+               return;
+            }
+            PrintStream out = frameStream(response, DaemonClient.STDOUT);
+            PrintStream err = frameStream(response, DaemonClient.STDERR);
+            try {
+               new DateToolCLI(out, err, workingDirectory, zone).run(args);
+            } catch (IOException | RuntimeException e) {
+               err.println("DateTool daemon failed: " + e);
+            }
+            out.flush();
+            err.flush();
+            response.writeByte(DaemonClient.EXIT);
+            response.flush();
+         } catch (IOException ioe) {
+            // the client has gone, there is no one to report to
+         } finally {
+            try {
+               channel.close();
+            } catch (IOException ioe) {
+               // nothing is left to send
+            }
+            lastActivity = System.currentTimeMillis();
+            active.decrementAndGet();
+         }
+      }
+   }
+
+   private static PrintStream frameStream(DataOutputStream response,
+         byte type) {
+      return new PrintStream(new BufferedOutputStream(new FrameOutputStream(
+            response, type)), false, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Writes each block of bytes as one frame of the given type.
+    */
+   private static class FrameOutputStream extends OutputStream {
+
+      private final DataOutputStream response;
+
+      private final byte type;
+
+      FrameOutputStream(DataOutputStream response, byte type) {
+         this.response = response;
+         this.type = type;
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+         write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length)
+            throws IOException {
+         if (length == 0) {
+            return;
+         }
+         synchronized (response) {
+            response.writeByte(type);
+            response.writeInt(length);
+            response.write(bytes, offset, length);
+         }
+      }
+
+      @Override
+      public void flush() throws IOException {
+         synchronized (response) {
+            response.flush();
+         }
+      }
+   }
+
+}
@@ -0,0 +1,499 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.CalendarWatcher;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+import com.dwyer.andrew.dates.date_tool.metrics.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Answers DateTool queries over HTTP with the JDK's built in server, so
+ * other services avoid starting the CLI for every query. Every bulk mode
+ * operation is a GET endpoint named after its option, e.g.
+ *
+ * GET /daysBetween?start=2014-01-01&end=2014-02-01&unit=HOURS
+ *
+ * answers with the result as plain text. POST /batch takes bulk mode input,
+ * one comma separated pair per line, and answers with one result line per
+ * pair, computing the operations listed in the comma separated operations
+ * parameter (daysBetween, weekdaysBetween and weeksBetween by default). A
+ * malformed line answers ERROR in place of its results, and the
+ * X-Malformed-Lines header counts them; their messages are not returned.
+ * Bodies over MAX_BATCH_BYTES are refused with 413, so split larger
+ * batches. The unit parameter names a ResultUnit and defaults to DEFAULT.
+ * When the server has a ResultCache, Metrics or a CalendarWatcher, GET /stats
+ * answers with the cache counters, a Metrics dump and the calendar's version
+ * and reload counts.
+ *
+ * Requests are handled on virtual threads when the JVM provides them, and on
+ * a cached thread pool otherwise. As a virtual thread serves one request,
+ * date parsers are shared through a pool rather than held per thread.
+ * Keep-alive latency depends on the JVM running with
+ * sun.net.httpserver.nodelay=true, which serve mode sets before the first
+ * server is created; the server itself leaves system properties alone.
+ *
+ * @author dwyera
+ */
+class DateToolServer {
+
+   /** The largest POST /batch body accepted, in bytes. */
+   static final int MAX_BATCH_BYTES = 16 << 20;
+
+   /** The most idle parsers kept for reuse. */
+   private static final int MAX_IDLE_PARSERS = 64;
+
+   /** The operations POST /batch computes when none are requested. */
+   private static final List<BulkOperation> DEFAULT_BATCH_OPERATIONS = Arrays
+         .asList(BulkOperation.DAYS, BulkOperation.WEEKDAYS,
+               BulkOperation.COMPLETE_WEEKS);
+
+   private final HttpServer server;
+
+   private final ExecutorService executor;
+
+   /** Supplies the calendar, read once per request. */
+   private final Supplier<BusinessCalendar> calendars;
+
+   /** The watcher supplying the calendar, or null for a fixed calendar. */
+   private final CalendarWatcher watcher;
+
+   private final ResultCache cache;
+
+   private final Metrics metrics;
+
+   private final BulkMetrics bulkMetrics;
+
+   private final DateTimeZone zone = DateTimeZone.getDefault();
+
+   /** Idle parsers, taken by a request and returned when it is answered. */
+   private final BlockingQueue<IsoDateParser> parsers = new ArrayBlockingQueue<IsoDateParser>(
+         MAX_IDLE_PARSERS);
+
+   /**
+    * Instantiates a new server bound to the address. It does not answer
+    * requests until started.
+    *
+    * @param address
+    *           the address to listen on, port 0 picks a free port
+    * @param calendar
+    *           the calendar used by businessDaysBetween
+    * @param cache
+    *           the results of earlier queries, or null for no cache
+    * @throws IOException
+    *            if the address cannot be bound
+    */
+   DateToolServer(InetSocketAddress address, BusinessCalendar calendar,
+         ResultCache cache) throws IOException {
+      this(address, calendar, cache, null);
+   }
+
+   /**
+    * Instantiates a new server bound to the address that records its
+    * parses and calculations. It does not answer requests until started.
+    *
+    * @param address
+    *           the address to listen on, port 0 picks a free port
+    * @param calendar
+    *           the calendar used by businessDaysBetween
+    * @param cache
+    *           the results of earlier queries, or null for no cache
+    * @param metrics
+    *           receives the calls, or null to record nothing
+    * @throws IOException
+    *            if the address cannot be bound
+    */
+   DateToolServer(InetSocketAddress address, final BusinessCalendar calendar,
+         ResultCache cache, Metrics metrics) throws IOException {
+      this(address, new Supplier<BusinessCalendar>() {
+         @Override
+         public BusinessCalendar get() {
+            return calendar;
+         }
+      }, cache, metrics);
+   }
+
+   /**
+    * Instantiates a new server bound to the address whose calendar is
+    * supplied afresh for each request, e.g. by a CalendarWatcher. A request
+    * reads the calendar once and uses it throughout. As a reloaded calendar
+    * changes business day results, those are not cached when the calendar is
+    * watched. It does not answer requests until started.
+    *
+    * @param address
+    *           the address to listen on, port 0 picks a free port
+    * @param calendars
+    *           supplies the calendar used by businessDaysBetween
+    * @param cache
+    *           the results of earlier queries, or null for no cache
+    * @param metrics
+    *           receives the calls, or null to record nothing
+    * @throws IOException
+    *            if the address cannot be bound
+    */
+   DateToolServer(InetSocketAddress address,
+         Supplier<BusinessCalendar> calendars, ResultCache cache,
+         Metrics metrics) throws IOException {
+      this.calendars = calendars;
+      this.watcher = calendars instanceof CalendarWatcher
+            ? (CalendarWatcher) calendars : null;
+      this.cache = cache;
+      this.metrics = metrics;
+      this.bulkMetrics = metrics == null ? null : new BulkMetrics(metrics);
+      this.server = HttpServer.create(address, 0);
+      this.executor = newExecutor();
+      server.setExecutor(executor);
+      for (BulkOperation operation : BulkOperation.values()) {
+         server.createContext("/" + operation.optionName, new PairHandler(
+               operation));
+      }
+      server.createContext("/batch", new BatchHandler());
+      if (cache != null || metrics != null || watcher != null) {
+         server.createContext("/stats", new StatsHandler());
+      }
+   }
+
+   void start() {
+      server.start();
+   }
+
+   /**
+    * Stops answering requests, waiting at most a second for exchanges in
+    * progress to finish.
+    */
+   void stop() {
+      server.stop(1);
+      executor.shutdown();
+   }
+
+   /** Returns the port the server listens on. */
+   int getPort() {
+      return server.getAddress().getPort();
+   }
+
+   /**
+    * Returns an executor running each task on a new virtual thread where the
+    * JVM has them (Java 21 and later), otherwise a cached thread pool.
+    */
+   static ExecutorService newExecutor() {
+      try {
+         Method factory = Executors.class
+               .getMethod("newVirtualThreadPerTaskExecutor");
+         return (ExecutorService) factory.invoke(null);
+      } catch (ReflectiveOperationException roe) {
+         return Executors.newCachedThreadPool();
+      }
+   }
+
+   /**
+    * Thrown to answer a request with an error status and message.
+    */
+   private static class RequestException extends Exception {
+
+      private static final long serialVersionUID = 1L;
+
+      final int status;
+
+      RequestException(int status, String message) {
+         super(message);
+         this.status = status;
+      }
+   }
+
+   /**
+    * Handles one endpoint, answering RequestExceptions and malformed values
+    * with their status and message.
+    */
+   private abstract class Handler implements HttpHandler {
+
+      private final String path;
+
+      private final String method;
+
+      Handler(String path, String method) {
+         this.path = path;
+         this.method = method;
+      }
+
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+         try {
+            try {
+               if (!path.equals(exchange.getRequestURI().getPath())) {
+                  throw new RequestException(404, "Not found");
+               }
+               if (!method.equals(exchange.getRequestMethod())) {
+                  exchange.getResponseHeaders().set("Allow", method);
+                  throw new RequestException(405, "Use " + method);
+               }
+               respond(exchange);
+            } catch (IllegalArgumentException iae) {
+               throw new RequestException(400, iae.getMessage());
+            }
+         } catch (RequestException re) {
+            send(exchange, re.status, (re.getMessage() + "\n")
+                  .getBytes(StandardCharsets.UTF_8));
+         } finally {
+            exchange.close();
+         }
+      }
+
+      abstract void respond(HttpExchange exchange) throws IOException,
+            RequestException;
+   }
+
+   /**
+    * GET /{operation}?start=...&end=...[&unit=...]
+    */
+   private class PairHandler extends Handler {
+
+      private final BulkOperation operation;
+
+      PairHandler(BulkOperation operation) {
+         super("/" + operation.optionName, "GET");
+         this.operation = operation;
+      }
+
+      @Override
+      void respond(HttpExchange exchange) throws IOException,
+            RequestException {
+         Map<String, String> query = parseQuery(exchange);
+         // a request costs far more than reading the clock, so time every call
+         BulkMetrics.Recorder recorder = bulkMetrics == null ? null
+               : bulkMetrics.newRecorder(1);
+         IsoDateParser parser = parsers.poll();
+         if (parser == null) {
+            parser = new IsoDateParser(zone);
+         }
+         long startInstant;
+         long endInstant;
+         try {
+            startInstant = parseDate(parser, query, "start", recorder);
+            endInstant = parseDate(parser, query, "end", recorder);
+         } finally {
+            parsers.offer(parser);
+         }
+
+         ResultUnit unit = parseUnit(query);
+         BusinessCalendar calendar = calendars.get();
+         ResultCache cache = cacheFor(operation);
+         long result;
+         if (recorder == null) {
+            result = operation.apply(startInstant, endInstant, zone, unit,
+                  calendar, cache);
+         } else {
+            result = recorder.apply(operation, startInstant, endInstant, zone,
+                  unit, calendar, cache);
+         }
+         send(exchange, 200, (result + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+   }
+
+   /**
+    * POST /batch[?operations=...][&unit=...] with bulk mode input.
+    */
+   private class BatchHandler extends Handler {
+
+      BatchHandler() {
+         super("/batch", "POST");
+      }
+
+      @Override
+      void respond(HttpExchange exchange) throws IOException,
+            RequestException {
+         Map<String, String> query = parseQuery(exchange);
+         List<BulkOperation> operations = parseOperations(query);
+         BulkProcessor processor = new BulkProcessor(operations, ',',
+               parseUnit(query), calendars.get(), cache,
+               cacheFor(BulkOperation.BUSINESS_DAYS), bulkMetrics, zone);
+
+         BufferedReader in = new BufferedReader(new InputStreamReader(
+               new ByteArrayInputStream(readBody(exchange)),
+               StandardCharsets.UTF_8));
+         ByteArrayOutputStream body = new ByteArrayOutputStream();
+         Writer out = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+         long malformed = processor.process(in, out, Writer.nullWriter());
+
+         exchange.getResponseHeaders().set("X-Malformed-Lines",
+               String.valueOf(malformed));
+         send(exchange, 200, body.toByteArray());
+      }
+   }
+
+   /**
+    * GET /stats
+    */
+   private class StatsHandler extends Handler {
+
+      StatsHandler() {
+         super("/stats", "GET");
+      }
+
+      @Override
+      void respond(HttpExchange exchange) throws IOException {
+         StringBuilder stats = new StringBuilder();
+         if (cache != null) {
+            stats.append("cache ").append(cache).append('\n');
+         }
+         if (watcher != null) {
+            stats.append("calendar ").append(watcher).append('\n');
+            String failure = watcher.getLastFailure();
+            if (failure != null) {
+               stats.append("calendar last failure ").append(failure)
+                     .append('\n');
+            }
+         }
+         if (metrics != null) {
+            metrics.dump(stats);
+         }
+         send(exchange, 200, stats.toString().getBytes(StandardCharsets.UTF_8));
+      }
+   }
+
+   /**
+    * Returns the cache for an operation's results, none for business days
+    * when the calendar is watched.
+    */
+   private ResultCache cacheFor(BulkOperation operation) {
+      return operation == BulkOperation.BUSINESS_DAYS && watcher != null ? null
+            : cache;
+   }
+
+   /**
+    * Reads a request body of at most MAX_BATCH_BYTES, refusing a longer one
+    * before reading it when its length is declared.
+    */
+   private static byte[] readBody(HttpExchange exchange) throws IOException,
+         RequestException {
+      String length = exchange.getRequestHeaders().getFirst("Content-Length");
+      if (length != null && length.length() > 0
+            && Long.parseLong(length.trim()) > MAX_BATCH_BYTES) {
+         throw new RequestException(413, "Request body over "
+               + MAX_BATCH_BYTES + " bytes");
+      }
+      InputStream in = exchange.getRequestBody();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+         if (body.size() + read > MAX_BATCH_BYTES) {
+            throw new RequestException(413, "Request body over "
+                  + MAX_BATCH_BYTES + " bytes");
+         }
+         body.write(buffer, 0, read);
+      }
+      return body.toByteArray();
+   }
+
+   private static void send(HttpExchange exchange, int status, byte[] body)
+         throws IOException {
+      exchange.getResponseHeaders().set("Content-Type",
+            "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(status, body.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+   }
+
+   private static Map<String, String> parseQuery(HttpExchange exchange)
+         throws UnsupportedEncodingException {
+      Map<String, String> query = new HashMap<String, String>();
+      String raw = exchange.getRequestURI().getRawQuery();
+      if (raw == null) {
+         return query;
+      }
+      for (String parameter : raw.split("&")) {
+         int split = parameter.indexOf('=');
+         if (split > 0) {
+            query.put(URLDecoder.decode(parameter.substring(0, split), "UTF-8"),
+                  URLDecoder.decode(parameter.substring(split + 1), "UTF-8"));
+         }
+      }
+      return query;
+   }
+
+   private static long parseDate(IsoDateParser parser,
+         Map<String, String> query, String name,
+         BulkMetrics.Recorder recorder) throws RequestException {
+      String date = query.get(name);
+      if (date == null) {
+         throw new RequestException(400, "Missing parameter " + name);
+      }
+      try {
+         if (recorder == null) {
+            return parser.parseInstant(date, 0, date.length());
+         }
+         return recorder.parseInstant(parser, date, 0, date.length());
+      } catch (IllegalArgumentException iae) {
+         throw new RequestException(400, "Invalid " + name + " date \""
+               + date + "\"");
+      }
+   }
+
+   private static ResultUnit parseUnit(Map<String, String> query)
+         throws RequestException {
+      String unit = query.get("unit");
+      if (unit == null) {
+         return ResultUnit.DEFAULT;
+      }
+      try {
+         return ResultUnit.valueOf(unit.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException iae) {
+         throw new RequestException(400, "Unknown unit " + unit);
+      }
+   }
+
+   private static List<BulkOperation> parseOperations(
+         Map<String, String> query) throws RequestException {
+      String names = query.get("operations");
+      if (names == null) {
+         return DEFAULT_BATCH_OPERATIONS;
+      }
+      List<BulkOperation> operations = new ArrayList<BulkOperation>();
+      for (String name : names.split(",")) {
+         BulkOperation found = null;
+         for (BulkOperation operation : BulkOperation.values()) {
+            if (operation.optionName.equals(name.trim())) {
+               found = operation;
+            }
+         }
+         if (found == null) {
+            throw new RequestException(400, "Unknown operation " + name);
+         }
+         operations.add(found);
+      }
+      return operations;
+   }
+
+}
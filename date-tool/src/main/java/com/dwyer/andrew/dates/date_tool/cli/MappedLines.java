@@ -0,0 +1,131 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a file into chunks that end on line boundaries and chunks into
+ * lines, ending lines as BufferedReader does: at a line feed, a carriage
+ * return, or a carriage return followed by a line feed. A chunk never ends
+ * between a carriage return and its line feed, so the lines of consecutive
+ * chunks are exactly the lines BufferedReader reads from the whole file.
+ *
+ * @author dwyera
+ */
+final class MappedLines {
+
+   /**
+    * Receives the lines of a chunk.
+    */
+   interface LineHandler {
+
+      /**
+       * Handles a line.
+       *
+       * @param line
+       *           the line, without its line end
+       * @param number
+       *           the line's number within the chunk, from 1
+       */
+      void line(String line, long number);
+   }
+
+   private MappedLines() {
+   }
+
+   /**
+    * Returns the end of the chunk starting at start: the position after the
+    * first line end at or beyond start + chunkSize - 1, or the end of file.
+    *
+    * @param channel
+    *           the file
+    * @param start
+    *           the chunk's first byte
+    * @param size
+    *           the file's size
+    * @param chunkSize
+    *           the approximate number of bytes in a chunk, at least 1
+    * @return the position after the chunk's last byte
+    * @throws IOException
+    *            if the file cannot be read
+    */
+   static long chunkEnd(FileChannel channel, long start, long size,
+         int chunkSize) throws IOException {
+      long position = start + chunkSize - 1;
+      ByteBuffer buffer = ByteBuffer.allocate(8192);
+      while (position < size) {
+         buffer.clear();
+         int read = channel.read(buffer, position);
+         for (int i = 0; i < read; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+               return position + i + 1;
+            }
+            if (b == '\r') {
+               // take the line feed of a CRLF, even in the next read
+               long next = position + i + 1;
+               if (next < size && (i + 1 < read ? buffer.get(i + 1)
+                     : readByte(channel, next)) == '\n') {
+                  next++;
+               }
+               return next;
+            }
+         }
+         position += Math.max(read, 0);
+      }
+      return size;
+   }
+
+   private static byte readByte(FileChannel channel, long position)
+         throws IOException {
+      ByteBuffer one = ByteBuffer.allocate(1);
+      return channel.read(one, position) == 1 ? one.get(0) : -1;
+   }
+
+   /**
+    * Decodes each line of a chunk as UTF-8 and hands it to a handler in
+    * order.
+    *
+    * @param chunk
+    *           the chunk, from position 0 to its limit
+    * @param handler
+    *           receives each line
+    * @return the number of lines
+    */
+   static long forEachLine(ByteBuffer chunk, LineHandler handler) {
+      byte[] bytes = new byte[256];
+      long lines = 0;
+
+      int lineStart = 0;
+      int limit = chunk.limit();
+      while (lineStart < limit) {
+         int lineEnd = lineStart;
+         byte b = 0;
+         while (lineEnd < limit && (b = chunk.get(lineEnd)) != '\n'
+               && b != '\r') {
+            lineEnd++;
+         }
+         int next = lineEnd + 1;
+         if (b == '\r' && next < limit && chunk.get(next) == '\n') {
+            next++;
+         }
+
+         int length = lineEnd - lineStart;
+         if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+         }
+         for (int i = 0; i < length; i++) {
+            bytes[i] = chunk.get(lineStart + i);
+         }
+
+         lines++;
+         handler.line(new String(bytes, 0, length, StandardCharsets.UTF_8),
+               lines);
+         lineStart = next;
+      }
+      return lines;
+   }
+
+}
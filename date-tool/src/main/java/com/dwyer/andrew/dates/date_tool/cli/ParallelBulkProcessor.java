@@ -0,0 +1,169 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs bulk mode over a file on several threads. The file is memory mapped
+ * and split by MappedLines into chunks that end on line boundaries. Each
+ * chunk is parsed and computed on a fork/join pool with a BulkProcessor, and
+ * chunk results are written in input order, so the output and error report
+ * are byte for byte the same as a single threaded BulkProcessor run over the
+ * same file. At most two chunks per thread are held in memory at once.
+ *
+ * @author dwyera
+ */
+class ParallelBulkProcessor {
+
+   /** Default size of a chunk in bytes, before extending to a line end. */
+   static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+   private final BulkProcessor processor;
+
+   private final int threads;
+
+   private final int chunkSize;
+
+   /**
+    * Instantiates a new parallel bulk processor.
+    *
+    * @param processor
+    *           computes the results for each line
+    * @param threads
+    *           the number of worker threads
+    * @param chunkSize
+    *           the approximate number of bytes each worker takes at a time
+    */
+   ParallelBulkProcessor(BulkProcessor processor, int threads, int chunkSize) {
+      if (threads < 1 || chunkSize < 1) {
+         throw new IllegalArgumentException(
+               "Threads and chunk size must be positive");
+      }
+      this.processor = processor;
+      this.threads = threads;
+      this.chunkSize = chunkSize;
+   }
+
+   /**
+    * Processes every line of the input file.
+    *
+    * @param input
+    *           the file of input pairs
+    * @param out
+    *           receives one result line per input line
+    * @param errors
+    *           receives a message per malformed input line
+    * @return the number of malformed lines
+    * @throws IOException
+    *            if reading or writing fails
+    */
+   long process(File input, OutputStream out, Writer errors)
+         throws IOException {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      RandomAccessFile file = new RandomAccessFile(input, "r");
+      try {
+         FileChannel channel = file.getChannel();
+         long size = channel.size();
+         Deque<ForkJoinTask<ChunkResult>> pending = new ArrayDeque<ForkJoinTask<ChunkResult>>();
+         long linesWritten = 0;
+         long malformed = 0;
+
+         long start = 0;
+         while (start < size) {
+            long end = MappedLines.chunkEnd(channel, start, size, chunkSize);
+            pending.add(pool.submit(new ChunkTask(channel.map(
+                  FileChannel.MapMode.READ_ONLY, start, end - start))));
+            start = end;
+
+            while (pending.size() >= threads * 2
+                  || (start >= size && !pending.isEmpty())) {
+               ChunkResult result = pending.remove().join();
+               out.write(result.output);
+               for (int i = 0; i < result.errorLines.size(); i++) {
+                  BulkProcessor.reportMalformed(
+                        linesWritten + result.errorLines.get(i),
+                        result.errors.get(i), errors);
+               }
+               linesWritten += result.lines;
+               malformed += result.errors.size();
+            }
+         }
+
+         out.flush();
+         errors.flush();
+         return malformed;
+      } finally {
+         file.close();
+         pool.shutdown();
+      }
+   }
+
+   /**
+    * The results of one chunk: its output bytes, line count and malformed
+    * lines numbered from 1 within the chunk.
+    */
+   private static class ChunkResult {
+
+      byte[] output;
+
+      long lines;
+
+      final List<Long> errorLines = new ArrayList<Long>();
+
+      final List<IllegalArgumentException> errors = new ArrayList<IllegalArgumentException>();
+   }
+
+   /**
+    * Processes each line of a mapped chunk, split by MappedLines.
+    */
+   private class ChunkTask implements Callable<ChunkResult> {
+
+      private final MappedByteBuffer chunk;
+
+      ChunkTask(MappedByteBuffer chunk) {
+         this.chunk = chunk;
+      }
+
+      @Override
+      public ChunkResult call() {
+         final ChunkResult result = new ChunkResult();
+         final StringBuilder output = new StringBuilder(chunk.limit());
+         final StringBuilder line = new StringBuilder(64);
+
+         result.lines = MappedLines.forEachLine(chunk,
+               new MappedLines.LineHandler() {
+                  @Override
+                  public void line(String text, long number) {
+                     line.setLength(0);
+                     try {
+                        processor.processLine(text, line);
+                     } catch (IllegalArgumentException iae) {
+                        result.errorLines.add(number);
+                        result.errors.add(iae);
+                        line.setLength(0);
+                        line.append(BulkProcessor.ERROR_RESULT);
+                     }
+                     output.append(line).append('\n');
+                  }
+               });
+         processor.flushMetrics();
+
+         result.output = output.toString().getBytes(StandardCharsets.UTF_8);
+         return result;
+      }
+   }
+
+}
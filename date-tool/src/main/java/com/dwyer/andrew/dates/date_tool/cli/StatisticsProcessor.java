@@ -0,0 +1,335 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.joda.time.DateTimeZone;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.Distribution;
+import com.dwyer.andrew.dates.date_tool.GroupedDistributions;
+import com.dwyer.andrew.dates.date_tool.IsoDateParser;
+
+/**
+ * Streams delimited date pairs, one per line as start and end date
+ * optionally preceded by a group key, and writes the distribution of each
+ * selected operation's results per key: one line per key, in key order,
+ * once the input is read. Lines may come in any order; only each key's
+ * statistics are held, never the results themselves.
+ *
+ * Each key's line holds the key, when the input has one, then for each
+ * operation the count, minimum, maximum, mean, median, 95th and 99th
+ * percentiles and the count in each histogram bucket, separated by the
+ * delimiter. Percentiles are estimated to within 1/64 of their value, and
+ * exactly below 32, by QuantileSketch. A line that cannot be processed is
+ * reported with its line number to the error writer and skipped.
+ *
+ * A file may be processed on several threads: it is memory mapped and split
+ * by MappedLines into chunks that end on line boundaries, each chunk is
+ * aggregated on its own, and the chunks' statistics are merged, so the
+ * output is the same as a single threaded run.
+ *
+ * @author dwyera
+ */
+class StatisticsProcessor {
+
+   /** Default histogram bucket upper bounds, in days. */
+   static final long[] DEFAULT_BOUNDS = { 0, 1, 2, 3, 5, 7, 14, 30, 90, 365 };
+
+   /** The quantiles written for each operation. */
+   private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+   private final BulkOperation[] operations;
+
+   private final char delimiter;
+
+   private final ResultUnit resultUnit;
+
+   private final BusinessCalendar calendar;
+
+   private final long[] bounds;
+
+   private final DateTimeZone zone;
+
+   /**
+    * Instantiates a new statistics processor.
+    *
+    * @param operations
+    *           the operations whose results are aggregated, in output order
+    * @param delimiter
+    *           the character separating fields on input and output lines
+    * @param resultUnit
+    *           the unit results are aggregated in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    * @param bounds
+    *           the histogram buckets' upper bounds, strictly ascending
+    */
+   StatisticsProcessor(List<BulkOperation> operations, char delimiter,
+         ResultUnit resultUnit, BusinessCalendar calendar, long[] bounds) {
+      this(operations, delimiter, resultUnit, calendar, bounds, DateTimeZone
+            .getDefault());
+   }
+
+   /**
+    * Instantiates a new statistics processor reading dates without an
+    * offset, and counting day boundaries, in the supplied zone.
+    *
+    * @param operations
+    *           the operations whose results are aggregated, in output order
+    * @param delimiter
+    *           the character separating fields on input and output lines
+    * @param resultUnit
+    *           the unit results are aggregated in
+    * @param calendar
+    *           the calendar used by BUSINESS_DAYS, may be null otherwise
+    * @param bounds
+    *           the histogram buckets' upper bounds, strictly ascending
+    * @param zone
+    *           the zone dates are in
+    */
+   StatisticsProcessor(List<BulkOperation> operations, char delimiter,
+         ResultUnit resultUnit, BusinessCalendar calendar, long[] bounds,
+         DateTimeZone zone) {
+      this.operations = operations.toArray(new BulkOperation[operations
+            .size()]);
+      this.delimiter = delimiter;
+      this.resultUnit = resultUnit;
+      this.calendar = calendar;
+      this.bounds = new Distribution(bounds).getBounds();
+      this.zone = zone;
+   }
+
+   /**
+    * Processes every line of the input.
+    *
+    * @param in
+    *           the input pairs
+    * @param out
+    *           receives one line per key
+    * @param errors
+    *           receives a message per malformed input line
+    * @return the number of malformed lines
+    * @throws IOException
+    *            if reading or writing fails
+    */
+   long process(BufferedReader in, Writer out, Writer errors)
+         throws IOException {
+      Aggregator aggregator = new Aggregator();
+      long lineNumber = 0;
+      long malformed = 0;
+
+      String line;
+      while ((line = in.readLine()) != null) {
+         lineNumber++;
+         try {
+            aggregator.add(line);
+         } catch (IllegalArgumentException iae) {
+            malformed++;
+            BulkProcessor.reportMalformed(lineNumber, iae, errors);
+         }
+      }
+
+      write(aggregator.distributions, out);
+      errors.flush();
+      return malformed;
+   }
+
+   /**
+    * Processes every line of the input file on a number of threads.
+    *
+    * @param input
+    *           the file of input pairs
+    * @param threads
+    *           the number of worker threads
+    * @param chunkSize
+    *           the approximate number of bytes each worker takes at a time
+    * @param out
+    *           receives one line per key
+    * @param errors
+    *           receives a message per malformed input line
+    * @return the number of malformed lines
+    * @throws IOException
+    *            if reading or writing fails
+    */
+   long process(File input, int threads, int chunkSize, Writer out,
+         Writer errors) throws IOException {
+      if (threads < 1 || chunkSize < 1) {
+         throw new IllegalArgumentException(
+               "Threads and chunk size must be positive");
+      }
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      RandomAccessFile file = new RandomAccessFile(input, "r");
+      try {
+         FileChannel channel = file.getChannel();
+         long size = channel.size();
+         Deque<ForkJoinTask<ChunkResult>> pending = new ArrayDeque<ForkJoinTask<ChunkResult>>();
+         GroupedDistributions total = new GroupedDistributions(
+               operations.length, bounds);
+         long linesRead = 0;
+         long malformed = 0;
+
+         long start = 0;
+         while (start < size) {
+            long end = MappedLines.chunkEnd(channel, start, size, chunkSize);
+            pending.add(pool.submit(new ChunkTask(channel.map(
+                  FileChannel.MapMode.READ_ONLY, start, end - start))));
+            start = end;
+
+            // merged in input order so malformed lines are reported in order
+            while (pending.size() >= threads * 2
+                  || (start >= size && !pending.isEmpty())) {
+               ChunkResult result = pending.remove().join();
+               total.merge(result.distributions);
+               for (int i = 0; i < result.errorLines.size(); i++) {
+                  BulkProcessor.reportMalformed(
+                        linesRead + result.errorLines.get(i),
+                        result.errors.get(i), errors);
+               }
+               linesRead += result.lines;
+               malformed += result.errors.size();
+            }
+         }
+
+         write(total, out);
+         errors.flush();
+         return malformed;
+      } finally {
+         file.close();
+         pool.shutdown();
+      }
+   }
+
+   /**
+    * Writes a line per key of the distributions.
+    */
+   private void write(GroupedDistributions distributions, Writer out)
+         throws IOException {
+      StringBuilder result = new StringBuilder(256);
+      for (String key : distributions.getKeys()) {
+         result.setLength(0);
+         result.append(key);
+         for (int i = 0; i < operations.length; i++) {
+            Distribution distribution = distributions.get(key, i);
+            if (key.length() > 0 || i > 0) {
+               result.append(delimiter);
+            }
+            result.append(distribution.getCount()).append(delimiter)
+                  .append(distribution.getMin()).append(delimiter)
+                  .append(distribution.getMax()).append(delimiter)
+                  .append(String.format(Locale.ROOT, "%.2f",
+                        distribution.getMean()));
+            for (double quantile : QUANTILES) {
+               result.append(delimiter).append(
+                     distribution.getQuantile(quantile));
+            }
+            for (long count : distribution.getBucketCounts()) {
+               result.append(delimiter).append(count);
+            }
+         }
+         result.append('\n');
+         out.append(result);
+      }
+      out.flush();
+   }
+
+   /**
+    * Aggregates lines into grouped distributions, reusing the previous
+    * line's group while the key repeats, as sorted input has it.
+    */
+   private class Aggregator {
+
+      final GroupedDistributions distributions = new GroupedDistributions(
+            operations.length, bounds);
+
+      private final IsoDateParser parser = new IsoDateParser(zone);
+
+      private String key;
+
+      private Distribution[] group;
+
+      void add(String line) {
+         int split = BulkProcessor.dateSplit(line, delimiter, true);
+         int keyEnd = BulkProcessor.keyEnd(line, delimiter, split);
+         long startInstant = BulkProcessor.parseField(parser, line,
+               keyEnd + 1, split, null);
+         long endInstant = BulkProcessor.parseField(parser, line, split + 1,
+               line.length(), null);
+
+         int keyLength = Math.max(keyEnd, 0);
+         if (key == null || key.length() != keyLength
+               || !line.regionMatches(0, key, 0, keyLength)) {
+            key = line.substring(0, keyLength);
+            group = distributions.group(key);
+         }
+         for (int i = 0; i < operations.length; i++) {
+            group[i].add(operations[i].apply(startInstant, endInstant, zone,
+                  resultUnit, calendar));
+         }
+      }
+   }
+
+   /**
+    * The statistics of one chunk, its line count and malformed lines
+    * numbered from 1 within the chunk.
+    */
+   private static class ChunkResult {
+
+      GroupedDistributions distributions;
+
+      long lines;
+
+      final List<Long> errorLines = new ArrayList<Long>();
+
+      final List<IllegalArgumentException> errors = new ArrayList<IllegalArgumentException>();
+   }
+
+   /**
+    * Aggregates each line of a mapped chunk, split by MappedLines.
+    */
+   private class ChunkTask implements Callable<ChunkResult> {
+
+      private final MappedByteBuffer chunk;
+
+      ChunkTask(MappedByteBuffer chunk) {
+         this.chunk = chunk;
+      }
+
+      @Override
+      public ChunkResult call() {
+         final ChunkResult result = new ChunkResult();
+         final Aggregator aggregator = new Aggregator();
+
+         result.lines = MappedLines.forEachLine(chunk,
+               new MappedLines.LineHandler() {
+                  @Override
+                  public void line(String text, long number) {
+                     try {
+                        aggregator.add(text);
+                     } catch (IllegalArgumentException iae) {
+                        result.errorLines.add(number);
+                        result.errors.add(iae);
+                     }
+                  }
+               });
+
+         result.distributions = aggregator.distributions;
+         return result;
+      }
+   }
+
+}
@@ -0,0 +1,111 @@
+package com.dwyer.andrew.dates.date_tool.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative long values with log-linear
+ * buckets, as HdrHistogram uses: values below 2^SUB_BITS have a bucket each,
+ * and every power of two above that is split into 2^SUB_BITS equal buckets,
+ * so a recorded value is known to within 1/2^SUB_BITS (about 3%) at any
+ * magnitude. Recording is a bucket index computation and an atomic
+ * increment, with no allocation.
+ *
+ * @author dwyera
+ */
+public final class Histogram {
+
+   /** Bits of precision below each power of two. */
+   static final int SUB_BITS = 5;
+
+   private static final int SUB_COUNT = 1 << SUB_BITS;
+
+   /** Exact buckets, then SUB_COUNT buckets per power of two up to 2^63. */
+   private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+   private final AtomicLong max = new AtomicLong();
+
+   /**
+    * Records a value. Negative values are recorded as zero.
+    *
+    * @param value
+    *           the value
+    */
+   public void record(long value) {
+      long recorded = Math.max(value, 0);
+      counts.incrementAndGet(bucket(recorded));
+      long largest;
+      while (recorded > (largest = max.get())
+            && !max.compareAndSet(largest, recorded)) {
+         // retry against the new maximum
+      }
+   }
+
+   /** Returns the number of values recorded. */
+   public long getCount() {
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         count += counts.get(i);
+      }
+      return count;
+   }
+
+   /** Returns the largest value recorded, zero if none. */
+   public long getMax() {
+      return max.get();
+   }
+
+   /**
+    * Returns the value below which the given fraction of recorded values
+    * fall, as the upper bound of its bucket capped at the maximum.
+    *
+    * @param fraction
+    *           between 0 and 1, e.g. 0.99 for the 99th percentile
+    * @return the percentile value, zero if nothing has been recorded
+    */
+   public long getPercentile(double fraction) {
+      long[] snapshot = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         snapshot[i] = counts.get(i);
+         total += snapshot[i];
+      }
+      if (total == 0) {
+         return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(fraction * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += snapshot[i];
+         if (seen >= rank) {
+            return Math.min(upperBound(i), getMax());
+         }
+      }
+      return getMax();
+   }
+
+   /** Returns the bucket holding a non-negative value. */
+   static int bucket(long value) {
+      if (value < SUB_COUNT) {
+         return (int) value;
+      }
+      int power = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int) (value >>> (power - SUB_BITS)) & (SUB_COUNT - 1);
+      return SUB_COUNT + (power - SUB_BITS) * SUB_COUNT + sub;
+   }
+
+   /** Returns the largest value held by a bucket. */
+   static long upperBound(int bucket) {
+      if (bucket < SUB_COUNT) {
+         return bucket;
+      }
+      int power = (bucket - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+      long sub = (bucket - SUB_COUNT) % SUB_COUNT;
+      long width = 1L << (power - SUB_BITS);
+      return (1L << power) + sub * width + width - 1;
+   }
+
+}
@@ -0,0 +1,145 @@
+package com.dwyer.andrew.dates.date_tool.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry of OperationMetrics by name. Code that is instrumented holds a
+ * Metrics reference that is null when instrumentation is off, so the only
+ * cost of turning it off is a null check.
+ *
+ * Each operation can be published as an MXBean named
+ * com.dwyer.andrew.dates:type=DateTool,name=operation, and all of them
+ * dumped as text.
+ *
+ * @author dwyera
+ */
+public final class Metrics {
+
+   /** The JMX domain the MXBeans are registered in. */
+   public static final String JMX_DOMAIN = "com.dwyer.andrew.dates";
+
+   private final Map<String, OperationMetrics> operations = new ConcurrentSkipListMap<String, OperationMetrics>();
+
+   /** The names of the operations this registry published. */
+   private final Set<String> registered = new HashSet<String>();
+
+   private MBeanServer mbeanServer;
+
+   /**
+    * Returns the metrics of the named operation, creating them on first use
+    * and registering them with JMX if this registry is published.
+    *
+    * @param name
+    *           the operation's name
+    * @return its metrics
+    */
+   public OperationMetrics get(String name) {
+      OperationMetrics metrics = operations.get(name);
+      if (metrics != null) {
+         return metrics;
+      }
+      synchronized (this) {
+         metrics = operations.get(name);
+         if (metrics == null) {
+            metrics = new OperationMetrics(name);
+            if (mbeanServer != null) {
+               register(metrics);
+            }
+            operations.put(name, metrics);
+         }
+         return metrics;
+      }
+   }
+
+   /**
+    * Publishes every operation, now and created later, as an MXBean on the
+    * platform MBean server.
+    */
+   public synchronized void publish() {
+      if (mbeanServer != null) {
+         return;
+      }
+      mbeanServer = ManagementFactory.getPlatformMBeanServer();
+      for (OperationMetrics metrics : operations.values()) {
+         register(metrics);
+      }
+   }
+
+   /**
+    * Removes the MXBeans this registry published from the platform MBean
+    * server. Operations created later are not published.
+    */
+   public synchronized void unpublish() {
+      if (mbeanServer == null) {
+         return;
+      }
+      for (String name : registered) {
+         try {
+            mbeanServer.unregisterMBean(objectName(name));
+         } catch (JMException jme) {
+            // unregistered by someone else
+         }
+      }
+      registered.clear();
+      mbeanServer = null;
+   }
+
+   /** Returns the MXBean name of an operation's metrics. */
+   public static ObjectName objectName(String operation) {
+      try {
+         return new ObjectName(JMX_DOMAIN + ":type=DateTool,name="
+               + ObjectName.quote(operation));
+      } catch (JMException jme) {
+         throw new IllegalArgumentException(jme);
+      }
+   }
+
+   /**
+    * Appends one line per operation called: calls, failures, latency
+    * percentiles in microseconds and range length percentiles in days.
+    *
+    * @param out
+    *           receives the dump
+    * @throws IOException
+    *            if appending fails
+    */
+   public void dump(Appendable out) throws IOException {
+      for (OperationMetrics metrics : operations.values()) {
+         if (metrics.getCalls() == 0 && metrics.getFailures() == 0) {
+            continue;
+         }
+         out.append(String.format(
+               "%-28s calls %d failures %d latency us p50 %.1f p99 %.1f"
+                     + " p99.9 %.1f max %.1f range days p50 %d p99 %d max %d%n",
+               metrics.getName(), metrics.getCalls(), metrics.getFailures(),
+               metrics.getLatencyP50Nanos() / 1000.0,
+               metrics.getLatencyP99Nanos() / 1000.0,
+               metrics.getLatencyP999Nanos() / 1000.0,
+               metrics.getLatencyMaxNanos() / 1000.0,
+               metrics.getRangeDaysP50(), metrics.getRangeDaysP99(),
+               metrics.getRangeDaysMax()));
+      }
+   }
+
+   private void register(OperationMetrics metrics) {
+      try {
+         mbeanServer.registerMBean(metrics, objectName(metrics.getName()));
+         registered.add(metrics.getName());
+      } catch (InstanceAlreadyExistsException iaee) {
+         // another registry in this JVM published the name first
+      } catch (JMException jme) {
+         throw new IllegalStateException(jme);
+      }
+   }
+
+}
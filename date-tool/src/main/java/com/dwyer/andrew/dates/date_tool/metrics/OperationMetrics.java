@@ -0,0 +1,119 @@
+package com.dwyer.andrew.dates.date_tool.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, latency histogram, range length histogram and failure count of
+ * one operation. Callers may time and record ranges of a sample of calls
+ * only, counting the rest. Recording is allocation free and safe from any
+ * thread.
+ *
+ * @author dwyera
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+
+   private static final long MILLIS_PER_DAY = 86400000L;
+
+   private final String name;
+
+   private final LongAdder calls = new LongAdder();
+
+   private final LongAdder failures = new LongAdder();
+
+   private final Histogram latency = new Histogram();
+
+   private final Histogram rangeDays = new Histogram();
+
+   OperationMetrics(String name) {
+      this.name = name;
+   }
+
+   /** Returns the operation's name. */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * Records successful calls that were not timed.
+    *
+    * @param count
+    *           the number of calls
+    */
+   public void recordCalls(long count) {
+      calls.add(count);
+   }
+
+   /**
+    * Records a successful call that was timed.
+    *
+    * @param nanos
+    *           the time the call took
+    */
+   public void record(long nanos) {
+      calls.increment();
+      latency.record(nanos);
+   }
+
+   /**
+    * Records the date range of a call.
+    *
+    * @param startInstant
+    *           the start of the range in epoch milliseconds
+    * @param endInstant
+    *           the end of the range in epoch milliseconds
+    */
+   public void recordRange(long startInstant, long endInstant) {
+      rangeDays.record(Math.abs(endInstant - startInstant) / MILLIS_PER_DAY);
+   }
+
+   /** Records a failed call. */
+   public void recordFailure() {
+      failures.increment();
+   }
+
+   @Override
+   public long getCalls() {
+      return calls.sum();
+   }
+
+   @Override
+   public long getFailures() {
+      return failures.sum();
+   }
+
+   @Override
+   public long getLatencyP50Nanos() {
+      return latency.getPercentile(0.5);
+   }
+
+   @Override
+   public long getLatencyP99Nanos() {
+      return latency.getPercentile(0.99);
+   }
+
+   @Override
+   public long getLatencyP999Nanos() {
+      return latency.getPercentile(0.999);
+   }
+
+   @Override
+   public long getLatencyMaxNanos() {
+      return latency.getMax();
+   }
+
+   @Override
+   public long getRangeDaysP50() {
+      return rangeDays.getPercentile(0.5);
+   }
+
+   @Override
+   public long getRangeDaysP99() {
+      return rangeDays.getPercentile(0.99);
+   }
+
+   @Override
+   public long getRangeDaysMax() {
+      return rangeDays.getMax();
+   }
+
+}
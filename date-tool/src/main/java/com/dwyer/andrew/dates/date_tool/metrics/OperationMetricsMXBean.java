@@ -0,0 +1,29 @@
+package com.dwyer.andrew.dates.date_tool.metrics;
+
+/**
+ * The JMX view of one operation's metrics. Latencies are in nanoseconds and
+ * ranges in whole days between the start and end date.
+ *
+ * @author dwyera
+ */
+public interface OperationMetricsMXBean {
+
+   long getCalls();
+
+   long getFailures();
+
+   long getLatencyP50Nanos();
+
+   long getLatencyP99Nanos();
+
+   long getLatencyP999Nanos();
+
+   long getLatencyMaxNanos();
+
+   long getRangeDaysP50();
+
+   long getRangeDaysP99();
+
+   long getRangeDaysMax();
+
+}
@@ -0,0 +1,81 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * BatchKernels Test class.
+ */
+public class BatchKernelsTest {
+
+   /**
+    * Test that the loaded kernels agree exactly with the scalar kernels for
+    * every ResultUnit, over ordinary dates, dates either side of the epoch
+    * and the extremes of the int range, at odd offsets and lengths that
+    * leave remainders.
+    */
+   @Test
+   public void testLoadedMatchesScalar() {
+      BatchKernels scalar = new BatchKernels();
+      BatchKernels loaded = BatchKernels.load();
+      assertTrue(loaded.toString(), loaded.toString().startsWith("vector")
+            || Boolean.getBoolean("date-tool.scalar"));
+
+      Random random = new Random(15);
+      int length = 1003;
+      int[] starts = new int[length];
+      int[] ends = new int[length];
+      for (int i = 0; i < length; i++) {
+         switch (i % 3) {
+         case 0:
+            starts[i] = random.nextInt(40000) - 10000;
+            ends[i] = starts[i] + random.nextInt(4000) - 2000;
+            break;
+         case 1:
+            starts[i] = random.nextInt(29) - 14;
+            ends[i] = random.nextInt(29) - 14;
+            break;
+         default:
+            starts[i] = random.nextBoolean() ? Integer.MIN_VALUE
+                  + random.nextInt(8) : Integer.MAX_VALUE - random.nextInt(8);
+            ends[i] = random.nextInt();
+         }
+      }
+
+      for (ResultUnit unit : ResultUnit.values()) {
+         long weeksMultiplier = unit == ResultUnit.DEFAULT ? 1
+               : 7 * unit.daysMultiplier;
+         for (int from : new int[] { 0, 1, 5 }) {
+            for (int to : new int[] { from, from + 3, length - 2, length }) {
+               long[] expected = new long[length];
+               long[] actual = new long[length];
+
+               scalar.daysBetween(starts, ends, expected, from, to,
+                     unit.daysMultiplier, unit.daysDivisor);
+               loaded.daysBetween(starts, ends, actual, from, to,
+                     unit.daysMultiplier, unit.daysDivisor);
+               assertArrayEquals(unit + " days", expected, actual);
+
+               scalar.weekdaysBetween(starts, ends, expected, from, to,
+                     unit.daysMultiplier, unit.daysDivisor);
+               loaded.weekdaysBetween(starts, ends, actual, from, to,
+                     unit.daysMultiplier, unit.daysDivisor);
+               assertArrayEquals(unit + " weekdays", expected, actual);
+
+               scalar.completeWeeksBetween(starts, ends, expected, from, to,
+                     weeksMultiplier, unit.daysDivisor);
+               loaded.completeWeeksBetween(starts, ends, actual, from, to,
+                     weeksMultiplier, unit.daysDivisor);
+               assertArrayEquals(unit + " weeks", expected, actual);
+            }
+         }
+      }
+   }
+
+}
@@ -0,0 +1,278 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * BusinessCalendar Test class.
+ */
+public class BusinessCalendarTest {
+
+   /** Epoch day of 2000-01-01, a Saturday. */
+   private static final long Y2K = 10957;
+
+   /** A calendar with a Saturday and Sunday weekend and a few holidays. */
+   private BusinessCalendar calendar;
+
+   @Before
+   public void setupCalendar() throws IOException {
+      calendar = BusinessCalendar.load(new StringReader("# test calendar\n"
+            + "weekend=SATURDAY,SUNDAY\n" + "\n" + "2000-01-03 New Year\n"
+            + "2000-04-21\n" + "2000-12-25 Christmas Day\n"
+            + "1850-06-03 Before the default index\n"));
+   }
+
+   /**
+    * Brute force count of business days using isBusinessDay.
+    */
+   private static long scanBusinessDays(BusinessCalendar calendar,
+         long startDay, long endDay) {
+      long count = 0;
+      for (long day = startDay; day < endDay; day++) {
+         if (calendar.isBusinessDay(day)) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /**
+    * Test that weekends and holidays are not business days.
+    */
+   @Test
+   public void testIsBusinessDay() {
+      assertFalse(calendar.isBusinessDay(Y2K)); // Saturday
+      assertFalse(calendar.isBusinessDay(Y2K + 1)); // Sunday
+      assertFalse(calendar.isBusinessDay(Y2K + 2)); // holiday Monday
+      assertTrue(calendar.isBusinessDay(Y2K + 3));
+      assertFalse(calendar.isBusinessDay(-43676)); // 1850-06-03 holiday
+      assertTrue(calendar.isBusinessDay(-43675));
+   }
+
+   /**
+    * Test countBusinessDays against a scan, inside, across and beyond the
+    * indexed years.
+    */
+   @Test
+   public void testCountBusinessDaysMatchesScan() {
+      Random random = new Random(42);
+      long first = calendar.getFirstDay() - 1000;
+      long span = calendar.getEndDay() + 1000 - first;
+      for (int i = 0; i < 2000; i++) {
+         long start = first + (long) (random.nextDouble() * span);
+         long end = start + random.nextInt(3000);
+         assertEquals(scanBusinessDays(calendar, start, end),
+               calendar.countBusinessDays(start, end));
+      }
+      assertEquals(0, calendar.countBusinessDays(Y2K + 10, Y2K));
+   }
+
+   /**
+    * Test a custom Friday and Saturday weekend.
+    */
+   @Test
+   public void testCustomWeekend() {
+      BusinessCalendar fridaySaturday = new BusinessCalendar(
+            BusinessCalendar.weekendMask(DateTimeConstants.FRIDAY,
+                  DateTimeConstants.SATURDAY), new long[0]);
+      // Saturday 2000-01-01 to Saturday 2000-01-08 has Sunday to Thursday
+      assertEquals(5, fridaySaturday.countBusinessDays(Y2K, Y2K + 7));
+      assertFalse(fridaySaturday.isBusinessDay(Y2K + 6));
+      assertTrue(fridaySaturday.isBusinessDay(Y2K + 1));
+   }
+
+   /**
+    * Test that a range of hundreds of years is answered from the index.
+    */
+   @Test
+   public void testVeryLongRange() {
+      BusinessCalendar weekends = new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[0]);
+      long start = weekends.getFirstDay() - 100000;
+      long end = weekends.getEndDay() + 100000;
+      assertEquals(DateMath.countWeekdays(start, end),
+            weekends.countBusinessDays(start, end));
+   }
+
+   /**
+    * Test calcBusinessDaysDifference, including reversed dates and agreement
+    * with calcWeekdaysDifference when there are no holidays.
+    */
+   @Test
+   public void testCalcBusinessDaysDifference() {
+      DateTime startDate = new DateTime(2000, 1, 1, 0, 0);
+      DateTime endDate = new DateTime(2000, 1, 10, 0, 0);
+      assertEquals(4,
+            new DateTool(startDate, endDate)
+                  .calcBusinessDaysDifference(calendar));
+      assertEquals(-4,
+            new DateTool(endDate, startDate)
+                  .calcBusinessDaysDifference(calendar));
+
+      BusinessCalendar weekends = new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[0]);
+      Random random = new Random(7);
+      for (int i = 0; i < 500; i++) {
+         startDate = new DateTime(1990 + random.nextInt(20),
+               1 + random.nextInt(12), 1 + random.nextInt(28),
+               random.nextInt(24), 0, DateTimeZone.UTC);
+         endDate = startDate.plusHours(random.nextInt(20000) - 10000);
+         assertEquals(new DateTool(startDate, endDate).calcWeekdaysDifference(),
+               new DateTool(startDate, endDate)
+                     .calcBusinessDaysDifference(weekends));
+      }
+   }
+
+   /**
+    * Test that a malformed calendar reports the offending line.
+    */
+   @Test
+   public void testLoadInvalid() throws IOException {
+      try {
+         BusinessCalendar.load(new StringReader("2000-01-01\nnot a date\n"));
+      } catch (IllegalArgumentException iae) {
+         assertTrue(iae.getMessage().contains("line 2"));
+         return;
+      }
+      throw new AssertionError("Expected IllegalArgumentException");
+   }
+
+   /**
+    * Test addBusinessDays against stepping one day at a time, including
+    * offsets that leave the indexed years.
+    */
+   @Test
+   public void testAddBusinessDaysMatchesStepping() {
+      long[] starts = { Y2K, Y2K + 2, Y2K + 5, calendar.getFirstDay() - 3,
+            calendar.getEndDay() - 20 };
+      for (long start : starts) {
+         long forward = start;
+         long backward = start;
+         for (int n = 1; n < 400; n++) {
+            do {
+               forward++;
+            } while (!calendar.isBusinessDay(forward));
+            do {
+               backward--;
+            } while (!calendar.isBusinessDay(backward));
+            assertEquals(forward, calendar.addBusinessDays(start, n));
+            assertEquals(backward, calendar.addBusinessDays(start, -n));
+         }
+         assertEquals(start, calendar.addBusinessDays(start, 0));
+      }
+   }
+
+   /**
+    * Test that large offsets round trip with countBusinessDays.
+    */
+   @Test
+   public void testAddBusinessDaysRoundTrip() {
+      long start = Y2K + 3;
+      for (long n : new long[] { 1, 250, 5000, 100000 }) {
+         assertEquals(n, calendar.countBusinessDays(start,
+               calendar.addBusinessDays(start, n)));
+         assertEquals(n, calendar.countBusinessDays(
+               calendar.addBusinessDays(start, -n), start));
+      }
+
+      DateTime tuesday = new DateTime(2000, 1, 4, 9, 0);
+      assertEquals(new DateTime(2000, 1, 10, 9, 0),
+            DateTool.addBusinessDays(tuesday, 4, calendar));
+   }
+
+   /**
+    * Test that allOpen and anyOpen agree day by day with the calendars they
+    * combine, across indexes of different spans and weekends, and give the
+    * joint T+N date.
+    */
+   @Test
+   public void testCombinedCalendars() {
+      // a Friday and Saturday weekend indexed over a shorter span
+      BusinessCalendar gulf = new BusinessCalendar(BusinessCalendar.weekendMask(
+            DateTimeConstants.FRIDAY, DateTimeConstants.SATURDAY), new long[] {
+            Y2K + 3, Y2K + 9 }, 1990, 2010);
+      BusinessCalendar london = new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[] { Y2K + 4, Y2K + 9 },
+            1950, 2100);
+      BusinessCalendar all = BusinessCalendar.allOpen(calendar, gulf, london);
+      BusinessCalendar any = BusinessCalendar.anyOpen(calendar, gulf, london);
+
+      long first = calendar.getFirstDay() - 200;
+      for (long day = first; day < calendar.getEndDay() + 200; day++) {
+         boolean a = calendar.isBusinessDay(day);
+         boolean b = gulf.isBusinessDay(day);
+         boolean c = london.isBusinessDay(day);
+         assertEquals(a && b && c, all.isBusinessDay(day));
+         assertEquals(a || b || c, any.isBusinessDay(day));
+      }
+      Random random = new Random(17);
+      for (int i = 0; i < 500; i++) {
+         long start = first + random.nextInt(120000);
+         long end = start + random.nextInt(3000);
+         assertEquals(scanBusinessDays(all, start, end),
+               all.countBusinessDays(start, end));
+         assertEquals(scanBusinessDays(any, start, end),
+               any.countBusinessDays(start, end));
+      }
+
+      // after Monday 2000-01-03 all three are next open on Thursday the 6th,
+      // then Tuesday the 11th and Wednesday the 12th
+      assertFalse(all.isBusinessDay(Y2K + 9));
+      assertEquals(Y2K + 11, all.addBusinessDays(Y2K + 2, 3));
+      DateTime monday = new DateTime(2000, 1, 3, 9, 0);
+      assertEquals(new DateTime(2000, 1, 12, 9, 0),
+            DateTool.addJointBusinessDays(monday, 3, london, gulf, calendar));
+      assertEquals(3, new DateTool(monday, new DateTime(2000, 1, 13, 9, 0))
+            .calcJointBusinessDaysDifference(calendar, gulf, london));
+
+      // the pre-combined calendar gives the same answers without a lookup
+      assertEquals(new DateTime(2000, 1, 12, 9, 0),
+            DateTool.addBusinessDays(monday, 3, all));
+      assertEquals(3, new DateTool(monday, new DateTime(2000, 1, 13, 9, 0))
+            .calcBusinessDaysDifference(all));
+   }
+
+   /**
+    * Test that combinations are cached regardless of order and that a single
+    * calendar is returned as is.
+    */
+   @Test
+   public void testCombinedCalendarsCached() {
+      BusinessCalendar other = new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[] { Y2K + 4 });
+      assertSame(BusinessCalendar.allOpen(calendar, other),
+            BusinessCalendar.allOpen(other, calendar, other));
+      assertNotSame(BusinessCalendar.allOpen(calendar, other),
+            BusinessCalendar.anyOpen(calendar, other));
+      assertSame(calendar, BusinessCalendar.allOpen(calendar, calendar));
+   }
+
+   /**
+    * Test that more combinations than the cache holds are still built
+    * correctly, and that each is returned again while it is cached.
+    */
+   @Test
+   public void testCombinedCalendarsEvicted() {
+      for (int i = 0; i < 200; i++) {
+         BusinessCalendar holiday = new BusinessCalendar(
+               BusinessCalendar.SATURDAY_SUNDAY, new long[] { Y2K + 2 + i });
+         BusinessCalendar all = BusinessCalendar.allOpen(calendar, holiday);
+         assertSame(all, BusinessCalendar.allOpen(holiday, calendar));
+         assertFalse(all.isBusinessDay(Y2K + 2 + i));
+      }
+   }
+
+}
@@ -0,0 +1,109 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.joda.time.DateTimeConstants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CalendarTable Test class.
+ */
+public class CalendarTableTest {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /**
+    * Test that mapped calendars answer every query as the calendars they
+    * were written from.
+    */
+   @Test
+   public void testMappedMatchesHeap() throws IOException {
+      Random random = new Random(19);
+      Map<String, BusinessCalendar> calendars = new LinkedHashMap<String, BusinessCalendar>();
+      for (String name : new String[] { "XNYS", "XLON", "XTAE", "none" }) {
+         long[] holidays = new long[random.nextInt(500)];
+         for (int i = 0; i < holidays.length; i++) {
+            holidays[i] = -25567 + random.nextInt(110000);
+         }
+         int weekend = name.equals("XTAE") ? BusinessCalendar.weekendMask(
+               DateTimeConstants.FRIDAY, DateTimeConstants.SATURDAY)
+               : BusinessCalendar.SATURDAY_SUNDAY;
+         calendars.put(name, new BusinessCalendar(weekend, holidays,
+               1900 + random.nextInt(100), 2100 + random.nextInt(100)));
+      }
+      Path file = folder.getRoot().toPath().resolve("calendars.dtct");
+      CalendarTable.write(file, calendars);
+      if (Files.getFileAttributeView(file, PosixFileAttributeView.class) != null) {
+         assertEquals("rw-r--r--", PosixFilePermissions.toString(Files
+               .getPosixFilePermissions(file)));
+      }
+
+      CalendarTable table = CalendarTable.open(file);
+      assertEquals(Arrays.asList("XLON", "XNYS", "XTAE", "none"),
+            table.getNames());
+      for (Map.Entry<String, BusinessCalendar> entry : calendars.entrySet()) {
+         BusinessCalendar heap = entry.getValue();
+         BusinessCalendar mapped = table.get(entry.getKey());
+         assertSame(mapped, table.get(entry.getKey()));
+         assertEquals(heap.getWeekendMask(), mapped.getWeekendMask());
+         assertEquals(heap.getFirstDay(), mapped.getFirstDay());
+         assertEquals(heap.getEndDay(), mapped.getEndDay());
+         for (int i = 0; i < 2000; i++) {
+            long start = -30000 + random.nextInt(120000);
+            long end = start + random.nextInt(5000);
+            int offset = random.nextInt(4000) - 2000;
+            assertEquals(heap.isBusinessDay(start), mapped.isBusinessDay(start));
+            assertEquals(heap.countBusinessDays(start, end),
+                  mapped.countBusinessDays(start, end));
+            assertEquals(heap.addBusinessDays(start, offset),
+                  mapped.addBusinessDays(start, offset));
+         }
+      }
+      assertNull(table.get("XHKG"));
+   }
+
+   /**
+    * Test that files which are not whole tables are rejected.
+    */
+   @Test
+   public void testRejectsInvalid() throws IOException {
+      Path text = folder.newFile("calendar.txt").toPath();
+      Files.write(text, "2014-01-01\n".getBytes(StandardCharsets.UTF_8));
+      assertOpenFails(text);
+
+      Path file = folder.getRoot().toPath().resolve("calendars.dtct");
+      Map<String, BusinessCalendar> calendars = new LinkedHashMap<String, BusinessCalendar>();
+      calendars.put("XNYS", new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[] { 16071 }));
+      CalendarTable.write(file, calendars);
+      byte[] bytes = Files.readAllBytes(file);
+      Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+      assertOpenFails(file);
+   }
+
+   private static void assertOpenFails(Path file) {
+      try {
+         CalendarTable.open(file);
+      } catch (IOException expected) {
+         return;
+      }
+      throw new AssertionError(file + " opened");
+   }
+
+}
@@ -0,0 +1,198 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joda.time.LocalDate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CalendarWatcher Test class. The reload stress test always checks every
+ * query while calendars are swapped; it asserts p99 query latency only when
+ * the property calendar.maxP99Micros is set, e.g. mvn test
+ * -Dcalendar.maxP99Micros=50 on a quiet benchmark host, with the measured
+ * p99 and maximum latency in the failure message.
+ */
+public class CalendarWatcherTest {
+
+   /** Epoch day of 2000-01-03, a Monday. */
+   private static final long MONDAY = 10959;
+
+   /** Every Monday of 2000 is a holiday in this calendar. */
+   private static final String MONDAYS;
+
+   static {
+      StringBuilder mondays = new StringBuilder("weekend=SATURDAY,SUNDAY\n");
+      for (int week = 0; week < 52; week++) {
+         mondays.append(new LocalDate(2000, 1, 3).plusWeeks(week)).append(
+               " closed\n");
+      }
+      MONDAYS = mondays.toString();
+   }
+
+   private static final String NO_HOLIDAYS = "weekend=SATURDAY,SUNDAY\n";
+
+   private static final int READERS = 4;
+
+   private static final int RELOADS = 200;
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /**
+    * Replaces the file's content in one step, as editors and deployment
+    * tools do.
+    */
+   private void write(Path file, String content) throws IOException {
+      Path temporary = Files.createTempFile(folder.getRoot().toPath(), "next",
+            ".tmp");
+      Files.write(temporary, content.getBytes(StandardCharsets.UTF_8));
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+   }
+
+   private static void awaitVersion(CalendarWatcher watcher, long version)
+         throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (watcher.getVersion() < version
+            && System.currentTimeMillis() < deadline) {
+         Thread.sleep(10);
+      }
+   }
+
+   /**
+    * Test that a changed file is loaded as a new version and that an invalid
+    * one leaves the previous calendar in place.
+    */
+   @Test
+   public void testReloadsOnChange() throws Exception {
+      Path file = folder.getRoot().toPath().resolve("calendar.txt");
+      write(file, NO_HOLIDAYS);
+      try (CalendarWatcher watcher = new CalendarWatcher(file)) {
+         assertEquals(1, watcher.getVersion());
+         assertTrue(watcher.get().isBusinessDay(MONDAY));
+
+         write(file, MONDAYS);
+         awaitVersion(watcher, 2);
+         assertEquals(2, watcher.getVersion());
+         assertEquals(1, watcher.getReloadCount());
+         assertFalse(watcher.get().isBusinessDay(MONDAY));
+
+         BusinessCalendar before = watcher.get();
+         write(file, "not a date\n");
+         long deadline = System.currentTimeMillis() + 10000;
+         while (watcher.getFailedReloads() == 0
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+         }
+         assertEquals(1, watcher.getFailedReloads());
+         assertNotNull(watcher.getLastFailure());
+         assertSame(before, watcher.get());
+         assertEquals(2, watcher.getVersion());
+      }
+   }
+
+   /**
+    * Test that readers querying while calendars are swapped as fast as they
+    * can be loaded only ever see one complete calendar or the other.
+    */
+   @Test
+   public void testConsistentSnapshotsDuringReloads() throws Exception {
+      final Path file = folder.getRoot().toPath().resolve("calendar.txt");
+      write(file, NO_HOLIDAYS);
+      final long end = MONDAY + 364;
+      final long open = BusinessCalendar.load(new StringReader(NO_HOLIDAYS))
+            .countBusinessDays(MONDAY, end);
+      final long closed = open - 52;
+
+      try (final CalendarWatcher watcher = new CalendarWatcher(file)) {
+         final AtomicBoolean reloading = new AtomicBoolean(true);
+         final CountDownLatch start = new CountDownLatch(1);
+         ExecutorService readers = Executors.newFixedThreadPool(READERS);
+         try {
+            List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+            for (int t = 0; t < READERS; t++) {
+               results.add(readers.submit(new Callable<long[]>() {
+                  @Override
+                  public long[] call() throws Exception {
+                     start.await();
+                     long[] latencies = new long[1 << 20];
+                     int n = 0;
+                     while (reloading.get()) {
+                        long started = System.nanoTime();
+                        BusinessCalendar calendar = watcher.get();
+                        long count = calendar.countBusinessDays(MONDAY, end);
+                        boolean holiday = !calendar.isBusinessDay(MONDAY);
+                        // keep the latest queries' latencies
+                        latencies[n++ & (latencies.length - 1)] = System
+                              .nanoTime() - started;
+                        if (holiday ? count != closed : count != open) {
+                           throw new AssertionError("Torn calendar: " + count
+                                 + " business days, Monday holiday "
+                                 + holiday);
+                        }
+                     }
+                     return Arrays.copyOf(latencies,
+                           Math.min(n, latencies.length));
+                  }
+               }));
+            }
+
+            start.countDown();
+            for (int i = 0; i < RELOADS; i++) {
+               write(file, i % 2 == 0 ? MONDAYS : NO_HOLIDAYS);
+               assertTrue(watcher.reload());
+            }
+            reloading.set(false);
+
+            List<long[]> all = new ArrayList<long[]>();
+            int total = 0;
+            for (Future<long[]> result : results) {
+               long[] latencies = result.get();
+               all.add(latencies);
+               total += latencies.length;
+            }
+            long[] latencies = new long[total];
+            int offset = 0;
+            for (long[] part : all) {
+               System.arraycopy(part, 0, latencies, offset, part.length);
+               offset += part.length;
+            }
+            Arrays.sort(latencies);
+            long p99Micros = latencies[(int) (total * 0.99)] / 1000;
+
+            assertTrue(watcher.getVersion() > RELOADS);
+            String maxP99 = System.getProperty("calendar.maxP99Micros");
+            if (maxP99 != null) {
+               assertTrue(RELOADS + " reloads, p99 " + p99Micros
+                     + "us, max " + latencies[total - 1] / 1000 + "us",
+                     p99Micros <= Long.parseLong(maxP99));
+            }
+         } finally {
+            readers.shutdown();
+         }
+      }
+   }
+
+}
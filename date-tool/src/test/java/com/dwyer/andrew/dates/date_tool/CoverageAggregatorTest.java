@@ -0,0 +1,125 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * CoverageAggregator Test class.
+ */
+public class CoverageAggregatorTest {
+
+   /** Monday 2014-01-06. */
+   private static final long MONDAY = DateMath.epochDay(2014, 1, 6);
+
+   /**
+    * Test overlapping, touching, reversed and disjoint ranges.
+    */
+   @Test
+   public void testAggregate() {
+      CoverageAggregator aggregator = new CoverageAggregator(1);
+      aggregator.add(MONDAY, MONDAY + 10);
+      aggregator.add(MONDAY + 12, MONDAY + 5);
+      aggregator.add(MONDAY + 12, MONDAY + 14);
+      aggregator.add(MONDAY + 21, MONDAY + 22);
+
+      Coverage coverage = aggregator.aggregate(new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[] { MONDAY + 1 }));
+      assertEquals(4, coverage.getRanges());
+      assertEquals(2, coverage.getSegments());
+
+      Coverage.Totals union = coverage.getUnion();
+      assertEquals(15, union.getDays(ResultUnit.DEFAULT));
+      assertEquals(11, union.getWeekdays(ResultUnit.DEFAULT));
+      assertEquals(2, union.getCompleteWeeks(ResultUnit.DEFAULT));
+      assertEquals(10, union.getBusinessDays(ResultUnit.DEFAULT));
+      assertEquals(360, union.getDays(ResultUnit.HOURS));
+      assertEquals(14 * 24, union.getCompleteWeeks(ResultUnit.HOURS));
+
+      Coverage.Totals gaps = coverage.getGaps();
+      assertEquals(7, gaps.getDays(ResultUnit.DEFAULT));
+      assertEquals(5, gaps.getWeekdays(ResultUnit.DEFAULT));
+      assertEquals(1, gaps.getCompleteWeeks(ResultUnit.DEFAULT));
+
+      assertEquals(0, coverage.getIntersection().getDays(ResultUnit.DEFAULT));
+   }
+
+   /**
+    * Test the intersection, and that an empty range empties it.
+    */
+   @Test
+   public void testIntersection() {
+      CoverageAggregator aggregator = new CoverageAggregator();
+      aggregator.add(MONDAY, MONDAY + 10);
+      aggregator.add(MONDAY + 3, MONDAY + 20);
+      aggregator.add(MONDAY + 8, MONDAY - 1);
+
+      Coverage coverage = aggregator.aggregate(null);
+      assertEquals(5, coverage.getIntersection().getDays(ResultUnit.DEFAULT));
+      assertEquals(3, coverage.getIntersection().getWeekdays(
+            ResultUnit.DEFAULT));
+      assertEquals(0, coverage.getUnion().getBusinessDays(ResultUnit.DEFAULT));
+
+      aggregator.add(MONDAY + 4, MONDAY + 4);
+      coverage = aggregator.aggregate(null);
+      assertEquals(4, coverage.getRanges());
+      assertEquals(0, coverage.getIntersection().getDays(ResultUnit.DEFAULT));
+      assertEquals(21, coverage.getUnion().getDays(ResultUnit.DEFAULT));
+
+      aggregator.clear();
+      assertEquals(0, aggregator.size());
+      assertEquals(0, aggregator.aggregate(null).getUnion().getDays(
+            ResultUnit.DEFAULT));
+   }
+
+   /**
+    * Test random ranges against a day by day set.
+    */
+   @Test
+   public void testAgainstDaySet() {
+      Random random = new Random(11);
+      CoverageAggregator aggregator = new CoverageAggregator();
+      for (int trial = 0; trial < 200; trial++) {
+         aggregator.clear();
+         BitSet covered = new BitSet();
+         long first = Long.MAX_VALUE;
+         long last = Long.MIN_VALUE;
+         int count = 1 + random.nextInt(50);
+         for (int i = 0; i < count; i++) {
+            long start = MONDAY + random.nextInt(1000);
+            long end = start + 1 + random.nextInt(60);
+            aggregator.add(start, end);
+            covered.set((int) (start - MONDAY), (int) (end - MONDAY));
+            first = Math.min(first, start);
+            last = Math.max(last, end);
+         }
+
+         long weekdays = 0;
+         long gapWeekdays = 0;
+         for (long day = first; day < last; day++) {
+            boolean weekday = DateMath.dayOfWeek(day) <= 5;
+            if (covered.get((int) (day - MONDAY))) {
+               weekdays += weekday ? 1 : 0;
+            } else {
+               gapWeekdays += weekday ? 1 : 0;
+            }
+         }
+
+         Coverage coverage = aggregator.aggregate(null);
+         assertEquals(covered.cardinality(), coverage.getUnion().getDays(
+               ResultUnit.DEFAULT));
+         assertEquals(weekdays, coverage.getUnion().getWeekdays(
+               ResultUnit.DEFAULT));
+         assertEquals(last - first - covered.cardinality(), coverage
+               .getGaps().getDays(ResultUnit.DEFAULT));
+         assertEquals(gapWeekdays, coverage.getGaps().getWeekdays(
+               ResultUnit.DEFAULT));
+      }
+   }
+
+}
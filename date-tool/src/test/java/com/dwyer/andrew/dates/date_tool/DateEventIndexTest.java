@@ -0,0 +1,164 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * DateEventIndex Test class. Counts are checked against linear scans of the
+ * events.
+ */
+public class DateEventIndexTest {
+
+   /** 2014-01-01, a Wednesday. */
+   private static final int JAN_1_2014 = (int) DateMath.epochDay(2014, 1, 1);
+
+   private static long scan(int[] events, int length, long startDay,
+         long endDay, boolean weekdaysOnly) {
+      long count = 0;
+      for (int i = 0; i < length; i++) {
+         if (events[i] >= startDay && events[i] < endDay
+               && (!weekdaysOnly || DateMath.dayOfWeek(events[i]) <= 5)) {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   private static void assertMatchesScan(DateEventIndex index, int[] events,
+         int length, Random random) {
+      assertEquals(length, index.getCount());
+      for (int i = 0; i < 200; i++) {
+         // windows reaching beyond the span on either side
+         long start = JAN_1_2014 - 100 + random.nextInt(1000);
+         long end = start + random.nextInt(400) - 20;
+         assertEquals(start + "-" + end, scan(events, length, start, end,
+               false), index.count(start, end));
+         assertEquals(start + "-" + end, scan(events, length, start, end,
+               true), index.countOnWeekdays(start, end));
+      }
+   }
+
+   /**
+    * Test an index built from events against linear scans.
+    */
+   @Test
+   public void testBuild() {
+      Random random = new Random(25);
+      int[] events = new int[50000];
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int i = 0; i < events.length; i++) {
+         events[i] = JAN_1_2014 + random.nextInt(730);
+         min = Math.min(min, events[i]);
+         max = Math.max(max, events[i]);
+      }
+      DateEventIndex index = new DateEventIndex(events);
+
+      assertEquals(min, index.getFirstDay());
+      assertEquals(max + 1, index.getEndDay());
+      assertMatchesScan(index, events, events.length, random);
+      assertEquals(events.length, index.count(Long.MIN_VALUE / 2,
+            Long.MAX_VALUE / 2));
+   }
+
+   /**
+    * Test events added one at a time, growing the span in both directions,
+    * against linear scans.
+    */
+   @Test
+   public void testAdd() {
+      Random random = new Random(25);
+      int[] events = new int[5000];
+      DateEventIndex index = new DateEventIndex();
+      for (int i = 0; i < events.length; i++) {
+         events[i] = JAN_1_2014 + 400 + (int) (random.nextGaussian() * 150);
+         index.add(events[i]);
+         if (i % 1000 == 0) {
+            assertMatchesScan(index, events, i + 1, random);
+         }
+      }
+      assertMatchesScan(index, events, events.length, random);
+
+      DateEventIndex built = new DateEventIndex(events);
+      for (int i = 0; i < 200; i++) {
+         long start = JAN_1_2014 + random.nextInt(800);
+         long end = start + random.nextInt(200);
+         assertEquals(built.count(start, end), index.count(start, end));
+      }
+   }
+
+   /**
+    * Test several events on one day and an empty index.
+    */
+   @Test
+   public void testAddEventsAndEmpty() {
+      DateEventIndex index = new DateEventIndex(new int[0]);
+      assertEquals(0, index.count(JAN_1_2014, JAN_1_2014 + 7));
+      assertEquals(0, index.countWeek(JAN_1_2014));
+
+      // a Saturday
+      index.add(JAN_1_2014 + 3, 40);
+      index.add(JAN_1_2014, 2);
+      assertEquals(42, index.getCount());
+      assertEquals(42, index.count(JAN_1_2014, JAN_1_2014 + 4));
+      assertEquals(40, index.count(JAN_1_2014 + 1, JAN_1_2014 + 4));
+      assertEquals(2, index.countOnWeekdays(JAN_1_2014, JAN_1_2014 + 4));
+      assertEquals(0, index.count(JAN_1_2014 + 4, JAN_1_2014));
+
+      try {
+         index.add(JAN_1_2014, -1);
+         fail();
+      } catch (IllegalArgumentException iae) {
+         // expected
+      }
+   }
+
+   /**
+    * Test counts per ISO week and per run of weeks.
+    */
+   @Test
+   public void testWeeks() {
+      Random random = new Random(25);
+      int[] events = new int[20000];
+      for (int i = 0; i < events.length; i++) {
+         events[i] = JAN_1_2014 + random.nextInt(365);
+      }
+      DateEventIndex index = new DateEventIndex(events);
+
+      // 2013-12-30 is the Monday of 2014's first ISO week
+      long monday = JAN_1_2014 - 2;
+      long[] expected = new long[60];
+      for (int week = 0; week < expected.length; week++) {
+         expected[week] = scan(events, events.length, monday + 7 * week,
+               monday + 7 * week + 7, false);
+         assertEquals(expected[week], index.countWeek(monday + 7 * week + 4));
+      }
+      assertArrayEquals(expected, index.countPerWeek(monday, expected.length));
+      assertEquals(0, index.countPerWeek(monday, 0).length);
+
+      assertArrayEquals(new long[5], index.countPerWeek(monday - 100, 5));
+   }
+
+   /**
+    * Test that growing beyond the longest span leaves the index unchanged.
+    */
+   @Test
+   public void testSpanTooLong() {
+      DateEventIndex index = new DateEventIndex(new int[] { JAN_1_2014 });
+      try {
+         index.add(JAN_1_2014 + (long) Integer.MAX_VALUE);
+         fail();
+      } catch (IllegalArgumentException iae) {
+         // expected
+      }
+      assertEquals(1, index.count(JAN_1_2014, JAN_1_2014 + 1));
+      index.add(JAN_1_2014 + 1000);
+      assertEquals(2, index.count(JAN_1_2014, JAN_1_2014 + 1001));
+   }
+
+}
@@ -0,0 +1,417 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.Months;
+import org.joda.time.Years;
+import org.joda.time.chrono.ISOChronology;
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * DateMath Test class.
+ */
+public class DateMathTest {
+
+   /** Zones the randomized tests are run in. */
+   private static final DateTimeZone[] ZONES = { DateTimeZone.UTC,
+         DateTimeZone.forOffsetHours(10), DateTimeZone.forOffsetHours(-5),
+         DateTimeZone.forID("Europe/London"),
+         DateTimeZone.forID("America/New_York"),
+         DateTimeZone.forID("Australia/Sydney") };
+
+   /**
+    * The day by day walk DateTool.calcWeekdaysDifference performed before it
+    * was replaced by the closed form. Used as the reference implementation.
+    */
+   private static long loopWeekdaysDifference(DateTime startDate,
+         DateTime endDate) {
+      boolean datesReversed = false;
+      if (startDate.compareTo(endDate) > 0) {
+         DateTime tempDate = startDate;
+         startDate = endDate;
+         endDate = tempDate;
+         datesReversed = true;
+      }
+
+      int count = 0;
+      DateTime currentDay = startDate;
+      while (currentDay.isBefore(endDate)) {
+         if (currentDay.getDayOfWeek() == DateTimeConstants.SATURDAY
+               || currentDay.getDayOfWeek() == DateTimeConstants.SUNDAY) {
+            currentDay = currentDay.plusWeeks(1).withDayOfWeek(
+                  DateTimeConstants.MONDAY);
+         } else {
+            currentDay = currentDay.plusDays(1);
+            count++;
+         }
+      }
+      return datesReversed ? -count : count;
+   }
+
+   /**
+    * Test dayOfWeek against Joda for a run of consecutive days either side of
+    * the epoch.
+    */
+   @Test
+   public void testDayOfWeek() {
+      DateTime day = new DateTime(1969, 12, 1, 0, 0, DateTimeZone.UTC);
+      for (int i = 0; i < 100; i++) {
+         long epochDay = Math.floorDiv(day.getMillis(), DateMath.MILLIS_PER_DAY);
+         assertEquals(day.getDayOfWeek(), DateMath.dayOfWeek(epochDay));
+         day = day.plusDays(1);
+      }
+   }
+
+   /**
+    * Test countWeekdays against a simple count for every start day of the
+    * week and every range length up to five weeks.
+    */
+   @Test
+   public void testCountWeekdays() {
+      for (long start = 0; start < 7; start++) {
+         for (long end = start; end < start + 35; end++) {
+            long expected = 0;
+            for (long day = start; day < end; day++) {
+               if (DateMath.dayOfWeek(day) <= DateTimeConstants.FRIDAY) {
+                  expected++;
+               }
+            }
+            assertEquals(expected, DateMath.countWeekdays(start, end));
+         }
+      }
+      assertEquals(0, DateMath.countWeekdays(10, 3));
+   }
+
+   /**
+    * Randomized equivalence test of the closed form against the original loop,
+    * covering reversed inputs, times of day and mixed zones.
+    */
+   @Test
+   public void testWeekdaysBetweenMatchesLoop() {
+      Random random = new Random(20140101L);
+      for (int i = 0; i < 5000; i++) {
+         DateTimeZone startZone = ZONES[random.nextInt(ZONES.length)];
+         DateTimeZone endZone = ZONES[random.nextInt(ZONES.length)];
+         DateTime startDate = new DateTime(1950 + random.nextInt(100),
+               1 + random.nextInt(12), 1 + random.nextInt(28),
+               random.nextInt(24), random.nextInt(60), startZone);
+         DateTime endDate = startDate.plusMinutes(
+               random.nextInt(2 * 60 * 24 * 800) - 60 * 24 * 800).withZone(
+               endZone);
+
+         assertEquals(startDate + " -> " + endDate,
+               loopWeekdaysDifference(startDate, endDate),
+               new DateTool(startDate, endDate).calcWeekdaysDifference());
+      }
+   }
+
+   /**
+    * Test a range far longer than the loop could walk in reasonable time. 400
+    * Gregorian years are exactly 20871 weeks.
+    */
+   @Test
+   public void testWeekdaysBetweenVeryLongRange() {
+      DateTime startDate = new DateTime(1600, 1, 1, 0, 0, DateTimeZone.UTC);
+      DateTime endDate = new DateTime(2000, 1, 1, 0, 0, DateTimeZone.UTC);
+      assertEquals(20871 * 5, DateMath.weekdaysBetween(startDate.getMillis(),
+            endDate.getMillis(), DateTimeZone.UTC));
+      assertEquals(-20871 * 5, DateMath.weekdaysBetween(endDate.getMillis(),
+            startDate.getMillis(), DateTimeZone.UTC));
+   }
+
+   /**
+    * Test addWeekdays against stepping one day at a time, forwards and
+    * backwards from every day of the week.
+    */
+   @Test
+   public void testAddWeekdaysMatchesStepping() {
+      for (long start = 0; start < 7; start++) {
+         long forward = start;
+         long backward = start;
+         for (int n = 1; n < 40; n++) {
+            do {
+               forward++;
+            } while (DateMath.dayOfWeek(forward) > DateTimeConstants.FRIDAY);
+            do {
+               backward--;
+            } while (DateMath.dayOfWeek(backward) > DateTimeConstants.FRIDAY);
+            assertEquals(forward, DateMath.addWeekdays(start, n));
+            assertEquals(backward, DateMath.addWeekdays(start, -n));
+         }
+         assertEquals(start, DateMath.addWeekdays(start, 0));
+      }
+   }
+
+   /**
+    * Test DateTool.addWeekdays keeps the time of day and agrees with
+    * calcWeekdaysDifference.
+    */
+   @Test
+   public void testDateToolAddWeekdays() {
+      DateTime friday = new DateTime(2000, 1, 7, 13, 30);
+      assertEquals(new DateTime(2000, 1, 10, 13, 30),
+            DateTool.addWeekdays(friday, 1));
+      assertEquals(new DateTime(2000, 1, 6, 13, 30),
+            DateTool.addWeekdays(friday, -1));
+      assertEquals(5000,
+            new DateTool(friday, DateTool.addWeekdays(friday, 5000))
+                  .calcWeekdaysDifference());
+   }
+
+   /**
+    * Test the batch methods against DateTool for every ResultUnit, with dates
+    * at midnight UTC in both orders.
+    */
+   @Test
+   public void testBatchMatchesDateTool() {
+      Random random = new Random(99);
+      int length = 500;
+      int[] starts = new int[length];
+      int[] ends = new int[length];
+      for (int i = 0; i < length; i++) {
+         starts[i] = random.nextInt(40000) - 10000;
+         ends[i] = starts[i] + random.nextInt(4000) - 2000;
+      }
+      BusinessCalendar calendar = new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[] { 10959, 11316 });
+
+      long[] days = new long[length];
+      long[] weekdays = new long[length];
+      long[] weeks = new long[length];
+      long[] businessDays = new long[length];
+      for (ResultUnit unit : ResultUnit.values()) {
+         if (unit.isCalendarUnit()) {
+            // only the span between the dates, see testCalendarUnitBatch
+            continue;
+         }
+         DateMath.daysBetween(starts, ends, days, length, unit);
+         DateMath.weekdaysBetween(starts, ends, weekdays, length, unit);
+         DateMath.completeWeeksBetween(starts, ends, weeks, length, unit);
+         DateMath.businessDaysBetween(calendar, starts, ends, businessDays,
+               length, unit);
+
+         for (int i = 0; i < length; i++) {
+            DateTime startDate = new DateTime(starts[i]
+                  * DateMath.MILLIS_PER_DAY, DateTimeZone.UTC);
+            DateTime endDate = new DateTime(ends[i] * DateMath.MILLIS_PER_DAY,
+                  DateTimeZone.UTC);
+            DateTool dateTool = new DateTool(startDate, endDate, unit);
+            assertEquals(dateTool.calcDaysDifference(), days[i]);
+            assertEquals(dateTool.calcCompleteWeeksDifference(), weeks[i]);
+            assertEquals(dateTool.calcBusinessDaysDifference(calendar),
+                  businessDays[i]);
+            assertEquals(dateTool.calcWeekdaysDifference(), weekdays[i]);
+         }
+      }
+   }
+
+   /**
+    * Returns a random instant, a quarter of them in the last days of a month
+    * so the end of month rule is exercised.
+    */
+   private static long randomInstant(Random random) {
+      long day;
+      if (random.nextInt(4) == 0) {
+         int year = 1700 + random.nextInt(600);
+         int month = 1 + random.nextInt(12);
+         day = DateMath.epochDay(year, month, DateMath.lengthOfMonth(year,
+               month) - random.nextInt(3));
+      } else {
+         day = random.nextInt(220000) - 100000;
+      }
+      return day * DateMath.MILLIS_PER_DAY
+            + random.nextInt(DateTimeConstants.MILLIS_PER_DAY);
+   }
+
+   /**
+    * Test monthsBetween and DateTool's calendar units against Joda's
+    * Months.monthsBetween and Years.yearsBetween over random instants, times
+    * of day and zones, in both orders.
+    */
+   @Test
+   public void testMonthsBetweenMatchesJoda() {
+      Random random = new Random(21);
+      for (int i = 0; i < 200000; i++) {
+         DateTimeZone zone = ZONES[random.nextInt(ZONES.length)];
+         long start = randomInstant(random);
+         long end = random.nextBoolean() ? randomInstant(random) : start
+               + (random.nextInt(2000) - 1000) * DateMath.MILLIS_PER_DAY
+               + random.nextInt(DateTimeConstants.MILLIS_PER_DAY);
+         DateTime startDate = new DateTime(start, zone);
+         DateTime endDate = new DateTime(end, zone);
+
+         int months = Months.monthsBetween(startDate, endDate).getMonths();
+         assertEquals(startDate + " " + endDate, months,
+               DateMath.monthsBetween(start, end, zone));
+         assertEquals(months, new DateTool(startDate, endDate,
+               ResultUnit.MONTHS).calcDaysDifference());
+         assertEquals(months / 3, new DateTool(startDate, endDate,
+               ResultUnit.QUARTERS).calcDaysDifference());
+         assertEquals(Years.yearsBetween(startDate, endDate).getYears(),
+               new DateTool(startDate, endDate, ResultUnit.CALENDAR_YEARS)
+                     .calcDaysDifference());
+      }
+   }
+
+   /**
+    * Test the batch path with calendar units against Joda's whole months and
+    * years between local dates.
+    */
+   @Test
+   public void testCalendarUnitBatch() {
+      Random random = new Random(22);
+      int length = 20000;
+      int[] starts = new int[length];
+      int[] ends = new int[length];
+      for (int i = 0; i < length; i++) {
+         starts[i] = (int) Math.floorDiv(randomInstant(random),
+               DateMath.MILLIS_PER_DAY);
+         ends[i] = (int) Math.floorDiv(randomInstant(random),
+               DateMath.MILLIS_PER_DAY);
+      }
+
+      long[] months = new long[length];
+      long[] quarters = new long[length];
+      long[] years = new long[length];
+      DateMath.daysBetween(starts, ends, months, length, ResultUnit.MONTHS);
+      DateMath.daysBetween(starts, ends, quarters, length, ResultUnit.QUARTERS);
+      DateMath.daysBetween(starts, ends, years, length,
+            ResultUnit.CALENDAR_YEARS);
+      for (int i = 0; i < length; i++) {
+         LocalDate startDate = new LocalDate(starts[i]
+               * DateMath.MILLIS_PER_DAY, ISOChronology.getInstanceUTC());
+         LocalDate endDate = new LocalDate(ends[i] * DateMath.MILLIS_PER_DAY,
+               ISOChronology.getInstanceUTC());
+         int expected = Months.monthsBetween(startDate, endDate).getMonths();
+         assertEquals(expected, months[i]);
+         assertEquals(expected, DateMath.countMonths(starts[i], ends[i]));
+         assertEquals(expected / 3, quarters[i]);
+         assertEquals(Years.yearsBetween(startDate, endDate).getYears(),
+               years[i]);
+      }
+   }
+
+   /**
+    * Test that counts of days cannot be given in calendar units.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testCountsRejectCalendarUnits() {
+      DateMath.weekdaysBetween(new int[1], new int[1], new long[1], 1,
+            ResultUnit.MONTHS);
+   }
+
+   /**
+    * The weekday time between two instants found by stepping through the
+    * local days between them, taking each weekday's share of the range.
+    */
+   private static long steppedWeekdayMillis(long startInstant,
+         long endInstant, DateTimeZone zone) {
+      long millis = 0;
+      DateTime day = new DateTime(startInstant, zone).withTimeAtStartOfDay();
+      while (day.getMillis() < endInstant) {
+         DateTime nextDay = day.plusDays(1).withTimeAtStartOfDay();
+         if (day.getDayOfWeek() <= DateTimeConstants.FRIDAY) {
+            millis += Math.min(nextDay.getMillis(), endInstant)
+                  - Math.max(day.getMillis(), startInstant);
+         }
+         day = nextDay;
+      }
+      return millis;
+   }
+
+   /**
+    * Test elapsed and weekdayElapsed, precise to the millisecond, against
+    * the instants' difference and a day by day walk, in zones whose clocks
+    * change on weekends, on weekdays and at midnight.
+    */
+   @Test
+   public void testElapsedMatchesStepping() {
+      DateTimeZone[] zones = { DateTimeZone.UTC,
+            DateTimeZone.forOffsetHoursMinutes(5, 30),
+            DateTimeZone.forID("Europe/London"),
+            DateTimeZone.forID("America/New_York"),
+            DateTimeZone.forID("America/Sao_Paulo"),
+            DateTimeZone.forID("Asia/Tehran"),
+            DateTimeZone.forID("Australia/Lord_Howe") };
+      Random random = new Random(23);
+      for (int i = 0; i < 20000; i++) {
+         DateTimeZone zone = zones[random.nextInt(zones.length)];
+         long start = (random.nextInt(18000) + 3000) * DateMath.MILLIS_PER_DAY
+               + random.nextInt(DateTimeConstants.MILLIS_PER_DAY);
+         long end = start + (long) random.nextInt(400)
+               * DateTimeConstants.MILLIS_PER_HOUR + random.nextInt(1000000);
+         long expected = steppedWeekdayMillis(start, end, zone);
+
+         assertEquals(new DateTime(start, zone) + " " + new DateTime(end, zone),
+               expected, DateMath.weekdayMillis(start, end, zone));
+         assertEquals(-expected, DateMath.weekdayMillis(end, start, zone));
+         assertEquals(expected / 1000, DateMath.weekdayElapsed(start, end,
+               zone, ResultUnit.SECONDS));
+         assertEquals((end - start) / 60000, DateMath.elapsed(start, end,
+               ResultUnit.MINUTES));
+         assertEquals((start - end) / 3600000, DateMath.elapsed(end, start,
+               ResultUnit.HOURS));
+      }
+   }
+
+   /**
+    * Test the elapsed batch methods against the single pair methods, and
+    * DateTool's precise forms against the whole day conversion they replace.
+    */
+   @Test
+   public void testElapsedBatch() {
+      Random random = new Random(24);
+      int length = 1000;
+      long[] starts = new long[length];
+      long[] ends = new long[length];
+      for (int i = 0; i < length; i++) {
+         starts[i] = random.nextLong() >> 22;
+         ends[i] = starts[i] + (random.nextLong() >> 30);
+      }
+      DateTimeZone zone = DateTimeZone.forID("Europe/London");
+      long[] elapsed = new long[length];
+      long[] weekdayElapsed = new long[length];
+      for (ResultUnit unit : new ResultUnit[] { ResultUnit.SECONDS,
+            ResultUnit.MINUTES, ResultUnit.HOURS, ResultUnit.DAYS,
+            ResultUnit.WEEKS, ResultUnit.DEFAULT }) {
+         DateMath.elapsed(starts, ends, elapsed, length, unit);
+         DateMath.weekdayElapsed(starts, ends, weekdayElapsed, length, zone,
+               unit);
+         for (int i = 0; i < length; i++) {
+            assertEquals(DateMath.elapsed(starts[i], ends[i], unit),
+                  elapsed[i]);
+            assertEquals(DateMath.weekdayElapsed(starts[i], ends[i], zone,
+                  unit), weekdayElapsed[i]);
+         }
+      }
+
+      // 2014-01-03 is a Friday
+      DateTime friday = new DateTime(2014, 1, 3, 22, 30, 15, zone);
+      DateTime monday = new DateTime(2014, 1, 6, 1, 0, 0, zone);
+      DateTool seconds = new DateTool(friday, monday, ResultUnit.SECONDS);
+      assertEquals(2 * 86400 + 2 * 3600 + 29 * 60 + 45,
+            seconds.calcElapsedTime());
+      assertEquals(3600 + 29 * 60 + 45 + 3600,
+            seconds.calcWeekdayElapsedTime());
+      // whole days lose the 2 hours 29 minutes 45 seconds
+      assertEquals(172800, seconds.calcDaysDifference());
+   }
+
+   /**
+    * Test that a batch length beyond the arrays is rejected.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testBatchLengthChecked() {
+      DateMath.daysBetween(new int[2], new int[2], new long[1], 2,
+            ResultUnit.DEFAULT);
+   }
+
+}
@@ -0,0 +1,142 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * Stress test sharing DateTool instances between threads. Throughput scaling
+ * is measured with the JMH shared benchmarks, e.g. -t 4, rather than asserted
+ * here where the number of cores is unknown.
+ */
+public class DateToolConcurrencyTest {
+
+   private static final int THREADS = 8;
+
+   private static final int PAIRS = 2000;
+
+   private static final int ROUNDS = 20;
+
+   private static final DateTimeZone[] ZONES = { DateTimeZone.UTC,
+         DateTimeZone.forID("Europe/London"),
+         DateTimeZone.forID("America/New_York") };
+
+   private final BusinessCalendar calendar = new BusinessCalendar(
+         BusinessCalendar.SATURDAY_SUNDAY, new long[] { 10957, 11316 });
+
+   /**
+    * Returns the four results of a pair from a DateTool used once only.
+    */
+   private long[] expected(DateTime startDate, DateTime endDate,
+         ResultUnit unit) {
+      return new long[] {
+            new DateTool(startDate, endDate, unit).calcDaysDifference(),
+            new DateTool(startDate, endDate, unit).calcWeekdaysDifference(),
+            new DateTool(startDate, endDate, unit)
+                  .calcCompleteWeeksDifference(),
+            new DateTool(startDate, endDate, unit)
+                  .calcBusinessDaysDifference(calendar) };
+   }
+
+   /**
+    * Test that calculators and date bound tools shared by many threads, with
+    * dates in both orders, give the same results as single use instances on
+    * every call.
+    */
+   @Test
+   public void testSharedInstances() throws Exception {
+      Random random = new Random(9);
+      final DateTime[] starts = new DateTime[PAIRS];
+      final DateTime[] ends = new DateTime[PAIRS];
+      final ResultUnit[] units = new ResultUnit[PAIRS];
+      final long[][] expected = new long[PAIRS][];
+      for (int i = 0; i < PAIRS; i++) {
+         DateTimeZone zone = ZONES[random.nextInt(ZONES.length)];
+         starts[i] = new DateTime(1990 + random.nextInt(30),
+               1 + random.nextInt(12), 1 + random.nextInt(28),
+               random.nextInt(24), 0, zone);
+         ends[i] = starts[i].plusHours(random.nextInt(20000) - 10000);
+         // the counts of days take only the day based units
+         do {
+            units[i] = ResultUnit.values()[random.nextInt(ResultUnit.values().length)];
+         } while (units[i].isCalendarUnit());
+         expected[i] = expected(starts[i], ends[i], units[i]);
+      }
+
+      final DateTool[] calculators = new DateTool[ResultUnit.values().length];
+      for (ResultUnit unit : ResultUnit.values()) {
+         calculators[unit.ordinal()] = new DateTool(unit);
+      }
+      final DateTool reversed = new DateTool(ends[0], starts[0], units[0]);
+      final long[] reversedExpected = expected(ends[0], starts[0], units[0]);
+
+      final CountDownLatch start = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+      try {
+         List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+         for (int t = 0; t < THREADS; t++) {
+            final int offset = t * PAIRS / THREADS;
+            results.add(executor.submit(new Callable<Integer>() {
+               @Override
+               public Integer call() throws Exception {
+                  start.await();
+                  int mismatches = 0;
+                  for (int round = 0; round < ROUNDS; round++) {
+                     for (int n = 0; n < PAIRS; n++) {
+                        int i = (offset + n) % PAIRS;
+                        DateTool calculator = calculators[units[i].ordinal()];
+                        long[] actual = {
+                              calculator.calcDaysDifference(starts[i], ends[i]),
+                              calculator.calcWeekdaysDifference(starts[i],
+                                    ends[i]),
+                              calculator.calcCompleteWeeksDifference(
+                                    starts[i], ends[i]),
+                              calculator.calcBusinessDaysDifference(
+                                    starts[i], ends[i], calendar) };
+                        for (int k = 0; k < actual.length; k++) {
+                           if (actual[k] != expected[i][k]) {
+                              mismatches++;
+                           }
+                        }
+                     }
+                     if (reversed.calcWeekdaysDifference() != reversedExpected[1]
+                           || reversed.calcDaysDifference() != reversedExpected[0]) {
+                        mismatches++;
+                     }
+                  }
+                  return mismatches;
+               }
+            }));
+         }
+
+         start.countDown();
+         for (Future<Integer> result : results) {
+            assertEquals(Integer.valueOf(0), result.get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * Test that a calculator built without dates rejects the bound methods.
+    */
+   @Test(expected = IllegalStateException.class)
+   public void testCalculatorWithoutDates() {
+      new DateTool(ResultUnit.DAYS).calcDaysDifference();
+   }
+
+}
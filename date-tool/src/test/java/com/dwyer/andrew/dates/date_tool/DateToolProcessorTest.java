@@ -0,0 +1,312 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.DateToolProcessor.Operation;
+import com.dwyer.andrew.dates.date_tool.DateToolProcessor.Pair;
+
+/**
+ * DateToolProcessor Test class. The fast subscriber test asserts its
+ * throughput only when the property processor.minPairsPerSecond is set, e.g.
+ * mvn test -Dprocessor.minPairsPerSecond=1000000 on a quiet benchmark host.
+ * The failure message gives the measured throughput.
+ */
+public class DateToolProcessorTest {
+
+   private static final int POOL = 4096;
+
+   private static final Pair[] PAIRS = new Pair[POOL];
+
+   private static final long[][] EXPECTED = new long[POOL][];
+
+   static {
+      Random random = new Random(20);
+      DateTimeZone[] zones = { DateTimeZone.UTC,
+            DateTimeZone.forID("Europe/London"),
+            DateTimeZone.forID("America/New_York") };
+      for (int i = 0; i < POOL; i++) {
+         DateTime start = new DateTime(1990 + random.nextInt(30),
+               1 + random.nextInt(12), 1 + random.nextInt(28),
+               4 + random.nextInt(20), 0, zones[random.nextInt(zones.length)]);
+         DateTime end = start.plusHours(random.nextInt(20000) - 10000);
+         PAIRS[i] = new Pair(start, end);
+         EXPECTED[i] = new long[] {
+               new DateTool(start, end, ResultUnit.HOURS)
+                     .calcDaysDifference(),
+               new DateTool(start, end, ResultUnit.HOURS)
+                     .calcWeekdaysDifference(),
+               new DateTool(start, end, ResultUnit.HOURS)
+                     .calcCompleteWeeksDifference() };
+      }
+   }
+
+   /**
+    * A publisher of count pairs from the pool, emitted on the thread that
+    * requests them, recording the total requested.
+    */
+   private static class PairSource implements Flow.Publisher<Pair> {
+
+      private final long count;
+
+      final AtomicLong requested = new AtomicLong();
+
+      final AtomicInteger cancels = new AtomicInteger();
+
+      PairSource(long count) {
+         this.count = count;
+      }
+
+      @Override
+      public void subscribe(final Flow.Subscriber<? super Pair> subscriber) {
+         subscriber.onSubscribe(new Flow.Subscription() {
+
+            private final AtomicLong demand = new AtomicLong();
+
+            private final AtomicInteger wip = new AtomicInteger();
+
+            private volatile boolean cancelled;
+
+            private long emitted;
+
+            @Override
+            public void request(long n) {
+               requested.addAndGet(n);
+               demand.addAndGet(n);
+               if (wip.getAndIncrement() != 0) {
+                  return;
+               }
+               int missed = 1;
+               do {
+                  while (!cancelled && emitted < count && demand.get() > 0) {
+                     demand.decrementAndGet();
+                     subscriber.onNext(PAIRS[(int) (emitted++ % POOL)]);
+                  }
+                  if (!cancelled && emitted == count) {
+                     cancelled = true;
+                     subscriber.onComplete();
+                  }
+                  missed = wip.addAndGet(-missed);
+               } while (missed != 0);
+            }
+
+            @Override
+            public void cancel() {
+               cancelled = true;
+               cancels.incrementAndGet();
+            }
+         });
+      }
+   }
+
+   /**
+    * Test that each result holds the selected operations' DateTool results
+    * in order, delivered in the order of the pairs.
+    */
+   @Test
+   public void testResults() throws Exception {
+      DateToolProcessor processor = new DateToolProcessor(ResultUnit.HOURS, 16,
+            Operation.COMPLETE_WEEKS, Operation.DAYS);
+      final long[][] received = new long[POOL][];
+      final CountDownLatch complete = new CountDownLatch(1);
+      processor.subscribe(new Flow.Subscriber<long[]>() {
+         private int next;
+
+         @Override
+         public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+         }
+
+         @Override
+         public void onNext(long[] values) {
+            received[next++] = values;
+         }
+
+         @Override
+         public void onError(Throwable throwable) {
+         }
+
+         @Override
+         public void onComplete() {
+            complete.countDown();
+         }
+      });
+      new PairSource(POOL).subscribe(processor);
+
+      assertTrue(complete.await(10, TimeUnit.SECONDS));
+      for (int i = 0; i < POOL; i++) {
+         assertArrayEquals(new long[] { EXPECTED[i][2], EXPECTED[i][0] },
+               received[i]);
+      }
+   }
+
+   /**
+    * Test that a subscriber consuming one result at a time on its own thread,
+    * pausing as it goes, never has more than the capacity of pairs requested
+    * from the source and not yet received, while a fast source could supply
+    * any number.
+    */
+   @Test
+   public void testSlowSubscriberBoundsMemory() throws Exception {
+      final int capacity = 64;
+      final int count = 5000;
+      DateToolProcessor processor = new DateToolProcessor(ResultUnit.HOURS,
+            capacity, Operation.DAYS, Operation.WEEKDAYS,
+            Operation.COMPLETE_WEEKS);
+      final PairSource source = new PairSource(Long.MAX_VALUE);
+      final BlockingQueue<long[]> handOff = new LinkedBlockingQueue<long[]>();
+      final AtomicReference<Flow.Subscription> subscription = new AtomicReference<Flow.Subscription>();
+      processor.subscribe(new Flow.Subscriber<long[]>() {
+         @Override
+         public void onSubscribe(Flow.Subscription s) {
+            subscription.set(s);
+         }
+
+         @Override
+         public void onNext(long[] values) {
+            handOff.add(values);
+         }
+
+         @Override
+         public void onError(Throwable throwable) {
+         }
+
+         @Override
+         public void onComplete() {
+         }
+      });
+      source.subscribe(processor);
+
+      long maxInFlight = 0;
+      for (int i = 0; i < count; i++) {
+         subscription.get().request(1);
+         long[] values = handOff.poll(10, TimeUnit.SECONDS);
+         assertArrayEquals(EXPECTED[i % POOL], values);
+         maxInFlight = Math.max(maxInFlight, source.requested.get() - i - 1);
+         if (i % 256 == 0) {
+            Thread.sleep(1);
+         }
+      }
+      subscription.get().cancel();
+
+      assertTrue(count + " results, at most " + maxInFlight
+            + " pairs in flight", maxInFlight <= capacity);
+      assertTrue(source.requested.get() <= count + capacity);
+      assertEquals(1, source.cancels.get());
+      assertNull(handOff.poll());
+   }
+
+   /**
+    * Test that a subscriber requesting everything receives a million results,
+    * checking the throughput against processor.minPairsPerSecond when set.
+    */
+   @Test
+   public void testFastSubscriberThroughput() throws Exception {
+      final int count = 1000000;
+      DateToolProcessor processor = new DateToolProcessor(ResultUnit.HOURS,
+            Operation.DAYS, Operation.WEEKDAYS, Operation.COMPLETE_WEEKS);
+      final AtomicLong received = new AtomicLong();
+      final AtomicLong mismatches = new AtomicLong();
+      final CountDownLatch complete = new CountDownLatch(1);
+      processor.subscribe(new Flow.Subscriber<long[]>() {
+         private long next;
+
+         @Override
+         public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+         }
+
+         @Override
+         public void onNext(long[] values) {
+            if (values[1] != EXPECTED[(int) (next++ % POOL)][1]) {
+               mismatches.incrementAndGet();
+            }
+         }
+
+         @Override
+         public void onError(Throwable throwable) {
+         }
+
+         @Override
+         public void onComplete() {
+            received.set(next);
+            complete.countDown();
+         }
+      });
+
+      long start = System.nanoTime();
+      new PairSource(count).subscribe(processor);
+      assertTrue(complete.await(60, TimeUnit.SECONDS));
+      long pairsPerSecond = count * 1000000000L
+            / Math.max(1, System.nanoTime() - start);
+
+      assertEquals(count, received.get());
+      assertEquals(0, mismatches.get());
+      String minPairsPerSecond = System.getProperty("processor.minPairsPerSecond");
+      if (minPairsPerSecond != null) {
+         assertTrue(count + " results, " + pairsPerSecond + " pairs/s",
+               pairsPerSecond >= Long.parseLong(minPairsPerSecond));
+      }
+   }
+
+   /**
+    * Test that a non positive request fails the subscriber and cancels the
+    * source, and that a second subscriber is refused.
+    */
+   @Test
+   public void testProtocolErrors() throws Exception {
+      DateToolProcessor processor = new DateToolProcessor(ResultUnit.DAYS,
+            Operation.DAYS);
+      PairSource source = new PairSource(Long.MAX_VALUE);
+      final AtomicReference<Throwable> first = new AtomicReference<Throwable>();
+      final AtomicReference<Throwable> second = new AtomicReference<Throwable>();
+      processor.subscribe(errorRecorder(first, 0));
+      source.subscribe(processor);
+      processor.subscribe(errorRecorder(second, 1));
+
+      assertTrue(first.get() instanceof IllegalArgumentException);
+      assertTrue(second.get() instanceof IllegalStateException);
+      assertEquals(1, source.cancels.get());
+   }
+
+   private static Flow.Subscriber<long[]> errorRecorder(
+         final AtomicReference<Throwable> error, final long request) {
+      return new Flow.Subscriber<long[]>() {
+         @Override
+         public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(request);
+         }
+
+         @Override
+         public void onNext(long[] values) {
+         }
+
+         @Override
+         public void onError(Throwable throwable) {
+            error.set(throwable);
+         }
+
+         @Override
+         public void onComplete() {
+         }
+      };
+   }
+
+}
@@ -262,17 +262,59 @@ public class DateToolTest {
             ResultUnit.YEARS);
       assertEquals(3, dateTool.calcDaysDifference());
 
-      dateTool.setResultUnit(ResultUnit.HOURS);
+      dateTool = dateTool.withResultUnit(ResultUnit.HOURS);
       assertEquals(26400, dateTool.calcDaysDifference());
 
-      dateTool.setResultUnit(ResultUnit.MINUTES);
+      dateTool = dateTool.withResultUnit(ResultUnit.MINUTES);
       assertEquals(1584000, dateTool.calcDaysDifference());
 
-      dateTool.setResultUnit(ResultUnit.SECONDS);
+      dateTool = dateTool.withResultUnit(ResultUnit.SECONDS);
       assertEquals(95040000, dateTool.calcDaysDifference());
 
    }
 
+   /**
+    * Test calcDaysDifference method with the calendar units, including the
+    * end of month rule and the leap day.
+    */
+   @Test
+   public void testCalcDaysDifferenceCalendarUnits() {
+      DateTool dateTool = new DateTool(startDate, distantEndDate,
+            ResultUnit.MONTHS);
+      assertEquals(36, dateTool.calcDaysDifference());
+
+      dateTool = dateTool.withResultUnit(ResultUnit.QUARTERS);
+      assertEquals(12, dateTool.calcDaysDifference());
+
+      dateTool = dateTool.withResultUnit(ResultUnit.CALENDAR_YEARS);
+      assertEquals(3, dateTool.calcDaysDifference());
+
+      DateTool months = new DateTool(ResultUnit.MONTHS);
+      DateTime endOfJanuary = new DateTime(2001, 1, 31, 0, 0);
+      assertEquals(1, months.calcDaysDifference(endOfJanuary, new DateTime(
+            2001, 2, 28, 0, 0)));
+      assertEquals(0, months.calcDaysDifference(endOfJanuary, new DateTime(
+            2001, 2, 27, 0, 0)));
+      assertEquals(-1, months.calcDaysDifference(new DateTime(2001, 2, 28, 0,
+            0), endOfJanuary));
+
+      DateTool years = new DateTool(ResultUnit.CALENDAR_YEARS);
+      DateTime leapDay = new DateTime(2000, 2, 29, 12, 0);
+      assertEquals(1, years.calcDaysDifference(leapDay, new DateTime(2001, 2,
+            28, 12, 0)));
+      assertEquals(0, years.calcDaysDifference(leapDay, new DateTime(2001, 2,
+            28, 11, 0)));
+   }
+
+   /**
+    * Test that the calendar units are refused for counts of days.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testCalcWeekdaysDifferenceCalendarUnit() {
+      new DateTool(startDate, distantEndDate, ResultUnit.MONTHS)
+            .calcWeekdaysDifference();
+   }
+
    /**
     * Test calcWeekdaysDifference method with different units.
     */
@@ -282,13 +324,13 @@ public class DateToolTest {
             ResultUnit.YEARS);
       assertEquals(2, dateTool.calcWeekdaysDifference());
 
-      dateTool.setResultUnit(ResultUnit.HOURS);
+      dateTool = dateTool.withResultUnit(ResultUnit.HOURS);
       assertEquals(18840, dateTool.calcWeekdaysDifference());
 
-      dateTool.setResultUnit(ResultUnit.MINUTES);
+      dateTool = dateTool.withResultUnit(ResultUnit.MINUTES);
       assertEquals(1130400, dateTool.calcWeekdaysDifference());
 
-      dateTool.setResultUnit(ResultUnit.SECONDS);
+      dateTool = dateTool.withResultUnit(ResultUnit.SECONDS);
       assertEquals(67824000, dateTool.calcWeekdaysDifference());
    }
 
@@ -301,13 +343,13 @@ public class DateToolTest {
             ResultUnit.YEARS);
       assertEquals(3, dateTool.calcCompleteWeeksDifference());
 
-      dateTool.setResultUnit(ResultUnit.HOURS);
+      dateTool = dateTool.withResultUnit(ResultUnit.HOURS);
       assertEquals(26376, dateTool.calcCompleteWeeksDifference());
 
-      dateTool.setResultUnit(ResultUnit.MINUTES);
+      dateTool = dateTool.withResultUnit(ResultUnit.MINUTES);
       assertEquals(1582560, dateTool.calcCompleteWeeksDifference());
 
-      dateTool.setResultUnit(ResultUnit.SECONDS);
+      dateTool = dateTool.withResultUnit(ResultUnit.SECONDS);
       assertEquals(94953600, dateTool.calcCompleteWeeksDifference());
 
    }
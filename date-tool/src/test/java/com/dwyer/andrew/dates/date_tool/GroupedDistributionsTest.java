@@ -0,0 +1,148 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * GroupedDistributions Test class, covering Distribution.
+ */
+public class GroupedDistributionsTest {
+
+   private static final String[] REGIONS = { "north", "south", "east", "west" };
+
+   /**
+    * Test the statistics and histogram of one distribution.
+    */
+   @Test
+   public void testDistribution() {
+      Distribution distribution = new Distribution(0, 1, 7);
+      for (long value : new long[] { -2, 0, 1, 1, 3, 7, 8, 30 }) {
+         distribution.add(value);
+      }
+
+      assertEquals(8, distribution.getCount());
+      assertEquals(-2, distribution.getMin());
+      assertEquals(30, distribution.getMax());
+      assertEquals(6.0, distribution.getMean(), 0);
+      assertEquals(1, distribution.getQuantile(0.5));
+      assertEquals(30, distribution.getQuantile(0.99));
+      assertArrayEquals(new long[] { 2, 2, 2, 2 },
+            distribution.getBucketCounts());
+      assertArrayEquals(new long[] { 0, 1, 7 }, distribution.getBounds());
+
+      try {
+         new Distribution(1, 1);
+         fail();
+      } catch (IllegalArgumentException iae) {
+         // expected
+      }
+      try {
+         distribution.merge(new Distribution(0, 1));
+         fail();
+      } catch (IllegalArgumentException iae) {
+         // expected
+      }
+   }
+
+   /**
+    * Test that threads each aggregating part of the rows merge into the
+    * statistics of aggregating every row on one thread, checked against
+    * lists of the values sorted per group.
+    */
+   @Test
+   public void testMergePerThread() throws Exception {
+      final int rows = 200000;
+      final long[] bounds = { 0, 1, 2, 5, 10, 30 };
+      final String[] keys = new String[rows];
+      final long[][] values = new long[rows][2];
+      Random random = new Random(24);
+      for (int i = 0; i < rows; i++) {
+         keys[i] = REGIONS[random.nextInt(REGIONS.length)];
+         values[i][0] = random.nextInt(40) - 5;
+         values[i][1] = values[i][0] * 5 / 7;
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      GroupedDistributions merged = new GroupedDistributions(2, bounds);
+      try {
+         List<Future<GroupedDistributions>> futures = new ArrayList<Future<GroupedDistributions>>();
+         for (int t = 0; t < 4; t++) {
+            final int first = t * rows / 4;
+            final int last = (t + 1) * rows / 4;
+            futures.add(executor
+                  .submit(new Callable<GroupedDistributions>() {
+                     @Override
+                     public GroupedDistributions call() {
+                        GroupedDistributions partial = new GroupedDistributions(
+                              2, bounds);
+                        for (int i = first; i < last; i++) {
+                           Distribution[] group = partial.group(keys[i]);
+                           group[0].add(values[i][0]);
+                           group[1].add(values[i][1]);
+                        }
+                        return partial;
+                     }
+                  }));
+         }
+         for (Future<GroupedDistributions> future : futures) {
+            merged.merge(future.get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+
+      assertEquals(Arrays.asList("east", "north", "south", "west"),
+            new ArrayList<String>(merged.getKeys()));
+      assertNull(merged.get("central", 0));
+      for (String region : REGIONS) {
+         for (int column = 0; column < 2; column++) {
+            List<Long> list = new ArrayList<Long>();
+            for (int i = 0; i < rows; i++) {
+               if (keys[i].equals(region)) {
+                  list.add(values[i][column]);
+               }
+            }
+            long[] sorted = new long[list.size()];
+            long sum = 0;
+            long[] buckets = new long[bounds.length + 1];
+            for (int i = 0; i < sorted.length; i++) {
+               sorted[i] = list.get(i);
+               sum += sorted[i];
+               int bucket = 0;
+               while (bucket < bounds.length && sorted[i] > bounds[bucket]) {
+                  bucket++;
+               }
+               buckets[bucket]++;
+            }
+            Arrays.sort(sorted);
+
+            // every value is under 32, so the quantiles are exact
+            Distribution distribution = merged.get(region, column);
+            assertEquals(sorted.length, distribution.getCount());
+            assertEquals(sorted[0], distribution.getMin());
+            assertEquals(sorted[sorted.length - 1], distribution.getMax());
+            assertEquals((double) sum / sorted.length, distribution.getMean(),
+                  1e-9);
+            assertEquals(sorted[(int) Math.ceil(0.5 * sorted.length) - 1],
+                  distribution.getQuantile(0.5));
+            assertEquals(sorted[(int) Math.ceil(0.95 * sorted.length) - 1],
+                  distribution.getQuantile(0.95));
+            assertArrayEquals(buckets, distribution.getBucketCounts());
+         }
+      }
+   }
+
+}
@@ -0,0 +1,190 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+
+/**
+ * IsoDateParser Test class. Every input is checked against the Joda
+ * dateOptionalTimeParser the parser replaces.
+ */
+public class IsoDateParserTest {
+
+   private static final DateTimeZone[] ZONES = { DateTimeZone.UTC,
+         DateTimeZone.forID("Europe/London"),
+         DateTimeZone.forID("America/New_York"),
+         DateTimeZone.forOffsetHoursMinutes(5, 30) };
+
+   /** Fragments random inputs are assembled from. */
+   private static final String[] SEPARATORS = { "-", "-", "-", ":", "T", "W",
+         "-W", ".", ",", "+", "Z", "z", "", " ", "x" };
+
+   /**
+    * Asserts the parser gives the same instant as Joda, or fails as Joda
+    * does, for characters and bytes.
+    */
+   private static void assertConforms(IsoDateParser parser,
+         DateTimeFormatter joda, String text) {
+      String expected;
+      try {
+         expected = String.valueOf(joda.parseMillis(text));
+      } catch (IllegalArgumentException iae) {
+         expected = "error";
+      }
+
+      String actual;
+      try {
+         actual = String.valueOf(parser.parseInstant(text, 0, text.length()));
+      } catch (IllegalArgumentException iae) {
+         actual = "error";
+      }
+      assertEquals(text, expected, actual);
+
+      String padded = "[" + text + "]";
+      byte[] bytes = padded.getBytes(StandardCharsets.UTF_8);
+      try {
+         actual = String.valueOf(parser.parseInstant(bytes, 1,
+               bytes.length - 1));
+      } catch (IllegalArgumentException iae) {
+         actual = "error";
+      }
+      assertEquals(text, expected, actual);
+   }
+
+   /**
+    * Test a hand picked set of forms from every branch of the grammar.
+    */
+   @Test
+   public void testGrammarExamples() {
+      String[] examples = { "2000", "2000-02", "2000-2-3", "2000-02-29",
+            "2001-02-29", "2000-13-01", "2000-060", "2000-366", "2001-366",
+            "2000-12", "2000-1234", "2000-W01", "2004-W53-7", "2005-W53",
+            "2000-W05-3", "2000-W05-", "2000-W5-8", "-0050-03-01",
+            "+2000-01-01", "12345-01-01", "2000-01-01T", "2000-01-01T10",
+            "2000-01-01T1", "2000-01-01T10.5", "2000-01-01T10,25",
+            "2000-01-01T10:30", "2000-01-01T10:30.5", "2000-01-01T10:30:15",
+            "2000-01-01T10:30:15.123456789", "2000-01-01T10:30:15.1234567891",
+            "2000-01-01T10:30:15.", "2000-01-01T24:00", "2000-01-01T23:60",
+            "2000-01-01T10:30:60", "2000-01-01T10Z", "2000-01-01Tz",
+            "2000-01-01T+01", "2000-01-01T10+0130", "2000-01-01T10-01:30",
+            "2000-01-01T10+01:30:15", "2000-01-01T10+01:30:15.5",
+            "2000-01-01T10+013015123", "2000-01-01T10+1", "2000-01-01T10+24",
+            "2000-01-01T10+01:3", "2000-01-01T10+01:60", "2000-01-01Z",
+            "1997-07-16T19:20:30+01:00", "2014-03-30T01:30", "2014-10-26T01:30",
+            "2014-03-09T02:30", "", "-", "T10", "2000-01-01 ", " 2000-01-01",
+            "2000-01-01T10:30:15.5+05:00", "1000000-01-01", "-1000001-01-01" };
+      for (DateTimeZone zone : ZONES) {
+         IsoDateParser parser = new IsoDateParser(zone);
+         DateTimeFormatter joda = ISODateTimeFormat.dateOptionalTimeParser()
+               .withZone(zone);
+         for (String example : examples) {
+            assertConforms(parser, joda, example);
+         }
+      }
+   }
+
+   /**
+    * Randomized conformance test over well formed dates with random times,
+    * fractions and offsets.
+    */
+   @Test
+   public void testRandomWellFormed() {
+      Random random = new Random(11);
+      for (DateTimeZone zone : ZONES) {
+         IsoDateParser parser = new IsoDateParser(zone);
+         DateTimeFormatter joda = ISODateTimeFormat.dateOptionalTimeParser()
+               .withZone(zone);
+         for (int i = 0; i < 3000; i++) {
+            StringBuilder text = new StringBuilder();
+            text.append(1800 + random.nextInt(400));
+            switch (random.nextInt(4)) {
+            case 0:
+               text.append('-').append(1 + random.nextInt(12)).append('-')
+                     .append(1 + random.nextInt(31));
+               break;
+            case 1:
+               text.append(String.format("-%02d-%02d",
+                     1 + random.nextInt(12), 1 + random.nextInt(31)));
+               break;
+            case 2:
+               text.append(String.format("-%03d", 1 + random.nextInt(366)));
+               break;
+            default:
+               text.append(String.format("-W%02d-%d", 1 + random.nextInt(53),
+                     1 + random.nextInt(7)));
+            }
+            if (random.nextBoolean()) {
+               text.append(String.format("T%02d", random.nextInt(24)));
+               if (random.nextBoolean()) {
+                  text.append(String.format(":%02d", random.nextInt(60)));
+                  if (random.nextBoolean()) {
+                     text.append(String.format(":%02d", random.nextInt(60)));
+                  }
+               }
+               if (random.nextInt(4) == 0) {
+                  text.append(random.nextBoolean() ? '.' : ',').append(
+                        random.nextInt(1000000000));
+               }
+               switch (random.nextInt(4)) {
+               case 0:
+                  text.append('Z');
+                  break;
+               case 1:
+                  text.append(String.format("%s%02d:%02d",
+                        random.nextBoolean() ? "+" : "-", random.nextInt(24),
+                        random.nextInt(60)));
+                  break;
+               default:
+               }
+            }
+            assertConforms(parser, joda, text.toString());
+         }
+      }
+   }
+
+   /**
+    * Randomized conformance test over strings assembled from digits and
+    * separators, nearly all of which are malformed.
+    */
+   @Test
+   public void testRandomMalformed() {
+      Random random = new Random(12);
+      IsoDateParser parser = new IsoDateParser(ZONES[1]);
+      DateTimeFormatter joda = ISODateTimeFormat.dateOptionalTimeParser()
+            .withZone(ZONES[1]);
+      for (int i = 0; i < 20000; i++) {
+         StringBuilder text = new StringBuilder();
+         int parts = 1 + random.nextInt(6);
+         for (int p = 0; p < parts; p++) {
+            int digits = random.nextInt(5);
+            for (int d = 0; d < digits; d++) {
+               text.append((char) ('0' + random.nextInt(10)));
+            }
+            text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+         }
+         assertConforms(parser, joda, text.toString());
+      }
+   }
+
+   /**
+    * Test that common forms are handled without falling back to Joda.
+    */
+   @Test
+   public void testFastPathUsed() {
+      IsoDateParser parser = new IsoDateParser(DateTimeZone.UTC);
+      String[] common = { "2000-01-01", "2000-01-01T10:30:15.123+01:00",
+            "2000-060", "2000-W05-3", "2000-01-01T10Z" };
+      for (String text : common) {
+         assertNotEquals(text, IsoDateParser.NOT_PARSED,
+               parser.parseFast(text, 0, text.length()));
+      }
+   }
+
+}
@@ -0,0 +1,133 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * QuantileSketch Test class. Quantiles are checked against the exact
+ * quantiles of the sorted values.
+ */
+public class QuantileSketchTest {
+
+   private static final double[] FRACTIONS = { 0, 0.01, 0.25, 0.5, 0.75,
+         0.95, 0.99, 0.999, 1 };
+
+   /** Returns the exact value of the given rank fraction in sorted values. */
+   private static long exact(long[] sorted, double fraction) {
+      long rank = Math.max(1, (long) Math.ceil(fraction * sorted.length));
+      return sorted[(int) rank - 1];
+   }
+
+   private static void assertWithinBucket(String message, long expected,
+         long actual) {
+      long magnitude = Math.abs(expected);
+      if (magnitude < 32) {
+         assertEquals(message, expected, actual);
+      } else {
+         assertTrue(message + " expected " + expected + " but was " + actual,
+               Math.abs(actual - expected) <= magnitude / 64 + 1);
+      }
+   }
+
+   /**
+    * Test quantiles of small, wide and signed values against the exact
+    * ones.
+    */
+   @Test
+   public void testQuantiles() {
+      Random random = new Random(24);
+      for (int scale : new int[] { 20, 400, 100000, Integer.MAX_VALUE }) {
+         for (boolean signed : new boolean[] { false, true }) {
+            long[] values = new long[20000];
+            QuantileSketch sketch = new QuantileSketch();
+            for (int i = 0; i < values.length; i++) {
+               // skewed towards small values, as delivery times are
+               long value = (long) (scale * Math.pow(random.nextDouble(), 3));
+               values[i] = signed && random.nextBoolean() ? -value : value;
+               sketch.add(values[i]);
+            }
+            Arrays.sort(values);
+
+            assertEquals(values.length, sketch.getCount());
+            assertEquals(values[0], sketch.getMin());
+            assertEquals(values[values.length - 1], sketch.getMax());
+            for (double fraction : FRACTIONS) {
+               assertWithinBucket(scale + " " + signed + " " + fraction,
+                     exact(values, fraction), sketch.getQuantile(fraction));
+            }
+         }
+      }
+   }
+
+   /**
+    * Test that the extremes of long are counted.
+    */
+   @Test
+   public void testExtremes() {
+      QuantileSketch sketch = new QuantileSketch();
+      sketch.add(Long.MIN_VALUE);
+      sketch.add(Long.MAX_VALUE);
+      sketch.add(0);
+
+      assertEquals(Long.MIN_VALUE, sketch.getQuantile(0));
+      assertEquals(0, sketch.getQuantile(0.5));
+      assertEquals(Long.MAX_VALUE, sketch.getQuantile(1));
+   }
+
+   /**
+    * Test that sketches of parts of the values merge into the sketch of all
+    * of them.
+    */
+   @Test
+   public void testMerge() {
+      Random random = new Random(24);
+      QuantileSketch whole = new QuantileSketch();
+      QuantileSketch[] parts = new QuantileSketch[4];
+      for (int i = 0; i < parts.length; i++) {
+         parts[i] = new QuantileSketch();
+      }
+      for (int i = 0; i < 10000; i++) {
+         // each part sees a different range, so merging grows the arrays
+         int part = random.nextInt(parts.length);
+         long value = (random.nextInt(1000) - 300) << (part * 8);
+         whole.add(value);
+         parts[part].add(value);
+      }
+      QuantileSketch merged = new QuantileSketch();
+      for (QuantileSketch part : parts) {
+         merged.merge(part);
+      }
+
+      assertEquals(whole.getCount(), merged.getCount());
+      assertEquals(whole.getMin(), merged.getMin());
+      assertEquals(whole.getMax(), merged.getMax());
+      for (double fraction : FRACTIONS) {
+         assertEquals(whole.getQuantile(fraction),
+               merged.getQuantile(fraction));
+      }
+   }
+
+   /**
+    * Test an empty sketch and a fraction out of range.
+    */
+   @Test
+   public void testEmptyAndInvalid() {
+      QuantileSketch sketch = new QuantileSketch();
+      assertEquals(0, sketch.getQuantile(0.5));
+      assertEquals(0, sketch.getMin());
+      assertEquals(0, sketch.getMax());
+      try {
+         sketch.getQuantile(1.5);
+         fail();
+      } catch (IllegalArgumentException iae) {
+         // expected
+      }
+   }
+
+}
@@ -0,0 +1,116 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * ResultCache Test class.
+ */
+public class ResultCacheTest {
+
+   /** The value stored for a key in the concurrent test. */
+   private static long valueOf(long start, long end, int kind) {
+      return (end - start) * 31 + kind;
+   }
+
+   /**
+    * Test lookups, updates and the counters.
+    */
+   @Test
+   public void testGetAndPut() {
+      ResultCache cache = new ResultCache(100);
+      assertEquals(128, cache.capacity());
+
+      assertEquals(ResultCache.NOT_FOUND, cache.get(1, 2, 0));
+      cache.put(1, 2, 0, 42);
+      cache.put(1, 2, 1, 43);
+      cache.put(2, 1, 0, 44);
+      assertEquals(42, cache.get(1, 2, 0));
+      assertEquals(43, cache.get(1, 2, 1));
+      assertEquals(44, cache.get(2, 1, 0));
+
+      cache.put(1, 2, 0, 45);
+      assertEquals(45, cache.get(1, 2, 0));
+      cache.put(1, 2, 0, ResultCache.NOT_FOUND);
+      assertEquals(45, cache.get(1, 2, 0));
+
+      assertEquals(5, cache.getHits());
+      assertEquals(1, cache.getMisses());
+      assertEquals(0, cache.getEvictions());
+   }
+
+   /**
+    * Test that the cache holds no more than its capacity and keeps recently
+    * used entries over older ones.
+    */
+   @Test
+   public void testEviction() {
+      ResultCache cache = new ResultCache(64);
+      for (int i = 0; i < 1000; i++) {
+         cache.put(i, i + 1, 0, i);
+         // keep touching the first key so it is never least recently used
+         assertEquals(0, cache.get(0, 1, 0));
+      }
+
+      int held = 0;
+      for (int i = 0; i < 1000; i++) {
+         if (cache.get(i, i + 1, 0) != ResultCache.NOT_FOUND) {
+            held++;
+         }
+      }
+      assertTrue(held <= cache.capacity());
+      assertEquals(1000 - cache.getEvictions(), held);
+   }
+
+   /**
+    * Test that threads storing and looking up overlapping keys only ever see
+    * the value stored for the key they asked for.
+    */
+   @Test
+   public void testConcurrentAccess() throws Exception {
+      final ResultCache cache = new ResultCache(256);
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+         for (int t = 0; t < 4; t++) {
+            final long seed = t;
+            results.add(executor.submit(new Callable<Integer>() {
+               @Override
+               public Integer call() {
+                  Random random = new Random(seed);
+                  int wrong = 0;
+                  for (int i = 0; i < 200000; i++) {
+                     long start = random.nextInt(64);
+                     long end = start + random.nextInt(64);
+                     int kind = random.nextInt(4);
+                     long value = cache.get(start, end, kind);
+                     if (value == ResultCache.NOT_FOUND) {
+                        cache.put(start, end, kind, valueOf(start, end, kind));
+                     } else if (value != valueOf(start, end, kind)) {
+                        wrong++;
+                     }
+                  }
+                  return wrong;
+               }
+            }));
+         }
+         for (Future<Integer> result : results) {
+            assertEquals(Integer.valueOf(0), result.get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+      assertEquals(800000, cache.getHits() + cache.getMisses());
+   }
+
+}
@@ -0,0 +1,227 @@
+package com.dwyer.andrew.dates.date_tool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.joda.time.Weeks;
+import org.junit.Test;
+
+/**
+ * ZoneTransitions Test class. Every answer is checked against the
+ * DateTimeZone it was precomputed from, around every transition of zones with
+ * half hour offsets and shifts, southern summers and a skipped day.
+ */
+public class ZoneTransitionsTest {
+
+   private static final DateTimeZone[] ZONES = { DateTimeZone.UTC,
+         DateTimeZone.forID("Europe/London"),
+         DateTimeZone.forID("America/New_York"),
+         DateTimeZone.forID("America/Sao_Paulo"),
+         DateTimeZone.forID("America/St_Johns"),
+         DateTimeZone.forID("Australia/Lord_Howe"),
+         DateTimeZone.forID("Asia/Tehran"),
+         DateTimeZone.forID("Asia/Kolkata"),
+         DateTimeZone.forID("Pacific/Apia"),
+         DateTimeZone.forID("Pacific/Chatham"),
+         DateTimeZone.forOffsetHoursMinutes(-9, -30) };
+
+   /** Offsets from a transition at which each answer is compared. */
+   private static final long[] NEAR = { -2 * 3600000L - 1, -3600000L - 1,
+         -3600000L, -1800000L, -1, 0, 1, 1800000L, 3600000L - 1, 3600000L,
+         2 * 3600000L };
+
+   /**
+    * Returns instants around every transition of the zone from 1890 to 2110,
+    * the table's edges and random instants across that span.
+    */
+   private static List<Long> instants(DateTimeZone zone) {
+      List<Long> instants = new ArrayList<Long>();
+      long first = new DateTime(1890, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+      long last = new DateTime(2110, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+      for (long transition = first;;) {
+         long next = zone.nextTransition(transition);
+         if (next <= transition || next > last) {
+            break;
+         }
+         transition = next;
+         for (long near : NEAR) {
+            instants.add(transition + near);
+         }
+      }
+      for (long edge : new long[] { ZoneTransitions.FIRST_INSTANT,
+            ZoneTransitions.END_INSTANT }) {
+         for (long near : NEAR) {
+            instants.add(edge + near);
+         }
+      }
+      Random random = new Random(23);
+      for (int i = 0; i < 20000; i++) {
+         instants.add(first + (long) (random.nextDouble() * (last - first)));
+      }
+      return instants;
+   }
+
+   /**
+    * Test that offsets, epoch days and the next and previous transitions
+    * match the zone's at and around each transition and in between.
+    */
+   @Test
+   public void testMatchesZone() {
+      for (DateTimeZone zone : ZONES) {
+         ZoneTransitions transitions = ZoneTransitions.forZone(zone);
+         for (long instant : instants(zone)) {
+            String message = zone + " " + new DateTime(instant, zone);
+            assertEquals(message, zone.getOffset(instant),
+                  transitions.getOffset(instant));
+            assertEquals(message, Math.floorDiv(instant
+                  + zone.getOffset(instant), DateMath.MILLIS_PER_DAY),
+                  transitions.toEpochDay(instant));
+            assertEquals(message, zone.nextTransition(instant),
+                  transitions.nextTransition(instant));
+            assertEquals(message, zone.previousTransition(instant),
+                  transitions.previousTransition(instant));
+         }
+      }
+   }
+
+   /**
+    * Test that local times in gaps, overlaps and either side of them resolve
+    * to the zone's offset.
+    */
+   @Test
+   public void testOffsetFromLocalMatchesZone() {
+      for (DateTimeZone zone : ZONES) {
+         ZoneTransitions transitions = ZoneTransitions.forZone(zone);
+         for (long instant : instants(zone)) {
+            // the local times the instant has under the offsets either side
+            long[] locals = { instant + zone.getOffset(instant),
+                  instant + zone.getOffset(instant - 3600000L),
+                  instant + zone.getOffset(instant + 3600000L) };
+            for (long local : locals) {
+               assertEquals(zone + " " + local,
+                     zone.getOffsetFromLocal(local),
+                     transitions.getOffsetFromLocal(local));
+            }
+         }
+      }
+   }
+
+   /**
+    * Test that whole days, weeks, weekdays and parsed local times over spans
+    * starting and ending either side of daylight saving transitions match
+    * the Joda results DateTool gave before.
+    */
+   @Test
+   public void testCalculationsAcrossTransitions() {
+      Random random = new Random(23);
+      DateTool dateTool = new DateTool(DateTool.ResultUnit.DEFAULT);
+      for (DateTimeZone zone : ZONES) {
+         IsoDateParser parser = new IsoDateParser(zone);
+         List<Long> instants = instants(zone);
+         for (int i = 0; i < 20000; i++) {
+            DateTime start = new DateTime(instants.get(random.nextInt(instants
+                  .size())), zone);
+            DateTime end = start.plusHours(random.nextInt(24 * 60) - 24 * 30)
+                  .plusMinutes(random.nextInt(120) - 60);
+            String message = start + " " + end;
+
+            assertEquals(message, Days.daysBetween(start, end).getDays(),
+                  dateTool.calcDaysDifference(start, end));
+            assertEquals(message, Weeks.weeksBetween(start, end).getWeeks(),
+                  dateTool.calcCompleteWeeksDifference(start, end));
+            assertEquals(message, steppedWeekdays(start, end),
+                  dateTool.calcWeekdaysDifference(start, end));
+
+            String local = start.toLocalDateTime().toString();
+            assertEquals(local, start.toLocalDateTime().toDateTime(zone)
+                  .getMillis(), parser.parseDateTime(local).getMillis());
+         }
+      }
+   }
+
+   /**
+    * Counts weekdays from the start's local day over as many days as the
+    * start can be moved forward by whole days in Joda and stay before the
+    * end, as DateMath.weekdaysBetween defines them.
+    */
+   private static long steppedWeekdays(DateTime start, DateTime end) {
+      if (start.isAfter(end)) {
+         return -steppedWeekdays(end, start);
+      }
+      int days = 0;
+      while (start.plusDays(days).isBefore(end)) {
+         days++;
+      }
+      long startDay = Days.daysBetween(new LocalDate(1970, 1, 1),
+            start.toLocalDate()).getDays();
+      return DateMath.countWeekdays(startDay, startDay + days);
+   }
+
+   /**
+    * Test that zones and tables are interned, from any thread, and that
+    * unknown ids fail as DateTimeZone.forID does.
+    */
+   @Test
+   public void testInterned() throws Exception {
+      assertSame(DateTimeZone.forID("Europe/London"),
+            ZoneTransitions.forID("Europe/London"));
+      assertSame(ZoneTransitions.forID("+01:00"),
+            ZoneTransitions.forID("+01:00"));
+      assertEquals(3600000, ZoneTransitions.forZone(
+            ZoneTransitions.forID("+01:00")).getOffset(0));
+      assertTrue(ZoneTransitions.forZone(ZoneTransitions.forID("+01:00"))
+            .getZone().isFixed());
+      try {
+         ZoneTransitions.forID("Nowhere/Special");
+         fail();
+      } catch (IllegalArgumentException iae) {
+         // expected
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         List<Future<ZoneTransitions[]>> futures = new ArrayList<Future<ZoneTransitions[]>>();
+         for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(new Callable<ZoneTransitions[]>() {
+               @Override
+               public ZoneTransitions[] call() {
+                  ZoneTransitions[] tables = new ZoneTransitions[ZONES.length];
+                  for (int round = 0; round < 1000; round++) {
+                     for (int z = 0; z < ZONES.length; z++) {
+                        tables[z] = ZoneTransitions.forZone(ZONES[z]);
+                     }
+                  }
+                  return tables;
+               }
+            }));
+         }
+         for (Future<ZoneTransitions[]> future : futures) {
+            ZoneTransitions[] tables = future.get();
+            for (int z = 0; z < ZONES.length; z++) {
+               assertSame(ZoneTransitions.forZone(ZONES[z]), tables[z]);
+               assertSame(ZONES[z], tables[z].getZone());
+            }
+         }
+      } finally {
+         executor.shutdown();
+      }
+      assertFalse(ZoneTransitions.forZone(ZONES[1]) == ZoneTransitions
+            .forZone(ZONES[2]));
+   }
+
+}
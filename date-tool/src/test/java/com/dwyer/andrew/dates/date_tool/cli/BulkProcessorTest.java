@@ -0,0 +1,143 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+import com.dwyer.andrew.dates.date_tool.metrics.Metrics;
+import com.dwyer.andrew.dates.date_tool.metrics.OperationMetrics;
+
+/**
+ * BulkProcessor Test class.
+ */
+public class BulkProcessorTest {
+
+   /**
+    * Test every operation on forward and reversed pairs, in option order.
+    */
+   @Test
+   public void testProcess() throws IOException {
+      BulkProcessor processor = new BulkProcessor(Arrays.asList(
+            BulkOperation.DAYS, BulkOperation.WEEKDAYS,
+            BulkOperation.COMPLETE_WEEKS, BulkOperation.BUSINESS_DAYS), ',',
+            ResultUnit.DEFAULT, new BusinessCalendar(
+                  BusinessCalendar.SATURDAY_SUNDAY, new long[] { 10959 }));
+      StringWriter out = new StringWriter();
+      StringWriter errors = new StringWriter();
+
+      long malformed = processor.process(new BufferedReader(new StringReader(
+            "2000-01-01,2000-01-10\n2000-01-10 , 2000-01-01\n")), out,
+            errors);
+
+      assertEquals(0, malformed);
+      assertEquals("9,5,1,4\n-9,-5,-1,-4\n", out.toString());
+      assertEquals("", errors.toString());
+   }
+
+   /**
+    * Test that malformed lines are reported and do not stop the run.
+    */
+   @Test
+   public void testMalformedLines() throws IOException {
+      BulkProcessor processor = new BulkProcessor(
+            Arrays.asList(BulkOperation.DAYS), '\t', ResultUnit.HOURS, null);
+      StringWriter out = new StringWriter();
+      StringWriter errors = new StringWriter();
+
+      long malformed = processor.process(new BufferedReader(new StringReader(
+            "2000-01-01\t2000-01-02\n2000-13-01\t2000-01-02\n\n"
+                  + "2000-01-01\t2000-01-02\t2000-01-03\n"
+                  + "2000-01-01\t2000-01-03\n")), out, errors);
+
+      assertEquals(3, malformed);
+      assertEquals("24\nERROR\nERROR\nERROR\n48\n", out.toString());
+      assertEquals("Line 2: Invalid date \"2000-13-01\"\n"
+            + "Line 3: Expected a start and end date separated by '\t'\n"
+            + "Line 4: Expected a start and end date separated by '\t'\n",
+            errors.toString());
+   }
+
+   /**
+    * Test that a cached processor gives the same results as computing every
+    * line, counting repeated pairs as hits.
+    */
+   @Test
+   public void testCache() throws IOException {
+      ResultCache cache = new ResultCache(16);
+      BulkProcessor processor = new BulkProcessor(Arrays.asList(
+            BulkOperation.DAYS, BulkOperation.WEEKDAYS), ',', ResultUnit.HOURS,
+            null, cache, cache, null, DateTimeZone.getDefault());
+      StringWriter out = new StringWriter();
+
+      processor.process(new BufferedReader(new StringReader(
+            "2000-01-01,2000-01-10\n2000-01-10,2000-01-01\n"
+                  + "2000-01-01,2000-01-10\n")), out, new StringWriter());
+
+      assertEquals("216,120\n-216,-120\n216,120\n", out.toString());
+      assertEquals(2, cache.getHits());
+      assertEquals(4, cache.getMisses());
+   }
+
+   /**
+    * Test that parses, calculations, including those answered by the cache,
+    * and parse failures are counted.
+    */
+   @Test
+   public void testMetrics() throws IOException {
+      Metrics metrics = new Metrics();
+      ResultCache cache = new ResultCache(16);
+      BulkProcessor processor = new BulkProcessor(Arrays.asList(
+            BulkOperation.DAYS, BulkOperation.WEEKDAYS), ',', ResultUnit.HOURS,
+            null, cache, cache, new BulkMetrics(metrics), DateTimeZone
+            .getDefault());
+      StringWriter out = new StringWriter();
+
+      processor.process(new BufferedReader(new StringReader(
+            "2000-01-01,2000-01-10\n2000-01-10,2000-13-01\n"
+                  + "2000-01-01,2000-01-10\n")), out, new StringWriter());
+
+      assertEquals("216,120\nERROR\n216,120\n", out.toString());
+      OperationMetrics parse = metrics.get(BulkMetrics.PARSE);
+      assertEquals(5, parse.getCalls());
+      assertEquals(1, parse.getFailures());
+      assertEquals(2, metrics.get("daysBetween").getCalls());
+      assertEquals(2, metrics.get("weekdaysBetween").getCalls());
+      assertEquals(0, metrics.get("weeksBetween").getCalls());
+   }
+
+   /**
+    * Test the shared splitting of plain and keyed lines into their fields.
+    */
+   @Test
+   public void testDateSplit() {
+      assertEquals(10, BulkProcessor.dateSplit("2000-01-01,2000-01-10", ',',
+            false));
+      int split = BulkProcessor.dateSplit("k,2000-01-01,2000-01-10", ',', true);
+      assertEquals(12, split);
+      assertEquals(1, BulkProcessor.keyEnd("k,2000-01-01,2000-01-10", ',',
+            split));
+      assertEquals(-1, BulkProcessor.keyEnd("2000-01-01,2000-01-10", ',', 10));
+      for (String line : new String[] { "2000-01-01",
+            "k,2000-01-01,2000-01-10" }) {
+         try {
+            BulkProcessor.dateSplit(line, ',', false);
+            fail(line);
+         } catch (IllegalArgumentException expected) {
+            assertEquals("Expected a start and end date separated by ','",
+                  expected.getMessage());
+         }
+      }
+   }
+
+}
@@ -0,0 +1,151 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * ColumnarProcessor and ColumnarConverter Test class.
+ */
+public class ColumnarProcessorTest {
+
+   private static final List<BulkOperation> OPERATIONS = Arrays.asList(
+         BulkOperation.values());
+
+   private static final BusinessCalendar CALENDAR = new BusinessCalendar(
+         BusinessCalendar.SATURDAY_SUNDAY, new long[] { 16071 });
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /**
+    * Test that converting text pairs, processing them and converting the
+    * results back gives what bulk mode writes, over more rows than a batch.
+    */
+   @Test
+   public void testMatchesBulkMode() throws IOException {
+      Random random = new Random(16);
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < ColumnarProcessor.BATCH_ROWS + 77; i++) {
+         int start = random.nextInt(20000);
+         int end = start + random.nextInt(800) - 400;
+         text.append(date(start)).append(',').append(date(end)).append('\n');
+      }
+
+      StringWriter expected = new StringWriter();
+      new BulkProcessor(OPERATIONS, ',', ResultUnit.DEFAULT, CALENDAR)
+            .process(reader(text), expected, new StringWriter());
+
+      Path pairs = folder.getRoot().toPath().resolve("pairs.dtc");
+      Path results = folder.getRoot().toPath().resolve("results.dtc");
+      ColumnarConverter converter = new ColumnarConverter(',');
+      assertEquals(0, converter.toColumnar(reader(text), pairs,
+            new StringWriter()));
+      assertTrue(ColumnarFile.isColumnar(pairs));
+      assertEquals(ColumnarProcessor.BATCH_ROWS + 77, new ColumnarProcessor(
+            OPERATIONS, ResultUnit.DEFAULT, CALENDAR).process(pairs, results));
+
+      StringWriter actual = new StringWriter();
+      converter.toText(results, actual);
+      assertEquals(expected.toString(), actual.toString());
+
+      StringWriter roundTrip = new StringWriter();
+      converter.toText(pairs, roundTrip);
+      assertEquals(text.toString(), roundTrip.toString());
+   }
+
+   /**
+    * Test the header and layout of a pairs file, and that malformed lines
+    * are reported and skipped.
+    */
+   @Test
+   public void testFormat() throws IOException {
+      Path pairs = folder.getRoot().toPath().resolve("pairs.dtc");
+      StringWriter errors = new StringWriter();
+      long malformed = new ColumnarConverter(',').toColumnar(reader(
+            "1970-01-02,1970-01-10\nnonsense\n1969-12-31, 2000-01-01\n"),
+            pairs, errors);
+
+      assertEquals(1, malformed);
+      assertEquals("Line 2: Expected a start and end date separated by ','\n",
+            errors.toString());
+
+      ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(pairs)).order(
+            ByteOrder.LITTLE_ENDIAN);
+      assertEquals(32 + 2 * 2 * 4, file.limit());
+      assertEquals(0x46435444, file.getInt(0));
+      assertEquals(1, file.getShort(4));
+      assertEquals(4, file.getShort(6));
+      assertEquals(2, file.getLong(8));
+      assertEquals(2, file.getInt(16));
+      assertEquals(32, file.getInt(20));
+      assertEquals(ColumnarFile.START, file.getInt(24));
+      assertEquals(ColumnarFile.END, file.getInt(28));
+      assertEquals(1, file.getInt(32));
+      assertEquals(-1, file.getInt(36));
+      assertEquals(9, file.getInt(40));
+      assertEquals(10957, file.getInt(44));
+   }
+
+   /**
+    * Test that a text file is not taken for a columnar file.
+    */
+   @Test(expected = IOException.class)
+   public void testRejectsText() throws IOException {
+      File text = folder.newFile("pairs.csv");
+      Files.write(text.toPath(), "2014-01-01,2014-02-01\n".getBytes("UTF-8"));
+      new ColumnarProcessor(OPERATIONS, ResultUnit.DEFAULT, CALENDAR).process(
+            text.toPath(), folder.getRoot().toPath().resolve("results.dtc"));
+   }
+
+   /**
+    * Test that a pairs file without one START and one END column is
+    * rejected rather than processed.
+    */
+   @Test
+   public void testRejectsMistaggedColumns() throws IOException {
+      Path pairs = folder.getRoot().toPath().resolve("pairs.dtc");
+      ColumnarFile.create(pairs, ColumnarFile.PAIRS, 1,
+            new int[] { ColumnarFile.END, ColumnarFile.END }).close();
+      try {
+         new ColumnarProcessor(OPERATIONS, ResultUnit.DEFAULT, CALENDAR)
+               .process(pairs, folder.getRoot().toPath().resolve(
+                     "results.dtc"));
+         fail("processed a file with two END columns");
+      } catch (IOException expected) {
+         assertEquals("Columnar pairs file has columns tagged 1 and 1",
+               expected.getMessage());
+      }
+   }
+
+   private static String date(int epochDay) {
+      return new LocalDate(epochDay * 86400000L, DateTimeZone.UTC).toString();
+   }
+
+   private static BufferedReader reader(CharSequence text) {
+      return new BufferedReader(new StringReader(text.toString()));
+   }
+
+}
@@ -0,0 +1,58 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * CoverageProcessor Test class.
+ */
+public class CoverageProcessorTest {
+
+   /**
+    * Test groups of keyed ranges, including a malformed line.
+    */
+   @Test
+   public void testProcess() throws IOException {
+      CoverageProcessor processor = new CoverageProcessor(Arrays.asList(
+            BulkOperation.DAYS, BulkOperation.WEEKDAYS,
+            BulkOperation.BUSINESS_DAYS), ',', ResultUnit.DEFAULT,
+            new BusinessCalendar(BusinessCalendar.SATURDAY_SUNDAY,
+                  new long[0]));
+      StringWriter out = new StringWriter();
+      StringWriter errors = new StringWriter();
+
+      long malformed = processor.process(new BufferedReader(new StringReader(
+            "a,2014-01-06,2014-01-16\n" + "a, 2014-01-18 ,2014-01-11\n"
+                  + "a,2014-01-27,2014-01-28\n" + "b,2014-01-06,nonsense\n"
+                  + "b,2014-02-01,2014-02-08\n" + "2014-01-01,2014-01-02\n"
+                  + "x,y,2014-01-01,2014-01-02\n")), out, errors);
+
+      assertEquals(2, malformed);
+      assertEquals("a,13,11,11,0,0,0,9,5,5\n" + "b,7,5,5,7,5,5,0,0,0\n"
+            + "1,1,1,1,1,1,0,0,0\n", out.toString());
+      assertEquals("Line 4: Invalid date \"nonsense\"\n"
+            + "Line 7: Expected an optional key, a start date and an end date separated by ','\n",
+            errors.toString());
+   }
+
+   /**
+    * Test that a calendar unit is refused up front rather than blamed on an
+    * input line.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testRejectsCalendarUnit() {
+      new CoverageProcessor(Arrays.asList(BulkOperation.DAYS), ',',
+            ResultUnit.MONTHS, null);
+   }
+
+}
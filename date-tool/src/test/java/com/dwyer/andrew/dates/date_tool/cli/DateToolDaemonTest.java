@@ -0,0 +1,209 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * DateToolDaemon and DaemonClient Test class.
+ */
+public class DateToolDaemonTest {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   private Path directory;
+
+   private Path socket;
+
+   private Thread daemonThread;
+
+   @Before
+   public void setupSocket() throws IOException {
+      directory = Files.createDirectory(folder.getRoot().toPath().resolve(
+            "daemon"), PosixFilePermissions.asFileAttribute(PosixFilePermissions
+            .fromString("rwx------")));
+      socket = directory.resolve("daemon.sock");
+   }
+
+   @After
+   public void stopDaemon() throws InterruptedException {
+      if (daemonThread != null) {
+         daemonThread.interrupt();
+         daemonThread.join(5000);
+      }
+   }
+
+   /**
+    * Binds a daemon on the test socket and runs it on a background thread.
+    */
+   private DateToolDaemon startDaemon(long idleMillis) throws IOException {
+      final DateToolDaemon daemon = new DateToolDaemon(socket, idleMillis);
+      assertTrue(daemon.bind());
+      daemonThread = new Thread() {
+         @Override
+         public void run() {
+            try {
+               daemon.run();
+            } catch (IOException ioe) {
+               throw new IllegalStateException(ioe);
+            }
+         }
+      };
+      daemonThread.start();
+      return daemon;
+   }
+
+   /**
+    * Returns the output of running the arguments in process.
+    */
+   private static String runInProcess(String... args) throws IOException {
+      return runInProcess(DateTimeZone.getDefault(), args);
+   }
+
+   /**
+    * Returns the output of running the arguments in process in a zone.
+    */
+   private static String runInProcess(DateTimeZone zone, String... args)
+         throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new DateToolCLI(new PrintStream(out, true, "UTF-8"), System.err, null,
+            zone).run(args);
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Test that forwarded invocations print what they print in process,
+    * including help, errors and file options resolved against the client's
+    * working directory.
+    */
+   @Test
+   public void testForwardMatchesInProcess() throws IOException {
+      startDaemon(60000);
+      File calendar = folder.newFile("calendar.txt");
+      Files.write(calendar.toPath(),
+            "2014-01-01 New Year\n".getBytes(StandardCharsets.UTF_8));
+
+      String[][] invocations = {
+            { "-x", "2014-01-01", "-y", "2014-02-01", "-a", "-b", "-c" },
+            { "-x", "2014-01-01", "-y", "2014-02-01", "-d", "--calendar",
+                  calendar.getAbsolutePath() },
+            { "-x", "2014-13-01", "-y", "2014-02-01", "-a" }, { "-h" } };
+      for (String[] args : invocations) {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         ByteArrayOutputStream err = new ByteArrayOutputStream();
+         assertTrue(DaemonClient.forward(args, socket, out, err));
+         assertEquals(runInProcess(args),
+               new String(out.toByteArray(), StandardCharsets.UTF_8));
+      }
+   }
+
+   /**
+    * Test that a forwarded invocation reads and prints dates in the client's
+    * zone rather than the daemon's.
+    */
+   @Test
+   public void testForwardUsesClientZone() throws IOException {
+      startDaemon(60000);
+      String[] args = { "-x", "2014-01-01T12:00Z", "-y", "2014-01-03T02:00Z",
+            "-a", "--plusBusinessDays", "1" };
+
+      String[] outputs = new String[2];
+      String[] zones = { "America/New_York", "Asia/Tokyo" };
+      for (int i = 0; i < zones.length; i++) {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         assertTrue(DaemonClient.forward(args, zones[i], socket, out, out));
+         outputs[i] = new String(out.toByteArray(), StandardCharsets.UTF_8);
+         assertEquals(runInProcess(DateTimeZone.forID(zones[i]), args),
+               outputs[i]);
+      }
+      assertFalse(outputs[0].equals(outputs[1]));
+   }
+
+   /**
+    * Test that invocations run in process when no daemon is listening, when
+    * they read standard input, or when the daemon cannot use their zone.
+    */
+   @Test
+   public void testFallback() throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertFalse(DaemonClient.forward(new String[] { "-h" }, socket, out,
+            out));
+
+      Files.createFile(socket);
+      assertFalse(DaemonClient.forward(new String[] { "-h" }, socket, out,
+            out));
+      Files.delete(socket);
+
+      startDaemon(60000);
+      assertFalse(DaemonClient.forward(new String[] { "-i", "-", "-a" },
+            socket, out, out));
+      assertFalse(DaemonClient.forward(new String[] { "-h" }, "Not/AZone",
+            socket, out, out));
+      assertEquals(0, out.size());
+   }
+
+   /**
+    * Test that a socket directory others can reach is never used: the
+    * daemon will not bind in it and clients will not connect through it.
+    */
+   @Test
+   public void testSharedDirectoryRefused() throws IOException {
+      startDaemon(60000);
+      Files.setPosixFilePermissions(directory,
+            PosixFilePermissions.fromString("rwxr-xr-x"));
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      assertFalse(DaemonClient.forward(new String[] { "-h" }, socket, out,
+            out));
+      assertEquals(0, out.size());
+
+      Files.delete(socket);
+      try {
+         new DateToolDaemon(socket, 60000).bind();
+         fail("bound in a shared directory");
+      } catch (IOException expected) {
+         assertFalse(Files.exists(socket));
+      }
+   }
+
+   /**
+    * Test that a second daemon does not displace a running one, and that a
+    * socket left behind by a dead daemon is replaced.
+    */
+   @Test
+   public void testBind() throws IOException {
+      Files.createFile(socket);
+      startDaemon(60000);
+      assertFalse(new DateToolDaemon(socket, 60000).bind());
+   }
+
+   /**
+    * Test that an idle daemon exits and removes its socket.
+    */
+   @Test
+   public void testIdleShutdown() throws Exception {
+      startDaemon(200);
+      daemonThread.join(5000);
+      assertFalse(daemonThread.isAlive());
+      assertFalse(Files.exists(socket));
+   }
+
+}
@@ -0,0 +1,309 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.CalendarWatcher;
+import com.dwyer.andrew.dates.date_tool.DateTool;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+import com.dwyer.andrew.dates.date_tool.ResultCache;
+import com.dwyer.andrew.dates.date_tool.metrics.Metrics;
+import com.dwyer.andrew.dates.date_tool.metrics.OperationMetrics;
+
+/**
+ * DateToolServer Test class, including a local load generator. The load test
+ * always checks every answer; it asserts p99 latency only when the property
+ * server.maxP99Micros is set, e.g. mvn test -Dserver.maxP99Micros=1000 on a
+ * quiet benchmark host, with the measured throughput and p99 latency in the
+ * failure message.
+ */
+public class DateToolServerTest {
+
+   private static final int LOAD_THREADS = 4;
+
+   private static final int LOAD_REQUESTS = 5000;
+
+   private DateToolServer server;
+
+   @Before
+   public void startServer() throws IOException {
+      server = new DateToolServer(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0), new BusinessCalendar(
+            BusinessCalendar.SATURDAY_SUNDAY, new long[0]), new ResultCache(
+            1024));
+      server.start();
+   }
+
+   @After
+   public void stopServer() {
+      server.stop();
+   }
+
+   /**
+    * Makes a request, returning the status followed by the body.
+    */
+   private String request(String method, String path, String body)
+         throws IOException {
+      HttpURLConnection connection = (HttpURLConnection) new URL("http",
+            "localhost", server.getPort(), path).openConnection();
+      connection.setRequestMethod(method);
+      if (body != null) {
+         connection.setDoOutput(true);
+         OutputStream out = connection.getOutputStream();
+         out.write(body.getBytes(StandardCharsets.UTF_8));
+         out.close();
+      }
+
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection
+            .getErrorStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      byte[] buffer = new byte[256];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+         response.write(buffer, 0, read);
+      }
+      in.close();
+      return status + " " + new String(response.toByteArray(),
+            StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Test each query endpoint against DateTool.
+    */
+   @Test
+   public void testQueries() throws IOException {
+      DateTime startDate = DateToolCLI.parseDate("2014-01-01");
+      DateTime endDate = DateToolCLI.parseDate("2014-03-01T10:00");
+      DateTool hours = new DateTool(ResultUnit.HOURS);
+
+      assertEquals("200 " + new DateTool(startDate, endDate).calcDaysDifference()
+            + "\n", request("GET",
+            "/daysBetween?start=2014-01-01&end=2014-03-01T10:00", null));
+      assertEquals("200 " + hours.calcWeekdaysDifference(endDate, startDate)
+            + "\n", request("GET",
+            "/weekdaysBetween?start=2014-03-01T10:00&end=2014-01-01&unit=hours",
+            null));
+      assertEquals("200 "
+            + new DateTool(startDate, endDate).calcCompleteWeeksDifference()
+            + "\n", request("GET",
+            "/weeksBetween?start=2014-01-01&end=2014-03-01T10%3A00", null));
+   }
+
+   /**
+    * Test the batch endpoint, including a malformed line.
+    */
+   @Test
+   public void testBatch() throws IOException {
+      assertEquals("200 31,23\nERROR\n1,0\n", request("POST",
+            "/batch?operations=daysBetween,weekdaysBetween",
+            "2014-01-01,2014-02-01\nnot a pair\n2014-01-04,2014-01-05\n"));
+      assertEquals("200 744,552,672\n", request("POST", "/batch?unit=HOURS",
+            "2014-01-01,2014-02-01\n"));
+   }
+
+   /**
+    * Test that repeated queries are answered from the cache.
+    */
+   @Test
+   public void testStats() throws IOException {
+      String query = "/weekdaysBetween?start=2014-01-01&end=2014-02-01";
+      assertEquals("200 23\n", request("GET", query, null));
+      assertEquals("200 23\n", request("GET", query, null));
+      assertEquals("200 cache hits 1, misses 1, evictions 0\n", request(
+            "GET", "/stats", null));
+   }
+
+   /**
+    * Test that a server with a watched calendar answers with each reloaded
+    * calendar, caching every result but business days, and reports its
+    * version.
+    */
+   @Test
+   public void testWatchedCalendar() throws Exception {
+      server.stop();
+      Path file = Files.createTempFile("calendar", ".txt");
+      try {
+         Files.write(file, "2014-01-06\n".getBytes(StandardCharsets.UTF_8));
+         try (CalendarWatcher watcher = new CalendarWatcher(file)) {
+            server = new DateToolServer(new InetSocketAddress(
+                  InetAddress.getLoopbackAddress(), 0), watcher,
+                  new ResultCache(1024), null);
+            server.start();
+
+            String query = "/businessDaysBetween?start=2014-01-06&end=2014-01-13";
+            assertEquals("200 4\n", request("GET", query, null));
+            Files.write(file, "2014-01-07\n2014-01-08\n"
+                  .getBytes(StandardCharsets.UTF_8));
+            assertTrue(watcher.reload());
+            assertEquals("200 3\n", request("GET", query, null));
+            assertEquals("200 3\n", request("POST",
+                  "/batch?operations=businessDaysBetween",
+                  "2014-01-06,2014-01-13\n"));
+
+            // business days are never cached, the other operations still are
+            for (int i = 0; i < 2; i++) {
+               assertEquals("200 7,3\n", request("POST",
+                     "/batch?operations=daysBetween,businessDaysBetween",
+                     "2014-01-06,2014-01-13\n"));
+            }
+            String stats = request("GET", "/stats", null);
+            assertTrue(stats, stats.contains(
+                  "cache hits 1, misses 1, evictions 0\n"));
+            assertTrue(stats, stats.contains("calendar version "
+                  + watcher.getVersion()));
+         }
+      } finally {
+         Files.delete(file);
+      }
+   }
+
+   /**
+    * Test that a server with metrics records every query and reports them.
+    */
+   @Test
+   public void testMetrics() throws IOException {
+      server.stop();
+      Metrics metrics = new Metrics();
+      server = new DateToolServer(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0), (BusinessCalendar) null, null,
+            metrics);
+      server.start();
+
+      String query = "/daysBetween?start=2014-01-01&end=2014-02-01";
+      assertEquals("200 31\n", request("GET", query, null));
+      assertEquals("200 31\n", request("GET", query, null));
+      assertEquals("400 Invalid start date \"2014-13-01\"\n", request("GET",
+            "/daysBetween?start=2014-13-01&end=2014-02-01", null));
+
+      OperationMetrics parse = metrics.get(BulkMetrics.PARSE);
+      assertEquals(4, parse.getCalls());
+      assertEquals(1, parse.getFailures());
+      OperationMetrics days = metrics.get("daysBetween");
+      assertEquals(2, days.getCalls());
+      assertEquals(31, days.getRangeDaysMax());
+      assertTrue(days.getLatencyMaxNanos() > 0);
+
+      String stats = request("GET", "/stats", null);
+      assertTrue(stats, stats.matches("200 daysBetween +calls 2 failures 0 .*"
+            + "\nparse +calls 4 failures 1 .*\n"));
+   }
+
+   /**
+    * Test the error statuses.
+    */
+   @Test
+   public void testErrors() throws IOException {
+      assertEquals("400 Missing parameter end\n", request("GET",
+            "/daysBetween?start=2014-01-01", null));
+      assertEquals("400 Invalid start date \"2014-13-01\"\n", request("GET",
+            "/daysBetween?start=2014-13-01&end=2014-01-01", null));
+      assertEquals("400 Unknown unit FORTNIGHTS\n", request("GET",
+            "/daysBetween?start=2014-01-01&end=2014-01-02&unit=FORTNIGHTS",
+            null));
+      assertEquals("400 Unknown operation monthsBetween\n", request("POST",
+            "/batch?operations=monthsBetween", ""));
+      assertEquals("404 Not found\n", request("GET", "/daysBetweenX", null));
+      assertEquals("405 Use POST\n", request("GET", "/batch", null));
+   }
+
+   /**
+    * Test that a batch body declared longer than the limit is refused before
+    * it is read.
+    */
+   @Test
+   public void testBatchTooLarge() throws IOException {
+      try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+            server.getPort())) {
+         socket.getOutputStream().write(("POST /batch HTTP/1.1\r\n"
+               + "Host: localhost\r\nContent-Length: "
+               + (DateToolServer.MAX_BATCH_BYTES + 1L) + "\r\n\r\n")
+               .getBytes(StandardCharsets.US_ASCII));
+         BufferedReader in = new BufferedReader(new InputStreamReader(
+               socket.getInputStream(), StandardCharsets.US_ASCII));
+         assertEquals("HTTP/1.1 413 Request Entity Too Large", in.readLine());
+      }
+   }
+
+   /**
+    * Load test: several client threads issue keep-alive queries as fast as
+    * they are answered, checking every answer.
+    */
+   @Test
+   public void testLoad() throws Exception {
+      ExecutorService clients = Executors.newFixedThreadPool(LOAD_THREADS);
+      try {
+         List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+         long started = System.nanoTime();
+         for (int t = 0; t < LOAD_THREADS; t++) {
+            final int offset = t;
+            results.add(clients.submit(new Callable<long[]>() {
+               @Override
+               public long[] call() throws IOException {
+                  long[] latencies = new long[LOAD_REQUESTS];
+                  for (int i = 0; i < LOAD_REQUESTS; i++) {
+                     int day = 1 + (i + offset) % 28;
+                     long before = System.nanoTime();
+                     String answer = request("GET",
+                           "/daysBetween?start=2014-02-01&end=2014-03-" + day,
+                           null);
+                     latencies[i] = System.nanoTime() - before;
+                     assertEquals("200 " + (27 + day) + "\n", answer);
+                  }
+                  return latencies;
+               }
+            }));
+         }
+
+         long[] all = new long[0];
+         for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            int length = all.length;
+            all = Arrays.copyOf(all, length + latencies.length);
+            System.arraycopy(latencies, 0, all, length, latencies.length);
+         }
+         long elapsed = System.nanoTime() - started;
+
+         Arrays.sort(all);
+         long p99Micros = all[(int) (all.length * 0.99)] / 1000;
+
+         String maxP99 = System.getProperty("server.maxP99Micros");
+         if (maxP99 != null) {
+            assertTrue(all.length + " requests, "
+                  + (all.length * 1000000000L / elapsed) + " requests/s, p99 "
+                  + p99Micros + "us", p99Micros <= Long.parseLong(maxP99));
+         }
+      } finally {
+         clients.shutdown();
+      }
+   }
+
+}
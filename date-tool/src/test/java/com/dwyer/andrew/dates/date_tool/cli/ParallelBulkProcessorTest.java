@@ -0,0 +1,135 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dwyer.andrew.dates.date_tool.BusinessCalendar;
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * ParallelBulkProcessor Test class.
+ */
+public class ParallelBulkProcessorTest {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   private final BulkProcessor processor = new BulkProcessor(Arrays.asList(
+         BulkOperation.DAYS, BulkOperation.WEEKDAYS,
+         BulkOperation.COMPLETE_WEEKS, BulkOperation.BUSINESS_DAYS), ',',
+         ResultUnit.DEFAULT, new BusinessCalendar(
+               BusinessCalendar.SATURDAY_SUNDAY, new long[] { 10959 }));
+
+   /**
+    * Writes random pairs, with some malformed lines, line ends picked at
+    * random from those given, and no line end after the last line.
+    */
+   private File writeInput(int lines, String... lineEnds) throws IOException {
+      File input = folder.newFile();
+      Random random = new Random(3);
+      Writer writer = new OutputStreamWriter(new FileOutputStream(input),
+            StandardCharsets.UTF_8);
+      try {
+         for (int i = 0; i < lines; i++) {
+            if (i > 0) {
+               writer.write(lineEnds[random.nextInt(lineEnds.length)]);
+            }
+            switch (random.nextInt(20)) {
+            case 0:
+               writer.write("not a pair");
+               break;
+            case 1:
+               writer.write("");
+               break;
+            default:
+               writer.write(String.format("%04d-%02d-%02d,%04d-%02d-%02dT%02d:00",
+                     1990 + random.nextInt(30), 1 + random.nextInt(12),
+                     1 + random.nextInt(28), 1990 + random.nextInt(30),
+                     1 + random.nextInt(12), 1 + random.nextInt(28),
+                     random.nextInt(24)));
+            }
+         }
+      } finally {
+         writer.close();
+      }
+      return input;
+   }
+
+   /**
+    * Test that the parallel output and error report are byte for byte the
+    * same as the single threaded path, with chunks small enough that lines
+    * fall on every kind of chunk boundary, including between a carriage
+    * return and its line feed.
+    */
+   @Test
+   public void testMatchesSingleThreaded() throws IOException {
+      assertMatchesSingleThreaded(writeInput(3000, "\n", "\n", "\n", "\n",
+            "\r\n", "\r"));
+   }
+
+   /**
+    * Test an input whose lines all end with a lone carriage return, as
+    * BufferedReader reads them.
+    */
+   @Test
+   public void testCarriageReturnLineEnds() throws IOException {
+      assertMatchesSingleThreaded(writeInput(500, "\r"));
+   }
+
+   private void assertMatchesSingleThreaded(File input) throws IOException {
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      StringWriter expectedErrors = new StringWriter();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(input), StandardCharsets.UTF_8));
+      long expectedMalformed;
+      try {
+         Writer out = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+         expectedMalformed = processor.process(reader, out, expectedErrors);
+      } finally {
+         reader.close();
+      }
+
+      for (int chunkSize : new int[] { 1, 37, 1000, 1 << 20 }) {
+         ByteArrayOutputStream actual = new ByteArrayOutputStream();
+         StringWriter actualErrors = new StringWriter();
+         long malformed = new ParallelBulkProcessor(processor, 4, chunkSize)
+               .process(input, actual, actualErrors);
+
+         assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+         assertEquals(expectedErrors.toString(), actualErrors.toString());
+         assertEquals(expectedMalformed, malformed);
+      }
+   }
+
+   /**
+    * Test an empty input file.
+    */
+   @Test
+   public void testEmptyFile() throws IOException {
+      File input = folder.newFile("empty.csv");
+      OutputStream out = new ByteArrayOutputStream();
+      assertEquals(0, new ParallelBulkProcessor(processor, 2, 16).process(
+            input, out, new StringWriter()));
+      assertEquals("", out.toString());
+   }
+
+}
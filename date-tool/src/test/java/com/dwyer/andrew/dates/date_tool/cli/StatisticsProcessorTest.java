@@ -0,0 +1,150 @@
+package com.dwyer.andrew.dates.date_tool.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dwyer.andrew.dates.date_tool.DateTool.ResultUnit;
+
+/**
+ * StatisticsProcessor Test class.
+ */
+public class StatisticsProcessorTest {
+
+   private static final List<BulkOperation> OPERATIONS = Arrays.asList(
+         BulkOperation.DAYS, BulkOperation.WEEKDAYS);
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /**
+    * Test keyed pairs in any order, including malformed lines.
+    */
+   @Test
+   public void testProcess() throws IOException {
+      StatisticsProcessor processor = new StatisticsProcessor(OPERATIONS, ',',
+            ResultUnit.DEFAULT, null, new long[] { 1, 7 });
+      StringWriter out = new StringWriter();
+      StringWriter errors = new StringWriter();
+
+      long malformed = processor.process(new BufferedReader(new StringReader(
+            "west,2014-01-06,2014-01-16\n" + "east,2014-01-06,2014-01-07\n"
+                  + "west, 2014-01-18 ,2014-01-11\n"
+                  + "west,2014-01-27,nonsense\n"
+                  + "east,2014-01-03,2014-01-06\n"
+                  + "x,y,2014-01-01,2014-01-02\n"
+                  + "west,2014-01-01,2014-01-02\n")), out, errors);
+
+      assertEquals(2, malformed);
+      // days then weekdays: count, min, max, mean, p50, p95, p99, buckets
+      assertEquals("east,2,1,3,2.00,1,3,3,1,1,0,2,1,1,1.00,1,1,1,2,0,0\n"
+            + "west,3,-7,10,1.33,1,10,10,2,0,1,3,-5,8,1.33,1,8,8,2,0,1\n",
+            out.toString());
+      assertEquals("Line 4: Invalid date \"nonsense\"\n"
+            + "Line 6: Expected an optional key, a start date and an end date separated by ','\n",
+            errors.toString());
+   }
+
+   /**
+    * Test that unkeyed pairs make one line without a key.
+    */
+   @Test
+   public void testUnkeyed() throws IOException {
+      StatisticsProcessor processor = new StatisticsProcessor(
+            Arrays.asList(BulkOperation.DAYS), ',', ResultUnit.DEFAULT, null,
+            new long[0]);
+      StringWriter out = new StringWriter();
+
+      processor.process(new BufferedReader(new StringReader(
+            "2014-01-01,2014-01-02\n2014-01-01,2014-01-04\n")), out,
+            new StringWriter());
+
+      assertEquals("2,1,3,2.00,1,3,3,2\n", out.toString());
+   }
+
+   /**
+    * Test that processing a file on several threads writes the same
+    * statistics and error report as the single threaded path, with chunks
+    * small enough that lines fall on every kind of chunk boundary.
+    */
+   @Test
+   public void testThreadsMatchSingleThread() throws IOException {
+      assertThreadsMatchSingleThread(writeInput("\n", "\n", "\r\n", "\r"));
+   }
+
+   /**
+    * Test an input whose lines all end with a lone carriage return, as
+    * BufferedReader reads them.
+    */
+   @Test
+   public void testCarriageReturnLineEnds() throws IOException {
+      assertThreadsMatchSingleThread(writeInput("\r"));
+   }
+
+   /**
+    * Writes keyed pairs, with some malformed lines, each ended by a line end
+    * picked at random from those given.
+    */
+   private File writeInput(String... lineEnds) throws IOException {
+      File input = folder.newFile();
+      Writer writer = new OutputStreamWriter(new FileOutputStream(input),
+            StandardCharsets.UTF_8);
+      Random random = new Random(24);
+      String[] regions = { "north", "south", "east", "west" };
+      LocalDate base = new LocalDate(2014, 1, 1);
+      for (int i = 0; i < 3000; i++) {
+         LocalDate start = base.plusDays(random.nextInt(700));
+         if (i % 500 == 7) {
+            writer.write("north,broken");
+         } else {
+            writer.write(regions[random.nextInt(regions.length)] + ","
+                  + start + "," + start.plusDays(random.nextInt(120)));
+         }
+         writer.write(lineEnds[random.nextInt(lineEnds.length)]);
+      }
+      writer.close();
+      return input;
+   }
+
+   private void assertThreadsMatchSingleThread(File input) throws IOException {
+      StatisticsProcessor processor = new StatisticsProcessor(OPERATIONS, ',',
+            ResultUnit.DEFAULT, null, StatisticsProcessor.DEFAULT_BOUNDS);
+      StringWriter expected = new StringWriter();
+      StringWriter expectedErrors = new StringWriter();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(input), StandardCharsets.UTF_8));
+      long expectedMalformed = processor.process(reader, expected,
+            expectedErrors);
+      reader.close();
+      assertEquals(6, expectedMalformed);
+
+      for (int chunkSize : new int[] { 1, 37, 1000, 1 << 20 }) {
+         StringWriter out = new StringWriter();
+         StringWriter errors = new StringWriter();
+         long malformed = processor.process(input, 4, chunkSize, out, errors);
+
+         assertEquals(expectedMalformed, malformed);
+         assertEquals(expected.toString(), out.toString());
+         assertEquals(expectedErrors.toString(), errors.toString());
+      }
+   }
+
+}
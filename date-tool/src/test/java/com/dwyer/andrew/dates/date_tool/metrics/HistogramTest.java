@@ -0,0 +1,55 @@
+package com.dwyer.andrew.dates.date_tool.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Histogram Test class.
+ */
+public class HistogramTest {
+
+   /**
+    * Test that every value falls in a bucket whose bounds hold it, within the
+    * histogram's precision.
+    */
+   @Test
+   public void testBuckets() {
+      Random random = new Random(3);
+      for (int i = 0; i < 100000; i++) {
+         long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+         int bucket = Histogram.bucket(value);
+         long upper = Histogram.upperBound(bucket);
+         long lower = bucket == 0 ? 0 : Histogram.upperBound(bucket - 1) + 1;
+         assertTrue(value + " in " + bucket, lower <= value && value <= upper);
+         assertTrue(value + " width",
+               upper - lower <= value >> (Histogram.SUB_BITS - 1));
+      }
+      assertEquals(Long.MAX_VALUE,
+            Histogram.upperBound(Histogram.bucket(Long.MAX_VALUE)));
+   }
+
+   /**
+    * Test percentiles of a uniform distribution.
+    */
+   @Test
+   public void testPercentiles() {
+      Histogram histogram = new Histogram();
+      assertEquals(0, histogram.getPercentile(0.5));
+      for (int value = 1; value <= 10000; value++) {
+         histogram.record(value);
+      }
+      histogram.record(-5);
+
+      assertEquals(10001, histogram.getCount());
+      assertEquals(10000, histogram.getMax());
+      assertEquals(5000, histogram.getPercentile(0.5), 5000 / 32);
+      assertEquals(9900, histogram.getPercentile(0.99), 9900 / 32);
+      assertEquals(10000, histogram.getPercentile(1));
+      assertEquals(0, histogram.getPercentile(0));
+   }
+
+}
@@ -0,0 +1,66 @@
+package com.dwyer.andrew.dates.date_tool.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Metrics Test class.
+ */
+public class MetricsTest {
+
+   /**
+    * Test recording and the text dump.
+    */
+   @Test
+   public void testDump() throws IOException {
+      Metrics metrics = new Metrics();
+      OperationMetrics parse = metrics.get("parse");
+      assertSame(parse, metrics.get("parse"));
+      parse.record(2000);
+      parse.record(4000);
+      parse.recordRange(3 * 86400000L, 0);
+      parse.recordCalls(1);
+      parse.recordFailure();
+
+      StringBuilder dump = new StringBuilder();
+      metrics.dump(dump);
+      assertTrue(dump.toString(), dump.toString().matches(
+            "parse +calls 3 failures 1 latency us p50 2\\.0 p99 4\\.0"
+                  + " p99\\.9 4\\.0 max 4\\.0 range days p50 3 p99 3 max 3\\s*"));
+   }
+
+   /**
+    * Test that operations are readable over JMX once published, including
+    * ones created later, and removed when unpublished.
+    */
+   @Test
+   public void testPublish() throws Exception {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName before = Metrics.objectName("MetricsTest.before");
+      ObjectName after = Metrics.objectName("MetricsTest.after");
+
+      Metrics metrics = new Metrics();
+      metrics.get("MetricsTest.before").record(1000);
+      metrics.publish();
+      metrics.get("MetricsTest.after").recordFailure();
+
+      assertEquals(1L, server.getAttribute(before, "Calls"));
+      assertEquals(1000L, server.getAttribute(before, "LatencyMaxNanos"));
+      assertEquals(1L, server.getAttribute(after, "Failures"));
+
+      metrics.unpublish();
+      assertFalse(server.isRegistered(before));
+      assertFalse(server.isRegistered(after));
+   }
+
+}